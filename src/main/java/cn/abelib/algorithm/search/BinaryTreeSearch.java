@@ -1,12 +1,37 @@
 package cn.abelib.algorithm.search;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * @author abel
+ * 基于二叉查找树的有序符号表, 每个结点维护子树大小 N, rank、select、size(lo, hi) 都是 O(h);
+ * 采用替罪羊树的策略: 插入后深度超过 log(1/α) n 时, 把路径上第一个失衡的子树重建为完全平衡的树,
+ * 删除后结点数降到历史最大值的 α 倍以下时重建整棵树, 使树高保持 O(log n)
  */
-public class BinaryTreeSearch<K extends Comparable<K>, V> implements Iterable<K> {
+public class BinaryTreeSearch<K extends Comparable<K>, V> extends ST<K, V> implements Iterable<K> {
+    /**
+     * 平衡因子, 子树大小超过父结点的 α 倍视为失衡
+     */
+    private static final double ALPHA = 0.7;
     private Node root;
+    /**
+     * 上次重建整棵树以来的最大结点数
+     */
+    private int maxSize;
+    /**
+     * 插入和删除时记录从根到当前结点的路径
+     */
+    private Node[] path;
+
+    public BinaryTreeSearch() {
+        this.root = null;
+        this.maxSize = 0;
+        this.path = newNodes(16);
+    }
 
     private class Node {
         private K key;
@@ -21,6 +46,37 @@ public class BinaryTreeSearch<K extends Comparable<K>, V> implements Iterable<K>
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private Node[] newNodes(int length) {
+        return (Node[]) new BinaryTreeSearch.Node[length];
+    }
+
+    private void checkKey(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key can not be null");
+        }
+    }
+
+    private void ensurePathCapacity(int depth) {
+        if (depth == path.length) {
+            path = Arrays.copyOf(path, depth * 2);
+        }
+    }
+
+    /**
+     * 把 parent 指向 old 的孩子指针改为 now, parent 为空时替换根结点
+     */
+    private void replace(Node parent, Node old, Node now) {
+        if (parent == null) {
+            root = now;
+        } else if (parent.left == old) {
+            parent.left = now;
+        } else {
+            parent.right = now;
+        }
+    }
+
+    @Override
     public int size() {
         return size(root);
     }
@@ -29,74 +85,396 @@ public class BinaryTreeSearch<K extends Comparable<K>, V> implements Iterable<K>
         return node == null ? 0 : node.N;
     }
 
-    public V get(K k) {
-        return get(root, k);
+    @Override
+    public boolean isEmpty() {
+        return root == null;
     }
 
-    private V get(Node node, K key) {
-        if (node == null) {
-            return null;
+    private Node node(K key) {
+        checkKey(key);
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp < 0) {
+                node = node.left;
+            } else if (cmp > 0) {
+                node = node.right;
+            } else {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public V get(K key) {
+        Node node = node(key);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public boolean contains(K key) {
+        return node(key) != null;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        checkKey(key);
+        Node node = root;
+        int depth = 0;
+        int cmp = 0;
+        while (node != null) {
+            cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                node.value = value;
+                Arrays.fill(path, 0, depth, null);
+                return;
+            }
+            ensurePathCapacity(depth);
+            path[depth++] = node;
+            node = cmp < 0 ? node.left : node.right;
         }
-        int cmp = key.compareTo(node.key);
-        if (cmp < 0) {
-            return get(node.left, key);
-        } else if (cmp > 0) {
-            return get(node.right, key);
+        Node created = new Node(key, value, 1);
+        if (depth == 0) {
+            root = created;
+        } else if (cmp < 0) {
+            path[depth - 1].left = created;
         } else {
-            return node.value;
+            path[depth - 1].right = created;
         }
+        for (int i = 0; i < depth; i++) {
+            path[i].N++;
+        }
+        maxSize = Math.max(maxSize, size());
+        if (depth > heightBound(size())) {
+            // 自底向上找到第一个失衡的祖先, 即替罪羊
+            Node child = created;
+            for (int i = depth - 1; i >= 0; i--) {
+                Node parent = path[i];
+                if (size(child) > ALPHA * parent.N) {
+                    replace(i == 0 ? null : path[i - 1], parent, rebuild(parent));
+                    break;
+                }
+                child = parent;
+            }
+        }
+        Arrays.fill(path, 0, depth, null);
     }
 
-    public void put(K key, V value) {
-        root = put(root, key, value);
+    /**
+     * α 平衡的树的最大深度 log(1/α) n
+     */
+    private static int heightBound(int size) {
+        return (int) (Math.log(size) / Math.log(1 / ALPHA));
     }
 
-    private Node put(Node node, K key, V value) {
+    @Override
+    public void delete(K key) {
+        checkKey(key);
+        Node node = root;
+        int depth = 0;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                break;
+            }
+            ensurePathCapacity(depth);
+            path[depth++] = node;
+            node = cmp < 0 ? node.left : node.right;
+        }
         if (node == null) {
-            return new Node(key, value, 1);
+            Arrays.fill(path, 0, depth, null);
+            return;
         }
-        int cmp = key.compareTo(node.key);
-        if (cmp < 0) {
-            node.left = put(node.left, key, value);
-        } else if (cmp > 0) {
-            node.right = put(node.right, key, value);
-        } else {
-            node.value = value;
+        if (node.left != null && node.right != null) {
+            // 用后继的内容覆盖当前结点, 转而删除后继
+            Node target = node;
+            ensurePathCapacity(depth);
+            path[depth++] = node;
+            node = node.right;
+            while (node.left != null) {
+                ensurePathCapacity(depth);
+                path[depth++] = node;
+                node = node.left;
+            }
+            target.key = node.key;
+            target.value = node.value;
+        }
+        replace(depth == 0 ? null : path[depth - 1], node, node.left != null ? node.left : node.right);
+        for (int i = 0; i < depth; i++) {
+            path[i].N--;
+        }
+        Arrays.fill(path, 0, depth, null);
+        if (size() < ALPHA * maxSize) {
+            root = rebuild(root);
+            maxSize = size();
+        }
+    }
+
+    /**
+     * 把子树重建为完全平衡的树, O(N)
+     */
+    private Node rebuild(Node node) {
+        if (node == null) {
+            return null;
+        }
+        Node[] nodes = newNodes(node.N);
+        Node[] stack = newNodes(16);
+        int top = 0;
+        int count = 0;
+        while (node != null || top > 0) {
+            while (node != null) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                }
+                stack[top++] = node;
+                node = node.left;
+            }
+            node = stack[--top];
+            nodes[count++] = node;
+            node = node.right;
+        }
+        return build(nodes, 0, count - 1);
+    }
+
+    private Node build(Node[] nodes, int low, int high) {
+        if (low > high) {
+            return null;
         }
-        node.N = size(node.left) + size(node.right) + 1;
+        int mid = (low + high) >>> 1;
+        Node node = nodes[mid];
+        node.left = build(nodes, low, mid - 1);
+        node.right = build(nodes, mid + 1, high);
+        node.N = high - low + 1;
         return node;
     }
 
+    /**
+     * 树的高度, 空树为 0
+     */
+    public int height() {
+        return height(root);
+    }
+
+    private int height(Node node) {
+        return node == null ? 0 : Math.max(height(node.left), height(node.right)) + 1;
+    }
+
+    @Override
+    public K min() {
+        if (root == null) {
+            throw new NoSuchElementException();
+        }
+        Node node = root;
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node.key;
+    }
+
+    @Override
+    public K max() {
+        if (root == null) {
+            throw new NoSuchElementException();
+        }
+        Node node = root;
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node.key;
+    }
+
+    @Override
+    public void delMin() {
+        delete(min());
+    }
+
+    @Override
+    public void delMax() {
+        delete(max());
+    }
+
+    /**
+     * 小于等于 key 的最大键, 不存在时返回 null
+     */
+    @Override
+    public K floor(K key) {
+        checkKey(key);
+        Node node = root;
+        K result = null;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                return node.key;
+            }
+            if (cmp < 0) {
+                node = node.left;
+            } else {
+                result = node.key;
+                node = node.right;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 大于等于 key 的最小键, 不存在时返回 null
+     */
+    @Override
+    public K ceiling(K key) {
+        checkKey(key);
+        Node node = root;
+        K result = null;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                return node.key;
+            }
+            if (cmp > 0) {
+                node = node.right;
+            } else {
+                result = node.key;
+                node = node.left;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 小于 key 的键的数量
+     */
+    @Override
+    public int rank(K key) {
+        checkKey(key);
+        Node node = root;
+        int rank = 0;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp < 0) {
+                node = node.left;
+            } else if (cmp > 0) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return rank + size(node.left);
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * 排名为 i 的键, 即第 i + 1 小的键
+     */
+    @Override
+    public K select(int i) {
+        if (i < 0 || i >= size()) {
+            throw new IllegalArgumentException("Index out of range: " + i);
+        }
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (i < leftSize) {
+                node = node.left;
+            } else if (i > leftSize) {
+                i -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node.key;
+            }
+        }
+    }
+
+    /**
+     * [low, high] 内的键的数量
+     */
+    @Override
+    public int size(K low, K high) {
+        checkKey(low);
+        checkKey(high);
+        if (low.compareTo(high) > 0) {
+            return 0;
+        }
+        return rank(high) - rank(low) + (contains(high) ? 1 : 0);
+    }
+
+    /**
+     * [low, high] 内的所有键, 按升序排列
+     */
+    @Override
+    public Iterable<K> keys(K low, K high) {
+        checkKey(low);
+        checkKey(high);
+        List<K> keys = new ArrayList<>();
+        Iterator<K> iterator = new Itr(low);
+        while (iterator.hasNext()) {
+            K key = iterator.next();
+            if (key.compareTo(high) > 0) {
+                break;
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    @Override
+    public Iterable<K> keys() {
+        List<K> keys = new ArrayList<>(size());
+        for (K key : this) {
+            keys.add(key);
+        }
+        return keys;
+    }
+
     @Override
     public Iterator<K> iterator() {
-        return new Itr();
+        return new Itr(null);
     }
 
+    /**
+     * 惰性中序遍历, 栈中保存尚未访问的祖先
+     */
     private class Itr implements Iterator<K> {
-        private Node current = root;
+        private Node[] stack = newNodes(16);
+        private int top;
 
-        @Override
-        public boolean hasNext() {
-            return current != null;
+        /**
+         * @param low 从大于等于 low 的第一个键开始, 为 null 时从最小键开始
+         */
+        private Itr(K low) {
+            Node node = root;
+            while (node != null) {
+                if (low == null || low.compareTo(node.key) <= 0) {
+                    push(node);
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
         }
 
-        @Override
-        public K next() {
-            K item = (K) next(current).key;
-            return item;
+        private void push(Node node) {
+            if (top == stack.length) {
+                stack = Arrays.copyOf(stack, top * 2);
+            }
+            stack[top++] = node;
         }
 
-        private Node next(Node node) {
-            if (current != null) {
-                next(current = current.left);
-                next(current = current.right);
-                return current;
-            }
-            return null;
+        @Override
+        public boolean hasNext() {
+            return top > 0;
         }
 
         @Override
-        public void remove() {
+        public K next() {
+            if (top == 0) {
+                throw new NoSuchElementException();
+            }
+            Node node = stack[--top];
+            stack[top] = null;
+            for (Node child = node.right; child != null; child = child.left) {
+                push(child);
+            }
+            return node.key;
         }
     }
 }
@@ -26,7 +26,7 @@ public abstract class ST<K extends Comparable<K>, V> {
 
     public abstract K ceiling(K key);
 
-    public abstract K rank(K key);
+    public abstract int rank(K key);
 
     public abstract K select(int i);
 
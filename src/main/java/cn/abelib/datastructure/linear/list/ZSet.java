@@ -0,0 +1,537 @@
+package cn.abelib.datastructure.linear.list;
+
+import cn.abelib.datastructure.map.HashMap;
+
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author abel-huang
+ * @date 2017/12/25
+ * 参考Redis zset 实现的有序集合，由跳表和字典两部分组成:
+ * 跳表按 (score, member) 排序，score 相同时按 member 排序，每层的前进指针记录跨越的节点数(span)，
+ * 从头节点到某个节点经过的 span 之和就是它的排名，因此按排名查找、求排名都是 O(log n)；
+ * 字典保存 member 到跳表节点的映射，按 member 查 score 为 O(1)。
+ * 排名从0开始，与Redis相同，zrange 等按排名的操作支持负数下标，-1 表示最后一个
+ */
+public class ZSet<T> {
+    /**
+     * 对应redis的 ZSKIPLIST_MAXLEVEL 和 ZSKIPLIST_P
+     */
+    private static final int MAX_LEVEL = 32;
+    private static final double P = 0.25;
+
+    private final Comparator<? super T> comparator;
+    private final HashMap<T, ZNode<T>> dict;
+    private final ZNode<T> header;
+    private ZNode<T> tail;
+    private int length;
+    private int level;
+
+    public ZSet() {
+        this(null);
+    }
+
+    /**
+     * @param comparator score 相同时 member 的顺序，为 null 时按 member 的 Comparable 顺序
+     */
+    public ZSet(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+        this.dict = new HashMap<>();
+        this.header = new ZNode<>(MAX_LEVEL, 0, null);
+        this.level = 1;
+    }
+
+    /**
+     * ZCARD
+     *
+     * @return
+     */
+    public int size() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * ZSCORE
+     *
+     * @param member
+     * @return member 不存在时返回 null
+     */
+    public Double zscore(T member) {
+        ZNode<T> node = dict.get(member);
+        return node == null ? null : node.score;
+    }
+
+    /**
+     * ZADD，member 已存在时更新 score
+     *
+     * @param member
+     * @param score
+     * @return 是否新增了 member
+     */
+    public boolean zadd(T member, double score) {
+        checkScore(score);
+        if (member == null) {
+            throw new IllegalArgumentException("Member can not be null");
+        }
+        ZNode<T> node = dict.get(member);
+        if (node != null) {
+            if (node.score != score) {
+                dict.set(member, this.updateScore(node, score));
+            }
+            return false;
+        }
+        dict.put(member, this.insert(score, member));
+        return true;
+    }
+
+    /**
+     * ZINCRBY，member 不存在时视为 0
+     *
+     * @param member
+     * @param increment
+     * @return 新的 score
+     */
+    public double zincrby(T member, double increment) {
+        ZNode<T> node = dict.get(member);
+        double score = (node == null ? 0 : node.score) + increment;
+        this.zadd(member, score);
+        return score;
+    }
+
+    /**
+     * ZREM
+     *
+     * @param member
+     * @return 是否删除了 member
+     */
+    public boolean zrem(T member) {
+        ZNode<T> node = dict.remove(member);
+        if (node == null) {
+            return false;
+        }
+        this.delete(node.score, member);
+        return true;
+    }
+
+    /**
+     * ZRANK，按 score 升序的排名
+     *
+     * @param member
+     * @return member 不存在时返回 -1
+     */
+    public int zrank(T member) {
+        ZNode<T> node = dict.get(member);
+        return node == null ? -1 : this.getRank(node.score, member) - 1;
+    }
+
+    /**
+     * ZREVRANK，按 score 降序的排名
+     *
+     * @param member
+     * @return member 不存在时返回 -1
+     */
+    public int zrevrank(T member) {
+        ZNode<T> node = dict.get(member);
+        return node == null ? -1 : length - this.getRank(node.score, member);
+    }
+
+    /**
+     * ZRANGE，按 score 升序返回排名在 [start, stop] 之间的 member
+     *
+     * @param start
+     * @param stop
+     * @return
+     */
+    public ArrayList<T> zrange(int start, int stop) {
+        return this.range(start, stop, false);
+    }
+
+    /**
+     * ZREVRANGE，按 score 降序返回排名在 [start, stop] 之间的 member
+     *
+     * @param start
+     * @param stop
+     * @return
+     */
+    public ArrayList<T> zrevrange(int start, int stop) {
+        return this.range(start, stop, true);
+    }
+
+    /**
+     * ZRANGEBYSCORE，按 score 升序返回 score 在 [min, max] 之间的 member
+     *
+     * @param min
+     * @param max
+     * @return
+     */
+    public ArrayList<T> zrangeByScore(double min, double max) {
+        return this.zrangeByScore(min, max, 0, -1);
+    }
+
+    /**
+     * ZRANGEBYSCORE ... LIMIT offset count
+     *
+     * @param min
+     * @param max
+     * @param offset 跳过的个数
+     * @param count  负数表示不限制
+     * @return
+     */
+    public ArrayList<T> zrangeByScore(double min, double max, int offset, int count) {
+        ArrayList<T> result = new ArrayList<>();
+        ZNode<T> node = this.firstInRange(min, max);
+        if (node == null || offset < 0) {
+            return result;
+        }
+        // offset 不超过 range 起点之后的节点数时，直接按排名定位
+        if (offset > 0) {
+            int rank = this.getRank(node.score, node.member) + offset;
+            node = rank > length ? null : this.getElementByRank(rank);
+        }
+        while (node != null && count-- != 0 && node.score <= max) {
+            result.add(node.member);
+            node = node.forward[0];
+        }
+        return result;
+    }
+
+    /**
+     * ZCOUNT，score 在 [min, max] 之间的 member 个数
+     *
+     * @param min
+     * @param max
+     * @return
+     */
+    public int zcount(double min, double max) {
+        ZNode<T> first = this.firstInRange(min, max);
+        if (first == null) {
+            return 0;
+        }
+        ZNode<T> last = this.lastInRange(min, max);
+        return this.getRank(last.score, last.member) - this.getRank(first.score, first.member) + 1;
+    }
+
+    /**
+     * ZREMRANGEBYRANK，删除排名在 [start, stop] 之间的 member
+     *
+     * @param start
+     * @param stop
+     * @return 删除的个数
+     */
+    public int zremRangeByRank(int start, int stop) {
+        if (start < 0) {
+            start += length;
+        }
+        if (stop < 0) {
+            stop += length;
+        }
+        if (start < 0) {
+            start = 0;
+        }
+        if (start > stop || start >= length) {
+            return 0;
+        }
+        if (stop >= length) {
+            stop = length - 1;
+        }
+        return this.deleteRangeByRank(start + 1, stop + 1);
+    }
+
+    private static void checkScore(double score) {
+        if (Double.isNaN(score)) {
+            throw new IllegalArgumentException("Score can not be NaN");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compareMember(T a, T b) {
+        return comparator != null ? comparator.compare(a, b) : ((Comparable<? super T>) a).compareTo(b);
+    }
+
+    /**
+     * 节点 x 是否排在 (score, member) 之前
+     */
+    private boolean lessThan(ZNode<T> x, double score, T member) {
+        return x.score < score || (x.score == score && compareMember(x.member, member) < 0);
+    }
+
+    private static int randomLevel() {
+        int level = 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (random.nextDouble() < P && level < MAX_LEVEL) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * 对应redis的 zslInsert，调用方保证 member 不存在
+     *
+     * @param score
+     * @param member
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private ZNode<T> insert(double score, T member) {
+        ZNode<T>[] update = (ZNode<T>[]) new ZNode[MAX_LEVEL];
+        int[] rank = new int[MAX_LEVEL];
+        ZNode<T> x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = i == level - 1 ? 0 : rank[i + 1];
+            while (x.forward[i] != null && lessThan(x.forward[i], score, member)) {
+                rank[i] += x.span[i];
+                x = x.forward[i];
+            }
+            update[i] = x;
+        }
+        int newLevel = randomLevel();
+        if (newLevel > level) {
+            for (int i = level; i < newLevel; i++) {
+                rank[i] = 0;
+                update[i] = header;
+                update[i].span[i] = length;
+            }
+            level = newLevel;
+        }
+        x = new ZNode<>(newLevel, score, member);
+        for (int i = 0; i < newLevel; i++) {
+            x.forward[i] = update[i].forward[i];
+            update[i].forward[i] = x;
+            // rank[0] - rank[i] 为 update[i] 到新节点前驱之间的节点数
+            x.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = (rank[0] - rank[i]) + 1;
+        }
+        for (int i = newLevel; i < level; i++) {
+            update[i].span[i]++;
+        }
+        x.backward = update[0] == header ? null : update[0];
+        if (x.forward[0] != null) {
+            x.forward[0].backward = x;
+        } else {
+            tail = x;
+        }
+        length++;
+        return x;
+    }
+
+    /**
+     * 对应redis的 zslDeleteNode
+     *
+     * @param x
+     * @param update
+     */
+    private void deleteNode(ZNode<T> x, ZNode<T>[] update) {
+        for (int i = 0; i < level; i++) {
+            if (update[i].forward[i] == x) {
+                update[i].span[i] += x.span[i] - 1;
+                update[i].forward[i] = x.forward[i];
+            } else {
+                update[i].span[i] -= 1;
+            }
+        }
+        if (x.forward[0] != null) {
+            x.forward[0].backward = x.backward;
+        } else {
+            tail = x.backward;
+        }
+        while (level > 1 && header.forward[level - 1] == null) {
+            level--;
+        }
+        length--;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ZNode<T>[] findUpdate(double score, T member) {
+        ZNode<T>[] update = (ZNode<T>[]) new ZNode[MAX_LEVEL];
+        ZNode<T> x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null && lessThan(x.forward[i], score, member)) {
+                x = x.forward[i];
+            }
+            update[i] = x;
+        }
+        return update;
+    }
+
+    private void delete(double score, T member) {
+        ZNode<T>[] update = this.findUpdate(score, member);
+        ZNode<T> x = update[0].forward[0];
+        if (x != null && x.score == score && compareMember(x.member, member) == 0) {
+            this.deleteNode(x, update);
+        }
+    }
+
+    /**
+     * 对应redis的 zslUpdateScore: 新的 score 不改变节点位置时原地修改，否则删除后重新插入
+     *
+     * @param node
+     * @param newScore
+     * @return 更新后的节点
+     */
+    private ZNode<T> updateScore(ZNode<T> node, double newScore) {
+        ZNode<T>[] update = this.findUpdate(node.score, node.member);
+        ZNode<T> x = update[0].forward[0];
+        if ((x.backward == null || lessThan(x.backward, newScore, x.member))
+                && (x.forward[0] == null || !lessThan(x.forward[0], newScore, x.member))) {
+            x.score = newScore;
+            return x;
+        }
+        this.deleteNode(x, update);
+        return this.insert(newScore, x.member);
+    }
+
+    /**
+     * 对应redis的 zslGetRank
+     *
+     * @param score
+     * @param member
+     * @return 从1开始的排名，不存在时返回0
+     */
+    private int getRank(double score, T member) {
+        int rank = 0;
+        ZNode<T> x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null && (lessThan(x.forward[i], score, member)
+                    || (x.forward[i].score == score && compareMember(x.forward[i].member, member) == 0))) {
+                rank += x.span[i];
+                x = x.forward[i];
+            }
+            if (x != header && x.score == score && compareMember(x.member, member) == 0) {
+                return rank;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 对应redis的 zslGetElementByRank
+     *
+     * @param rank 从1开始
+     * @return
+     */
+    private ZNode<T> getElementByRank(int rank) {
+        int traversed = 0;
+        ZNode<T> x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null && traversed + x.span[i] <= rank) {
+                traversed += x.span[i];
+                x = x.forward[i];
+            }
+            if (traversed == rank) {
+                return x;
+            }
+        }
+        return null;
+    }
+
+    private ZNode<T> firstInRange(double min, double max) {
+        if (min > max || tail == null || tail.score < min || header.forward[0].score > max) {
+            return null;
+        }
+        ZNode<T> x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null && x.forward[i].score < min) {
+                x = x.forward[i];
+            }
+        }
+        x = x.forward[0];
+        return x.score > max ? null : x;
+    }
+
+    private ZNode<T> lastInRange(double min, double max) {
+        if (min > max || tail == null || tail.score < min || header.forward[0].score > max) {
+            return null;
+        }
+        ZNode<T> x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null && x.forward[i].score <= max) {
+                x = x.forward[i];
+            }
+        }
+        return x.score < min ? null : x;
+    }
+
+    private ArrayList<T> range(int start, int stop, boolean reverse) {
+        if (start < 0) {
+            start += length;
+        }
+        if (stop < 0) {
+            stop += length;
+        }
+        if (start < 0) {
+            start = 0;
+        }
+        if (start > stop || start >= length) {
+            return new ArrayList<>();
+        }
+        if (stop >= length) {
+            stop = length - 1;
+        }
+        int count = stop - start + 1;
+        ArrayList<T> result = new ArrayList<>(count);
+        ZNode<T> node = reverse ? this.getElementByRank(length - start) : this.getElementByRank(start + 1);
+        while (count-- > 0) {
+            result.add(node.member);
+            node = reverse ? node.backward : node.forward[0];
+        }
+        return result;
+    }
+
+    /**
+     * 对应redis的 zslDeleteRangeByRank，同时从字典中删除
+     *
+     * @param start 从1开始，包含
+     * @param end   包含
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private int deleteRangeByRank(int start, int end) {
+        ZNode<T>[] update = (ZNode<T>[]) new ZNode[MAX_LEVEL];
+        int traversed = 0;
+        ZNode<T> x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null && traversed + x.span[i] < start) {
+                traversed += x.span[i];
+                x = x.forward[i];
+            }
+            update[i] = x;
+        }
+        traversed++;
+        x = x.forward[0];
+        int removed = 0;
+        while (x != null && traversed <= end) {
+            ZNode<T> next = x.forward[0];
+            this.deleteNode(x, update);
+            dict.remove(x.member);
+            removed++;
+            traversed++;
+            x = next;
+        }
+        return removed;
+    }
+
+    /**
+     * 跳表节点，span[i] 为第 i 层前进指针跨越的节点数
+     * @param <T>
+     */
+    private static class ZNode<T> {
+        final T member;
+        double score;
+        ZNode<T> backward;
+        final ZNode<T>[] forward;
+        final int[] span;
+
+        @SuppressWarnings("unchecked")
+        ZNode(int level, double score, T member) {
+            this.member = member;
+            this.score = score;
+            this.forward = (ZNode<T>[]) new ZNode[level];
+            this.span = new int[level];
+        }
+    }
+}
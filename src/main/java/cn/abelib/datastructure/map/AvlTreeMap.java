@@ -1,9 +1,119 @@
 package cn.abelib.datastructure.map;
 
+import cn.abelib.datastructure.tree.avl.AvlSearchTree;
+
+import java.util.List;
+
 /**
  * @Author: abel.huang
  * @Date: 2019-02-01 01:38
  *  基于 AVL 树
+ *  平衡条件比红黑树 {@link TreeMap} 更严格, 树更矮, 查找更快, 插入删除的旋转更多, 适合读多写少的场景
  */
-public class AvlTreeMap {
+public class AvlTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
+    private final AvlSearchTree<K, V> tree;
+
+    public AvlTreeMap() {
+        this.tree = new AvlSearchTree<>();
+    }
+
+    @Override
+    public int size() {
+        return tree.size();
+    }
+
+    /**
+     * key 已存在时更新其值
+     * @param key
+     * @param value
+     * @return 是否新增了映射
+     */
+    @Override
+    public boolean put(K key, V value) {
+        int size = tree.size();
+        tree.put(key, value);
+        return tree.size() > size;
+    }
+
+    @Override
+    public boolean contains(K key) {
+        return tree.containsKey(key);
+    }
+
+    @Override
+    public V get(K key) {
+        return tree.get(key);
+    }
+
+    /**
+     * 仅当 key 存在时更新其值
+     * @param key
+     * @param value
+     */
+    @Override
+    public void set(K key, V value) {
+        if (tree.containsKey(key)) {
+            tree.put(key, value);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tree.isEmpty();
+    }
+
+    @Override
+    public V remove(K key) {
+        return tree.remove(key);
+    }
+
+    public K min() {
+        return tree.min();
+    }
+
+    public K max() {
+        return tree.max();
+    }
+
+    public K floor(K key) {
+        return tree.floor(key);
+    }
+
+    public K ceiling(K key) {
+        return tree.ceiling(key);
+    }
+
+    public List<K> keys() {
+        return tree.keys();
+    }
+
+    /**
+     * 并集, 共有的 key 取 other 中的值, 完成后 other 被清空
+     */
+    public void union(AvlTreeMap<K, V> other) {
+        tree.union(other.tree);
+    }
+
+    /**
+     * 交集, 完成后 other 被清空
+     */
+    public void intersect(AvlTreeMap<K, V> other) {
+        tree.intersect(other.tree);
+    }
+
+    /**
+     * 差集, 完成后 other 被清空
+     */
+    public void difference(AvlTreeMap<K, V> other) {
+        tree.difference(other.tree);
+    }
+
+    public int height() {
+        return tree.height();
+    }
+
+    @Override
+    public String toString() {
+        return "AvlTreeMap{size=" + size() + ", height=" + height() + "}";
+    }
 }
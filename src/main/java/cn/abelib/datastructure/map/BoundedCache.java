@@ -0,0 +1,325 @@
+package cn.abelib.datastructure.map;
+
+import cn.abelib.util.commons.Constant;
+
+import java.util.Random;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ * 基于 LinkedHashMap 的有界缓存，容量可以按条目数或者按 Weigher 计算的权重(如估算的字节数)限制，
+ * 超出容量时在插入或更新之后立即淘汰:
+ * LRU 模式使用访问顺序的链表，O(1) 淘汰链表头部；
+ * LFU 模式参考redis的近似LFU，每个条目保存一个8位的对数计数器和上次衰减的分钟时间，
+ * 淘汰时随机取样 samples 个条目放入按计数排序的淘汰池，淘汰池中计数最小的条目，
+ * 淘汰池在多次淘汰之间保留，取样的效果接近全局最优
+ */
+public class BoundedCache<K, V> extends LinkedHashMap<K, V> {
+    /**
+     * 新条目的初始计数，避免刚插入的条目立即被淘汰
+     */
+    private static final int LFU_INIT_VAL = 5;
+    private static final int LFU_MAX_COUNTER = 255;
+    private static final int DEFAULT_LFU_LOG_FACTOR = 10;
+    private static final int DEFAULT_LFU_DECAY_TIME = 1;
+    private static final int DEFAULT_SAMPLES = 5;
+    /**
+     * 对应redis的 EVPOOL_SIZE
+     */
+    private static final int EVICTION_POOL_SIZE = 16;
+
+    private final EvictionPolicy policy;
+    private final long maximum;
+    private final Weigher<? super K, ? super V> weigher;
+    private long weightedSize;
+    private EvictionListener<? super K, ? super V> evictionListener;
+
+    private int lfuLogFactor = DEFAULT_LFU_LOG_FACTOR;
+    /**
+     * 计数器每隔多少分钟减一，0 表示不衰减
+     */
+    private int lfuDecayTime = DEFAULT_LFU_DECAY_TIME;
+    private NodeEntry<K, V>[] samples;
+    private final CacheEntry<K, V>[] pool;
+    private final int[] poolCounters;
+    private int poolSize;
+    private final Random random = new Random();
+
+    /**
+     * 按条目数限制容量
+     *
+     * @param maximumSize
+     * @param policy
+     */
+    public BoundedCache(long maximumSize, EvictionPolicy policy) {
+        this(maximumSize, null, policy);
+    }
+
+    /**
+     * 按权重限制容量，weigher 为 null 时每个条目的权重为1
+     *
+     * @param maximumWeight
+     * @param weigher
+     * @param policy
+     */
+    public BoundedCache(long maximumWeight, Weigher<? super K, ? super V> weigher, EvictionPolicy policy) {
+        super(Constant.DEFAULT_CAPACITY, policy == EvictionPolicy.LRU);
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("Maximum must be non-negative: " + maximumWeight);
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("Eviction policy can not be null");
+        }
+        this.policy = policy;
+        this.maximum = maximumWeight;
+        this.weigher = weigher;
+        this.setSamples(DEFAULT_SAMPLES);
+        this.pool = newPool();
+        this.poolCounters = new int[EVICTION_POOL_SIZE];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> CacheEntry<K, V>[] newPool() {
+        return (CacheEntry<K, V>[]) new CacheEntry[EVICTION_POOL_SIZE];
+    }
+
+    public EvictionPolicy getPolicy() {
+        return policy;
+    }
+
+    public long getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * 当前所有条目的权重之和，按条目数限制时等于 size()
+     *
+     * @return
+     */
+    public long weightedSize() {
+        return weightedSize;
+    }
+
+    public void setEvictionListener(EvictionListener<? super K, ? super V> evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * 值越大计数器增长越慢，对应redis的 lfu-log-factor
+     *
+     * @param lfuLogFactor
+     */
+    public void setLfuLogFactor(int lfuLogFactor) {
+        if (lfuLogFactor < 0) {
+            throw new IllegalArgumentException("LFU log factor must be non-negative");
+        }
+        this.lfuLogFactor = lfuLogFactor;
+    }
+
+    /**
+     * 计数器每隔多少分钟减一，0 表示不衰减，对应redis的 lfu-decay-time
+     *
+     * @param lfuDecayTime
+     */
+    public void setLfuDecayTime(int lfuDecayTime) {
+        if (lfuDecayTime < 0) {
+            throw new IllegalArgumentException("LFU decay time must be non-negative");
+        }
+        this.lfuDecayTime = lfuDecayTime;
+    }
+
+    /**
+     * LFU 模式每次淘汰时的取样数，对应redis的 maxmemory-samples
+     *
+     * @param samples
+     */
+    @SuppressWarnings("unchecked")
+    public void setSamples(int samples) {
+        if (samples < 1) {
+            throw new IllegalArgumentException("Samples must be positive");
+        }
+        this.samples = (NodeEntry<K, V>[]) new NodeEntry[samples];
+    }
+
+    @Override
+    NodeEntry<K, V> newNode(int hash, K key, V value, NodeEntry<K, V> next) {
+        return new CacheEntry<>(hash, key, value, next);
+    }
+
+    @Override
+    void afterNodeInsertion(NodeEntry<K, V> node) {
+        super.afterNodeInsertion(node);
+        CacheEntry<K, V> entry = (CacheEntry<K, V>) node;
+        entry.weight = weigh(entry);
+        weightedSize += entry.weight;
+        if (policy == EvictionPolicy.LFU) {
+            entry.lfuCounter = LFU_INIT_VAL;
+            entry.lfuTime = nowInMinutes();
+        }
+        evictIfNeeded();
+    }
+
+    @Override
+    void afterNodeAccess(NodeEntry<K, V> node) {
+        super.afterNodeAccess(node);
+        if (policy == EvictionPolicy.LFU) {
+            CacheEntry<K, V> entry = (CacheEntry<K, V>) node;
+            entry.lfuCounter = logIncrement(decayedCounter(entry));
+            entry.lfuTime = nowInMinutes();
+        }
+    }
+
+    @Override
+    void afterNodeUpdate(NodeEntry<K, V> node) {
+        if (weigher == null) {
+            return;
+        }
+        CacheEntry<K, V> entry = (CacheEntry<K, V>) node;
+        int weight = weigh(entry);
+        weightedSize += weight - entry.weight;
+        entry.weight = weight;
+        evictIfNeeded();
+    }
+
+    @Override
+    void afterNodeRemoval(NodeEntry<K, V> node) {
+        super.afterNodeRemoval(node);
+        CacheEntry<K, V> entry = (CacheEntry<K, V>) node;
+        entry.removed = true;
+        weightedSize -= entry.weight;
+    }
+
+    private int weigh(CacheEntry<K, V> entry) {
+        if (weigher == null) {
+            return 1;
+        }
+        int weight = weigher.weigh(entry.key, entry.value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be non-negative: " + weight);
+        }
+        return weight;
+    }
+
+    private void evictIfNeeded() {
+        while (weightedSize > maximum && !this.isEmpty()) {
+            CacheEntry<K, V> victim = policy == EvictionPolicy.LRU ? (CacheEntry<K, V>) eldest() : sampleVictim();
+            this.removeNode(victim);
+            if (evictionListener != null) {
+                evictionListener.onEviction(victim.key, victim.value);
+            }
+        }
+    }
+
+    /**
+     * 取样并更新淘汰池，然后从计数最小的一端取出仍然有效的条目，
+     * 已经删除或者入池后又被访问过的条目直接丢弃
+     *
+     * @return
+     */
+    private CacheEntry<K, V> sampleVictim() {
+        int stored = this.sampleNodes(samples, random);
+        for (int i = 0; i < stored; i++) {
+            CacheEntry<K, V> entry = (CacheEntry<K, V>) samples[i];
+            samples[i] = null;
+            offerToPool(entry, decayedCounter(entry));
+        }
+        while (poolSize > 0) {
+            CacheEntry<K, V> entry = pool[0];
+            int counter = poolCounters[0];
+            System.arraycopy(pool, 1, pool, 0, poolSize - 1);
+            System.arraycopy(poolCounters, 1, poolCounters, 0, poolSize - 1);
+            pool[--poolSize] = null;
+            if (!entry.removed && decayedCounter(entry) <= counter) {
+                return entry;
+            }
+        }
+        return (CacheEntry<K, V>) eldest();
+    }
+
+    /**
+     * 按计数升序插入淘汰池，池满时丢弃计数最大的条目
+     *
+     * @param entry
+     * @param counter
+     */
+    private void offerToPool(CacheEntry<K, V> entry, int counter) {
+        for (int i = 0; i < poolSize; i++) {
+            if (pool[i] == entry) {
+                return;
+            }
+        }
+        if (poolSize == EVICTION_POOL_SIZE && counter >= poolCounters[poolSize - 1]) {
+            return;
+        }
+        int pos = poolSize < EVICTION_POOL_SIZE ? poolSize : poolSize - 1;
+        while (pos > 0 && poolCounters[pos - 1] > counter) {
+            pool[pos] = pool[pos - 1];
+            poolCounters[pos] = poolCounters[pos - 1];
+            pos--;
+        }
+        pool[pos] = entry;
+        poolCounters[pos] = counter;
+        if (poolSize < EVICTION_POOL_SIZE) {
+            poolSize++;
+        }
+    }
+
+    /**
+     * 与redis相同，只保留16位的分钟时间
+     *
+     * @return
+     */
+    private int nowInMinutes() {
+        return (int) ((currentTimeMillis() / 60000) & 0xFFFF);
+    }
+
+    private int elapsedMinutes(int lfuTime) {
+        int now = nowInMinutes();
+        return now >= lfuTime ? now - lfuTime : 0xFFFF - lfuTime + now;
+    }
+
+    /**
+     * 按距离上次衰减经过的时间减少计数
+     *
+     * @param entry
+     * @return
+     */
+    private int decayedCounter(CacheEntry<K, V> entry) {
+        if (lfuDecayTime == 0) {
+            return entry.lfuCounter;
+        }
+        int periods = elapsedMinutes(entry.lfuTime) / lfuDecayTime;
+        return periods > entry.lfuCounter ? 0 : entry.lfuCounter - periods;
+    }
+
+    /**
+     * 对数增长: 计数越大，增加的概率越小
+     *
+     * @param counter
+     * @return
+     */
+    private int logIncrement(int counter) {
+        if (counter == LFU_MAX_COUNTER) {
+            return counter;
+        }
+        double base = Math.max(counter - LFU_INIT_VAL, 0);
+        double p = 1.0 / (base * lfuLogFactor + 1);
+        return random.nextDouble() < p ? counter + 1 : counter;
+    }
+
+    /**
+     * 额外记录权重和 LFU 信息的节点
+     * @param <K>
+     * @param <V>
+     */
+    static class CacheEntry<K, V> extends LinkedEntry<K, V> {
+        int weight;
+        int lfuCounter;
+        int lfuTime;
+        boolean removed;
+
+        CacheEntry(int hash, K key, V value, NodeEntry<K, V> next) {
+            super(hash, key, value, next);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package cn.abelib.datastructure.map;
+
+import cn.abelib.util.commons.RandomData;
+
+import java.util.function.LongFunction;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ * 按访问序列(trace)回放缓存请求，统计命中率:
+ * 每个请求先 get，未命中时 put，与大多数缓存的使用方式相同
+ */
+public class CacheSimulator {
+
+    /**
+     * 回放 trace
+     *
+     * @param cache
+     * @param trace
+     * @return 命中率
+     */
+    public static double simulate(Map<Integer, Integer> cache, int[] trace) {
+        long hits = 0;
+        for (int key : trace) {
+            if (cache.get(key) != null) {
+                hits++;
+            } else {
+                cache.put(key, key);
+            }
+        }
+        return trace.length == 0 ? 1.0 : (double) hits / trace.length;
+    }
+
+    /**
+     * 生成 Zipf 分布的 trace，并每隔 scanInterval 个请求插入一段长度为 scanLength 的顺序扫描，
+     * 扫描的 key 从 range 开始递增，不会重复出现
+     *
+     * @param seed
+     * @param range
+     * @param skew
+     * @param size
+     * @param scanInterval 0 表示不插入扫描
+     * @param scanLength
+     * @return
+     */
+    public static int[] zipfTrace(long seed, int range, double skew, int size, int scanInterval, int scanLength) {
+        int[] zipf = RandomData.randZipfArray(seed, range, skew, size);
+        if (scanInterval <= 0 || scanLength <= 0) {
+            return zipf;
+        }
+        int scans = size / scanInterval;
+        int[] trace = new int[size + scans * scanLength];
+        int next = range;
+        int pos = 0;
+        for (int i = 0; i < size; i++) {
+            trace[pos++] = zipf[i];
+            if ((i + 1) % scanInterval == 0) {
+                for (int j = 0; j < scanLength; j++) {
+                    trace[pos++] = next++;
+                }
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * 在不同的缓存大小下比较 W-TinyLFU 和 LRU 的命中率
+     *
+     * @param trace
+     * @param sizes
+     * @return 每行为 size、TinyLFU 命中率、LRU 命中率
+     */
+    public static String compare(int[] trace, long... sizes) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%10s %10s %10s%n", "size", "TinyLFU", "LRU"));
+        for (long size : sizes) {
+            double tinyLfu = simulate(size, trace, TinyLfuCache::new);
+            double lru = simulate(size, trace, maximum -> new BoundedCache<>(maximum, EvictionPolicy.LRU));
+            report.append(String.format("%10d %9.2f%% %9.2f%%%n", size, tinyLfu * 100, lru * 100));
+        }
+        return report.toString();
+    }
+
+    private static double simulate(long size, int[] trace, LongFunction<Map<Integer, Integer>> factory) {
+        return simulate(factory.apply(size), trace);
+    }
+}
@@ -0,0 +1,403 @@
+package cn.abelib.datastructure.map;
+
+import cn.abelib.util.commons.Constant;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ * 线程安全的 HashMap，参考 jdk8 的 ConcurrentHashMap:
+ * 读操作不加锁，只依赖 volatile 读；写操作只锁住桶的头节点；
+ * 扩容时 table 和 nextTable 同时存在(对应 HashMap 的 ht 和 expand)，
+ * 迁移按 stride 个桶为单位被多个写线程协作认领，迁移完成的桶放入 ForwardingNode，
+ * 读写遇到 ForwardingNode 时转到 nextTable 上继续。
+ * 元素个数用 LongAdder 分段计数，避免所有线程竞争同一个缓存行。
+ * 不支持 null key 和 null value
+ */
+public class ConcurrentHashMap<K, V> implements Map<K, V> {
+    private static final int MAX_CAPACITY = 1 << 30;
+    /**
+     * 每个线程一次认领的最少桶数
+     */
+    private static final int MIN_TRANSFER_STRIDE = 16;
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    private volatile AtomicReferenceArray<Node<K, V>> table;
+    private volatile AtomicReferenceArray<Node<K, V>> nextTable;
+    /**
+     * 非负时为下一次扩容的阈值; -1 表示正在完成扩容; 小于 -1 时表示正在扩容，
+     * 参与迁移的线程数为 -(sizeCtl + 1)
+     */
+    private final AtomicInteger sizeCtl;
+    /**
+     * 下一个待认领 stride 的上界(不含)，从 table.length() 递减到 0
+     */
+    private final AtomicInteger transferIndex;
+    private final LongAdder counter;
+    private final HashStrategy<? super K> hashStrategy;
+
+    public ConcurrentHashMap() {
+        this(Constant.DEFAULT_CAPACITY);
+    }
+
+    public ConcurrentHashMap(int capacity) {
+        this(capacity, HashStrategy.DEFAULT);
+    }
+
+    public ConcurrentHashMap(int capacity, HashStrategy<? super K> hashStrategy) {
+        if (hashStrategy == null) {
+            throw new IllegalArgumentException("Hash strategy can not be null");
+        }
+        int n = Constant.DEFAULT_CAPACITY;
+        while (n < capacity && n < MAX_CAPACITY) {
+            n <<= 1;
+        }
+        this.hashStrategy = hashStrategy;
+        this.table = new AtomicReferenceArray<>(n);
+        this.sizeCtl = new AtomicInteger(threshold(n));
+        this.transferIndex = new AtomicInteger(0);
+        this.counter = new LongAdder();
+    }
+
+    /**
+     * 负载因子 0.75
+     *
+     * @param n
+     * @return
+     */
+    private static int threshold(int n) {
+        return n >= MAX_CAPACITY ? Integer.MAX_VALUE : n - (n >>> 2);
+    }
+
+    private static int index(int hash, int length) {
+        return hash & (length - 1);
+    }
+
+    private boolean matches(Node<K, V> node, int hash, K key) {
+        return node.hash == hash && hashStrategy.equals(node.key, key);
+    }
+
+    @Override
+    public int size() {
+        long sum = counter.sum();
+        return sum < 0 ? 0 : (sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return counter.sum() <= 0;
+    }
+
+    public int capacity() {
+        return table.length();
+    }
+
+    /**
+     * 无锁读
+     *
+     * @param key
+     * @return
+     */
+    @Override
+    public V get(K key) {
+        checkNotNull(key);
+        int hash = hashStrategy.hash(key);
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        while (true) {
+            Node<K, V> node = tab.get(index(hash, tab.length()));
+            if (node instanceof ForwardingNode) {
+                tab = ((ForwardingNode<K, V>) node).nextTable;
+                continue;
+            }
+            while (node != null) {
+                if (matches(node, hash, key)) {
+                    return node.value;
+                }
+                node = node.next;
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public boolean contains(K key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public boolean put(K key, V value) {
+        putVal(key, value, false);
+        return true;
+    }
+
+    /**
+     * 只修改已经存在的 key
+     *
+     * @param key
+     * @param value
+     */
+    @Override
+    public void set(K key, V value) {
+        putVal(key, value, true);
+    }
+
+    private void putVal(K key, V value, boolean onlyIfPresent) {
+        checkNotNull(key);
+        checkNotNull(value);
+        int hash = hashStrategy.hash(key);
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        while (true) {
+            int i = index(hash, tab.length());
+            Node<K, V> head = tab.get(i);
+            if (head == null) {
+                if (onlyIfPresent) {
+                    return;
+                }
+                if (tab.compareAndSet(i, null, new Node<>(hash, key, value, null))) {
+                    addCount(1, 0);
+                    return;
+                }
+            } else if (head instanceof ForwardingNode) {
+                helpTransfer();
+                tab = ((ForwardingNode<K, V>) head).nextTable;
+            } else {
+                boolean added = false;
+                int binCount = 0;
+                synchronized (head) {
+                    if (tab.get(i) != head) {
+                        continue;
+                    }
+                    Node<K, V> node = head;
+                    while (true) {
+                        binCount++;
+                        if (matches(node, hash, key)) {
+                            node.value = value;
+                            break;
+                        }
+                        if (node.next == null) {
+                            if (!onlyIfPresent) {
+                                node.next = new Node<>(hash, key, value, null);
+                                added = true;
+                            }
+                            break;
+                        }
+                        node = node.next;
+                    }
+                }
+                if (added) {
+                    addCount(1, binCount);
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        checkNotNull(key);
+        int hash = hashStrategy.hash(key);
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        while (true) {
+            int i = index(hash, tab.length());
+            Node<K, V> head = tab.get(i);
+            if (head == null) {
+                return null;
+            } else if (head instanceof ForwardingNode) {
+                helpTransfer();
+                tab = ((ForwardingNode<K, V>) head).nextTable;
+            } else {
+                V removed = null;
+                synchronized (head) {
+                    if (tab.get(i) != head) {
+                        continue;
+                    }
+                    Node<K, V> prev = null;
+                    Node<K, V> node = head;
+                    while (node != null) {
+                        if (matches(node, hash, key)) {
+                            removed = node.value;
+                            if (prev == null) {
+                                tab.set(i, node.next);
+                            } else {
+                                prev.next = node.next;
+                            }
+                            break;
+                        }
+                        prev = node;
+                        node = node.next;
+                    }
+                }
+                if (removed != null) {
+                    addCount(-1, -1);
+                }
+                return removed;
+            }
+        }
+    }
+
+    /**
+     * 更新计数，和 JDK 一样每次插入都检查是否需要扩容，删除不检查
+     *
+     * @param delta
+     * @param binCount 插入时桶中原有的节点数，空桶为 0，小于 0 时不检查
+     */
+    private void addCount(long delta, int binCount) {
+        counter.add(delta);
+        if (binCount < 0) {
+            return;
+        }
+        // 协助或完成一次扩容后重新检查，扩容期间的插入可能已经超过新的阈值
+        while (true) {
+            int sc = sizeCtl.get();
+            if (sc < 0) {
+                // 桶都已被认领时不等待扩容结束，之后的插入会检查新的阈值
+                if (transferIndex.get() <= 0) {
+                    return;
+                }
+                helpTransfer();
+            } else if (counter.sum() < sc) {
+                return;
+            } else if (sizeCtl.compareAndSet(sc, -2)) {
+                AtomicReferenceArray<Node<K, V>> tab = table;
+                transferIndex.set(tab.length());
+                nextTable = new AtomicReferenceArray<>(tab.length() << 1);
+                transfer(tab, nextTable);
+                leaveTransfer();
+            }
+        }
+    }
+
+    /**
+     * 扩容进行中且还有未认领的桶时加入迁移，
+     * 没有可做的工作时不再加入，否则不断进出的线程会使计数无法回到 -2，扩容无法结束
+     */
+    private void helpTransfer() {
+        int sc;
+        while ((sc = sizeCtl.get()) < -1 && transferIndex.get() > 0) {
+            if (sizeCtl.compareAndSet(sc, sc - 1)) {
+                // 计数不为0时扩容不会结束，此时读到的 table 和 nextTable 属于同一次扩容
+                AtomicReferenceArray<Node<K, V>> nt = nextTable;
+                if (nt != null) {
+                    transfer(table, nt);
+                }
+                leaveTransfer();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 退出迁移，最后一个退出的线程负责切换 table
+     */
+    private void leaveTransfer() {
+        while (true) {
+            int sc = sizeCtl.get();
+            if (sc == -2) {
+                if (sizeCtl.compareAndSet(-2, -1)) {
+                    AtomicReferenceArray<Node<K, V>> nt = nextTable;
+                    table = nt;
+                    nextTable = null;
+                    sizeCtl.set(threshold(nt.length()));
+                    return;
+                }
+            } else if (sizeCtl.compareAndSet(sc, sc + 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 不断认领 stride 个桶进行迁移，直到所有桶都被认领
+     *
+     * @param tab
+     * @param nextTab
+     */
+    private void transfer(AtomicReferenceArray<Node<K, V>> tab, AtomicReferenceArray<Node<K, V>> nextTab) {
+        int n = tab.length();
+        int stride = Math.max((n >>> 3) / NCPU, MIN_TRANSFER_STRIDE);
+        ForwardingNode<K, V> forward = new ForwardingNode<>(nextTab);
+        while (true) {
+            int hi = transferIndex.get();
+            if (hi <= 0) {
+                return;
+            }
+            int lo = Math.max(hi - stride, 0);
+            if (transferIndex.compareAndSet(hi, lo)) {
+                for (int i = hi - 1; i >= lo; i--) {
+                    transferBin(tab, nextTab, i, forward);
+                }
+            }
+        }
+    }
+
+    /**
+     * 把第 i 个桶拆分为 nextTab 的 i 和 i + n 两个桶，
+     * 复制节点而不是移动，保证仍在旧桶上遍历的读线程看到完整的链表
+     */
+    private void transferBin(AtomicReferenceArray<Node<K, V>> tab, AtomicReferenceArray<Node<K, V>> nextTab,
+                             int i, ForwardingNode<K, V> forward) {
+        int n = tab.length();
+        while (true) {
+            Node<K, V> head = tab.get(i);
+            if (head == null) {
+                if (tab.compareAndSet(i, null, forward)) {
+                    return;
+                }
+                continue;
+            }
+            synchronized (head) {
+                if (tab.get(i) != head) {
+                    continue;
+                }
+                Node<K, V> low = null;
+                Node<K, V> high = null;
+                for (Node<K, V> node = head; node != null; node = node.next) {
+                    if ((node.hash & n) == 0) {
+                        low = new Node<>(node.hash, node.key, node.value, low);
+                    } else {
+                        high = new Node<>(node.hash, node.key, node.value, high);
+                    }
+                }
+                nextTab.set(i, low);
+                nextTab.set(i + n, high);
+                tab.set(i, forward);
+                return;
+            }
+        }
+    }
+
+    private static void checkNotNull(Object o) {
+        if (o == null) {
+            throw new IllegalArgumentException("Null key or value is not supported");
+        }
+    }
+
+    private static class Node<K, V> {
+        final int hash;
+        final K key;
+        volatile V value;
+        volatile Node<K, V> next;
+
+        Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    /**
+     * 已迁移桶的占位节点，指向扩容后的新表
+     */
+    private static final class ForwardingNode<K, V> extends Node<K, V> {
+        final AtomicReferenceArray<Node<K, V>> nextTable;
+
+        ForwardingNode(AtomicReferenceArray<Node<K, V>> nextTable) {
+            super(0, null, null, null);
+            this.nextTable = nextTable;
+        }
+    }
+}
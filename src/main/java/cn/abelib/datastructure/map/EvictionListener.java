@@ -0,0 +1,18 @@
+package cn.abelib.datastructure.map;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ * 缓存条目因为容量限制被淘汰时的回调
+ */
+@FunctionalInterface
+public interface EvictionListener<K, V> {
+
+    /**
+     * 条目已经从缓存中删除之后调用
+     *
+     * @param key
+     * @param value
+     */
+    void onEviction(K key, V value);
+}
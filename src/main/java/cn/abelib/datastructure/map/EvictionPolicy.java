@@ -0,0 +1,18 @@
+package cn.abelib.datastructure.map;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ * 缓存的淘汰策略
+ */
+public enum EvictionPolicy {
+    /**
+     * 淘汰最近最少使用的条目
+     */
+    LRU,
+    /**
+     * 参考redis的近似LFU，随机取样并淘汰访问频率最低的条目，
+     * 频率使用对数计数器并随时间衰减
+     */
+    LFU
+}
@@ -0,0 +1,85 @@
+package cn.abelib.datastructure.map;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ * 计算缓存条目的存活时间，时间单位为毫秒，返回 Long.MAX_VALUE 表示永不过期
+ */
+public interface Expiry<K, V> {
+
+    /**
+     * 新插入的条目的存活时间
+     *
+     * @param key
+     * @param value
+     * @param currentTime
+     * @return
+     */
+    long expireAfterCreate(K key, V value, long currentTime);
+
+    /**
+     * 替换 value 之后的存活时间
+     *
+     * @param key
+     * @param value
+     * @param currentTime
+     * @param currentDuration 剩余的存活时间
+     * @return
+     */
+    default long expireAfterUpdate(K key, V value, long currentTime, long currentDuration) {
+        return expireAfterCreate(key, value, currentTime);
+    }
+
+    /**
+     * 读取之后的存活时间，默认不变
+     *
+     * @param key
+     * @param value
+     * @param currentTime
+     * @param currentDuration 剩余的存活时间
+     * @return
+     */
+    default long expireAfterRead(K key, V value, long currentTime, long currentDuration) {
+        return currentDuration;
+    }
+
+    /**
+     * 写入 duration 毫秒后过期
+     *
+     * @param duration
+     * @param <K>
+     * @param <V>
+     * @return
+     */
+    static <K, V> Expiry<K, V> afterWrite(long duration) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("Duration must be non-negative: " + duration);
+        }
+        return (key, value, currentTime) -> duration;
+    }
+
+    /**
+     * 最后一次读写 duration 毫秒后过期
+     *
+     * @param duration
+     * @param <K>
+     * @param <V>
+     * @return
+     */
+    static <K, V> Expiry<K, V> afterAccess(long duration) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("Duration must be non-negative: " + duration);
+        }
+        return new Expiry<K, V>() {
+            @Override
+            public long expireAfterCreate(K key, V value, long currentTime) {
+                return duration;
+            }
+
+            @Override
+            public long expireAfterRead(K key, V value, long currentTime, long currentDuration) {
+                return duration;
+            }
+        };
+    }
+}
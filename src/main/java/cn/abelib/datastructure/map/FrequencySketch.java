@@ -0,0 +1,160 @@
+package cn.abelib.datastructure.map;
+
+import cn.abelib.util.commons.MurmurHash2;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ * TinyLFU 使用的 count-min sketch，估计 key 最近被访问的次数。
+ * 每个计数器占4位，最大为15，16个计数器打包在一个 long 中；
+ * 每个 key 用 murmur2 算出64位 hash，再用 h1 + i * h2 的方式得到 DEPTH 个计数器，估计值取其中的最小值。
+ * 记录的次数达到 sampleSize 时所有计数器减半(aging)，使旧的访问逐渐失去影响
+ */
+public class FrequencySketch<K> {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    /**
+     * 每个4位计数器右移一位后去掉借入的高位
+     */
+    private static final long RESET_MASK = 0x7777777777777777L;
+    /**
+     * 每个4位计数器的最低位
+     */
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private static final int MAX_TABLE_LENGTH = 1 << 26;
+
+    private final HashStrategy<? super K> hashStrategy;
+    private long[] table;
+    private int counterMask;
+    private int sampleSize;
+    private int size;
+
+    /**
+     * @param maximumSize 缓存的最大条目数，决定计数器个数和减半周期
+     */
+    public FrequencySketch(long maximumSize) {
+        this(maximumSize, HashStrategy.DEFAULT);
+    }
+
+    public FrequencySketch(long maximumSize, HashStrategy<? super K> hashStrategy) {
+        if (hashStrategy == null) {
+            throw new IllegalArgumentException("Hash strategy can not be null");
+        }
+        this.hashStrategy = hashStrategy;
+        this.ensureCapacity(maximumSize);
+    }
+
+    /**
+     * 条目数无法预先知道时(例如按权重限制容量)，随缓存中的条目数增长扩大计数器表，
+     * 与 Caffeine 一样扩大时丢弃已有的计数；表已经足够大时什么也不做
+     *
+     * @param maximumSize 当前需要支持的条目数
+     */
+    public void ensureCapacity(long maximumSize) {
+        if (table != null && table.length >= maximumSize) {
+            return;
+        }
+        int n = 8;
+        while (n < maximumSize && n < MAX_TABLE_LENGTH) {
+            n <<= 1;
+        }
+        if (table != null && table.length >= n) {
+            return;
+        }
+        this.table = new long[n];
+        this.counterMask = (n << 4) - 1;
+        this.sampleSize = 10 * n;
+        this.size = 0;
+    }
+
+    /**
+     * 自上次减半以来记录的次数
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * 计数器表的长度，每个 long 包含16个计数器
+     *
+     * @return
+     */
+    public int tableLength() {
+        return table.length;
+    }
+
+    /**
+     * 估计 key 的访问次数，最大为15
+     *
+     * @param key
+     * @return
+     */
+    public int frequency(K key) {
+        long h = spread(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, count(h1 + i * h2));
+        }
+        return frequency;
+    }
+
+    /**
+     * 记录一次访问，所有计数器都已经饱和时不计入 size
+     *
+     * @param key
+     */
+    public void increment(K key) {
+        long h = spread(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            added |= incrementAt(h1 + i * h2);
+        }
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * 所有计数器减半，size 减去因为奇数截断而丢失的部分后减半
+     */
+    void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size - (odd >>> 2)) >>> 1;
+    }
+
+    private long spread(K key) {
+        return MurmurHash2.hash(hashStrategy.hash(key));
+    }
+
+    private int count(int counter) {
+        counter &= counterMask;
+        int shift = (counter & 15) << 2;
+        return (int) ((table[counter >>> 4] >>> shift) & 0xFL);
+    }
+
+    private boolean incrementAt(int counter) {
+        counter &= counterMask;
+        int index = counter >>> 4;
+        int shift = (counter & 15) << 2;
+        if (((table[index] >>> shift) & 0xFL) == MAX_COUNT) {
+            return false;
+        }
+        table[index] += 1L << shift;
+        return true;
+    }
+}
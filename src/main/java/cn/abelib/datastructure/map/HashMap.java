@@ -2,64 +2,132 @@ package cn.abelib.datastructure.map;
 
 
 import cn.abelib.util.commons.Constant;
-import cn.abelib.util.commons.MurmurHash2;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.function.BiConsumer;
 
 /**
  * @author abel-huang
  * @date 18/3/8
- * 模仿redis底层实现的HashMap，但是没有实现渐进式rehash，
- * 目前打算采用CopyOnWrite的形式实现
+ * 模仿redis底层实现的HashMap，采用渐进式rehash:
+ * rehash期间同时持有 ht 和 expand 两张表，rehashIdx 记录 ht 中下一个待迁移的桶，
+ * 每次 get/put/remove 最多迁移 rehashSteps 个桶（最多访问 rehashSteps * 10 个空桶），
+ * 从而把一次扩容/缩容的开销均摊到后续的操作上。
+ * key 的 hash 和相等性由 HashStrategy 决定，默认策略对常见类型不产生内存分配。
+ * 遍历可以使用不复制数据的 forEach、迭代器，或者参考redis SCAN 的游标遍历 scan。
+ * 每个 key 可以设置过期时间，与redis相同，过期的 key 在被访问时惰性删除，
+ * 同时由时间轮按到期顺序给出过期的 key，在写操作中顺带删除少量，或者由 activeExpireCycle 在限定时间内批量删除
  */
-public class HashMap<K, V> implements Map<K, V> {
-    private HashTable ht;
-    private HashTable expand;
-    private int rehash;
+public class HashMap<K, V> implements Map<K, V>, Iterable<K> {
+    /**
+     * 每次操作默认迁移的桶数，对应redis中的 _dictRehashStep
+     */
+    private static final int DEFAULT_REHASH_STEPS = 1;
+    /**
+     * 每迁移一个桶最多允许访问的空桶数
+     */
+    private static final int EMPTY_VISITS_PER_STEP = 10;
+    /**
+     * 负载因子超过该值时扩容
+     */
+    private static final int EXPAND_RATIO = 2;
+    /**
+     * 填充率低于 1/SHRINK_RATIO 时缩容
+     */
+    private static final int SHRINK_RATIO = 10;
+    /**
+     * 每次写操作顺带删除的过期 key 数
+     */
+    private static final int EXPIRE_KEYS_PER_STEP = 2;
+    /**
+     * activeExpireCycle 每删除多少个 key 检查一次是否超时，对应redis中每16次迭代检查一次
+     */
+    private static final int EXPIRE_TIME_CHECK_INTERVAL = 16;
+
+    private HashTable<K, V> ht;
+    private HashTable<K, V> expand;
+    /**
+     * ht 中下一个需要迁移的桶下标，-1 表示当前没有进行rehash
+     */
+    private int rehashIdx;
+    private int rehashSteps;
+    private final HashStrategy<? super K> hashStrategy;
+    /**
+     * 结构修改(插入、删除)的次数，用于迭代器的 fail-fast
+     */
+    int modCount;
+    /**
+     * 未结束的迭代器数量及它们创建时的 modCount，计数大于0且 modCount 未变时读操作不推进rehash，
+     * 对应redis中的安全迭代器；迭代器遍历结束时释放计数，写操作使所有迭代器失效，计数随之作废
+     */
+    private int pausedModCount = -1;
+    private int pausedIterators;
+    /**
+     * 设置了过期时间的节点，第一次设置过期时间时创建，对应redis中的 expires 字典
+     */
+    private TimingWheel<NodeEntry<K, V>> expires;
 
 
     public HashMap() {
-        this.ht = new HashTable();
-        this.expand = null;
-        this.rehash = -1;
+        this(Constant.DEFAULT_CAPACITY);
     }
 
     public HashMap(int capacity) {
-        this.ht = new HashTable(capacity);
+        this(capacity, HashStrategy.DEFAULT);
+    }
+
+    public HashMap(HashStrategy<? super K> hashStrategy) {
+        this(Constant.DEFAULT_CAPACITY, hashStrategy);
+    }
+
+    public HashMap(int capacity, HashStrategy<? super K> hashStrategy) {
+        if (hashStrategy == null) {
+            throw new IllegalArgumentException("Hash strategy can not be null");
+        }
+        this.hashStrategy = hashStrategy;
+        this.ht = new HashTable<>(tableSizeFor(capacity));
         this.expand = null;
-        this.rehash = -1;
+        this.rehashIdx = -1;
+        this.rehashSteps = DEFAULT_REHASH_STEPS;
     }
 
     /**
-     * node key hash
+     * 不小于 capacity 的最小2的幂
      *
+     * @param capacity
      * @return
      */
-    private int hash(K key) {
-        long code = MurmurHash2.hash(key.toString());
-        return (int) code;
+    private static int tableSizeFor(int capacity) {
+        int size = Constant.DEFAULT_CAPACITY;
+        while (size < capacity && size < (1 << 30)) {
+            size <<= 1;
+        }
+        return size;
     }
 
     /**
-     * cal index in the ht
+     * node key hash
      *
-     * @param key
      * @return
      */
-    private int index(K key) {
-        return hash(key) & ht.mask;
+    private int hash(K key) {
+        return hashStrategy.hash(key);
     }
 
     /**
      * cal index for this mask
      *
-     * @param key
+     * @param hash
      * @param mask
      * @return
      */
-    private int index(K key, int mask) {
-        return hash(key) & mask;
+    private int index(int hash, int mask) {
+        return hash & mask;
     }
 
     /**
@@ -68,7 +136,7 @@ public class HashMap<K, V> implements Map<K, V> {
      * @return
      */
     public int capacity() {
-        return this.rehash == -1 ? ht.capacity : expand.capacity;
+        return this.isRehashing() ? expand.capacity : ht.capacity;
     }
 
     /**
@@ -78,88 +146,245 @@ public class HashMap<K, V> implements Map<K, V> {
      */
     @Override
     public int size() {
-        return this.rehash == -1 ? ht.size : ht.size + expand.size;
-    }
-
-    private boolean put0(K key, V value, HashTable<K, V> hashTable) {
-        int index = index(key, hashTable.mask);
-        NodeEntry<K, V> head = hashTable.table[index];
-        V goal = this.get(key);
-        if (goal != null) {
-            while (head.next != null) {
-                head = head.next;
-                if (head.key.equals(key)) {
-                    head.value = value;
-                    return true;
-                }
+        return this.isRehashing() ? ht.size + expand.size : ht.size;
+    }
+
+    public boolean isRehashing() {
+        return this.rehashIdx != -1;
+    }
+
+    /**
+     * ht 中下一个待迁移的桶，不在rehash时为 -1
+     *
+     * @return
+     */
+    int rehashIndex() {
+        return this.rehashIdx;
+    }
+
+    /**
+     * ht 的容量，rehash期间为迁移前的容量
+     *
+     * @return
+     */
+    int tableCapacity() {
+        return ht.capacity;
+    }
+
+    /**
+     * expand 的容量，不在rehash时为 0
+     *
+     * @return
+     */
+    int expandCapacity() {
+        return this.isRehashing() ? expand.capacity : 0;
+    }
+
+    /**
+     * 每次操作迁移的桶数
+     *
+     * @return
+     */
+    public int getRehashSteps() {
+        return rehashSteps;
+    }
+
+    /**
+     * 设置每次操作迁移的桶数，值越大rehash结束得越快，单次操作的延迟也越高
+     *
+     * @param rehashSteps
+     */
+    public void setRehashSteps(int rehashSteps) {
+        if (rehashSteps < 1) {
+            throw new IllegalArgumentException("Rehash steps must be positive");
+        }
+        this.rehashSteps = rehashSteps;
+    }
+
+    /**
+     * 在 table 中查找 key 所在的节点
+     *
+     * @param hashTable
+     * @param key
+     * @param hash
+     * @return
+     */
+    private NodeEntry<K, V> find0(HashTable<K, V> hashTable, K key, int hash) {
+        NodeEntry<K, V> node = hashTable.table[index(hash, hashTable.mask)];
+        while (node != null) {
+            if (node.hash == hash && hashStrategy.equals(node.key, key)) {
+                return node;
             }
+            node = node.next;
         }
-        NodeEntry<K, V> node = new NodeEntry<>(key, value);
-        while (head.next != null) {
-            head = head.next;
+        return null;
+    }
+
+    /**
+     * 依次在 ht 和 expand 中查找
+     *
+     * @param key
+     * @param hash
+     * @return
+     */
+    private NodeEntry<K, V> find(K key, int hash) {
+        NodeEntry<K, V> node = find0(ht, key, hash);
+        if (node == null && this.isRehashing()) {
+            node = find0(expand, key, hash);
         }
-        head.next = node;
-        node.next = null;
-        hashTable.size++;
-        return true;
+        return node;
     }
 
+    /**
+     * 查找未过期的节点，过期的节点惰性删除
+     *
+     * @param key
+     * @param hash
+     * @return
+     */
+    private NodeEntry<K, V> findLive(K key, int hash) {
+        NodeEntry<K, V> node = find(key, hash);
+        if (node != null && node.timer != null && this.isExpired(node, currentTimeMillis())) {
+            this.expireNode(node);
+            return null;
+        }
+        return node;
+    }
+
+    /**
+     * 删除过期的节点。存在未结束的迭代器时不计入 modCount：删除不改变桶数组，
+     * 被删节点的 next 仍指向链表中的后续节点，迭代器可以继续遍历
+     *
+     * @param node
+     */
+    private void expireNode(NodeEntry<K, V> node) {
+        boolean paused = this.isPaused();
+        this.removeNode(node);
+        if (paused) {
+            modCount = pausedModCount;
+        }
+    }
+
+    private boolean isPaused() {
+        return pausedIterators > 0 && pausedModCount == modCount;
+    }
+
+    private void pause() {
+        if (pausedModCount != modCount) {
+            pausedModCount = modCount;
+            pausedIterators = 0;
+        }
+        pausedIterators++;
+    }
+
+    private void resume(int expectedModCount) {
+        if (pausedModCount == expectedModCount && pausedIterators > 0 && --pausedIterators == 0) {
+            pausedModCount = -1;
+        }
+    }
+
+    /**
+     * 节点在 now 时是否已经过期
+     *
+     * @param node
+     * @param now
+     * @return
+     */
+    boolean isExpired(NodeEntry<K, V> node, long now) {
+        return node.timer != null && node.timer.deadline <= now;
+    }
+
+    /**
+     * 插入或替换，与redis的 SET 相同，替换时会清除原有的过期时间
+     *
+     * @param key
+     * @param value
+     * @return
+     */
     @Override
     public boolean put(K key, V value) {
-        putRehash();
-        if (this.rehash != -1) {
-            this.rehash();
-            return this.put0(key, value, expand);
+        if (this.isRehashing()) {
+            this.rehashStep();
         } else {
-            return this.put0(key, value, ht);
+            this.expandIfNeeded();
+        }
+        this.expireStep();
+        int hash = hash(key);
+        NodeEntry<K, V> node = findLive(key, hash);
+        if (node != null) {
+            this.cancelExpire(node);
+            node.value = value;
+            this.afterNodeAccess(node);
+            this.afterNodeUpdate(node);
+            return true;
         }
+        // rehash期间新节点只插入expand，保证ht只减不增
+        HashTable<K, V> hashTable = this.isRehashing() ? expand : ht;
+        int index = index(hash, hashTable.mask);
+        node = this.newNode(hash, key, value, hashTable.table[index]);
+        hashTable.table[index] = node;
+        hashTable.size++;
+        modCount++;
+        this.afterNodeInsertion(node);
+        return true;
+    }
+
+    /**
+     * 插入或替换，ttl 毫秒后过期
+     *
+     * @param key
+     * @param value
+     * @param ttl
+     * @return
+     */
+    public boolean put(K key, V value, long ttl) {
+        this.put(key, value);
+        this.expire(key, ttl);
+        return true;
     }
 
     @Override
     public boolean contains(K key) {
-        return false;
+        this.rehashStep();
+        return findLive(key, hash(key)) != null;
     }
 
-//    private V get0(K key, V value, HashTable<K, V> hashTable){
-//        int index = index(key, expand.mask);
-//        NodeEntry<K, V> head = expand.table[index];
-//        while (head.next != null){
-//            head = head.next;
-//            if (head.key.equals(key)) {
-//                return head.value;
-//            }
-//        }
-//        return
-//    }
-
     @Override
     public V get(K key) {
-        if (this.rehash != -1 && expand != null) {
-            this.rehash();
-            int index = index(key, expand.mask);
-            NodeEntry<K, V> head = expand.table[index];
-            while (head.next != null) {
-                head = head.next;
-                if (head.key.equals(key)) {
-                    return head.value;
-                }
-            }
-        }
-        int index = index(key);
-        NodeEntry<K, V> head = ht.table[index];
-        while (head.next != null) {
-            head = head.next;
-            if (head.key.equals(key)) {
-                return head.value;
-            }
+        NodeEntry<K, V> node = getNode(key);
+        if (node == null) {
+            return null;
         }
-        return null;
+        this.afterNodeAccess(node);
+        return node.value;
+    }
+
+    /**
+     * 查找 key 所在的节点，不触发 afterNodeAccess，子类可以在访问前做额外的检查
+     *
+     * @param key
+     * @return
+     */
+    NodeEntry<K, V> getNode(K key) {
+        this.rehashStep();
+        return findLive(key, hash(key));
     }
 
+    /**
+     * 只修改已经存在的 key，保留原有的过期时间
+     *
+     * @param key
+     * @param value
+     */
     @Override
     public void set(K key, V value) {
-        // todo
-
+        this.rehashStep();
+        NodeEntry<K, V> node = findLive(key, hash(key));
+        if (node != null) {
+            node.value = value;
+            this.afterNodeAccess(node);
+            this.afterNodeUpdate(node);
+        }
     }
 
     @Override
@@ -168,46 +393,216 @@ public class HashMap<K, V> implements Map<K, V> {
     }
 
     /**
-     * 判断是否需要rehash
+     * 设置 key 在 ttl 毫秒后过期，ttl 不大于0时立即删除，对应redis的 PEXPIRE
      *
-     * @return
+     * @param key
+     * @param ttl
+     * @return key 是否存在
+     */
+    public boolean expire(K key, long ttl) {
+        long now = currentTimeMillis();
+        return this.expireAt(key, ttl >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + ttl);
+    }
+
+    /**
+     * 设置 key 在 timestamp 时刻过期，对应redis的 PEXPIREAT
+     *
+     * @param key
+     * @param timestamp 毫秒时间戳
+     * @return key 是否存在
      */
-    private int shouldRehash0() {
-        if (ht.size > 2 * ht.capacity) {
-            return 1;
-        } else if (ht.size < ht.capacity / 10) {
+    public boolean expireAt(K key, long timestamp) {
+        this.rehashStep();
+        NodeEntry<K, V> node = findLive(key, hash(key));
+        if (node == null) {
+            return false;
+        }
+        long now = currentTimeMillis();
+        if (timestamp <= now) {
+            this.removeNode(node);
+            return true;
+        }
+        if (expires == null) {
+            expires = new TimingWheel<>(now);
+        }
+        if (node.timer == null) {
+            node.timer = new TimingWheel.Timer<>(node);
+        }
+        expires.schedule(node.timer, timestamp);
+        return true;
+    }
+
+    /**
+     * key 的剩余存活时间，对应redis的 PTTL
+     *
+     * @param key
+     * @return 剩余的毫秒数，key 不存在时返回-2，没有过期时间时返回-1
+     */
+    public long ttl(K key) {
+        this.rehashStep();
+        NodeEntry<K, V> node = findLive(key, hash(key));
+        if (node == null) {
+            return -2;
+        }
+        if (node.timer == null) {
             return -1;
-        } else {
-            return 0;
         }
+        return Math.max(node.timer.deadline - currentTimeMillis(), 0);
     }
 
     /**
-     * 进行rehash
+     * 清除 key 的过期时间，对应redis的 PERSIST
+     *
+     * @param key
+     * @return 是否清除了过期时间
      */
-    private void putRehash() {
-        if (this.rehash == -1) {
-            if (this.shouldRehash0() > 0) {
-                this.rehash(ht.capacity * 2);
+    public boolean persist(K key) {
+        this.rehashStep();
+        NodeEntry<K, V> node = findLive(key, hash(key));
+        if (node == null || node.timer == null) {
+            return false;
+        }
+        this.cancelExpire(node);
+        return true;
+    }
+
+    /**
+     * 设置了过期时间且尚未删除的 key 数，包含已经过期但还没有被删除的 key
+     *
+     * @return
+     */
+    public int expiresSize() {
+        return expires == null ? 0 : expires.size();
+    }
+
+    /**
+     * 参考redis activeExpireCycle，在 timeLimit 毫秒内批量删除过期的 key，
+     * 每删除 EXPIRE_TIME_CHECK_INTERVAL 个 key 检查一次耗时，超时后停止，剩下的留到下次调用。
+     * redis 通过随机取样寻找过期的 key，这里由时间轮直接按到期顺序给出，不会取到未过期的 key
+     *
+     * @param timeLimit 毫秒
+     * @return 删除的 key 数
+     */
+    public int activeExpireCycle(long timeLimit) {
+        if (expires == null || expires.isEmpty()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        long limit = timeLimit * 1000000L;
+        long now = currentTimeMillis();
+        int expired = 0;
+        TimingWheel.Timer<NodeEntry<K, V>> timer;
+        while ((timer = expires.poll(now)) != null) {
+            this.expireNode(timer.item);
+            expired++;
+            if (expired % EXPIRE_TIME_CHECK_INTERVAL == 0 && System.nanoTime() - start > limit) {
+                break;
             }
         }
+        return expired;
     }
 
-    private void popRehash() {
-        if (this.rehash == -1) {
-            if (this.shouldRehash0() < 0 && this.size() > Constant.DEFAULT_CAPACITY) {
-                int capacity = ht.capacity;
-                while (true) {
-                    capacity = capacity / 2;
-                    if (capacity <= this.size()) {
-                        break;
-                    }
+    /**
+     * 写操作中顺带删除最多 EXPIRE_KEYS_PER_STEP 个过期的 key
+     */
+    private void expireStep() {
+        if (expires == null || expires.isEmpty()) {
+            return;
+        }
+        long now = currentTimeMillis();
+        TimingWheel.Timer<NodeEntry<K, V>> timer;
+        for (int i = 0; i < EXPIRE_KEYS_PER_STEP && (timer = expires.poll(now)) != null; i++) {
+            this.expireNode(timer.item);
+        }
+    }
+
+    private void cancelExpire(NodeEntry<K, V> node) {
+        if (node.timer != null) {
+            expires.cancel(node.timer);
+            node.timer = null;
+        }
+    }
+
+    /**
+     * 时间来源，单位毫秒
+     *
+     * @return
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * 负载因子过高时开始扩容
+     */
+    private void expandIfNeeded() {
+        if (ht.size > EXPAND_RATIO * ht.capacity && ht.capacity < (1 << 30)) {
+            this.startRehash(ht.capacity * 2);
+        }
+    }
+
+    /**
+     * 填充率过低时开始缩容，容量缩小为不小于size的最小2的幂
+     */
+    private void shrinkIfNeeded() {
+        if (ht.capacity > Constant.DEFAULT_CAPACITY && ht.size < ht.capacity / SHRINK_RATIO) {
+            this.startRehash(tableSizeFor(ht.size));
+        }
+    }
+
+    /**
+     * 操作中顺带推进的rehash，存在未结束的迭代器时暂停
+     */
+    private void rehashStep() {
+        if (this.isRehashing() && !this.isPaused()) {
+            this.rehash(rehashSteps);
+        }
+    }
+
+    private void startRehash(int capacity) {
+        this.expand = new HashTable<>(capacity);
+        this.rehashIdx = 0;
+    }
+
+    /**
+     * 迁移最多 n 个非空桶，最多访问 n * EMPTY_VISITS_PER_STEP 个空桶，
+     * 以此保证单次调用的工作量有上界
+     *
+     * @param n
+     * @return 是否还有桶需要迁移
+     */
+    public boolean rehash(int n) {
+        if (!this.isRehashing()) {
+            return false;
+        }
+        int emptyVisits = n * EMPTY_VISITS_PER_STEP;
+        while (n-- > 0 && ht.size > 0) {
+            while (ht.table[rehashIdx] == null) {
+                rehashIdx++;
+                if (--emptyVisits == 0) {
+                    return true;
                 }
-                capacity *= 2;
-                capacity = capacity < Constant.DEFAULT_CAPACITY ? Constant.DEFAULT_CAPACITY : capacity;
-                this.rehash(capacity);
             }
+            NodeEntry<K, V> node = ht.table[rehashIdx];
+            while (node != null) {
+                NodeEntry<K, V> next = node.next;
+                int index = index(node.hash, expand.mask);
+                node.next = expand.table[index];
+                expand.table[index] = node;
+                ht.size--;
+                expand.size++;
+                node = next;
+            }
+            ht.table[rehashIdx] = null;
+            rehashIdx++;
+        }
+        if (ht.size == 0) {
+            ht = expand;
+            expand = null;
+            rehashIdx = -1;
+            return false;
         }
+        return true;
     }
 
     /**
@@ -216,58 +611,162 @@ public class HashMap<K, V> implements Map<K, V> {
      * @return
      */
     public List<K> listKeys() {
-        List<K> keysList = new LinkedList<>();
-        if (this.rehash != -1) {
-            for (int i = 0; i < expand.capacity; i++) {
-                NodeEntry<K, V> nodeEntry = expand.table[i].next;
-                while (nodeEntry != null) {
-                    keysList.add(nodeEntry.key);
-                    nodeEntry = nodeEntry.next;
+        List<K> keysList = new ArrayList<>(this.size());
+        this.forEach((key, value) -> keysList.add(key));
+        return keysList;
+    }
+
+    /**
+     * list all values disorder
+     *
+     * @return
+     */
+    public List<V> listValues() {
+        List<V> valuesList = new ArrayList<>(this.size());
+        this.forEach((key, value) -> valuesList.add(value));
+        return valuesList;
+    }
+
+    /**
+     * 直接遍历内部的表，不复制数据，consumer 中不能修改 map
+     *
+     * @param consumer
+     */
+    public void forEach(BiConsumer<? super K, ? super V> consumer) {
+        int expectedModCount = modCount;
+        HashTable<K, V> second = expand;
+        long now = this.expiresSize() == 0 ? 0 : currentTimeMillis();
+        forEach0(ht, this.isRehashing() ? rehashIdx : 0, now, consumer);
+        if (second != null) {
+            forEach0(second, 0, now, consumer);
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    private void forEach0(HashTable<K, V> hashTable, int from, long now, BiConsumer<? super K, ? super V> consumer) {
+        for (int i = from; i < hashTable.capacity; i++) {
+            for (NodeEntry<K, V> node = hashTable.table[i]; node != null; node = node.next) {
+                if (!this.isExpired(node, now)) {
+                    consumer.accept(node.key, node.value);
                 }
             }
         }
-        for (int i = 0; i < ht.capacity; i++) {
-            NodeEntry<K, V> nodeEntry = ht.table[i].next;
-            while (nodeEntry != null) {
-                keysList.add(nodeEntry.key);
-                nodeEntry = nodeEntry.next;
+    }
+
+    /**
+     * 参考redis dictScan 实现的游标遍历，每次调用只访问一个桶(rehash期间为小表的一个桶
+     * 以及大表中与之对应的几个桶)。游标按反向二进制位递增，表大小变化不影响已遍历的部分，
+     * 因此从游标0开始直到返回0为止，整个过程中一直存在的元素至少会被返回一次，
+     * 期间发生过缩容时元素可能被重复返回。两次调用之间可以任意修改 map，
+     * 但 consumer 中不能修改 map。已经过期的 key 不会被返回
+     *
+     * @param cursor   上一次调用返回的游标，第一次调用传入0
+     * @param consumer
+     * @return 下一次调用使用的游标，返回0表示遍历结束
+     */
+    public int scan(int cursor, BiConsumer<? super K, ? super V> consumer) {
+        int v = cursor;
+        long now = this.expiresSize() == 0 ? 0 : currentTimeMillis();
+        if (!this.isRehashing()) {
+            int m0 = ht.mask;
+            scanBucket(ht, v & m0, now, consumer);
+            return nextCursor(v, m0);
+        }
+        HashTable<K, V> t0 = ht;
+        HashTable<K, V> t1 = expand;
+        if (t0.capacity > t1.capacity) {
+            t0 = expand;
+            t1 = ht;
+        }
+        int m0 = t0.mask;
+        int m1 = t1.mask;
+        scanBucket(t0, v & m0, now, consumer);
+        // 遍历大表中所有低位与 v & m0 相同的桶
+        do {
+            scanBucket(t1, v & m1, now, consumer);
+            v = nextCursor(v, m1);
+        } while ((v & (m0 ^ m1)) != 0);
+        return v;
+    }
+
+    /**
+     * 最多推进 count 次游标
+     *
+     * @param cursor
+     * @param count
+     * @param consumer
+     * @return
+     */
+    public int scan(int cursor, int count, BiConsumer<? super K, ? super V> consumer) {
+        do {
+            cursor = this.scan(cursor, consumer);
+        } while (--count > 0 && cursor != 0);
+        return cursor;
+    }
+
+    private void scanBucket(HashTable<K, V> hashTable, int index, long now, BiConsumer<? super K, ? super V> consumer) {
+        for (NodeEntry<K, V> node = hashTable.table[index]; node != null; node = node.next) {
+            if (!this.isExpired(node, now)) {
+                consumer.accept(node.key, node.value);
             }
         }
-        return keysList;
+    }
 
+    /**
+     * 对游标中 mask 覆盖的位做反向加一
+     *
+     * @param v
+     * @param mask
+     * @return
+     */
+    private static int nextCursor(int v, int mask) {
+        v |= ~mask;
+        v = Integer.reverse(v);
+        v++;
+        return Integer.reverse(v);
     }
 
     /**
-     * list all values disorder
+     * 弹出 hashTable 中从 from 开始的第一个元素，并且将其删除
      *
+     * @param hashTable
+     * @param from
      * @return
      */
-    public List<V> listValues() {
-        List<V> valuesList = new LinkedList<>();
-        List<K> keysList = this.listKeys();
-        for (K key : keysList) {
-            valuesList.add(this.get(key));
+    private NodeEntry<K, V> pop0(HashTable<K, V> hashTable, int from) {
+        for (int i = from; i < hashTable.capacity; i++) {
+            NodeEntry<K, V> nodeEntry = hashTable.table[i];
+            if (nodeEntry != null) {
+                hashTable.table[i] = nodeEntry.next;
+                hashTable.size--;
+                modCount++;
+                this.cancelExpire(nodeEntry);
+                this.afterNodeRemoval(nodeEntry);
+                return nodeEntry;
+            }
         }
-        return valuesList;
+        return null;
     }
 
     /**
      * 弹出dict中的一个元素，并且将其删除
+     * rehash期间 ht 中 rehashIdx 之前的桶均为空，从 rehashIdx 开始查找
      *
      * @return
      */
     private NodeEntry<K, V> pop() {
-        if (this.ht.size < 1) {
+        if (this.size() < 1) {
             throw new RuntimeException("Dict is already empty!");
         }
+        this.rehashStep();
         NodeEntry<K, V> nodeEntry = null;
-        for (int i = 0; i < ht.capacity; i++) {
-            if (ht.table[i].next != null) {
-                nodeEntry = ht.table[i].next;
-                ht.table[i].next = ht.table[i].next.next;
-                ht.size--;
-                break;
-            }
+        if (ht.size > 0) {
+            nodeEntry = pop0(ht, this.isRehashing() ? rehashIdx : 0);
+        }
+        if (nodeEntry == null && this.isRehashing()) {
+            nodeEntry = pop0(expand, 0);
         }
         return nodeEntry;
     }
@@ -276,58 +775,258 @@ public class HashMap<K, V> implements Map<K, V> {
         return this.pop().value;
     }
 
-    private boolean rehash(int capacity) {
-        if (this.rehash == -1) {
-            this.expand = new HashTable(capacity);
+    /**
+     * 从 hashTable 中删除 key 对应的节点
+     *
+     * @param hashTable
+     * @param key
+     * @param hash
+     * @return
+     */
+    private NodeEntry<K, V> remove0(HashTable<K, V> hashTable, K key, int hash) {
+        int index = index(hash, hashTable.mask);
+        NodeEntry<K, V> prev = null;
+        NodeEntry<K, V> node = hashTable.table[index];
+        while (node != null) {
+            if (node.hash == hash && hashStrategy.equals(node.key, key)) {
+                if (prev == null) {
+                    hashTable.table[index] = node.next;
+                } else {
+                    prev.next = node.next;
+                }
+                hashTable.size--;
+                modCount++;
+                this.cancelExpire(node);
+                this.afterNodeRemoval(node);
+                return node;
+            }
+            prev = node;
+            node = node.next;
         }
-        return this.rehash();
+        return null;
     }
 
-    private boolean rehash() {
-        if (ht.size > 0) {
-            NodeEntry<K, V> nodeEntry = this.pop();
-            this.put0(nodeEntry.key, nodeEntry.value, expand);
+    /**
+     * 删除 key，已经过期的 key 同样被删除，但返回 null
+     *
+     * @param key
+     * @return
+     */
+    @Override
+    public V remove(K key) {
+        this.rehashStep();
+        this.expireStep();
+        int hash = hash(key);
+        boolean expired = false;
+        if (this.expiresSize() > 0) {
+            NodeEntry<K, V> node = find(key, hash);
+            expired = node != null && this.isExpired(node, currentTimeMillis());
         }
-        this.rehash++;
-        if (ht.size < 1) {
-            ht = expand;
-            expand = null;
-            this.rehash = -1;
+        NodeEntry<K, V> node = remove0(ht, key, hash);
+        if (node == null && this.isRehashing()) {
+            node = remove0(expand, key, hash);
         }
-        return true;
+        if (!this.isRehashing()) {
+            this.shrinkIfNeeded();
+        }
+        return node == null || expired ? null : node.value;
+    }
+
+    /**
+     * 删除指定节点，不触发rehash和缩容
+     *
+     * @param node
+     */
+    void removeNode(NodeEntry<K, V> node) {
+        if (remove0(ht, node.key, node.hash) == null && this.isRehashing()) {
+            remove0(expand, node.key, node.hash);
+        }
+    }
+
+    /**
+     * 参考redis dictGetSomeKeys，从随机的桶开始连续取样，最多访问 10 倍于样本数的桶，
+     * 连续遇到较多空桶时重新随机起点。返回的样本可能少于 samples.length
+     *
+     * @param samples
+     * @param random
+     * @return 取到的样本数
+     */
+    int sampleNodes(NodeEntry<K, V>[] samples, Random random) {
+        int count = Math.min(samples.length, this.size());
+        if (count == 0) {
+            return 0;
+        }
+        int maxMask = this.isRehashing() ? Math.max(ht.mask, expand.mask) : ht.mask;
+        int maxSteps = count * 10;
+        int stored = 0;
+        int emptyLen = 0;
+        int i = random.nextInt() & maxMask;
+        while (stored < count && maxSteps-- > 0) {
+            for (int j = 0; j < (this.isRehashing() ? 2 : 1); j++) {
+                HashTable<K, V> hashTable = j == 0 ? ht : expand;
+                // ht 中 rehashIdx 之前的桶已经迁移完，为空
+                if (j == 0 && this.isRehashing() && i < rehashIdx) {
+                    continue;
+                }
+                if (i >= hashTable.capacity) {
+                    continue;
+                }
+                NodeEntry<K, V> node = hashTable.table[i];
+                if (node == null) {
+                    emptyLen++;
+                    if (emptyLen >= 5 && emptyLen > count) {
+                        i = random.nextInt() & maxMask;
+                        emptyLen = 0;
+                    }
+                    continue;
+                }
+                emptyLen = 0;
+                while (node != null && stored < count) {
+                    samples[stored++] = node;
+                    node = node.next;
+                }
+                if (stored == count) {
+                    return stored;
+                }
+            }
+            i = (i + 1) & maxMask;
+        }
+        return stored;
+    }
+
+    /**
+     * 创建节点，子类可以返回携带额外信息的节点
+     */
+    NodeEntry<K, V> newNode(int hash, K key, V value, NodeEntry<K, V> next) {
+        return new NodeEntry<>(hash, key, value, next);
+    }
+
+    /**
+     * 插入新节点之后调用
+     */
+    void afterNodeInsertion(NodeEntry<K, V> node) {
+    }
+
+    /**
+     * get/put/set 命中已有节点之后调用
+     */
+    void afterNodeAccess(NodeEntry<K, V> node) {
+    }
+
+    /**
+     * put/set 替换已有节点的 value 之后调用
+     */
+    void afterNodeUpdate(NodeEntry<K, V> node) {
+    }
+
+    /**
+     * 节点从表中删除之后调用
+     */
+    void afterNodeRemoval(NodeEntry<K, V> node) {
     }
 
+    /**
+     * 按桶遍历所有 key，迭代器未结束时读操作不推进rehash，遍历结束后恢复，
+     * 除通过迭代器自身删除外，插入和删除都会使迭代器失效
+     *
+     * @return
+     */
     @Override
-    public V remove(K key) {
-        popRehash();
-        if (this.rehash != -1) {
-            this.rehash();
-            int index = index(key, expand.mask);
-            NodeEntry<K, V> head = expand.table[index];
-            NodeEntry<K, V> result = null;
-            while (head != null) {
-                if (head.next.key.equals(key)) {
-                    result = head.next;
-                    head.next = head.next.next;
-                    expand.size--;
-                    return result.value;
+    public Iterator<K> iterator() {
+        return new Itr();
+    }
+
+    private class Itr implements Iterator<K> {
+        private HashTable<K, V> table;
+        private final HashTable<K, V> second;
+        private int bucket;
+        private NodeEntry<K, V> next;
+        private NodeEntry<K, V> lastReturned;
+        private int expectedModCount;
+        private final int expectedRehashIdx;
+        private final long now = expiresSize() == 0 ? 0 : currentTimeMillis();
+        /**
+         * 是否仍持有暂停rehash的计数
+         */
+        private boolean paused;
+
+        Itr() {
+            this.expectedModCount = modCount;
+            this.expectedRehashIdx = rehashIdx;
+            pause();
+            this.paused = true;
+            this.table = ht;
+            this.second = isRehashing() ? expand : null;
+            this.bucket = isRehashing() ? rehashIdx : 0;
+            this.advance();
+        }
+
+        /**
+         * 移动到下一个未过期的节点
+         */
+        private void advance() {
+            while (next == null || isExpired(next, now)) {
+                if (next != null) {
+                    next = next.next;
+                } else if (bucket < table.capacity) {
+                    next = table.table[bucket++];
+                } else if (second != null && table != second) {
+                    table = second;
+                    bucket = 0;
+                } else {
+                    return;
                 }
-                head = head.next;
             }
         }
-        int index = index(key);
-        NodeEntry<K, V> head = ht.table[index];
-        NodeEntry<K, V> result = null;
-        while (head != null) {
-            if (head.next.key.equals(key)) {
-                result = head.next;
-                head.next = head.next.next;
-                ht.size--;
-                return result.value;
+
+        /**
+         * 遍历结束时释放暂停，之后的读操作恢复推进rehash
+         */
+        @Override
+        public boolean hasNext() {
+            if (next == null && paused) {
+                resume(expectedModCount);
+                paused = false;
+            }
+            return next != null;
+        }
+
+        /**
+         * 迭代期间被显式调用 rehash 时同样视为并发修改
+         */
+        private void checkForComodification() {
+            if (modCount != expectedModCount || rehashIdx != expectedRehashIdx) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        @Override
+        public K next() {
+            this.checkForComodification();
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            next = next.next;
+            this.advance();
+            return lastReturned.key;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            this.checkForComodification();
+            removeNode(lastReturned);
+            lastReturned = null;
+            expectedModCount = modCount;
+            if (paused) {
+                // 其他迭代器已经失效，只剩当前迭代器持有暂停
+                pausedModCount = modCount;
+                pausedIterators = 1;
             }
-            head = head.next;
         }
-        return null;
     }
 
     /**
@@ -335,51 +1034,38 @@ public class HashMap<K, V> implements Map<K, V> {
      * @param <K>
      * @param <V>
      */
-    private class HashTable<K, V> {
-        NodeEntry[] table;
+    private static class HashTable<K, V> {
+        NodeEntry<K, V>[] table;
         int capacity;
         int size;
         int mask;
 
-        HashTable() {
-            this(Constant.DEFAULT_CAPACITY);
-        }
-
+        @SuppressWarnings("unchecked")
         HashTable(int capacity) {
             this.capacity = capacity;
             this.size = 0;
             this.mask = capacity - 1;
-            table = new NodeEntry[capacity];
-            for (int i = 0; i < capacity; i++) {
-                NodeEntry<K, V> empty = new NodeEntry<K, V>();
-                empty.next = null;
-                empty.key = null;
-                empty.key = null;
-                table[i] = empty;
-            }
+            this.table = (NodeEntry<K, V>[]) new NodeEntry[capacity];
         }
     }
 
     /**
-     *  字典的内部节点实现
+     *  字典的内部节点实现，缓存 hash 避免迁移时重复计算
      * @param <K>
      * @param <V>
      */
-    private class NodeEntry<K, V> {
+    static class NodeEntry<K, V> {
         NodeEntry<K, V> next;
-        K key;
+        final int hash;
+        final K key;
         V value;
+        /**
+         * 没有设置过期时间时为 null
+         */
+        TimingWheel.Timer<NodeEntry<K, V>> timer;
 
-        NodeEntry() {
-
-        }
-
-        NodeEntry(K key, V value) {
-            this.key = key;
-            this.value = value;
-        }
-
-        NodeEntry(K key, V value, NodeEntry<K, V> next) {
+        NodeEntry(int hash, K key, V value, NodeEntry<K, V> next) {
+            this.hash = hash;
             this.key = key;
             this.value = value;
             this.next = next;
@@ -0,0 +1,114 @@
+package cn.abelib.datastructure.map;
+
+import cn.abelib.util.commons.MurmurHash2;
+
+import java.util.Arrays;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ * HashMap 使用的 key hash 策略，同时定义 key 的相等性，
+ * 以便 byte[] 这类没有按内容实现 equals 的 key 也可以使用
+ */
+public interface HashStrategy<K> {
+
+    /**
+     * 计算 key 的 hash
+     *
+     * @param key
+     * @return
+     */
+    int hash(K key);
+
+    /**
+     * 判断两个 key 是否相等
+     *
+     * @param a
+     * @param b
+     * @return
+     */
+    default boolean equals(K a, K b) {
+        return a.equals(b);
+    }
+
+    /**
+     * 按 char 直接计算 murmur2 hash
+     */
+    HashStrategy<CharSequence> CHAR_SEQUENCE = key -> fold(MurmurHash2.hash(key));
+
+    /**
+     * 按内容计算 hash 并比较 byte[]
+     */
+    HashStrategy<byte[]> BYTE_ARRAY = new HashStrategy<byte[]>() {
+        @Override
+        public int hash(byte[] key) {
+            return fold(MurmurHash2.hash(key, 0, key.length));
+        }
+
+        @Override
+        public boolean equals(byte[] a, byte[] b) {
+            return Arrays.equals(a, b);
+        }
+    };
+
+    HashStrategy<Integer> INT = key -> fold(MurmurHash2.hash(key.intValue()));
+
+    HashStrategy<Long> LONG = key -> fold(MurmurHash2.hash(key.longValue()));
+
+    /**
+     * 使用 hashCode() 并混淆，避免低质量的 hashCode 在 mask 后大量冲突
+     */
+    HashStrategy<Object> HASH_CODE = key -> mix(key.hashCode());
+
+    /**
+     * 默认策略，按 key 的运行时类型选择上述内置策略
+     */
+    HashStrategy<Object> DEFAULT = new HashStrategy<Object>() {
+        @Override
+        public int hash(Object key) {
+            if (key instanceof CharSequence) {
+                return CHAR_SEQUENCE.hash((CharSequence) key);
+            } else if (key instanceof Integer) {
+                return INT.hash((Integer) key);
+            } else if (key instanceof Long) {
+                return LONG.hash((Long) key);
+            } else if (key instanceof byte[]) {
+                return BYTE_ARRAY.hash((byte[]) key);
+            }
+            return HASH_CODE.hash(key);
+        }
+
+        @Override
+        public boolean equals(Object a, Object b) {
+            if (a instanceof byte[] && b instanceof byte[]) {
+                return Arrays.equals((byte[]) a, (byte[]) b);
+            }
+            return a.equals(b);
+        }
+    };
+
+    /**
+     * 将64位 hash 折叠为32位
+     *
+     * @param h
+     * @return
+     */
+    static int fold(long h) {
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * murmur3 的 fmix32
+     *
+     * @param h
+     * @return
+     */
+    static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
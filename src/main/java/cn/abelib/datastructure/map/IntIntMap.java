@@ -0,0 +1,249 @@
+package cn.abelib.datastructure.map;
+
+import java.util.Arrays;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ * key 和 value 都是 int 的开放寻址哈希表，key/value 分别保存在两个并行数组中，
+ * 采用线性探测，删除时向前移动后续元素(backward shift)而不是留下墓碑。
+ * 0 作为空槽标记，key 为 0 的映射单独保存
+ */
+public class IntIntMap {
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int maxFill;
+    private final float loadFactor;
+
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public IntIntMap() {
+        this(OpenAddressing.DEFAULT_EXPECTED);
+    }
+
+    public IntIntMap(int expected) {
+        this(expected, OpenAddressing.DEFAULT_LOAD_FACTOR);
+    }
+
+    public IntIntMap(int expected, float loadFactor) {
+        OpenAddressing.checkLoadFactor(loadFactor);
+        this.loadFactor = loadFactor;
+        allocate(OpenAddressing.arraySize(expected, loadFactor));
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        this.maxFill = OpenAddressing.maxFill(capacity, loadFactor);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * key 所在的槽，不存在时返回 -1
+     *
+     * @param key
+     * @return
+     */
+    private int find(int key) {
+        int pos = OpenAddressing.mix(key) & mask;
+        int curr;
+        while ((curr = keys[pos]) != 0) {
+            if (curr == key) {
+                return pos;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 插入或替换
+     *
+     * @param key
+     * @param value
+     * @return 是否新增了映射
+     */
+    public boolean put(int key, int value) {
+        if (key == 0) {
+            boolean added = !hasZeroKey;
+            if (added) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return added;
+        }
+        int pos = OpenAddressing.mix(key) & mask;
+        int curr;
+        while ((curr = keys[pos]) != 0) {
+            if (curr == key) {
+                values[pos] = value;
+                return false;
+            }
+            pos = (pos + 1) & mask;
+        }
+        keys[pos] = key;
+        values[pos] = value;
+        if (++size > maxFill) {
+            rehash(OpenAddressing.nextCapacity(keys.length));
+        }
+        return true;
+    }
+
+    /**
+     * 将 key 对应的值加上 delta，不存在时视为 0
+     *
+     * @param key
+     * @param delta
+     * @return 新值
+     */
+    public int addTo(int key, int delta) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            return zeroValue += delta;
+        }
+        int pos = OpenAddressing.mix(key) & mask;
+        int curr;
+        while ((curr = keys[pos]) != 0) {
+            if (curr == key) {
+                return values[pos] += delta;
+            }
+            pos = (pos + 1) & mask;
+        }
+        keys[pos] = key;
+        values[pos] = delta;
+        if (++size > maxFill) {
+            rehash(OpenAddressing.nextCapacity(keys.length));
+        }
+        return delta;
+    }
+
+    public boolean contains(int key) {
+        return key == 0 ? hasZeroKey : find(key) >= 0;
+    }
+
+    /**
+     * @param key
+     * @return key 对应的值，不存在时返回 0
+     */
+    public int get(int key) {
+        return getOrDefault(key, 0);
+    }
+
+    public int getOrDefault(int key, int defaultValue) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int pos = find(key);
+        return pos < 0 ? defaultValue : values[pos];
+    }
+
+    /**
+     * 只修改已经存在的 key
+     *
+     * @param key
+     * @param value
+     */
+    public void set(int key, int value) {
+        if (key == 0) {
+            if (hasZeroKey) {
+                zeroValue = value;
+            }
+            return;
+        }
+        int pos = find(key);
+        if (pos >= 0) {
+            values[pos] = value;
+        }
+    }
+
+    /**
+     * @param key
+     * @return 被删除的值，不存在时返回 0
+     */
+    public int remove(int key) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                return 0;
+            }
+            hasZeroKey = false;
+            size--;
+            int value = zeroValue;
+            zeroValue = 0;
+            return value;
+        }
+        int pos = find(key);
+        if (pos < 0) {
+            return 0;
+        }
+        int value = values[pos];
+        size--;
+        shiftKeys(pos);
+        return value;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        hasZeroKey = false;
+        zeroValue = 0;
+        size = 0;
+    }
+
+    /**
+     * backward shift: 把 pos 之后同一探测链上的元素依次前移填补空位
+     *
+     * @param pos
+     */
+    private void shiftKeys(int pos) {
+        int last;
+        int curr;
+        while (true) {
+            last = pos;
+            pos = (pos + 1) & mask;
+            while (true) {
+                if ((curr = keys[pos]) == 0) {
+                    keys[last] = 0;
+                    return;
+                }
+                int slot = OpenAddressing.mix(curr) & mask;
+                if (OpenAddressing.canShift(last, slot, pos)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = curr;
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key != 0) {
+                int pos = OpenAddressing.mix(key) & mask;
+                while (keys[pos] != 0) {
+                    pos = (pos + 1) & mask;
+                }
+                keys[pos] = key;
+                values[pos] = oldValues[i];
+            }
+        }
+    }
+}
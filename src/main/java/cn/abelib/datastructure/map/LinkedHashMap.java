@@ -1,10 +1,200 @@
 package cn.abelib.datastructure.map;
 
 
+import cn.abelib.util.commons.Constant;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
 /**
  * @author abel
  * @date 2018/5/1
+ * 在 HashMap 的节点上增加一条双向链表，按插入顺序或访问顺序遍历，
+ * 访问顺序模式下链表头部就是最近最少使用的节点，可以 O(1) 实现 LRU；
+ * 与 java.util.LinkedHashMap 一致，访问顺序模式下命中的 get、set 会移动节点，属于结构修改，
+ * 同样会增加 modCount，使正在进行的迭代和 forEach 抛出 ConcurrentModificationException，
+ * 命中链表尾部的访问以及插入顺序模式下的访问不计入
  */
 public class LinkedHashMap<K, V> extends HashMap<K, V> {
+    private LinkedEntry<K, V> head;
+    private LinkedEntry<K, V> tail;
+    /**
+     * true 按访问顺序，false 按插入顺序
+     */
+    private final boolean accessOrder;
+
+    public LinkedHashMap() {
+        this(Constant.DEFAULT_CAPACITY);
+    }
+
+    public LinkedHashMap(int capacity) {
+        this(capacity, false);
+    }
+
+    public LinkedHashMap(int capacity, boolean accessOrder) {
+        this(capacity, accessOrder, HashStrategy.DEFAULT);
+    }
+
+    public LinkedHashMap(int capacity, boolean accessOrder, HashStrategy<? super K> hashStrategy) {
+        super(capacity, hashStrategy);
+        this.accessOrder = accessOrder;
+    }
+
+    public boolean isAccessOrder() {
+        return accessOrder;
+    }
+
+    /**
+     * 链表头部的 key，访问顺序模式下为最近最少使用的 key
+     *
+     * @return
+     */
+    public K eldestKey() {
+        return head == null ? null : head.key;
+    }
+
+    LinkedEntry<K, V> eldest() {
+        return head;
+    }
+
+    @Override
+    NodeEntry<K, V> newNode(int hash, K key, V value, NodeEntry<K, V> next) {
+        return new LinkedEntry<>(hash, key, value, next);
+    }
+
+    @Override
+    void afterNodeInsertion(NodeEntry<K, V> node) {
+        linkLast((LinkedEntry<K, V>) node);
+    }
+
+    @Override
+    void afterNodeAccess(NodeEntry<K, V> node) {
+        LinkedEntry<K, V> entry = (LinkedEntry<K, V>) node;
+        if (accessOrder && entry != tail) {
+            unlink(entry);
+            linkLast(entry);
+            modCount++;
+        }
+    }
+
+    @Override
+    void afterNodeRemoval(NodeEntry<K, V> node) {
+        unlink((LinkedEntry<K, V>) node);
+    }
+
+    private void linkLast(LinkedEntry<K, V> entry) {
+        entry.before = tail;
+        entry.after = null;
+        if (tail == null) {
+            head = entry;
+        } else {
+            tail.after = entry;
+        }
+        tail = entry;
+    }
+
+    private void unlink(LinkedEntry<K, V> entry) {
+        if (entry.before == null) {
+            head = entry.after;
+        } else {
+            entry.before.after = entry.after;
+        }
+        if (entry.after == null) {
+            tail = entry.before;
+        } else {
+            entry.after.before = entry.before;
+        }
+        entry.before = null;
+        entry.after = null;
+    }
+
+    /**
+     * 按链表顺序遍历，跳过已经过期的 key
+     *
+     * @param consumer
+     */
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> consumer) {
+        int expectedModCount = modCount;
+        long now = this.expiresSize() == 0 ? 0 : currentTimeMillis();
+        for (LinkedEntry<K, V> entry = head; entry != null; entry = entry.after) {
+            if (!this.isExpired(entry, now)) {
+                consumer.accept(entry.key, entry.value);
+            }
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * 按链表顺序遍历 key，访问顺序模式下 get 也会使迭代器失效
+     *
+     * @return
+     */
+    @Override
+    public Iterator<K> iterator() {
+        return new Itr();
+    }
+
+    private class Itr implements Iterator<K> {
+        private final long now = expiresSize() == 0 ? 0 : currentTimeMillis();
+        private LinkedEntry<K, V> next = skipExpired(head);
+        private LinkedEntry<K, V> lastReturned;
+        private int expectedModCount = modCount;
+
+        private LinkedEntry<K, V> skipExpired(LinkedEntry<K, V> entry) {
+            while (entry != null && isExpired(entry, now)) {
+                entry = entry.after;
+            }
+            return entry;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public K next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            next = skipExpired(next.after);
+            return lastReturned.key;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeNode(lastReturned);
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+    }
+
+    /**
+     * 带前后指针的节点
+     * @param <K>
+     * @param <V>
+     */
+    static class LinkedEntry<K, V> extends NodeEntry<K, V> {
+        LinkedEntry<K, V> before;
+        LinkedEntry<K, V> after;
 
+        LinkedEntry(int hash, K key, V value, NodeEntry<K, V> next) {
+            super(hash, key, value, next);
+        }
+    }
 }
@@ -0,0 +1,231 @@
+package cn.abelib.datastructure.map;
+
+import java.util.Arrays;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ * key 为 long 的开放寻址哈希表，key 保存在 long[] 中避免装箱，
+ * 采用线性探测和 backward shift 删除，0 作为空槽标记，key 为 0 的映射单独保存。
+ * 同时实现 Map 接口，装箱的 Long 参数会转发到对应的 long 方法。
+ * 注意 V 为 Long 时 put(long, long) 会产生重载歧义，需要先把 value 装箱
+ */
+public class LongObjectMap<V> implements Map<Long, V> {
+    private long[] keys;
+    private V[] values;
+    private int mask;
+    private int size;
+    private int maxFill;
+    private final float loadFactor;
+
+    private boolean hasZeroKey;
+    private V zeroValue;
+
+    public LongObjectMap() {
+        this(OpenAddressing.DEFAULT_EXPECTED);
+    }
+
+    public LongObjectMap(int expected) {
+        this(expected, OpenAddressing.DEFAULT_LOAD_FACTOR);
+    }
+
+    public LongObjectMap(int expected, float loadFactor) {
+        OpenAddressing.checkLoadFactor(loadFactor);
+        this.loadFactor = loadFactor;
+        allocate(OpenAddressing.arraySize(expected, loadFactor));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = (V[]) new Object[capacity];
+        this.mask = capacity - 1;
+        this.maxFill = OpenAddressing.maxFill(capacity, loadFactor);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private int find(long key) {
+        int pos = OpenAddressing.mix(key) & mask;
+        long curr;
+        while ((curr = keys[pos]) != 0) {
+            if (curr == key) {
+                return pos;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 插入或替换
+     *
+     * @param key
+     * @param value
+     * @return 是否新增了映射
+     */
+    public boolean put(long key, V value) {
+        if (key == 0) {
+            boolean added = !hasZeroKey;
+            if (added) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return added;
+        }
+        int pos = OpenAddressing.mix(key) & mask;
+        long curr;
+        while ((curr = keys[pos]) != 0) {
+            if (curr == key) {
+                values[pos] = value;
+                return false;
+            }
+            pos = (pos + 1) & mask;
+        }
+        keys[pos] = key;
+        values[pos] = value;
+        if (++size > maxFill) {
+            rehash(OpenAddressing.nextCapacity(keys.length));
+        }
+        return true;
+    }
+
+    public boolean contains(long key) {
+        return key == 0 ? hasZeroKey : find(key) >= 0;
+    }
+
+    public V get(long key) {
+        if (key == 0) {
+            return zeroValue;
+        }
+        int pos = find(key);
+        return pos < 0 ? null : values[pos];
+    }
+
+    /**
+     * 只修改已经存在的 key
+     *
+     * @param key
+     * @param value
+     */
+    public void set(long key, V value) {
+        if (key == 0) {
+            if (hasZeroKey) {
+                zeroValue = value;
+            }
+            return;
+        }
+        int pos = find(key);
+        if (pos >= 0) {
+            values[pos] = value;
+        }
+    }
+
+    public V remove(long key) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                return null;
+            }
+            hasZeroKey = false;
+            size--;
+            V value = zeroValue;
+            zeroValue = null;
+            return value;
+        }
+        int pos = find(key);
+        if (pos < 0) {
+            return null;
+        }
+        V value = values[pos];
+        size--;
+        shiftKeys(pos);
+        return value;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        hasZeroKey = false;
+        zeroValue = null;
+        size = 0;
+    }
+
+    @Override
+    public boolean put(Long key, V value) {
+        return put(key.longValue(), value);
+    }
+
+    @Override
+    public boolean contains(Long key) {
+        return contains(key.longValue());
+    }
+
+    @Override
+    public V get(Long key) {
+        return get(key.longValue());
+    }
+
+    @Override
+    public void set(Long key, V value) {
+        set(key.longValue(), value);
+    }
+
+    @Override
+    public V remove(Long key) {
+        return remove(key.longValue());
+    }
+
+    /**
+     * backward shift: 把 pos 之后同一探测链上的元素依次前移填补空位
+     *
+     * @param pos
+     */
+    private void shiftKeys(int pos) {
+        int last;
+        long curr;
+        while (true) {
+            last = pos;
+            pos = (pos + 1) & mask;
+            while (true) {
+                if ((curr = keys[pos]) == 0) {
+                    keys[last] = 0;
+                    values[last] = null;
+                    return;
+                }
+                int slot = OpenAddressing.mix(curr) & mask;
+                if (OpenAddressing.canShift(last, slot, pos)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = curr;
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        V[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != 0) {
+                int pos = OpenAddressing.mix(key) & mask;
+                while (keys[pos] != 0) {
+                    pos = (pos + 1) & mask;
+                }
+                keys[pos] = key;
+                values[pos] = oldValues[i];
+            }
+        }
+    }
+}
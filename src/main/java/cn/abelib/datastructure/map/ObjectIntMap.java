@@ -0,0 +1,227 @@
+package cn.abelib.datastructure.map;
+
+import java.util.Arrays;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ * value 为 int 的开放寻址哈希表，适合计数等场景，value 保存在 int[] 中避免装箱。
+ * 采用线性探测和 backward shift 删除，null 作为空槽标记因此不允许 null key，
+ * key 的 hash 和相等性由 HashStrategy 决定
+ */
+public class ObjectIntMap<K> {
+    private K[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int maxFill;
+    private final float loadFactor;
+    private final HashStrategy<? super K> hashStrategy;
+
+    public ObjectIntMap() {
+        this(OpenAddressing.DEFAULT_EXPECTED);
+    }
+
+    public ObjectIntMap(int expected) {
+        this(expected, OpenAddressing.DEFAULT_LOAD_FACTOR);
+    }
+
+    public ObjectIntMap(int expected, float loadFactor) {
+        this(expected, loadFactor, HashStrategy.DEFAULT);
+    }
+
+    public ObjectIntMap(int expected, float loadFactor, HashStrategy<? super K> hashStrategy) {
+        OpenAddressing.checkLoadFactor(loadFactor);
+        if (hashStrategy == null) {
+            throw new IllegalArgumentException("Hash strategy can not be null");
+        }
+        this.loadFactor = loadFactor;
+        this.hashStrategy = hashStrategy;
+        allocate(OpenAddressing.arraySize(expected, loadFactor));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        this.keys = (K[]) new Object[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        this.maxFill = OpenAddressing.maxFill(capacity, loadFactor);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private int slot(K key) {
+        return hashStrategy.hash(key) & mask;
+    }
+
+    private int find(K key) {
+        checkKey(key);
+        int pos = slot(key);
+        K curr;
+        while ((curr = keys[pos]) != null) {
+            if (hashStrategy.equals(curr, key)) {
+                return pos;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void checkKey(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key can not be null");
+        }
+    }
+
+    /**
+     * 返回 key 所在的槽，不存在时插入 value 为 0 的新映射
+     *
+     * @param key
+     * @return
+     */
+    private int insert(K key) {
+        checkKey(key);
+        int pos = slot(key);
+        K curr;
+        while ((curr = keys[pos]) != null) {
+            if (hashStrategy.equals(curr, key)) {
+                return pos;
+            }
+            pos = (pos + 1) & mask;
+        }
+        keys[pos] = key;
+        values[pos] = 0;
+        if (++size > maxFill) {
+            rehash(OpenAddressing.nextCapacity(keys.length));
+            return find(key);
+        }
+        return pos;
+    }
+
+    /**
+     * 插入或替换
+     *
+     * @param key
+     * @param value
+     * @return 是否新增了映射
+     */
+    public boolean put(K key, int value) {
+        int oldSize = size;
+        int pos = insert(key);
+        values[pos] = value;
+        return size > oldSize;
+    }
+
+    /**
+     * 将 key 对应的值加上 delta，不存在时视为 0
+     *
+     * @param key
+     * @param delta
+     * @return 新值
+     */
+    public int addTo(K key, int delta) {
+        // insert 可能扩容替换 values，必须先求出下标
+        int pos = insert(key);
+        return values[pos] += delta;
+    }
+
+    public boolean contains(K key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * @param key
+     * @return key 对应的值，不存在时返回 0
+     */
+    public int get(K key) {
+        return getOrDefault(key, 0);
+    }
+
+    public int getOrDefault(K key, int defaultValue) {
+        int pos = find(key);
+        return pos < 0 ? defaultValue : values[pos];
+    }
+
+    /**
+     * 只修改已经存在的 key
+     *
+     * @param key
+     * @param value
+     */
+    public void set(K key, int value) {
+        int pos = find(key);
+        if (pos >= 0) {
+            values[pos] = value;
+        }
+    }
+
+    /**
+     * @param key
+     * @return 被删除的值，不存在时返回 0
+     */
+    public int remove(K key) {
+        int pos = find(key);
+        if (pos < 0) {
+            return 0;
+        }
+        int value = values[pos];
+        size--;
+        shiftKeys(pos);
+        return value;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    /**
+     * backward shift: 把 pos 之后同一探测链上的元素依次前移填补空位
+     *
+     * @param pos
+     */
+    private void shiftKeys(int pos) {
+        int last;
+        K curr;
+        while (true) {
+            last = pos;
+            pos = (pos + 1) & mask;
+            while (true) {
+                if ((curr = keys[pos]) == null) {
+                    keys[last] = null;
+                    return;
+                }
+                int slot = slot(curr);
+                if (OpenAddressing.canShift(last, slot, pos)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = curr;
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash(int capacity) {
+        K[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            K key = oldKeys[i];
+            if (key != null) {
+                int pos = slot(key);
+                while (keys[pos] != null) {
+                    pos = (pos + 1) & mask;
+                }
+                keys[pos] = key;
+                values[pos] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package cn.abelib.datastructure.map;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ * 开放寻址(线性探测)哈希表的公共计算
+ */
+final class OpenAddressing {
+    static final float DEFAULT_LOAD_FACTOR = 0.75F;
+    static final int DEFAULT_EXPECTED = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private OpenAddressing() {
+    }
+
+    static void checkLoadFactor(float loadFactor) {
+        if (!(loadFactor > 0 && loadFactor < 1)) {
+            throw new IllegalArgumentException("Load factor must be in (0, 1): " + loadFactor);
+        }
+    }
+
+    /**
+     * 容纳 expected 个元素所需的数组长度，总是2的幂
+     *
+     * @param expected
+     * @param loadFactor
+     * @return
+     */
+    static int arraySize(int expected, float loadFactor) {
+        if (expected < 0) {
+            throw new IllegalArgumentException("Expected size must be non-negative: " + expected);
+        }
+        long need = (long) Math.ceil(expected / loadFactor);
+        int size = 2;
+        while (size < need) {
+            if (size == MAX_CAPACITY) {
+                throw new IllegalArgumentException("Too large expected size: " + expected);
+            }
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * 扩容阈值，至少保留一个空槽保证探测能够终止
+     *
+     * @param capacity
+     * @param loadFactor
+     * @return
+     */
+    static int maxFill(int capacity, float loadFactor) {
+        return Math.min((int) Math.ceil(capacity * loadFactor), capacity - 1);
+    }
+
+    static int nextCapacity(int capacity) {
+        if (capacity == MAX_CAPACITY) {
+            throw new IllegalStateException("Map is full");
+        }
+        return capacity << 1;
+    }
+
+    static int mix(int key) {
+        return HashStrategy.mix(key);
+    }
+
+    static int mix(long key) {
+        return HashStrategy.mix((int) (key ^ (key >>> 32)));
+    }
+
+    /**
+     * 线性探测的backward shift删除中，判断 pos 处 hash 到 slot 的元素能否移动到空位 last
+     *
+     * @param last 空出来的槽
+     * @param slot 元素的理想位置
+     * @param pos  元素当前位置
+     * @return
+     */
+    static boolean canShift(int last, int slot, int pos) {
+        return last <= pos ? (slot <= last || slot > pos) : (slot <= last && slot > pos);
+    }
+}
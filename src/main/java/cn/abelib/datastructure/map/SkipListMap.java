@@ -1,44 +1,999 @@
 package cn.abelib.datastructure.map;
 
 
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
 /**
  * @author abel
  * @date 2018/1/24
+ * 无锁的并发跳表，参考 jdk8 的 ConcurrentSkipListMap:
+ * 最底层是按 key 有序的单链表，保存全部节点；上层的索引节点只用于加速查找，
+ * 所有指针的修改都通过 CAS 完成，不使用锁。
+ * 删除分三步: CAS 把 value 置为 null 做逻辑删除，在后继位置插入 marker 节点防止其他线程在其后插入，
+ * 最后 CAS 前驱的 next 跳过节点和 marker 做物理删除；任何线程遇到已经逻辑删除的节点都会帮助完成后两步。
+ * 新节点以 1/4 的概率建立索引，每升高一层的概率为 1/2，最高层每次最多增加一层。
+ * 迭代器和 subMap 视图是弱一致的: 不会抛出 ConcurrentModificationException，
+ * 能看到迭代开始时已经存在且没有被删除的 key，迭代期间的修改可能看到也可能看不到。
+ * 不支持 null key 和 null value
  */
-public class SkipListMap<K, V> implements Map<K, V> {
+public class SkipListMap<K, V> implements Map<K, V>, Iterable<K> {
+    /**
+     * 最底层头节点的 value，用于区分头节点和普通节点
+     */
+    private static final Object BASE_HEADER = new Object();
+    /**
+     * findNear 的查找方向
+     */
+    private static final int EQ = 1;
+    private static final int LT = 2;
+    private static final int GT = 0;
+
+    private final Comparator<? super K> comparator;
+    private final AtomicReference<HeadIndex<K, V>> head;
+    private final LongAdder counter;
+
+    public SkipListMap() {
+        this(null);
+    }
+
+    /**
+     * @param comparator 为 null 时按 key 的 Comparable 顺序
+     */
+    public SkipListMap(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+        this.head = new AtomicReference<>(new HeadIndex<>(new Node<>(null, BASE_HEADER, null), null, null, 1));
+        this.counter = new LongAdder();
+    }
+
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(K a, K b) {
+        return comparator != null ? comparator.compare(a, b) : ((Comparable<? super K>) a).compareTo(b);
+    }
 
+    /**
+     * 元素个数，并发修改时为近似值
+     *
+     * @return
+     */
     @Override
     public int size() {
-        return 0;
+        long sum = counter.sum();
+        return sum < 0 ? 0 : (sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return findFirst() == null;
     }
 
+    /**
+     * 插入或替换
+     *
+     * @param key
+     * @param value
+     * @return 是否新增了映射
+     */
     @Override
     public boolean put(K key, V value) {
-        return false;
+        checkNotNull(key);
+        checkNotNull(value);
+        return doPut(key, value);
     }
 
     @Override
     public boolean contains(K key) {
-        return false;
+        return get(key) != null;
     }
 
     @Override
     public V get(K key) {
-        return null;
+        checkNotNull(key);
+        Node<K, V> node = findNode(key);
+        return node == null ? null : node.getValidValue();
     }
 
+    /**
+     * 只修改已经存在的 key
+     *
+     * @param key
+     * @param value
+     */
     @Override
     public void set(K key, V value) {
-
+        checkNotNull(key);
+        checkNotNull(value);
+        while (true) {
+            Node<K, V> node = findNode(key);
+            if (node == null) {
+                return;
+            }
+            Object v = node.value;
+            if (v != null && node.casValue(v, value)) {
+                return;
+            }
+        }
     }
 
     @Override
-    public boolean isEmpty() {
-        return false;
+    public V remove(K key) {
+        checkNotNull(key);
+        return doRemove(key);
+    }
+
+    public K firstKey() {
+        while (true) {
+            Node<K, V> node = findFirst();
+            if (node == null) {
+                return null;
+            }
+            if (node.getValidValue() != null) {
+                return node.key;
+            }
+        }
+    }
+
+    public K lastKey() {
+        while (true) {
+            Node<K, V> node = findLast();
+            if (node == null) {
+                return null;
+            }
+            if (node.getValidValue() != null) {
+                return node.key;
+            }
+        }
+    }
+
+    /**
+     * 小于等于 key 的最大 key
+     *
+     * @param key
+     * @return
+     */
+    public K floorKey(K key) {
+        return getNear(key, LT | EQ);
+    }
+
+    /**
+     * 大于等于 key 的最小 key
+     *
+     * @param key
+     * @return
+     */
+    public K ceilingKey(K key) {
+        return getNear(key, GT | EQ);
+    }
+
+    /**
+     * 小于 key 的最大 key
+     *
+     * @param key
+     * @return
+     */
+    public K lowerKey(K key) {
+        return getNear(key, LT);
     }
 
+    /**
+     * 大于 key 的最小 key
+     *
+     * @param key
+     * @return
+     */
+    public K higherKey(K key) {
+        return getNear(key, GT);
+    }
+
+    /**
+     * [fromKey, toKey) 范围的视图
+     *
+     * @param fromKey
+     * @param toKey
+     * @return
+     */
+    public SubMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    /**
+     * 范围视图，对视图的修改直接作用于原 map，fromKey 或 toKey 为 null 时该方向没有边界
+     *
+     * @param fromKey
+     * @param fromInclusive
+     * @param toKey
+     * @param toInclusive
+     * @return
+     */
+    public SubMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        if (fromKey != null && toKey != null && compare(fromKey, toKey) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        return new SubMap<>(this, fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    public SubMap<K, V> headMap(K toKey, boolean inclusive) {
+        return subMap(null, false, toKey, inclusive);
+    }
+
+    public SubMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return subMap(fromKey, inclusive, null, false);
+    }
+
+    /**
+     * 按 key 升序遍历，弱一致
+     *
+     * @param consumer
+     */
+    public void forEach(BiConsumer<? super K, ? super V> consumer) {
+        for (Node<K, V> node = findFirst(); node != null; node = node.next) {
+            V value = node.getValidValue();
+            if (value != null) {
+                consumer.accept(node.key, value);
+            }
+        }
+    }
+
+    /**
+     * 按 key 升序的弱一致迭代器
+     *
+     * @return
+     */
     @Override
-    public V remove(K key) {
+    public Iterator<K> iterator() {
+        return new Itr(findFirst(), null, false);
+    }
+
+    private static void checkNotNull(Object o) {
+        if (o == null) {
+            throw new IllegalArgumentException("Null key or value is not supported");
+        }
+    }
+
+    /**
+     * 从最高层索引开始向右向下查找，返回最底层中 key 小于给定 key 的某个节点(不一定是直接前驱)，
+     * 顺带摘除指向已删除节点的索引
+     *
+     * @param key
+     * @return
+     */
+    private Node<K, V> findPredecessor(K key) {
+        while (true) {
+            Index<K, V> q = head.get();
+            Index<K, V> r = q.right;
+            while (true) {
+                if (r != null) {
+                    Node<K, V> n = r.node;
+                    if (n.value == null) {
+                        if (!q.unlink(r)) {
+                            break;
+                        }
+                        r = q.right;
+                        continue;
+                    }
+                    if (compare(key, n.key) > 0) {
+                        q = r;
+                        r = r.right;
+                        continue;
+                    }
+                }
+                Index<K, V> d = q.down;
+                if (d == null) {
+                    return q.node;
+                }
+                q = d;
+                r = d.right;
+            }
+        }
+    }
+
+    /**
+     * 在最底层查找 key 所在的节点，遇到读到的链表不一致时从头重试
+     *
+     * @param key
+     * @return
+     */
+    private Node<K, V> findNode(K key) {
+        outer:
+        while (true) {
+            Node<K, V> b = findPredecessor(key);
+            Node<K, V> n = b.next;
+            while (true) {
+                if (n == null) {
+                    break outer;
+                }
+                Node<K, V> f = n.next;
+                if (n != b.next) {
+                    break;
+                }
+                Object v = n.value;
+                if (v == null) {
+                    n.helpDelete(b, f);
+                    break;
+                }
+                if (b.value == null || v == n) {
+                    break;
+                }
+                int c = compare(key, n.key);
+                if (c == 0) {
+                    return n;
+                }
+                if (c < 0) {
+                    break outer;
+                }
+                b = n;
+                n = f;
+            }
+        }
+        return null;
+    }
+
+    private boolean doPut(K key, V value) {
+        Node<K, V> z;
+        outer:
+        while (true) {
+            Node<K, V> b = findPredecessor(key);
+            Node<K, V> n = b.next;
+            while (true) {
+                if (n != null) {
+                    Node<K, V> f = n.next;
+                    if (n != b.next) {
+                        break;
+                    }
+                    Object v = n.value;
+                    if (v == null) {
+                        n.helpDelete(b, f);
+                        break;
+                    }
+                    if (b.value == null || v == n) {
+                        break;
+                    }
+                    int c = compare(key, n.key);
+                    if (c > 0) {
+                        b = n;
+                        n = f;
+                        continue;
+                    }
+                    if (c == 0) {
+                        if (n.casValue(v, value)) {
+                            return false;
+                        }
+                        // 与其他线程竞争失败，重试
+                        break;
+                    }
+                }
+                z = new Node<>(key, value, n);
+                if (!b.casNext(n, z)) {
+                    break;
+                }
+                break outer;
+            }
+        }
+        counter.increment();
+        int rnd = ThreadLocalRandom.current().nextInt();
+        // 最高位和最低位都为0，概率 1/4
+        if ((rnd & 0x80000001) == 0) {
+            this.addIndex(z, key, rnd);
+        }
+        return true;
+    }
+
+    /**
+     * 为新节点建立索引，层数由 rnd 中连续的1的个数决定，超过当前最高层时只增加一层
+     *
+     * @param z
+     * @param key
+     * @param rnd
+     */
+    @SuppressWarnings("unchecked")
+    private void addIndex(Node<K, V> z, K key, int rnd) {
+        int level = 1;
+        while (((rnd >>>= 1) & 1) != 0) {
+            ++level;
+        }
+        Index<K, V> idx = null;
+        HeadIndex<K, V> h = head.get();
+        int max = h.level;
+        if (level <= max) {
+            for (int i = 1; i <= level; ++i) {
+                idx = new Index<>(z, idx, null);
+            }
+        } else {
+            level = max + 1;
+            Index<K, V>[] idxs = (Index<K, V>[]) new Index[level + 1];
+            for (int i = 1; i <= level; ++i) {
+                idxs[i] = idx = new Index<>(z, idx, null);
+            }
+            while (true) {
+                h = head.get();
+                int oldLevel = h.level;
+                if (level <= oldLevel) {
+                    break;
+                }
+                HeadIndex<K, V> newHead = h;
+                Node<K, V> oldBase = h.node;
+                for (int j = oldLevel + 1; j <= level; ++j) {
+                    newHead = new HeadIndex<>(oldBase, newHead, idxs[j], j);
+                }
+                if (head.compareAndSet(h, newHead)) {
+                    h = newHead;
+                    idx = idxs[level = oldLevel];
+                    break;
+                }
+            }
+        }
+        // 从 insertionLevel 层开始逐层向下把索引链接到对应位置
+        splice:
+        for (int insertionLevel = level; ; ) {
+            int j = h.level;
+            for (Index<K, V> q = h, r = q.right, t = idx; ; ) {
+                if (q == null || t == null) {
+                    break splice;
+                }
+                if (r != null) {
+                    Node<K, V> n = r.node;
+                    int c = compare(key, n.key);
+                    if (n.value == null) {
+                        if (!q.unlink(r)) {
+                            break;
+                        }
+                        r = q.right;
+                        continue;
+                    }
+                    if (c > 0) {
+                        q = r;
+                        r = r.right;
+                        continue;
+                    }
+                }
+                if (j == insertionLevel) {
+                    if (!q.link(r, t)) {
+                        break;
+                    }
+                    if (t.node.value == null) {
+                        // 节点在建立索引期间被删除，通过查找清理索引
+                        findNode(key);
+                        break splice;
+                    }
+                    if (--insertionLevel == 0) {
+                        break splice;
+                    }
+                }
+                if (--j >= insertionLevel && j < level) {
+                    t = t.down;
+                }
+                q = q.down;
+                r = q.right;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V doRemove(K key) {
+        outer:
+        while (true) {
+            Node<K, V> b = findPredecessor(key);
+            Node<K, V> n = b.next;
+            while (true) {
+                if (n == null) {
+                    break outer;
+                }
+                Node<K, V> f = n.next;
+                if (n != b.next) {
+                    break;
+                }
+                Object v = n.value;
+                if (v == null) {
+                    n.helpDelete(b, f);
+                    break;
+                }
+                if (b.value == null || v == n) {
+                    break;
+                }
+                int c = compare(key, n.key);
+                if (c < 0) {
+                    break outer;
+                }
+                if (c > 0) {
+                    b = n;
+                    n = f;
+                    continue;
+                }
+                if (!n.casValue(v, null)) {
+                    break;
+                }
+                counter.decrement();
+                if (!n.appendMarker(f) || !b.casNext(n, f)) {
+                    // 由查找过程帮助完成物理删除
+                    findNode(key);
+                } else {
+                    findPredecessor(key);
+                    if (head.get().right == null) {
+                        this.tryReduceLevel();
+                    }
+                }
+                return (V) v;
+            }
+        }
         return null;
     }
+
+    /**
+     * 最高的三层都没有索引时降低一层，与插入竞争时可能误删，此时再恢复
+     */
+    private void tryReduceLevel() {
+        HeadIndex<K, V> h = head.get();
+        HeadIndex<K, V> d;
+        HeadIndex<K, V> e;
+        if (h.level > 3
+                && (d = (HeadIndex<K, V>) h.down) != null
+                && (e = (HeadIndex<K, V>) d.down) != null
+                && e.right == null
+                && d.right == null
+                && h.right == null
+                && head.compareAndSet(h, d)
+                && h.right != null) {
+            head.compareAndSet(d, h);
+        }
+    }
+
+    /**
+     * 最底层第一个未删除的节点
+     *
+     * @return
+     */
+    Node<K, V> findFirst() {
+        while (true) {
+            Node<K, V> b = head.get().node;
+            Node<K, V> n = b.next;
+            if (n == null) {
+                return null;
+            }
+            if (n.value != null) {
+                return n;
+            }
+            n.helpDelete(b, n.next);
+        }
+    }
+
+    /**
+     * 沿每层最右侧的索引向下，再在最底层向右走到末尾
+     *
+     * @return
+     */
+    private Node<K, V> findLast() {
+        Index<K, V> q = head.get();
+        while (true) {
+            Index<K, V> r = q.right;
+            Index<K, V> d;
+            if (r != null) {
+                if (r.indexesDeletedNode()) {
+                    q.unlink(r);
+                    q = head.get();
+                } else {
+                    q = r;
+                }
+            } else if ((d = q.down) != null) {
+                q = d;
+            } else {
+                Node<K, V> b = q.node;
+                Node<K, V> n = b.next;
+                while (true) {
+                    if (n == null) {
+                        return b.isBaseHeader() ? null : b;
+                    }
+                    Node<K, V> f = n.next;
+                    if (n != b.next) {
+                        break;
+                    }
+                    Object v = n.value;
+                    if (v == null) {
+                        n.helpDelete(b, f);
+                        break;
+                    }
+                    if (b.value == null || v == n) {
+                        break;
+                    }
+                    b = n;
+                    n = f;
+                }
+                q = head.get();
+            }
+        }
+    }
+
+    /**
+     * 按 rel 查找与 key 最接近的节点
+     *
+     * @param key
+     * @param rel EQ、LT、GT 的组合
+     * @return
+     */
+    Node<K, V> findNear(K key, int rel) {
+        while (true) {
+            Node<K, V> b = findPredecessor(key);
+            Node<K, V> n = b.next;
+            while (true) {
+                if (n == null) {
+                    return ((rel & LT) == 0 || b.isBaseHeader()) ? null : b;
+                }
+                Node<K, V> f = n.next;
+                if (n != b.next) {
+                    break;
+                }
+                Object v = n.value;
+                if (v == null) {
+                    n.helpDelete(b, f);
+                    break;
+                }
+                if (b.value == null || v == n) {
+                    break;
+                }
+                int c = compare(key, n.key);
+                if ((c == 0 && (rel & EQ) != 0) || (c < 0 && (rel & LT) == 0)) {
+                    return n;
+                }
+                if (c <= 0 && (rel & LT) != 0) {
+                    return b.isBaseHeader() ? null : b;
+                }
+                b = n;
+                n = f;
+            }
+        }
+    }
+
+    private K getNear(K key, int rel) {
+        checkNotNull(key);
+        while (true) {
+            Node<K, V> node = findNear(key, rel);
+            if (node == null) {
+                return null;
+            }
+            if (node.getValidValue() != null) {
+                return node.key;
+            }
+        }
+    }
+
+    /**
+     * 弱一致的迭代器，next 指向下一个未删除的节点，hi 为 null 时没有上界
+     */
+    private class Itr implements Iterator<K> {
+        private Node<K, V> next;
+        private Node<K, V> lastReturned;
+        private final K hi;
+        private final boolean hiInclusive;
+
+        Itr(Node<K, V> first, K hi, boolean hiInclusive) {
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.next = this.skip(first);
+        }
+
+        /**
+         * 跳过已删除的节点，超过上界时结束
+         *
+         * @param node
+         * @return
+         */
+        private Node<K, V> skip(Node<K, V> node) {
+            while (node != null && node.getValidValue() == null) {
+                node = node.next;
+            }
+            if (node != null && hi != null) {
+                int c = compare(node.key, hi);
+                if (c > 0 || (c == 0 && !hiInclusive)) {
+                    return null;
+                }
+            }
+            return node;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public K next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            next = this.skip(next.next);
+            return lastReturned.key;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            SkipListMap.this.remove(lastReturned.key);
+            lastReturned = null;
+        }
+    }
+
+    /**
+     * 范围视图，size() 需要遍历整个范围
+     *
+     * @param <K>
+     * @param <V>
+     */
+    public static class SubMap<K, V> implements Map<K, V>, Iterable<K> {
+        private final SkipListMap<K, V> map;
+        private final K lo;
+        private final boolean loInclusive;
+        private final K hi;
+        private final boolean hiInclusive;
+
+        SubMap(SkipListMap<K, V> map, K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+            this.map = map;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+        }
+
+        private boolean tooLow(K key) {
+            if (lo == null) {
+                return false;
+            }
+            int c = map.compare(key, lo);
+            return c < 0 || (c == 0 && !loInclusive);
+        }
+
+        private boolean tooHigh(K key) {
+            if (hi == null) {
+                return false;
+            }
+            int c = map.compare(key, hi);
+            return c > 0 || (c == 0 && !hiInclusive);
+        }
+
+        public boolean inRange(K key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        private void checkInRange(K key) {
+            checkNotNull(key);
+            if (!inRange(key)) {
+                throw new IllegalArgumentException("Key out of range: " + key);
+            }
+        }
+
+        private Node<K, V> loNode() {
+            if (lo == null) {
+                return map.findFirst();
+            }
+            return map.findNear(lo, loInclusive ? GT | EQ : GT);
+        }
+
+        @Override
+        public int size() {
+            int count = 0;
+            for (K ignored : this) {
+                count++;
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return !iterator().hasNext();
+        }
+
+        @Override
+        public boolean put(K key, V value) {
+            checkInRange(key);
+            return map.put(key, value);
+        }
+
+        @Override
+        public boolean contains(K key) {
+            return inRange(key) && map.contains(key);
+        }
+
+        @Override
+        public V get(K key) {
+            return inRange(key) ? map.get(key) : null;
+        }
+
+        @Override
+        public void set(K key, V value) {
+            if (inRange(key)) {
+                map.set(key, value);
+            }
+        }
+
+        @Override
+        public V remove(K key) {
+            return inRange(key) ? map.remove(key) : null;
+        }
+
+        public K firstKey() {
+            Iterator<K> iterator = iterator();
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+
+        public K lastKey() {
+            while (true) {
+                Node<K, V> node = hi == null ? map.findLast() : map.findNear(hi, hiInclusive ? LT | EQ : LT);
+                if (node == null || tooLow(node.key)) {
+                    return null;
+                }
+                if (node.getValidValue() != null) {
+                    return node.key;
+                }
+            }
+        }
+
+        public void forEach(BiConsumer<? super K, ? super V> consumer) {
+            for (Node<K, V> node = loNode(); node != null; node = node.next) {
+                V value = node.getValidValue();
+                if (value == null) {
+                    continue;
+                }
+                if (tooHigh(node.key)) {
+                    return;
+                }
+                consumer.accept(node.key, value);
+            }
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            return map.new Itr(loNode(), hi, hiInclusive);
+        }
+    }
+
+    /**
+     * 最底层的节点。value 为 null 表示已经逻辑删除；
+     * marker 节点的 key 为 null，value 指向自身
+     * @param <K>
+     * @param <V>
+     */
+    static final class Node<K, V> {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Node, Object> VALUE =
+                AtomicReferenceFieldUpdater.newUpdater(Node.class, Object.class, "value");
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Node, Node> NEXT =
+                AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+
+        final K key;
+        volatile Object value;
+        volatile Node<K, V> next;
+
+        Node(K key, Object value, Node<K, V> next) {
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        /**
+         * 创建 marker 节点
+         *
+         * @param next
+         */
+        Node(Node<K, V> next) {
+            this.key = null;
+            this.value = this;
+            this.next = next;
+        }
+
+        boolean casValue(Object expect, Object update) {
+            return VALUE.compareAndSet(this, expect, update);
+        }
+
+        boolean casNext(Node<K, V> expect, Node<K, V> update) {
+            return NEXT.compareAndSet(this, expect, update);
+        }
+
+        boolean isBaseHeader() {
+            return value == BASE_HEADER;
+        }
+
+        boolean appendMarker(Node<K, V> f) {
+            return casNext(f, new Node<>(f));
+        }
+
+        /**
+         * 帮助完成删除: 没有 marker 时追加 marker，否则让前驱 b 跳过本节点和 marker
+         *
+         * @param b 前驱
+         * @param f 后继
+         */
+        void helpDelete(Node<K, V> b, Node<K, V> f) {
+            if (f == next && this == b.next) {
+                if (f == null || f.value != f) {
+                    casNext(f, new Node<>(f));
+                } else {
+                    b.casNext(this, f.next);
+                }
+            }
+        }
+
+        /**
+         * 已删除节点、marker 和头节点返回 null
+         *
+         * @return
+         */
+        @SuppressWarnings("unchecked")
+        V getValidValue() {
+            Object v = value;
+            if (v == this || v == BASE_HEADER) {
+                return null;
+            }
+            return (V) v;
+        }
+    }
+
+    /**
+     * 索引节点，down 指向下一层同一个节点的索引
+     * @param <K>
+     * @param <V>
+     */
+    static class Index<K, V> {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Index, Index> RIGHT =
+                AtomicReferenceFieldUpdater.newUpdater(Index.class, Index.class, "right");
+
+        final Node<K, V> node;
+        final Index<K, V> down;
+        volatile Index<K, V> right;
+
+        Index(Node<K, V> node, Index<K, V> down, Index<K, V> right) {
+            this.node = node;
+            this.down = down;
+            this.right = right;
+        }
+
+        final boolean casRight(Index<K, V> expect, Index<K, V> update) {
+            return RIGHT.compareAndSet(this, expect, update);
+        }
+
+        final boolean indexesDeletedNode() {
+            return node.value == null;
+        }
+
+        /**
+         * 在 succ 之前插入 newSucc，本索引的节点已删除时失败
+         */
+        final boolean link(Index<K, V> succ, Index<K, V> newSucc) {
+            newSucc.right = succ;
+            return node.value != null && casRight(succ, newSucc);
+        }
+
+        /**
+         * 摘除右侧的 succ，本索引的节点已删除时失败
+         */
+        final boolean unlink(Index<K, V> succ) {
+            return node.value != null && casRight(succ, succ.right);
+        }
+    }
+
+    /**
+     * 每一层最左侧的索引，记录层数
+     * @param <K>
+     * @param <V>
+     */
+    static final class HeadIndex<K, V> extends Index<K, V> {
+        final int level;
+
+        HeadIndex(Node<K, V> node, Index<K, V> down, Index<K, V> right, int level) {
+            super(node, down, right);
+            this.level = level;
+        }
+    }
 }
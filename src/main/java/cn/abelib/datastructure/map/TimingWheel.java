@@ -0,0 +1,233 @@
+package cn.abelib.datastructure.map;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ * 分层时间轮，时间单位为毫秒。每层64个槽，第 l 层每个槽跨越 64^l 毫秒，11层可以覆盖全部 long 范围，不需要溢出处理。
+ * 定时器放在与当前时间"同属一个上层槽"的最低一层，即 deadline 与当前时间的最高不同位所在的层，
+ * 因此每个定时器所在槽的下标总是大于该层当前的下标；时间走到某个上层槽时把槽内的定时器逐层下放(cascade)，
+ * 到达第0层的槽时即为到期。
+ * 每个槽是一个侵入式双向链表，schedule 和 cancel 都是 O(1)；
+ * 每层用一个 long 记录非空的槽，推进时间时直接跳到下一个非空槽，空闲期间不需要逐个 tick 推进
+ */
+public class TimingWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = (Long.SIZE + SLOT_BITS - 1) / SLOT_BITS;
+
+    /**
+     * 每个槽链表的头节点，下标为 level * SLOTS + slot
+     */
+    private final Timer<T>[] buckets;
+    /**
+     * 每层非空槽的位图
+     */
+    private final long[] occupied;
+    private long currentTime;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long startTime) {
+        this.buckets = (Timer<T>[]) new Timer[LEVELS * SLOTS];
+        this.occupied = new long[LEVELS];
+        this.currentTime = startTime;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 时间轮已经推进到的时间
+     *
+     * @return
+     */
+    public long currentTime() {
+        return currentTime;
+    }
+
+    /**
+     * 在 deadline 时刻到期，已经过去的 deadline 在下一次 poll 时立即到期。
+     * 已经调度过的定时器会先被取消
+     *
+     * @param timer
+     * @param deadline
+     */
+    public void schedule(Timer<T> timer, long deadline) {
+        if (timer.bucket >= 0) {
+            this.cancel(timer);
+        }
+        timer.deadline = deadline;
+        this.place(timer);
+        size++;
+    }
+
+    /**
+     * 取消定时器，没有调度过或者已经到期的定时器不受影响
+     *
+     * @param timer
+     * @return 是否取消了定时器
+     */
+    public boolean cancel(Timer<T> timer) {
+        if (timer.bucket < 0) {
+            return false;
+        }
+        this.unlink(timer);
+        size--;
+        return true;
+    }
+
+    /**
+     * 推进时间到 now，返回一个到期的定时器，没有到期的定时器时返回 null，
+     * 每次调用只做取出一个定时器所需的工作，调用方可以随时停止
+     *
+     * @param now
+     * @return
+     */
+    public Timer<T> poll(long now) {
+        while (size > 0) {
+            int current = (int) (currentTime & SLOT_MASK);
+            Timer<T> timer = buckets[current];
+            if (timer != null) {
+                this.unlink(timer);
+                size--;
+                return timer;
+            }
+            long next = this.nextEventTime();
+            if (next > now) {
+                break;
+            }
+            currentTime = next;
+            this.cascade();
+        }
+        if (now > currentTime) {
+            // 到 now 为止没有任何事件，直接跳过
+            currentTime = now;
+        }
+        return null;
+    }
+
+    /**
+     * 根据 deadline 与当前时间的最高不同位计算所在的层
+     *
+     * @param timer
+     */
+    private void place(Timer<T> timer) {
+        int level;
+        int slot;
+        if (timer.deadline <= currentTime) {
+            level = 0;
+            slot = (int) (currentTime & SLOT_MASK);
+        } else {
+            long diff = timer.deadline ^ currentTime;
+            level = (Long.SIZE - 1 - Long.numberOfLeadingZeros(diff)) / SLOT_BITS;
+            slot = (int) ((timer.deadline >>> (level * SLOT_BITS)) & SLOT_MASK);
+        }
+        int bucket = level * SLOTS + slot;
+        Timer<T> head = buckets[bucket];
+        timer.bucket = bucket;
+        timer.prev = null;
+        timer.next = head;
+        if (head != null) {
+            head.prev = timer;
+        }
+        buckets[bucket] = timer;
+        occupied[level] |= 1L << slot;
+    }
+
+    private void unlink(Timer<T> timer) {
+        int bucket = timer.bucket;
+        if (timer.prev == null) {
+            buckets[bucket] = timer.next;
+            if (timer.next == null) {
+                occupied[bucket / SLOTS] &= ~(1L << (bucket & SLOT_MASK));
+            }
+        } else {
+            timer.prev.next = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.prev = timer.prev;
+        }
+        timer.prev = null;
+        timer.next = null;
+        timer.bucket = -1;
+    }
+
+    /**
+     * 所有层中下标大于当前下标的第一个非空槽对应的最早时间，
+     * 第0层为到期时间，其他层为需要下放的时间
+     *
+     * @return
+     */
+    private long nextEventTime() {
+        long next = Long.MAX_VALUE;
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = level * SLOT_BITS;
+            int current = (int) ((currentTime >>> shift) & SLOT_MASK);
+            long later = current == SLOT_MASK ? 0 : occupied[level] & (-2L << current);
+            if (later == 0) {
+                continue;
+            }
+            int slot = Long.numberOfTrailingZeros(later);
+            int upperShift = shift + SLOT_BITS;
+            long base = upperShift >= Long.SIZE ? 0 : (currentTime >>> upperShift) << upperShift;
+            next = Math.min(next, base | ((long) slot << shift));
+        }
+        return next;
+    }
+
+    /**
+     * 时间到达上层槽的边界时，从高到低把对应槽中的定时器重新放置到更低的层
+     */
+    private void cascade() {
+        for (int level = LEVELS - 1; level > 0; level--) {
+            int shift = level * SLOT_BITS;
+            if ((currentTime & ((1L << shift) - 1)) != 0) {
+                continue;
+            }
+            int slot = (int) ((currentTime >>> shift) & SLOT_MASK);
+            int bucket = level * SLOTS + slot;
+            Timer<T> timer = buckets[bucket];
+            buckets[bucket] = null;
+            occupied[level] &= ~(1L << slot);
+            while (timer != null) {
+                Timer<T> next = timer.next;
+                this.place(timer);
+                timer = next;
+            }
+        }
+    }
+
+    /**
+     * 侵入式的定时器节点
+     * @param <T>
+     */
+    public static class Timer<T> {
+        final T item;
+        long deadline;
+        int bucket = -1;
+        Timer<T> prev;
+        Timer<T> next;
+
+        public Timer(T item) {
+            this.item = item;
+        }
+
+        public T item() {
+            return item;
+        }
+
+        public long deadline() {
+            return deadline;
+        }
+
+        public boolean isScheduled() {
+            return bucket >= 0;
+        }
+    }
+}
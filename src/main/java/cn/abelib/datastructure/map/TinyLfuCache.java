@@ -0,0 +1,472 @@
+package cn.abelib.datastructure.map;
+
+import cn.abelib.util.commons.Constant;
+
+import java.util.Random;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ * W-TinyLFU 缓存，容量分为三段 LRU 队列:
+ * window 占1%，新条目先进入 window，给突发的新 key 积累访问次数的机会；
+ * main 为分段 LRU，probation 存放从 window 淘汰出来的条目，在 probation 中再次被访问的条目晋升到 protected，
+ * protected 占 main 的80%，超出时把最久未访问的条目降级回 probation。
+ * 从 window 进入 probation 的条目(candidate)和 probation 头部的条目(victim)之间由 TinyLFU 决定去留:
+ * 按 FrequencySketch 估计的访问次数，candidate 大于 victim 时淘汰 victim，否则淘汰 candidate，
+ * 因此一次性的扫描不会把热点数据挤出缓存。
+ * 过期采用惰性删除，get/contains 遇到过期条目时删除，cleanUp() 删除所有过期条目
+ */
+public class TinyLfuCache<K, V> extends HashMap<K, V> {
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    private static final double WINDOW_PERCENT = 0.01;
+    private static final double PROTECTED_PERCENT = 0.8;
+    /**
+     * 访问次数超过该值的 candidate 有小概率被无条件接纳，
+     * 避免攻击者构造 hash 冲突抬高 victim 的次数后让所有新条目都无法进入缓存
+     */
+    private static final int ADMIT_HASHDOS_THRESHOLD = 6;
+
+    private final long maximum;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final Weigher<? super K, ? super V> weigher;
+    private final Expiry<? super K, ? super V> expiry;
+    private final FrequencySketch<K> sketch;
+    private EvictionListener<? super K, ? super V> evictionListener;
+
+    private final AccessQueue<K, V> window = new AccessQueue<>();
+    private final AccessQueue<K, V> probation = new AccessQueue<>();
+    private final AccessQueue<K, V> protect = new AccessQueue<>();
+    private long windowWeight;
+    private long protectedWeight;
+    private long weightedSize;
+
+    private long hitCount;
+    private long missCount;
+    private final Random random = new Random();
+
+    /**
+     * 按条目数限制容量，不过期
+     *
+     * @param maximumSize
+     */
+    public TinyLfuCache(long maximumSize) {
+        this(maximumSize, null, null);
+    }
+
+    /**
+     * 按权重限制容量，weigher 为 null 时每个条目的权重为1，expiry 为 null 时不过期
+     *
+     * @param maximumWeight
+     * @param weigher
+     * @param expiry
+     */
+    public TinyLfuCache(long maximumWeight, Weigher<? super K, ? super V> weigher, Expiry<? super K, ? super V> expiry) {
+        super(Constant.DEFAULT_CAPACITY);
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("Maximum must be non-negative: " + maximumWeight);
+        }
+        this.maximum = maximumWeight;
+        long mainMaximum = (long) (maximumWeight * (1 - WINDOW_PERCENT));
+        this.windowMaximum = maximumWeight - mainMaximum;
+        this.protectedMaximum = (long) (mainMaximum * PROTECTED_PERCENT);
+        this.weigher = weigher;
+        this.expiry = expiry;
+        // 按权重限制时权重上限不是条目数，sketch 从最小开始，随插入的条目数增长
+        this.sketch = new FrequencySketch<>(weigher == null ? maximumWeight : 0);
+    }
+
+    public long getMaximum() {
+        return maximum;
+    }
+
+    FrequencySketch<K> sketch() {
+        return sketch;
+    }
+
+    /**
+     * 当前所有条目的权重之和，按条目数限制时等于 size()
+     *
+     * @return
+     */
+    public long weightedSize() {
+        return weightedSize;
+    }
+
+    public void setEvictionListener(EvictionListener<? super K, ? super V> evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    public long hitCount() {
+        return hitCount;
+    }
+
+    public long missCount() {
+        return missCount;
+    }
+
+    /**
+     * get 的命中率，没有请求时为1
+     *
+     * @return
+     */
+    public double hitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    /**
+     * 未命中也记录一次访问，TinyLFU 统计的是请求的频率而不只是缓存中条目的频率
+     *
+     * @param key
+     * @return
+     */
+    @Override
+    public V get(K key) {
+        CacheNode<K, V> node = (CacheNode<K, V>) getNode(key);
+        long now = expiry == null ? 0 : currentTimeMillis();
+        if (node != null && hasExpired(node, now)) {
+            this.removeExpired(node);
+            node = null;
+        }
+        if (node == null) {
+            sketch.increment(key);
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        if (expiry != null) {
+            long duration = expiry.expireAfterRead(node.key, node.value, now, remaining(node, now));
+            node.expireAt = deadline(now, duration);
+        }
+        this.afterNodeAccess(node);
+        return node.value;
+    }
+
+    /**
+     * 不记录访问，也不改变条目的位置
+     *
+     * @param key
+     * @return
+     */
+    @Override
+    public boolean contains(K key) {
+        CacheNode<K, V> node = (CacheNode<K, V>) getNode(key);
+        if (node != null && expiry != null && hasExpired(node, currentTimeMillis())) {
+            this.removeExpired(node);
+            return false;
+        }
+        return node != null;
+    }
+
+    /**
+     * 删除所有过期的条目
+     */
+    public void cleanUp() {
+        if (expiry == null) {
+            return;
+        }
+        long now = currentTimeMillis();
+        expireQueue(window, now);
+        expireQueue(probation, now);
+        expireQueue(protect, now);
+    }
+
+    private void expireQueue(AccessQueue<K, V> queue, long now) {
+        CacheNode<K, V> node = queue.head;
+        while (node != null) {
+            CacheNode<K, V> next = node.after;
+            if (hasExpired(node, now)) {
+                this.removeExpired(node);
+            }
+            node = next;
+        }
+    }
+
+    @Override
+    NodeEntry<K, V> newNode(int hash, K key, V value, NodeEntry<K, V> next) {
+        return new CacheNode<>(hash, key, value, next);
+    }
+
+    @Override
+    void afterNodeInsertion(NodeEntry<K, V> node) {
+        CacheNode<K, V> entry = (CacheNode<K, V>) node;
+        entry.weight = weigh(entry);
+        if (expiry != null) {
+            long now = currentTimeMillis();
+            entry.expireAt = deadline(now, expiry.expireAfterCreate(entry.key, entry.value, now));
+        }
+        if (weigher != null) {
+            sketch.ensureCapacity(size());
+        }
+        sketch.increment(entry.key);
+        entry.queue = WINDOW;
+        window.addLast(entry);
+        windowWeight += entry.weight;
+        weightedSize += entry.weight;
+        this.maintenance();
+    }
+
+    @Override
+    void afterNodeAccess(NodeEntry<K, V> node) {
+        CacheNode<K, V> entry = (CacheNode<K, V>) node;
+        sketch.increment(entry.key);
+        if (entry.queue == WINDOW) {
+            window.moveToBack(entry);
+        } else if (entry.queue == PROBATION) {
+            probation.remove(entry);
+            entry.queue = PROTECTED;
+            protect.addLast(entry);
+            protectedWeight += entry.weight;
+            this.demoteFromProtected();
+        } else {
+            protect.moveToBack(entry);
+        }
+    }
+
+    @Override
+    void afterNodeUpdate(NodeEntry<K, V> node) {
+        CacheNode<K, V> entry = (CacheNode<K, V>) node;
+        if (expiry != null) {
+            long now = currentTimeMillis();
+            long duration = expiry.expireAfterUpdate(entry.key, entry.value, now, remaining(entry, now));
+            entry.expireAt = deadline(now, duration);
+        }
+        if (weigher == null) {
+            return;
+        }
+        int weight = weigh(entry);
+        int delta = weight - entry.weight;
+        entry.weight = weight;
+        weightedSize += delta;
+        if (entry.queue == WINDOW) {
+            windowWeight += delta;
+        } else if (entry.queue == PROTECTED) {
+            protectedWeight += delta;
+            this.demoteFromProtected();
+        }
+        this.maintenance();
+    }
+
+    @Override
+    void afterNodeRemoval(NodeEntry<K, V> node) {
+        CacheNode<K, V> entry = (CacheNode<K, V>) node;
+        if (entry.queue == WINDOW) {
+            window.remove(entry);
+            windowWeight -= entry.weight;
+        } else if (entry.queue == PROBATION) {
+            probation.remove(entry);
+        } else {
+            protect.remove(entry);
+            protectedWeight -= entry.weight;
+        }
+        weightedSize -= entry.weight;
+    }
+
+    private int weigh(CacheNode<K, V> entry) {
+        if (weigher == null) {
+            return 1;
+        }
+        int weight = weigher.weigh(entry.key, entry.value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be non-negative: " + weight);
+        }
+        return weight;
+    }
+
+    private boolean hasExpired(CacheNode<K, V> node, long now) {
+        return expiry != null && now >= node.expireAt;
+    }
+
+    private static long remaining(CacheNode<?, ?> node, long now) {
+        return node.expireAt == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(node.expireAt - now, 0);
+    }
+
+    private static long deadline(long now, long duration) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("Duration must be non-negative: " + duration);
+        }
+        return duration >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + duration;
+    }
+
+    /**
+     * 过期删除，不通知 EvictionListener
+     *
+     * @param node
+     */
+    private void removeExpired(CacheNode<K, V> node) {
+        this.removeNode(node);
+    }
+
+    private void evict(CacheNode<K, V> node) {
+        this.removeNode(node);
+        if (evictionListener != null) {
+            evictionListener.onEviction(node.key, node.value);
+        }
+    }
+
+    private void maintenance() {
+        CacheNode<K, V> candidate = this.evictFromWindow();
+        this.evictFromMain(candidate);
+    }
+
+    /**
+     * protected 超出容量时，把最久未访问的条目降级到 probation 尾部
+     */
+    private void demoteFromProtected() {
+        while (protectedWeight > protectedMaximum) {
+            CacheNode<K, V> node = protect.head;
+            if (node == null) {
+                return;
+            }
+            protect.remove(node);
+            protectedWeight -= node.weight;
+            node.queue = PROBATION;
+            probation.addLast(node);
+        }
+    }
+
+    /**
+     * window 超出容量时，把最久未访问的条目移到 probation 尾部作为 candidate
+     *
+     * @return 第一个 candidate，其后的条目都是本次移入的
+     */
+    private CacheNode<K, V> evictFromWindow() {
+        CacheNode<K, V> first = null;
+        while (windowWeight > windowMaximum) {
+            CacheNode<K, V> node = window.head;
+            if (node == null) {
+                break;
+            }
+            window.remove(node);
+            windowWeight -= node.weight;
+            node.queue = PROBATION;
+            probation.addLast(node);
+            if (first == null) {
+                first = node;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * 从 probation 头部开始依次比较 victim 和 candidate，直到总权重不超过容量，
+     * probation 为空时依次淘汰 protected 和 window 中最久未访问的条目
+     *
+     * @param candidate
+     */
+    private void evictFromMain(CacheNode<K, V> candidate) {
+        CacheNode<K, V> victim = probation.head;
+        while (weightedSize > maximum) {
+            if (victim == candidate) {
+                // 比 candidate 更早进入 probation 的条目已经淘汰完
+                victim = null;
+            }
+            if (victim == null && candidate == null) {
+                CacheNode<K, V> node = protect.head != null ? protect.head : window.head;
+                if (node == null) {
+                    return;
+                }
+                this.evict(node);
+                continue;
+            }
+            CacheNode<K, V> next;
+            if (victim == null) {
+                next = candidate.after;
+                this.evict(candidate);
+                candidate = next;
+            } else if (candidate == null) {
+                next = victim.after;
+                this.evict(victim);
+                victim = next;
+            } else if (candidate.weight > maximum || !this.admit(candidate.key, victim.key)) {
+                next = candidate.after;
+                this.evict(candidate);
+                candidate = next;
+            } else {
+                next = victim.after;
+                this.evict(victim);
+                victim = next;
+            }
+        }
+    }
+
+    /**
+     * TinyLFU 接纳策略
+     *
+     * @param candidateKey
+     * @param victimKey
+     * @return candidate 是否应该替换 victim
+     */
+    private boolean admit(K candidateKey, K victimKey) {
+        int candidateFrequency = sketch.frequency(candidateKey);
+        int victimFrequency = sketch.frequency(victimKey);
+        if (candidateFrequency > victimFrequency) {
+            return true;
+        }
+        if (candidateFrequency < ADMIT_HASHDOS_THRESHOLD) {
+            return false;
+        }
+        return (random.nextInt() & 127) == 0;
+    }
+
+    /**
+     * 按访问顺序排列的双向链表，头部为最久未访问的条目
+     */
+    private static final class AccessQueue<K, V> {
+        CacheNode<K, V> head;
+        CacheNode<K, V> tail;
+
+        void addLast(CacheNode<K, V> node) {
+            node.before = tail;
+            node.after = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.after = node;
+            }
+            tail = node;
+        }
+
+        void remove(CacheNode<K, V> node) {
+            if (node.before == null) {
+                head = node.after;
+            } else {
+                node.before.after = node.after;
+            }
+            if (node.after == null) {
+                tail = node.before;
+            } else {
+                node.after.before = node.before;
+            }
+            node.before = null;
+            node.after = null;
+        }
+
+        void moveToBack(CacheNode<K, V> node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+
+    /**
+     * 额外记录所在队列、权重和过期时间的节点
+     * @param <K>
+     * @param <V>
+     */
+    static class CacheNode<K, V> extends NodeEntry<K, V> {
+        CacheNode<K, V> before;
+        CacheNode<K, V> after;
+        int queue;
+        int weight;
+        long expireAt = Long.MAX_VALUE;
+
+        CacheNode(int hash, K key, V value, NodeEntry<K, V> next) {
+            super(hash, key, value, next);
+        }
+    }
+}
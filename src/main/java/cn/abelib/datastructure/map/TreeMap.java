@@ -1,9 +1,524 @@
 package cn.abelib.datastructure.map;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
 /**
  * @Author: abel.huang
  * @Date: 2019-02-01 01:38
  *  基于红黑树
+ *  左倾红黑树(参考算法(4th)), 插入和删除都用显式路径栈迭代实现, 不使用递归;
+ *  每个结点维护子树大小, rank、select 和 size(lo, hi) 都是 O(log n)
  */
-public class TreeMap {
+public class TreeMap<K extends Comparable<K>, V> implements Map<K, V> {
+    private static final boolean RED = true;
+    private static final boolean BLACK = false;
+    private Node<K, V> root;
+    /**
+     * 插入和删除时记录从根到当前结点的路径, 左倾红黑树高度不超过 2lg(n + 1)
+     */
+    private Node<K, V>[] path;
+
+    @SuppressWarnings("unchecked")
+    public TreeMap() {
+        this.root = null;
+        this.path = (Node<K, V>[]) new Node[16];
+    }
+
+    private static class Node<K, V> {
+        private K key;
+        private V value;
+        private Node<K, V> left;
+        private Node<K, V> right;
+        private int size;
+        private boolean color;
+
+        private Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+            this.size = 1;
+            this.color = RED;
+        }
+    }
+
+    private static boolean isRed(Node<?, ?> node) {
+        return node != null && node.color == RED;
+    }
+
+    private static int size(Node<?, ?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static <K, V> Node<K, V> rotateLeft(Node<K, V> node) {
+        Node<K, V> sub = node.right;
+        node.right = sub.left;
+        sub.left = node;
+        sub.color = node.color;
+        node.color = RED;
+        sub.size = node.size;
+        node.size = 1 + size(node.left) + size(node.right);
+        return sub;
+    }
+
+    private static <K, V> Node<K, V> rotateRight(Node<K, V> node) {
+        Node<K, V> sub = node.left;
+        node.left = sub.right;
+        sub.right = node;
+        sub.color = node.color;
+        node.color = RED;
+        sub.size = node.size;
+        node.size = 1 + size(node.left) + size(node.right);
+        return sub;
+    }
+
+    /**
+     * 结点和两个孩子同时翻转颜色, 插入时拆分 4-结点, 删除时合并 2-结点
+     */
+    private static void flipColors(Node<?, ?> node) {
+        node.color = !node.color;
+        node.left.color = !node.left.color;
+        node.right.color = !node.right.color;
+    }
+
+    /**
+     * 假设 node 为红色且 node.left 和 node.left.left 都是黑色, 将 node.left 或其孩子变红
+     */
+    private static <K, V> Node<K, V> moveRedLeft(Node<K, V> node) {
+        flipColors(node);
+        if (isRed(node.right.left)) {
+            node.right = rotateRight(node.right);
+            node = rotateLeft(node);
+            flipColors(node);
+        }
+        return node;
+    }
+
+    /**
+     * 假设 node 为红色且 node.right 和 node.right.left 都是黑色, 将 node.right 或其孩子变红
+     */
+    private static <K, V> Node<K, V> moveRedRight(Node<K, V> node) {
+        flipColors(node);
+        if (isRed(node.left.left)) {
+            node = rotateRight(node);
+            flipColors(node);
+        }
+        return node;
+    }
+
+    /**
+     * 恢复左倾红黑树的性质并重新计算子树大小
+     */
+    private static <K, V> Node<K, V> balance(Node<K, V> node) {
+        if (isRed(node.right) && !isRed(node.left)) {
+            node = rotateLeft(node);
+        }
+        if (isRed(node.left) && isRed(node.left.left)) {
+            node = rotateRight(node);
+        }
+        if (isRed(node.left) && isRed(node.right)) {
+            flipColors(node);
+        }
+        node.size = 1 + size(node.left) + size(node.right);
+        return node;
+    }
+
+    private void checkKey(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key can not be null");
+        }
+    }
+
+    private void ensurePathCapacity(int depth) {
+        if (depth == path.length) {
+            path = Arrays.copyOf(path, depth * 2);
+        }
+    }
+
+    /**
+     * 把 parent 指向 old 的孩子指针改为 now, parent 为空时替换根结点
+     */
+    private void replace(Node<K, V> parent, Node<K, V> old, Node<K, V> now) {
+        if (parent == null) {
+            root = now;
+        } else if (parent.left == old) {
+            parent.left = now;
+        } else {
+            parent.right = now;
+        }
+    }
+
+    /**
+     * 自底向上修复路径上的结点
+     */
+    private void fixUp(int depth) {
+        for (int i = depth - 1; i >= 0; i--) {
+            Node<K, V> node = path[i];
+            replace(i == 0 ? null : path[i - 1], node, balance(node));
+            path[i] = null;
+        }
+        root.color = BLACK;
+    }
+
+    private Node<K, V> node(K key) {
+        checkKey(key);
+        Node<K, V> node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp < 0) {
+                node = node.left;
+            } else if (cmp > 0) {
+                node = node.right;
+            } else {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * key 已存在时更新其值
+     * @param key
+     * @param value
+     * @return 是否新增了映射
+     */
+    @Override
+    public boolean put(K key, V value) {
+        checkKey(key);
+        int depth = 0;
+        Node<K, V> node = root;
+        int cmp = 0;
+        while (node != null) {
+            cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                node.value = value;
+                Arrays.fill(path, 0, depth, null);
+                return false;
+            }
+            ensurePathCapacity(depth);
+            path[depth++] = node;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        Node<K, V> created = new Node<>(key, value);
+        if (depth == 0) {
+            root = created;
+        } else if (cmp < 0) {
+            path[depth - 1].left = created;
+        } else {
+            path[depth - 1].right = created;
+        }
+        fixUp(depth);
+        return true;
+    }
+
+    @Override
+    public boolean contains(K key) {
+        return node(key) != null;
+    }
+
+    @Override
+    public V get(K key) {
+        Node<K, V> node = node(key);
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * 仅当 key 存在时更新其值
+     * @param key
+     * @param value
+     */
+    @Override
+    public void set(K key, V value) {
+        Node<K, V> node = node(key);
+        if (node != null) {
+            node.value = value;
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    @Override
+    public V remove(K key) {
+        Node<K, V> target = node(key);
+        if (target == null) {
+            return null;
+        }
+        V value = target.value;
+        delete(key);
+        return value;
+    }
+
+    /**
+     * 自顶向下删除, 沿途保证当前结点不是 2-结点, 最后自底向上修复; key 必须存在
+     */
+    private void delete(K key) {
+        if (!isRed(root.left) && !isRed(root.right)) {
+            root.color = RED;
+        }
+        int depth = 0;
+        Node<K, V> node = root;
+        while (true) {
+            Node<K, V> parent = depth == 0 ? null : path[depth - 1];
+            int cmp = key.compareTo(node.key);
+            if (cmp < 0) {
+                if (!isRed(node.left) && !isRed(node.left.left)) {
+                    Node<K, V> moved = moveRedLeft(node);
+                    replace(parent, node, moved);
+                    node = moved;
+                }
+                ensurePathCapacity(depth);
+                path[depth++] = node;
+                node = node.left;
+                continue;
+            }
+            if (isRed(node.left)) {
+                Node<K, V> rotated = rotateRight(node);
+                replace(parent, node, rotated);
+                node = rotated;
+                cmp = key.compareTo(node.key);
+            }
+            if (cmp == 0 && node.right == null) {
+                replace(parent, node, null);
+                break;
+            }
+            if (!isRed(node.right) && !isRed(node.right.left)) {
+                Node<K, V> moved = moveRedRight(node);
+                replace(parent, node, moved);
+                node = moved;
+                cmp = key.compareTo(node.key);
+            }
+            if (cmp == 0) {
+                // 用后继替换当前结点, 转而删除右子树中的最小结点
+                Node<K, V> successor = node.right;
+                while (successor.left != null) {
+                    successor = successor.left;
+                }
+                node.key = successor.key;
+                node.value = successor.value;
+                key = successor.key;
+            }
+            ensurePathCapacity(depth);
+            path[depth++] = node;
+            node = node.right;
+        }
+        if (depth == 0) {
+            return;
+        }
+        fixUp(depth);
+    }
+
+    public K min() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        Node<K, V> node = root;
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node.key;
+    }
+
+    public K max() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        Node<K, V> node = root;
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node.key;
+    }
+
+    public void delMin() {
+        delete(min());
+    }
+
+    public void delMax() {
+        delete(max());
+    }
+
+    /**
+     * 小于等于 key 的最大键, 不存在时返回 null
+     */
+    public K floor(K key) {
+        checkKey(key);
+        Node<K, V> node = root;
+        K result = null;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                return node.key;
+            }
+            if (cmp < 0) {
+                node = node.left;
+            } else {
+                result = node.key;
+                node = node.right;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 大于等于 key 的最小键, 不存在时返回 null
+     */
+    public K ceiling(K key) {
+        checkKey(key);
+        Node<K, V> node = root;
+        K result = null;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                return node.key;
+            }
+            if (cmp > 0) {
+                node = node.right;
+            } else {
+                result = node.key;
+                node = node.left;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 小于 key 的键的数量
+     */
+    public int rank(K key) {
+        checkKey(key);
+        Node<K, V> node = root;
+        int rank = 0;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp < 0) {
+                node = node.left;
+            } else if (cmp > 0) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return rank + size(node.left);
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * 排名为 index 的键, 即第 index + 1 小的键
+     */
+    public K select(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IllegalArgumentException("Index out of range: " + index);
+        }
+        Node<K, V> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node.key;
+            }
+        }
+    }
+
+    /**
+     * [low, high] 内的键的数量
+     */
+    public int size(K low, K high) {
+        checkKey(low);
+        checkKey(high);
+        if (low.compareTo(high) > 0) {
+            return 0;
+        }
+        return rank(high) - rank(low) + (contains(high) ? 1 : 0);
+    }
+
+    /**
+     * [low, high] 内的所有键, 按升序排列
+     */
+    @SuppressWarnings("unchecked")
+    public List<K> keys(K low, K high) {
+        checkKey(low);
+        checkKey(high);
+        List<K> keys = new ArrayList<>();
+        if (low.compareTo(high) > 0) {
+            return keys;
+        }
+        // 中序遍历, 只进入可能与区间相交的子树
+        Node<K, V>[] stack = (Node<K, V>[]) new Node[16];
+        int top = 0;
+        Node<K, V> node = root;
+        while (node != null || top > 0) {
+            while (node != null) {
+                if (low.compareTo(node.key) <= 0) {
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top++] = node;
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+            if (top == 0) {
+                break;
+            }
+            node = stack[--top];
+            if (high.compareTo(node.key) < 0) {
+                break;
+            }
+            keys.add(node.key);
+            node = node.right;
+        }
+        return keys;
+    }
+
+    public List<K> keys() {
+        if (isEmpty()) {
+            return new ArrayList<>();
+        }
+        return keys(min(), max());
+    }
+
+    /**
+     * 树的高度, 空树为 0, 需要遍历整棵树, O(n)
+     */
+    public int height() {
+        if (root == null) {
+            return 0;
+        }
+        int height = 0;
+        List<Node<K, V>> level = new ArrayList<>();
+        level.add(root);
+        while (!level.isEmpty()) {
+            height++;
+            List<Node<K, V>> next = new ArrayList<>();
+            for (Node<K, V> node : level) {
+                if (node.left != null) {
+                    next.add(node.left);
+                }
+                if (node.right != null) {
+                    next.add(node.right);
+                }
+            }
+            level = next;
+        }
+        return height;
+    }
+
+    @Override
+    public String toString() {
+        return "TreeMap{size=" + size() + "}";
+    }
 }
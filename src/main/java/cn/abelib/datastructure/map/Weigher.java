@@ -0,0 +1,17 @@
+package cn.abelib.datastructure.map;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ * 计算缓存条目的权重，例如估算的字节数
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+
+    /**
+     * @param key
+     * @param value
+     * @return 非负的权重
+     */
+    int weigh(K key, V value);
+}
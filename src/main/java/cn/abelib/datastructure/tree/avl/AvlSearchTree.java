@@ -1,8 +1,587 @@
 package cn.abelib.datastructure.tree.avl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
 /**
  * @Author: abel.huang
  * @Date: 2019-02-01 01:36
+ *  AVL 查找树, 左右子树高度差不超过 1, 树高不超过 1.44lg(n + 2), 比红黑树更矮, 适合读多写少的场景
+ *  结点没有父指针, 插入和删除用显式路径栈迭代实现, 子树高度不再变化时提前结束回溯;
+ *  高度用 byte 存储
+ *  并、交、差基于 join/split 实现, 工作量 O(m log(n / m + 1)), 左右两半在 ForkJoinPool 上并行
  */
-public class AvlSearchTree {
+public class AvlSearchTree<K extends Comparable<K>, V> {
+    /**
+     * 两棵子树都不低于该高度时才 fork 子任务, 更小的子问题串行执行
+     */
+    private static final int PARALLEL_HEIGHT = 12;
+    private Node<K, V> root;
+    private int size;
+    /**
+     * 插入和删除时记录从根到当前结点的路径, 长度至少为树高
+     */
+    private Node<K, V>[] path;
+
+    @SuppressWarnings("unchecked")
+    public AvlSearchTree() {
+        this.root = null;
+        this.size = 0;
+        this.path = (Node<K, V>[]) new Node[16];
+    }
+
+    private static class Node<K, V> {
+        private K key;
+        private V value;
+        private Node<K, V> left;
+        private Node<K, V> right;
+        private byte height;
+
+        private Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+            this.height = 1;
+        }
+    }
+
+    private static int height(Node<?, ?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static void updateHeight(Node<?, ?> node) {
+        node.height = (byte) (Math.max(height(node.left), height(node.right)) + 1);
+    }
+
+    private static <K, V> Node<K, V> rotateLeft(Node<K, V> node) {
+        Node<K, V> sub = node.right;
+        node.right = sub.left;
+        sub.left = node;
+        updateHeight(node);
+        updateHeight(sub);
+        return sub;
+    }
+
+    private static <K, V> Node<K, V> rotateRight(Node<K, V> node) {
+        Node<K, V> sub = node.left;
+        node.left = sub.right;
+        sub.right = node;
+        updateHeight(node);
+        updateHeight(sub);
+        return sub;
+    }
+
+    /**
+     * 更新高度, 平衡因子超过 1 时做单旋或双旋, 返回子树新的根
+     */
+    private static <K, V> Node<K, V> rebalance(Node<K, V> node) {
+        int factor = height(node.left) - height(node.right);
+        if (factor > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (factor < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        updateHeight(node);
+        return node;
+    }
+
+    private void checkKey(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key can not be null");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void ensurePathCapacity() {
+        if (path.length <= height(root)) {
+            path = (Node<K, V>[]) new Node[height(root) * 2];
+        }
+    }
+
+    /**
+     * 把 parent 指向 old 的孩子指针改为 now, parent 为空时替换根结点
+     */
+    private void replace(Node<K, V> parent, Node<K, V> old, Node<K, V> now) {
+        if (parent == null) {
+            root = now;
+        } else if (parent.left == old) {
+            parent.left = now;
+        } else {
+            parent.right = now;
+        }
+    }
+
+    /**
+     * 自底向上重新平衡路径上的结点, 某个子树高度不变时上面的结点都不受影响
+     */
+    private void fixUp(int depth) {
+        int i = depth - 1;
+        for (; i >= 0; i--) {
+            Node<K, V> node = path[i];
+            int oldHeight = node.height;
+            Node<K, V> balanced = rebalance(node);
+            if (balanced != node) {
+                replace(i == 0 ? null : path[i - 1], node, balanced);
+            }
+            if (balanced.height == oldHeight) {
+                break;
+            }
+        }
+        Arrays.fill(path, 0, depth, null);
+    }
+
+    private Node<K, V> node(K key) {
+        checkKey(key);
+        Node<K, V> node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp < 0) {
+                node = node.left;
+            } else if (cmp > 0) {
+                node = node.right;
+            } else {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 插入或更新
+     * @param key
+     * @param value
+     * @return 旧值, 不存在时返回 null
+     */
+    public V put(K key, V value) {
+        checkKey(key);
+        ensurePathCapacity();
+        int depth = 0;
+        Node<K, V> node = root;
+        int cmp = 0;
+        while (node != null) {
+            cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                V old = node.value;
+                node.value = value;
+                Arrays.fill(path, 0, depth, null);
+                return old;
+            }
+            path[depth++] = node;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        Node<K, V> created = new Node<>(key, value);
+        if (depth == 0) {
+            root = created;
+        } else if (cmp < 0) {
+            path[depth - 1].left = created;
+        } else {
+            path[depth - 1].right = created;
+        }
+        size++;
+        fixUp(depth);
+        return null;
+    }
+
+    public V get(K key) {
+        Node<K, V> node = node(key);
+        return node == null ? null : node.value;
+    }
+
+    public boolean containsKey(K key) {
+        return node(key) != null;
+    }
+
+    /**
+     * 删除
+     * @param key
+     * @return 被删除的值, 不存在时返回 null
+     */
+    public V remove(K key) {
+        checkKey(key);
+        ensurePathCapacity();
+        int depth = 0;
+        Node<K, V> node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                break;
+            }
+            path[depth++] = node;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        if (node == null) {
+            Arrays.fill(path, 0, depth, null);
+            return null;
+        }
+        V old = node.value;
+        if (node.left != null && node.right != null) {
+            // 用后继的内容覆盖当前结点, 转而删除后继
+            Node<K, V> target = node;
+            path[depth++] = node;
+            node = node.right;
+            while (node.left != null) {
+                path[depth++] = node;
+                node = node.left;
+            }
+            target.key = node.key;
+            target.value = node.value;
+        }
+        replace(depth == 0 ? null : path[depth - 1], node, node.left != null ? node.left : node.right);
+        size--;
+        fixUp(depth);
+        return old;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 树的高度, 空树为 0
+     */
+    public int height() {
+        return height(root);
+    }
+
+    public K min() {
+        if (root == null) {
+            throw new NoSuchElementException();
+        }
+        Node<K, V> node = root;
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node.key;
+    }
+
+    public K max() {
+        if (root == null) {
+            throw new NoSuchElementException();
+        }
+        Node<K, V> node = root;
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node.key;
+    }
+
+    /**
+     * 小于等于 key 的最大键, 不存在时返回 null
+     */
+    public K floor(K key) {
+        checkKey(key);
+        Node<K, V> node = root;
+        K result = null;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                return node.key;
+            }
+            if (cmp < 0) {
+                node = node.left;
+            } else {
+                result = node.key;
+                node = node.right;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 大于等于 key 的最小键, 不存在时返回 null
+     */
+    public K ceiling(K key) {
+        checkKey(key);
+        Node<K, V> node = root;
+        K result = null;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                return node.key;
+            }
+            if (cmp > 0) {
+                node = node.right;
+            } else {
+                result = node.key;
+                node = node.left;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按升序返回所有键
+     */
+    @SuppressWarnings("unchecked")
+    public List<K> keys() {
+        List<K> keys = new ArrayList<>(size);
+        Node<K, V>[] stack = (Node<K, V>[]) new Node[height(root) + 1];
+        int top = 0;
+        Node<K, V> node = root;
+        while (node != null || top > 0) {
+            while (node != null) {
+                stack[top++] = node;
+                node = node.left;
+            }
+            node = stack[--top];
+            keys.add(node.key);
+            node = node.right;
+        }
+        return keys;
+    }
+
+    /**
+     * 并集, 两棵树都有的 key 取 other 中的值; 直接复用两棵树的结点, 完成后 other 被清空
+     * @param other
+     */
+    public void union(AvlSearchTree<K, V> other) {
+        setOperation(other, Operation.UNION);
+    }
+
+    /**
+     * 交集, 保留本树中的值; 完成后 other 被清空
+     * @param other
+     */
+    public void intersect(AvlSearchTree<K, V> other) {
+        setOperation(other, Operation.INTERSECT);
+    }
+
+    /**
+     * 差集, 删除本树中所有在 other 中出现的 key; 完成后 other 被清空
+     * @param other
+     */
+    public void difference(AvlSearchTree<K, V> other) {
+        setOperation(other, Operation.DIFFERENCE);
+    }
+
+    private void setOperation(AvlSearchTree<K, V> other, Operation operation) {
+        if (other == null) {
+            throw new IllegalArgumentException("Tree can not be null");
+        }
+        if (other == this) {
+            if (operation == Operation.DIFFERENCE) {
+                clear();
+            }
+            return;
+        }
+        SetTask<K, V> task = new SetTask<>(operation, root, other.root);
+        if (Math.min(height(root), height(other.root)) >= PARALLEL_HEIGHT) {
+            root = ForkJoinPool.commonPool().invoke(task);
+        } else {
+            root = task.compute();
+        }
+        if (operation == Operation.UNION) {
+            size = size + other.size - task.common;
+        } else if (operation == Operation.INTERSECT) {
+            size = task.common;
+        } else {
+            size = size - task.common;
+        }
+        other.clear();
+    }
+
+    private enum Operation {
+        UNION, INTERSECT, DIFFERENCE
+    }
+
+    /**
+     * 以 t1 的根切分 t2, 左右两半递归求解后再用根结点 join 起来
+     */
+    private static final class SetTask<K extends Comparable<K>, V> extends RecursiveTask<Node<K, V>> {
+        private static final long serialVersionUID = 1L;
+        private final Operation operation;
+        private final Node<K, V> t1;
+        private final Node<K, V> t2;
+        /**
+         * 两棵树共有的 key 的数量
+         */
+        private int common;
+
+        private SetTask(Operation operation, Node<K, V> t1, Node<K, V> t2) {
+            this.operation = operation;
+            this.t1 = t1;
+            this.t2 = t2;
+        }
+
+        @Override
+        protected Node<K, V> compute() {
+            return run(t1, t2);
+        }
+
+        private Node<K, V> run(Node<K, V> t1, Node<K, V> t2) {
+            if (t1 == null) {
+                return operation == Operation.UNION ? t2 : null;
+            }
+            if (t2 == null) {
+                return operation == Operation.INTERSECT ? null : t1;
+            }
+            boolean parallel = Math.min(height(t1), height(t2)) >= PARALLEL_HEIGHT;
+            Node<K, V> l1 = t1.left;
+            Node<K, V> r1 = t1.right;
+            Split<K, V> split = new Split<>();
+            split(t2, t1.key, split);
+            boolean matched = split.match != null;
+            if (matched) {
+                common++;
+                if (operation == Operation.UNION) {
+                    t1.value = split.match.value;
+                }
+            }
+            Node<K, V> left;
+            Node<K, V> right;
+            if (parallel) {
+                SetTask<K, V> task = new SetTask<>(operation, l1, split.left);
+                task.fork();
+                right = run(r1, split.right);
+                left = task.join();
+                common += task.common;
+            } else {
+                left = run(l1, split.left);
+                right = run(r1, split.right);
+            }
+            if (operation == Operation.UNION || (operation == Operation.INTERSECT) == matched) {
+                return AvlSearchTree.join(left, t1, right);
+            }
+            return join2(left, right);
+        }
+    }
+
+    /**
+     * split 的结果: 小于 key 的子树、等于 key 的结点和大于 key 的子树
+     */
+    private static final class Split<K, V> {
+        private Node<K, V> left;
+        private Node<K, V> match;
+        private Node<K, V> right;
+    }
+
+    private static <K, V> Node<K, V> link(Node<K, V> left, Node<K, V> middle, Node<K, V> right) {
+        middle.left = left;
+        middle.right = right;
+        updateHeight(middle);
+        return middle;
+    }
+
+    /**
+     * 以 middle 为根连接 left 和 right, left 中的 key 都小于 middle, right 中的都大于 middle, O(|h(left) - h(right)|)
+     */
+    private static <K, V> Node<K, V> join(Node<K, V> left, Node<K, V> middle, Node<K, V> right) {
+        if (height(left) > height(right) + 1) {
+            return joinRight(left, middle, right);
+        }
+        if (height(right) > height(left) + 1) {
+            return joinLeft(left, middle, right);
+        }
+        return link(left, middle, right);
+    }
+
+    /**
+     * left 更高, 沿 left 的右脊下降到高度与 right 相差不超过 1 的位置再连接
+     */
+    private static <K, V> Node<K, V> joinRight(Node<K, V> left, Node<K, V> middle, Node<K, V> right) {
+        Node<K, V> inner = left.right;
+        if (height(inner) <= height(right) + 1) {
+            Node<K, V> joined = link(inner, middle, right);
+            if (height(joined) <= height(left.left) + 1) {
+                return link(left.left, left, joined);
+            }
+            return rotateLeft(link(left.left, left, rotateRight(joined)));
+        }
+        Node<K, V> joined = joinRight(inner, middle, right);
+        link(left.left, left, joined);
+        if (height(joined) <= height(left.left) + 1) {
+            return left;
+        }
+        return rotateLeft(left);
+    }
+
+    private static <K, V> Node<K, V> joinLeft(Node<K, V> left, Node<K, V> middle, Node<K, V> right) {
+        Node<K, V> inner = right.left;
+        if (height(inner) <= height(left) + 1) {
+            Node<K, V> joined = link(left, middle, inner);
+            if (height(joined) <= height(right.right) + 1) {
+                return link(joined, right, right.right);
+            }
+            return rotateRight(link(rotateLeft(joined), right, right.right));
+        }
+        Node<K, V> joined = joinLeft(left, middle, inner);
+        link(joined, right, right.right);
+        if (height(joined) <= height(right.right) + 1) {
+            return right;
+        }
+        return rotateRight(right);
+    }
+
+    /**
+     * 连接两棵树, left 中的 key 都小于 right, 用 left 的最大结点作为根
+     */
+    private static <K, V> Node<K, V> join2(Node<K, V> left, Node<K, V> right) {
+        if (left == null) {
+            return right;
+        }
+        Split<K, V> split = new Split<>();
+        splitLast(left, split);
+        return join(split.left, split.match, right);
+    }
+
+    private static <K, V> void splitLast(Node<K, V> node, Split<K, V> split) {
+        if (node.right == null) {
+            split.left = node.left;
+            split.match = node;
+            return;
+        }
+        Node<K, V> left = node.left;
+        splitLast(node.right, split);
+        split.left = join(left, node, split.left);
+    }
+
+    /**
+     * 按 key 把树切成两半, 递归深度为树高
+     */
+    private static <K extends Comparable<K>, V> void split(Node<K, V> node, K key, Split<K, V> split) {
+        if (node == null) {
+            split.left = null;
+            split.match = null;
+            split.right = null;
+            return;
+        }
+        Node<K, V> left = node.left;
+        Node<K, V> right = node.right;
+        int cmp = key.compareTo(node.key);
+        if (cmp == 0) {
+            split.left = left;
+            split.match = node;
+            split.right = right;
+        } else if (cmp < 0) {
+            split(left, key, split);
+            split.right = join(split.right, node, right);
+        } else {
+            split(right, key, split);
+            split.left = join(left, node, split.left);
+        }
+    }
+
+    public void clear() {
+        root = null;
+        size = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "AvlSearchTree{size=" + size + ", height=" + height() + "}";
+    }
 }
@@ -1,27 +1,69 @@
 package cn.abelib.datastructure.tree.bpt;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Objects;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 
 /**
  * @author abel-huang
  * @date 2017/11/2
  * B+树的简单实现
+ * 节点使用固定容量的数组保存 key、value 和子节点，节点内使用二分查找，插入删除时原地移动数组元素，
+ * 只有分裂时才会分配新节点。查找和插入过程中记录的路径也保存在复用的数组中，所以非线程安全。
+ * 每个 key 只对应一个 value，重复插入时替换旧值。
+ * long 类型的 key 见 {@link LongBalancePlusTree}
  */
-public class BalancePlusTree {
+public class BalancePlusTree<K, V> implements Iterable<KeyValue<K, V>> {
     /**
      * 根节点
      */
-    private TreeNode root;
+    private TreeNode<K, V> root;
     /**
-     * B+树阶数
+     * B+树阶数，内部节点最多 degree 个子节点，每个节点最多 degree - 1 个 key
      */
-    private int degree;
+    private final int degree;
+    /**
+     * 非根节点最少的 key 个数: ceil(degree / 2) - 1
+     */
+    private final int minKeys;
+    private final Comparator<? super K> comparator;
+    /**
+     * key 的个数
+     */
+    private int size;
+    /**
+     * 树高，只有一个叶节点时为 1
+     */
+    private int height;
+    /**
+     * 下降时经过的内部节点和对应的子节点下标，用于分裂和合并时回溯
+     */
+    private TreeNode<K, V>[] pathNodes;
+    private int[] pathIndexes;
 
     public BalancePlusTree(int degree) {
+        this(degree, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public BalancePlusTree(int degree, Comparator<? super K> comparator) {
+        if (degree < 3) {
+            throw new IllegalArgumentException("Illegal degree: " + degree);
+        }
         this.degree = degree;
-        this.root = null;
+        this.minKeys = (degree + 1) / 2 - 1;
+        this.comparator = comparator == null ? (Comparator<? super K>) Comparator.naturalOrder() : comparator;
+        this.root = TreeNode.newLeaf(degree);
+        this.height = 1;
+        this.pathNodes = (TreeNode<K, V>[]) new TreeNode[4];
+        this.pathIndexes = new int[4];
     }
 
     /**
@@ -32,637 +74,1300 @@ public class BalancePlusTree {
         return this.degree;
     }
 
-    public int getCeil() {
-        return (int) Math.ceil(getDegree() / 2.0);
+    public int size() {
+        return size;
     }
 
-    /**
-     * 返回根节点
-     * @return
-     */
-    public TreeNode getRoot() {
-        return this.root;
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int height() {
+        return height;
     }
 
+    TreeNode<K, V> getRoot() {
+        return root;
+    }
 
     /**
-     * 对外暴露的接口
+     * 插入只有 key 没有 value 的记录
      * @param key
+     * @return key 之前不存在时返回 true
      */
-    public void insert(String key) {
-        insert(new KeyValue(key, null));
+    public boolean insert(K key) {
+        return insert(key, null);
     }
 
     /**
-     * 对外暴露的接口
+     * 插入 key，如果 key 已经存在则替换 value
      * @param key
      * @param value
+     * @return key 之前不存在时返回 true
      */
-    public void insert(String key, Object value) {
-        insert(new KeyValue(key, value));
+    public boolean insert(K key, V value) {
+        checkKey(key);
+        TreeNode<K, V> leaf = descend(key);
+        int i = indexOf(leaf, key);
+        if (i >= 0) {
+            leaf.values[i] = value;
+            return false;
+        }
+        i = -i - 1;
+        insertAt(leaf.keys, i, key, leaf.size);
+        insertAt(leaf.values, i, value, leaf.size);
+        leaf.size++;
+        size++;
+        if (leaf.size == degree) {
+            splitLeaf(leaf);
+        }
+        return true;
     }
 
     /**
-     * 对外暴露的接口
+     * 查找 key 对应的 value，不存在时返回 null
      * @param key
-     * @param values
+     * @return
      */
-    public void insert(String key, List<Object> values) {
-        insert(new KeyValue(key, values));
+    public V search(K key) {
+        checkKey(key);
+        TreeNode<K, V> leaf = findLeaf(key);
+        int i = indexOf(leaf, key);
+        return i >= 0 ? leaf.value(i) : null;
+    }
+
+    public boolean contains(K key) {
+        checkKey(key);
+        return indexOf(findLeaf(key), key) >= 0;
     }
 
     /**
-     * 插入操作
-     * @param entry
+     * 只更新已经存在的 key
+     * @param key
+     * @param value
+     * @return key 存在时返回 true
      */
-    private void insert(KeyValue entry) {
-        // 插入空B+树，此时根节点也为空
-        if (getRoot() == null) {
-            TreeNode node = new TreeNode();
-            node.getKeyValues().add(entry);
-            this.root = node;
-            // 根节点没有父节点
-            this.root.setParentNode(null);
-        }
-        // 只有一个非空节点的B+树，此时仅有一个节点即根节点
-        else if (getRoot().getChildren().isEmpty() && getRoot().getKeyValues().size() < (getDegree() - 1)) {
-            insert(entry, getRoot());
+    public boolean update(K key, V value) {
+        checkKey(key);
+        TreeNode<K, V> leaf = findLeaf(key);
+        int i = indexOf(leaf, key);
+        if (i < 0) {
+            return false;
         }
-        // 常规场景
-        else {
-            TreeNode curr = getRoot();
-            while (!curr.getChildren().isEmpty()) {
-                curr = curr.getChildren().get(binarySearchInternalNode(entry, curr.getKeyValues()));
-            }
-            insert(entry, curr);
-            // 如果超过阈值需要进行节点分裂
-            if (curr.getKeyValues().size() == getDegree()) {
-                split(curr);
-            }
+        leaf.values[i] = value;
+        return true;
+    }
+
+    /**
+     * 范围查找，返回 [from, to] 闭区间内的键值对
+     * @param from
+     * @param to
+     * @return
+     */
+    public List<KeyValue<K, V>> scan(K from, K to) {
+        return scan(from, to, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 范围查找，跳过前 offset 个之后最多返回 limit 个键值对
+     * @param from
+     * @param to
+     * @param offset
+     * @param limit
+     * @return
+     */
+    public List<KeyValue<K, V>> scan(K from, K to, int offset, int limit) {
+        Iterator<KeyValue<K, V>> iterator = iterator(from, to, offset, limit);
+        List<KeyValue<K, V>> result = new ArrayList<>(Math.min(limit, 16));
+        while (iterator.hasNext()) {
+            result.add(iterator.next());
         }
+        return result;
     }
 
     /**
-     * 进行节点的分裂
-     * @param node
+     * 按顺序遍历所有键值对的迭代器，遍历期间不能修改B+树
+     * @return
+     */
+    @Override
+    public Iterator<KeyValue<K, V>> iterator() {
+        return new ScanIterator(firstLeaf(), 0, null, null, Integer.MAX_VALUE);
+    }
+
+    public Iterator<KeyValue<K, V>> iterator(K from, K to) {
+        return iterator(from, to, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * [from, to] 闭区间的迭代器，沿着 nextNode 按需读取叶节点，不会物化整个结果。
+     * offset 在叶节点上按 size 整块跳过，不需要逐个访问
+     * @param from
+     * @param to
+     * @param offset 跳过的键值对个数
+     * @param limit 最多返回的键值对个数
+     * @return
      */
-    private void split(TreeNode node) {
-        int mid = getDegree() / 2;
-        TreeNode middleNode = new TreeNode();
-        TreeNode rightNode = new TreeNode();
+    public Iterator<KeyValue<K, V>> iterator(K from, K to, int offset, int limit) {
+        checkKey(from);
+        checkKey(to);
+        checkRange(offset, limit);
+        if (comparator.compare(from, to) > 0) {
+            return new ScanIterator(null, 0, to, null, 0);
+        }
+        TreeNode<K, V> leaf = findLeaf(from);
+        int i = indexOf(leaf, from);
+        ScanIterator iterator = new ScanIterator(leaf, i >= 0 ? i : -i - 1, to, null, limit);
+        iterator.skip(offset);
+        return iterator;
+    }
 
-        // 分裂后的右边节点
-        rightNode.setKeyValues(new ArrayList<>(node.getKeyValues().subList(mid, node.getKeyValues().size())));
-        rightNode.setParentNode(middleNode);
+    public Iterator<KeyValue<K, V>> descendingIterator(K from, K to) {
+        return descendingIterator(from, to, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * [from, to] 闭区间从大到小的迭代器，从 to 所在的叶节点沿着 prevNode 向前遍历
+     * @param from
+     * @param to
+     * @param offset 从 to 一端跳过的键值对个数
+     * @param limit 最多返回的键值对个数
+     * @return
+     */
+    public Iterator<KeyValue<K, V>> descendingIterator(K from, K to, int offset, int limit) {
+        checkKey(from);
+        checkKey(to);
+        checkRange(offset, limit);
+        if (comparator.compare(from, to) > 0) {
+            return new DescendingIterator(null, 0, from, 0);
+        }
+        TreeNode<K, V> leaf = findLeaf(to);
+        int i = indexOf(leaf, to);
+        DescendingIterator iterator = new DescendingIterator(leaf, i >= 0 ? i : -i - 2, from, limit);
+        iterator.skip(offset);
+        return iterator;
+    }
 
-        // 分裂后的中间节点
-        middleNode.getKeyValues().add(new KeyValue(node.getKeyValues().get(mid)));
-        middleNode.getChildren().add(rightNode);
+    /**
+     * 所有键值对的 Spliterator，按内部节点的子树划分，可以用于并行流
+     * @return
+     */
+    @Override
+    public Spliterator<KeyValue<K, V>> spliterator() {
+        return new RangeSpliterator(null, null);
+    }
 
-        // 分裂之前的原始节点, 即分裂后左边的部分
-        node.setKeyValues(new ArrayList<>(node.getKeyValues().subList(0, mid)));
+    /**
+     * [from, to] 闭区间的 Spliterator
+     * @param from
+     * @param to
+     * @return
+     */
+    public Spliterator<KeyValue<K, V>> spliterator(K from, K to) {
+        checkKey(from);
+        checkKey(to);
+        if (comparator.compare(from, to) > 0) {
+            return Spliterators.emptySpliterator();
+        }
+        return new RangeSpliterator(from, to);
+    }
 
-        split(node.getParentNode(), node, middleNode, true);
+    /**
+     * 删除 key
+     * @param key
+     * @return key 存在时返回 true
+     */
+    public boolean delete(K key) {
+        checkKey(key);
+        TreeNode<K, V> leaf = descend(key);
+        int i = indexOf(leaf, key);
+        if (i < 0) {
+            return false;
+        }
+        removeAt(leaf.keys, i, leaf.size);
+        removeAt(leaf.values, i, leaf.size);
+        leaf.size--;
+        size--;
+        if (leaf.size < minKeys && height > 1) {
+            rebalanceLeaf(leaf, height - 2);
+        }
+        return true;
     }
 
     /**
-     *
-     * @param curr 当前结点
-     * @param prev 当前结点的子节点(实际上前驱节点)
-     * @param insertingNode
-     * @param first
+     * 批量查找，返回的 value 和 keys 的顺序一一对应，不存在的 key 对应 null。
+     * keys 先按顺序排列(已经有序时不排序)，相邻的 key 共享下降路径:
+     * 只回退到还能包含下一个 key 的最低祖先再下降，落在同一个叶节点中的 key 在一次访问中处理完
+     * @param keys
+     * @return
      */
-    private void split(TreeNode curr, TreeNode prev, TreeNode insertingNode, boolean first) {
-        if (curr == null) {
-            this.root = insertingNode;
-            int indexForPrev = binarySearchInternalNode(prev.getKeyValues().get(0), insertingNode.getKeyValues());
-            // 设置 insertingNode 父子节点关系
-            prev.setParentNode(insertingNode);
-            insertingNode.getChildren().add(indexForPrev, prev);
-            if (first) {
-                if (indexForPrev == 0) {
-                    insertingNode.getChildren().get(0).setNextNode(insertingNode.getChildren().get(1));
-                    insertingNode.getChildren().get(1).setPrevNode(insertingNode.getChildren().get(0));
+    public List<V> multiGet(List<? extends K> keys) {
+        int n = keys.size();
+        Object[] sorted = new Object[n];
+        int[] order = sortedOrder(n, keys::get);
+        for (int i = 0; i < n; i++) {
+            sorted[i] = keys.get(order[i]);
+            checkKey(key(sorted, i));
+        }
+        Object[] values = new Object[n];
+        TreeNode<K, V> leaf = null;
+        int i = 0;
+        while (i < n) {
+            leaf = seek(key(sorted, i), leaf);
+            int end = runEnd(sorted, i, n);
+            int from = 0;
+            for (; i < end; i++) {
+                int j = indexOf(leaf, key(sorted, i), from);
+                if (j >= 0) {
+                    values[order[i]] = leaf.values[j];
+                    from = j;
                 } else {
-                    insertingNode.getChildren().get(indexForPrev - 1).setNextNode(insertingNode.getChildren().get(indexForPrev));
-                    insertingNode.getChildren().get(indexForPrev + 1).setPrevNode(insertingNode.getChildren().get(indexForPrev));
+                    from = -j - 1;
                 }
             }
         }
-        else {
-            promote(insertingNode, curr);
-            // 如果合并后的节点已经满了
-            if (curr.getKeyValues().size() == getDegree()) {
-                int mid = (int) (Math.ceil(getDegree() / 2.0) - 1);
-                TreeNode middleNode = new TreeNode();
-                TreeNode rightNode = new TreeNode();
-
-                // 分裂后的右边节点
-                rightNode.setKeyValues(new ArrayList<>((curr.getKeyValues().subList(mid + 1, curr.getKeyValues().size()))));
-                rightNode.setParentNode(middleNode);
-
-                // 分裂后的中间节点
-                middleNode.getKeyValues().add(curr.getKeyValues().get(mid));
-                middleNode.getChildren().add(rightNode);
-
-                List<TreeNode> childrenOfCurr = curr.getChildren();
-                List<TreeNode> childrenOfRight = new ArrayList<>();
-                int lastChildOfLeft = childrenOfCurr.size() - 1;
-
-                for (int i = childrenOfCurr.size() - 1; i >= 0; i --) {
-                    List<KeyValue> keyValues = childrenOfCurr.get(i).getKeyValues();
-                    if (middleNode.getKeyValues().get(0).compareTo(keyValues.get(0)) <= 0) {
-                        childrenOfCurr.get(i).setParentNode(rightNode);
-                        childrenOfRight.add(0, childrenOfCurr.get(i));
-                        lastChildOfLeft --;
-                    } else {
-                        break;
-                    }
+        List<V> result = new ArrayList<>(n);
+        for (Object value : values) {
+            @SuppressWarnings("unchecked")
+            V v = (V) value;
+            result.add(v);
+        }
+        return result;
+    }
 
+    /**
+     * 批量插入，相同的 key 以最后一个为准。落在同一个叶节点中的 key 一次归并进去，
+     * 超出容量时直接把归并结果平均分成多个叶节点，新的分隔 key 一次插入父节点，父节点溢出时同样一次分成多个
+     * @param entries
+     * @return 新插入的 key 的个数
+     */
+    public int multiInsert(List<? extends KeyValue<? extends K, ? extends V>> entries) {
+        int n = entries.size();
+        @SuppressWarnings("unchecked")
+        KeyValue<? extends K, ? extends V>[] sorted = entries.toArray(new KeyValue[n]);
+        for (KeyValue<? extends K, ? extends V> entry : sorted) {
+            checkKey(entry.getKey());
+        }
+        if (!isSorted(n, i -> sorted[i].getKey())) {
+            // 稳定排序，相同的 key 保持原来的顺序
+            Arrays.sort(sorted, (a, b) -> comparator.compare(a.getKey(), b.getKey()));
+        }
+        Object[] keys = new Object[n];
+        Object[] values = new Object[n];
+        int count = 0;
+        for (KeyValue<? extends K, ? extends V> entry : sorted) {
+            if (count > 0 && comparator.compare(key(keys, count - 1), entry.getKey()) == 0) {
+                values[count - 1] = entry.getValue();
+            } else {
+                keys[count] = entry.getKey();
+                values[count] = entry.getValue();
+                count++;
+            }
+        }
+        int inserted = 0;
+        TreeNode<K, V> leaf = null;
+        Object[] mergedKeys = new Object[degree];
+        Object[] mergedValues = new Object[degree];
+        int i = 0;
+        while (i < count) {
+            leaf = seek(key(keys, i), leaf);
+            int end = runEnd(keys, i, count);
+            int total = leaf.size + end - i;
+            if (mergedKeys.length < total) {
+                mergedKeys = new Object[total];
+                mergedValues = new Object[total];
+            }
+            // 叶节点和这一段 key 归并
+            int a = 0;
+            int m = 0;
+            for (; i < end; i++) {
+                K key = key(keys, i);
+                while (a < leaf.size && comparator.compare(leaf.key(a), key) < 0) {
+                    mergedKeys[m] = leaf.keys[a];
+                    mergedValues[m++] = leaf.values[a++];
                 }
-                rightNode.setChildren(childrenOfRight);
-
-                curr.getChildren().subList(lastChildOfLeft + 1, childrenOfCurr.size()).clear();
-                curr.getKeyValues().subList(mid, curr.getKeyValues().size()).clear();
-
-                split(curr.getParentNode(), curr, middleNode, false);
+                mergedKeys[m] = key;
+                mergedValues[m++] = values[i];
+                if (a < leaf.size && comparator.compare(leaf.key(a), key) == 0) {
+                    a++;
+                } else {
+                    inserted++;
+                    size++;
+                }
+            }
+            while (a < leaf.size) {
+                mergedKeys[m] = leaf.keys[a];
+                mergedValues[m++] = leaf.values[a++];
+            }
+            if (m < degree) {
+                System.arraycopy(mergedKeys, 0, leaf.keys, 0, m);
+                System.arraycopy(mergedValues, 0, leaf.values, 0, m);
+                leaf.size = m;
+            } else {
+                splitLeaf(leaf, mergedKeys, mergedValues, m);
+                leaf = null;
             }
         }
+        return inserted;
     }
 
     /**
-     * 合并内部节点, 符合条件的数据节点晋升为索引节点
-     * @param mergeFrom
-     * @param mergeInto
+     * 批量删除，落在同一个叶节点中的 key 一次删除，之后叶节点下溢时再一起调整
+     * @param keys
+     * @return 删除的 key 的个数
      */
-    private void promote(TreeNode mergeFrom, TreeNode mergeInto) {
-        KeyValue keyValue = mergeFrom.getKeyValues().get(0);
-        TreeNode childNode = mergeFrom.getChildren().get(0);
+    public int multiDelete(List<? extends K> keys) {
+        int n = keys.size();
+        Object[] sorted = keys.toArray();
+        for (int i = 0; i < n; i++) {
+            checkKey(key(sorted, i));
+        }
+        if (!isSorted(n, i -> key(sorted, i))) {
+            Arrays.sort(sorted, this::compareKeys);
+        }
+        int deleted = 0;
+        TreeNode<K, V> leaf = null;
+        int i = 0;
+        while (i < n) {
+            leaf = seek(key(sorted, i), leaf);
+            int end = runEnd(sorted, i, n);
+            // 双指针原地压缩，跳过要删除的 key
+            int a = 0;
+            int m = 0;
+            int removed = 0;
+            for (; i < end; i++) {
+                K key = key(sorted, i);
+                while (a < leaf.size && comparator.compare(leaf.key(a), key) < 0) {
+                    leaf.keys[m] = leaf.keys[a];
+                    leaf.values[m++] = leaf.values[a++];
+                }
+                if (a < leaf.size && comparator.compare(leaf.key(a), key) == 0) {
+                    a++;
+                    removed++;
+                }
+            }
+            if (removed == 0) {
+                continue;
+            }
+            while (a < leaf.size) {
+                leaf.keys[m] = leaf.keys[a];
+                leaf.values[m++] = leaf.values[a++];
+            }
+            Arrays.fill(leaf.keys, m, leaf.size, null);
+            Arrays.fill(leaf.values, m, leaf.size, null);
+            leaf.size = m;
+            size -= removed;
+            deleted += removed;
+            if (leaf.size < minKeys && height > 1) {
+                while (rebalanceLeaf(leaf, height - 2) && leaf.size < minKeys) {
+                    // 一次只能借一个 key，直到不再下溢或者已经合并
+                }
+                leaf = null;
+            }
+        }
+        return deleted;
+    }
 
-        int index = binarySearchInternalNode(keyValue, mergeInto.getKeyValues());
-        int childIndex = index;
-        if (keyValue.compareTo(childNode.getKeyValues().get(0)) <= 0) {
-            childIndex = index + 1;
+    /**
+     * 排序后的下标，keys 已经有序时直接返回，否则稳定排序
+     */
+    private int[] sortedOrder(int n, IntFunction<? extends K> keyAt) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
         }
+        if (isSorted(n, keyAt)) {
+            return order;
+        }
+        Integer[] boxed = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            boxed[i] = i;
+        }
+        Arrays.sort(boxed, (a, b) -> comparator.compare(keyAt.apply(a), keyAt.apply(b)));
+        for (int i = 0; i < n; i++) {
+            order[i] = boxed[i];
+        }
+        return order;
+    }
 
-        childNode.setParentNode(mergeInto);
-        mergeInto.getChildren().add(childIndex, childNode);
-        mergeInto.getKeyValues().add(index, keyValue);
+    private boolean isSorted(int n, IntFunction<? extends K> keyAt) {
+        for (int i = 1; i < n; i++) {
+            if (comparator.compare(keyAt.apply(i - 1), keyAt.apply(i)) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        //
-        if (!mergeInto.getChildren().isEmpty() && mergeInto.getChildren().get(0).getChildren().isEmpty()) {
-            if (mergeInto.getChildren().size() - 1 != childIndex && mergeInto.getChildren().get(childIndex + 1).getPrevNode() == null) {
-                mergeInto.getChildren().get(childIndex + 1).setPrevNode(mergeInto.getChildren().get(childIndex));
-                mergeInto.getChildren().get(childIndex).setNextNode(mergeInto.getChildren().get(childIndex + 1));
+    /**
+     * 找到 key 所在的叶节点。leaf 是上一个 key 所在的叶节点(下一个 key 不小于上一个 key)，
+     * 这时从路径底部向上找到第一个分隔 key 大于 key 的祖先，只从那里重新下降；leaf 为 null 时从根节点下降
+     */
+    private TreeNode<K, V> seek(K key, TreeNode<K, V> leaf) {
+        if (leaf == null) {
+            return descend(key, 0);
+        }
+        int depth = height - 2;
+        while (depth >= 0) {
+            TreeNode<K, V> parent = pathNodes[depth];
+            int index = pathIndexes[depth];
+            if (index < parent.size && comparator.compare(key, parent.key(index)) < 0) {
+                break;
             }
+            depth--;
+        }
+        if (depth == height - 2) {
+            return leaf;
+        }
+        return descend(key, depth + 1);
+    }
 
-            else if (childIndex != 0 && mergeInto.getChildren().get(childIndex - 1).getNextNode() == null) {
-                mergeInto.getChildren().get(childIndex).setPrevNode(mergeInto.getChildren().get(childIndex - 1));
-                mergeInto.getChildren().get(childIndex - 1).setNextNode(mergeInto.getChildren().get(childIndex));
+    /**
+     * 有序的 keys 中从 from 开始落在当前叶节点(路径上最近的上界之前)的最后位置
+     */
+    private int runEnd(Object[] keys, int from, int to) {
+        K bound = null;
+        for (int depth = height - 2; depth >= 0; depth--) {
+            if (pathIndexes[depth] < pathNodes[depth].size) {
+                bound = pathNodes[depth].key(pathIndexes[depth]);
+                break;
             }
+        }
+        if (bound == null) {
+            return to;
+        }
+        int end = from + 1;
+        while (end < to && comparator.compare(key(keys, end), bound) < 0) {
+            end++;
+        }
+        return end;
+    }
 
-            else {
-                mergeInto.getChildren().get(childIndex).setNextNode(mergeInto.getChildren().get(childIndex - 1).getNextNode());
-                mergeInto.getChildren().get(childIndex).getNextNode().setPrevNode(mergeInto.getChildren().get(childIndex));
+    @SuppressWarnings("unchecked")
+    private K key(Object[] keys, int i) {
+        return (K) keys[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compareKeys(Object a, Object b) {
+        return comparator.compare((K) a, (K) b);
+    }
 
-                mergeInto.getChildren().get(childIndex - 1).setNextNode(mergeInto.getChildren().get(childIndex));
-                mergeInto.getChildren().get(childIndex).setPrevNode(mergeInto.getChildren().get(childIndex - 1));
+    /**
+     * 从按 key 严格递增的数据自底向上构建B+树，只能在空树上调用。
+     * 叶节点从左到右依次填满 fillFactor 比例的 key 并链接，再逐层向上构建内部节点，
+     * 每个 key 只处理一次，不需要从根节点下降和分裂
+     * @param entries 按 key 严格递增的键值对
+     * @param fillFactor 节点填充比例，取值 (0, 1]，小于 1 时为之后的插入预留空间
+     */
+    public void bulkLoad(Iterator<? extends KeyValue<? extends K, ? extends V>> entries, double fillFactor) {
+        if (!(fillFactor > 0 && fillFactor <= 1)) {
+            throw new IllegalArgumentException("Illegal fill factor: " + fillFactor);
+        }
+        if (size != 0) {
+            throw new IllegalStateException("Bulk load requires an empty tree");
+        }
+        int leafKeys = Math.max(minKeys, (int) Math.round((degree - 1) * fillFactor));
+        List<TreeNode<K, V>> level = new ArrayList<>();
+        TreeNode<K, V> leaf = TreeNode.newLeaf(degree);
+        K prevKey = null;
+        int count = 0;
+        while (entries.hasNext()) {
+            KeyValue<? extends K, ? extends V> entry = entries.next();
+            K key = entry.getKey();
+            checkKey(key);
+            if (prevKey != null && comparator.compare(prevKey, key) >= 0) {
+                throw new IllegalArgumentException("Keys must be strictly increasing: " + prevKey + ", " + key);
+            }
+            if (leaf.size == leafKeys) {
+                level.add(leaf);
+                TreeNode<K, V> next = TreeNode.newLeaf(degree);
+                leaf.nextNode = next;
+                next.prevNode = leaf;
+                leaf = next;
             }
+            leaf.keys[leaf.size] = key;
+            leaf.values[leaf.size] = entry.getValue();
+            leaf.size++;
+            prevKey = key;
+            count++;
         }
+        level.add(leaf);
+        if (level.size() > 1 && leaf.size < minKeys) {
+            fixLastLeaf(level);
+        }
+
+        int levels = 1;
+        int fanout = Math.max(minKeys + 1, (int) Math.round(degree * fillFactor));
+        while (level.size() > 1) {
+            level = buildParents(level, fanout);
+            levels++;
+        }
+        this.root = level.get(0);
+        this.size = count;
+        this.height = levels;
+        ensurePathCapacity();
     }
 
-    private void insert(KeyValue entry, TreeNode node) {
-        int indexOfKey = binarySearchInternalNode(entry, node.getKeyValues());
-        if (indexOfKey != 0 && node.getKeyValues().get(indexOfKey - 1).getKey().equals(entry.getKey())) {
-            // 目前设计思路是key对应的value不是唯一的
-            node.getKeyValues().get(indexOfKey - 1).getValues().addAll(entry.getValues());
-        } else {
-            node.getKeyValues().add(indexOfKey, entry);
+    /**
+     * 最后一个叶节点 key 不足时，和前一个叶节点平分，总数不够平分时合并
+     * @param leaves
+     */
+    private void fixLastLeaf(List<TreeNode<K, V>> leaves) {
+        TreeNode<K, V> last = leaves.get(leaves.size() - 1);
+        TreeNode<K, V> prev = last.prevNode;
+        int total = prev.size + last.size;
+        if (total < 2 * minKeys) {
+            mergeLeaves(prev, last);
+            leaves.remove(leaves.size() - 1);
+            return;
         }
+        int moved = total / 2 - last.size;
+        System.arraycopy(last.keys, 0, last.keys, moved, last.size);
+        System.arraycopy(last.values, 0, last.values, moved, last.size);
+        System.arraycopy(prev.keys, prev.size - moved, last.keys, 0, moved);
+        System.arraycopy(prev.values, prev.size - moved, last.values, 0, moved);
+        Arrays.fill(prev.keys, prev.size - moved, prev.size, null);
+        Arrays.fill(prev.values, prev.size - moved, prev.size, null);
+        prev.size -= moved;
+        last.size += moved;
     }
 
     /**
-     * 按照keyValues从小到大的顺序，找到entry所处的位置
-     * @param entry
-     * @param keyValues
+     * 把一层节点平均分组作为上一层节点的子节点，分组数保证每组至少 minKeys + 1 个子节点。
+     * 子树最小的 key 作为分隔 key
+     * @param level
+     * @param fanout 期望的子节点个数
      * @return
      */
-    public int binarySearchInternalNode(KeyValue entry, List<KeyValue> keyValues) {
-        int left = 0;
-        int right = keyValues.size() - 1;
-        int mid;
-        int index = -1;
-        // 如果小于第一个元素，那位置就在第一个位置
-        if (entry.compareTo(keyValues.get(left)) < 0) {
-            return 0;
-        }
-        // 如果大于最后一个元素，那位置就在集合最后一个位置
-        if (entry.compareTo(keyValues.get(right)) >= 0) {
-            return keyValues.size();
-        }
-        while (left <= right) {
-            mid = left + (right - left) / 2;
-            if (entry.compareTo(keyValues.get(mid)) < 0 && entry.compareTo(keyValues.get(mid - 1)) >= 0) {
-                index = mid;
-                break;
-            } else if (entry.compareTo(keyValues.get(mid)) >= 0) {
-                left = mid + 1;
-            } else {
-                right = mid - 1;
+    private List<TreeNode<K, V>> buildParents(List<TreeNode<K, V>> level, int fanout) {
+        int n = level.size();
+        int groups = n <= degree ? 1 : (n + fanout - 1) / fanout;
+        while (groups > 1 && n / groups < minKeys + 1) {
+            groups--;
+        }
+        List<TreeNode<K, V>> parents = new ArrayList<>(groups);
+        int from = 0;
+        for (int g = 0; g < groups; g++) {
+            int to = from + n / groups + (g < n % groups ? 1 : 0);
+            TreeNode<K, V> parent = TreeNode.newInternal(degree);
+            parent.children[0] = level.get(from);
+            for (int i = from + 1; i < to; i++) {
+                TreeNode<K, V> child = level.get(i);
+                parent.keys[parent.size] = lowestKey(child);
+                parent.children[++parent.size] = child;
             }
+            parents.add(parent);
+            from = to;
         }
-        return index;
+        return parents;
+    }
+
+    private static <K, V> Object lowestKey(TreeNode<K, V> node) {
+        while (!node.isLeaf()) {
+            node = node.children[0];
+        }
+        return node.keys[0];
     }
 
     /**
-     * 标准的二分搜索，没有则返回-1
-     * @param entry
-     * @param keyValues
+     * 按顺序返回所有键值对
      * @return
      */
-    public int binarySearchInternalNode2(KeyValue entry, List<KeyValue> keyValues) {
-        int left = 0;
-        int right = keyValues.size() - 1;
-        int mid;
-        int index = -1;
-        while (left <= right) {
-            mid = left + (right - left) / 2;
-            if (entry.compareTo(keyValues.get(mid)) == 0) {
-                index = mid;
-                break;
-            } else if (entry.compareTo(keyValues.get(mid)) >= 0) {
-                left = mid + 1;
-            } else {
-                right = mid - 1;
+    public List<KeyValue<K, V>> toList() {
+        List<KeyValue<K, V>> result = new ArrayList<>(size);
+        for (TreeNode<K, V> leaf = firstLeaf(); leaf != null; leaf = leaf.nextNode) {
+            for (int i = 0; i < leaf.size; i++) {
+                result.add(new KeyValue<>(leaf.key(i), leaf.value(i)));
             }
         }
-        return index;
+        return result;
+    }
+
+    TreeNode<K, V> firstLeaf() {
+        TreeNode<K, V> node = root;
+        while (!node.isLeaf()) {
+            node = node.children[0];
+        }
+        return node;
     }
 
     /**
-     * 搜索操作
+     * 节点内二分查找，找到时返回下标，否则返回 -(插入位置) - 1
+     * @param node
      * @param key
      * @return
      */
-    public KeyValue search(String key) {
-        KeyValue searchKey = new KeyValue(key);
-        TreeNode curr = getRoot();
-        while (!curr.getChildren().isEmpty()) {
-            curr = curr.getChildren().get(binarySearchInternalNode(searchKey, curr.getKeyValues()));
-        }
+    int indexOf(TreeNode<K, V> node, K key) {
+        return indexOf(node, key, 0);
+    }
 
-        for (KeyValue kv: curr.getKeyValues()) {
-            if (kv.compareTo(searchKey) == 0) {
-                return kv;
-            } else if (kv.compareTo(searchKey) > 0) {
-                break;
+    /**
+     * 只在 [from, size) 中二分查找
+     */
+    private int indexOf(TreeNode<K, V> node, K key, int from) {
+        Object[] keys = node.keys;
+        int lo = from;
+        int hi = node.size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            @SuppressWarnings("unchecked")
+            int cmp = comparator.compare((K) keys[mid], key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
             }
         }
-
-        return null;
+        return -(lo + 1);
     }
 
     /**
-     * 查看键是否存在
+     * 内部节点中 key 所在子节点的下标，分隔 key 本身属于右子树
+     * @param node
      * @param key
      * @return
      */
-    public boolean contains(String key) {
-        return Objects.nonNull(search(key));
+    private int childIndex(TreeNode<K, V> node, K key) {
+        int i = indexOf(node, key);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    TreeNode<K, V> findLeaf(K key) {
+        TreeNode<K, V> node = root;
+        while (!node.isLeaf()) {
+            node = node.children[childIndex(node, key)];
+        }
+        return node;
     }
 
     /**
-     * scan操作，闭区间
-     * @param from
-     * @param to
+     * 和 findLeaf 相同，同时记录经过的路径
+     * @param key
      * @return
      */
-    public List<KeyValue> scan(String from, String to) {
-        KeyValue fromKey = new KeyValue(from);
-        KeyValue toKey = new KeyValue(to);
-        TreeNode curr = getRoot();
-        while (!curr.getChildren().isEmpty()) {
-            curr = curr.getChildren().get(binarySearchInternalNode(fromKey, curr.getKeyValues()));
-        }
-
-        List<KeyValue> keyValues = new ArrayList<>();
-        boolean end = false;
-        while (curr != null && !end) {
-            for (KeyValue kv: curr.getKeyValues()) {
-                if (kv.compareTo(fromKey) >= 0 && kv.compareTo(toKey) <= 0) {
-                    keyValues.add(kv);
-                } else if (kv.compareTo(toKey) > 0){
-                    end = true;
-                }
-            }
-            curr = curr.getNextNode();
-
-        }
-        return keyValues;
+    private TreeNode<K, V> descend(K key) {
+        return descend(key, 0);
     }
 
     /**
-     * 删除操作
+     * 从路径中深度为 depth 的节点开始下降，depth 之上的路径保持不变
      * @param key
+     * @param depth
      * @return
      */
-    public boolean delete(String key) {
-        KeyValue searchKey = new KeyValue(key);
+    private TreeNode<K, V> descend(K key, int depth) {
+        TreeNode<K, V> node = depth == 0 ? root : pathNodes[depth - 1].children[pathIndexes[depth - 1]];
+        while (!node.isLeaf()) {
+            int i = childIndex(node, key);
+            pathNodes[depth] = node;
+            pathIndexes[depth] = i;
+            depth++;
+            node = node.children[i];
+        }
+        return node;
+    }
 
-        // 对于空B+树的删除，此时根节点为空
-        if (getRoot() == null) {
-            return false;
+    /**
+     * 叶节点分裂，左边保留 degree / 2 个 key，右边第一个 key 作为分隔 key 插入父节点
+     * @param leaf
+     */
+    private void splitLeaf(TreeNode<K, V> leaf) {
+        int mid = degree / 2;
+        int moved = leaf.size - mid;
+        TreeNode<K, V> right = TreeNode.newLeaf(degree);
+        System.arraycopy(leaf.keys, mid, right.keys, 0, moved);
+        System.arraycopy(leaf.values, mid, right.values, 0, moved);
+        Arrays.fill(leaf.keys, mid, leaf.size, null);
+        Arrays.fill(leaf.values, mid, leaf.size, null);
+        right.size = moved;
+        leaf.size = mid;
+
+        right.nextNode = leaf.nextNode;
+        if (leaf.nextNode != null) {
+            leaf.nextNode.prevNode = right;
         }
+        right.prevNode = leaf;
+        leaf.nextNode = right;
+        insertIntoParent(height - 2, leaf, right.key(0), right);
+    }
 
-        TreeNode curr = getRoot();
-        // 只有一个根节点的B+树
-        if (getRoot().getChildren().isEmpty()) {
-            int index = binarySearchInternalNode2(searchKey, curr.getKeyValues());
-            if (index < 0) {
-                return false;
+    /**
+     * 批量插入之后超出容量的叶节点，把归并结果平均分成多个叶节点，每个最多 degree - 1 个 key
+     * @param leaf 原来的叶节点，作为第一个节点
+     * @param keys 归并后的 key
+     * @param values
+     * @param count
+     */
+    private void splitLeaf(TreeNode<K, V> leaf, Object[] keys, Object[] values, int count) {
+        int pieces = (count + degree - 2) / (degree - 1);
+        List<K> separators = new ArrayList<>(pieces - 1);
+        List<TreeNode<K, V>> rights = new ArrayList<>(pieces - 1);
+        TreeNode<K, V> next = leaf.nextNode;
+        TreeNode<K, V> prev = leaf;
+        int start = 0;
+        for (int p = 0; p < pieces; p++) {
+            int n = count / pieces + (p < count % pieces ? 1 : 0);
+            TreeNode<K, V> node = p == 0 ? leaf : TreeNode.newLeaf(degree);
+            System.arraycopy(keys, start, node.keys, 0, n);
+            System.arraycopy(values, start, node.values, 0, n);
+            if (p == 0) {
+                Arrays.fill(node.keys, n, degree, null);
+                Arrays.fill(node.values, n, degree, null);
+            } else {
+                separators.add(node.key(0));
+                rights.add(node);
+                node.prevNode = prev;
+                prev.nextNode = node;
             }
-            curr.getKeyValues().remove(index);
-            return true;
+            node.size = n;
+            prev = node;
+            start += n;
         }
-        // 一般场景
-        else {
-            while (!curr.getChildren().isEmpty()) {
-                curr = curr.getChildren().get(binarySearchInternalNode(searchKey, curr.getKeyValues()));
-            }
-            int index = binarySearchInternalNode2(searchKey, curr.getKeyValues());
-            if (index < 0) {
-                return false;
-            }
-            // 进行删除操作
-            curr.getKeyValues().remove(index);
+        prev.nextNode = next;
+        if (next != null) {
+            next.prevNode = prev;
+        }
+        insertIntoParent(height - 2, leaf, separators, rights);
+    }
 
-            // 如果删除后的节点 >= (int) (Math.ceil(getDegree() / 2.0) - 1), 删除操作结束，否则需要进行后续合并操作
-            if (curr.getKeyValues().size() < (int) Math.ceil(getDegree() / 2.0) - 1) {
-                delete(curr);
-            }
-            return true;
+    /**
+     * 内部节点分裂，中间的 key 上移到父节点
+     * @param node
+     * @param depth node 在路径中的深度
+     */
+    private void splitInternal(TreeNode<K, V> node, int depth) {
+        int mid = degree / 2;
+        K separator = node.key(mid);
+        int moved = node.size - mid - 1;
+        TreeNode<K, V> right = TreeNode.newInternal(degree);
+        System.arraycopy(node.keys, mid + 1, right.keys, 0, moved);
+        System.arraycopy(node.children, mid + 1, right.children, 0, moved + 1);
+        Arrays.fill(node.keys, mid, node.size, null);
+        Arrays.fill(node.children, mid + 1, node.size + 1, null);
+        right.size = moved;
+        node.size = mid;
+        insertIntoParent(depth - 1, node, separator, right);
+    }
+
+    private void insertIntoParent(int depth, TreeNode<K, V> left, K separator, TreeNode<K, V> right) {
+        if (depth < 0) {
+            TreeNode<K, V> newRoot = TreeNode.newInternal(degree);
+            newRoot.keys[0] = separator;
+            newRoot.children[0] = left;
+            newRoot.children[1] = right;
+            newRoot.size = 1;
+            root = newRoot;
+            height++;
+            ensurePathCapacity();
+            return;
+        }
+        TreeNode<K, V> parent = pathNodes[depth];
+        int i = pathIndexes[depth];
+        insertAt(parent.keys, i, separator, parent.size);
+        insertAt(parent.children, i + 1, right, parent.size + 1);
+        parent.size++;
+        if (parent.size == degree) {
+            splitInternal(parent, depth);
         }
     }
 
     /**
-     * 删除后的合并操作, 只考虑其与左边的兄弟节点之间的关系
+     * 在父节点中 left 的右边一次插入多个子节点，放不下时把所有子节点平均分成多个内部节点，
+     * 节点之间的分隔 key 继续向上插入；根节点放不下时一次增加一层
+     * @param depth 父节点在路径中的深度，小于 0 表示 left 是根节点
+     * @param left
+     * @param separators
+     * @param rights
      */
-    private void delete(TreeNode curr) {
-        TreeNode parent = curr.getParentNode();
-        int childrenSize = parent.getChildren().size();
-        // 获得当前节点的位于父节点的位置
-        int index = binarySearchInternalNode(curr.getKeyValues().get(0), parent.getKeyValues());
-        //  被删除的节点位于父节点的最左边, 那么需要考虑与右边节点进行合并
-        if (index == 0 && childrenSize > 0) {
-            TreeNode rightNode =  parent.getChildren().get(1);
-            mergeExternalNode2(parent, curr, rightNode, index);
+    private void insertIntoParent(int depth, TreeNode<K, V> left, List<K> separators, List<TreeNode<K, V>> rights) {
+        if (rights.size() == 1) {
+            insertIntoParent(depth, left, separators.get(0), rights.get(0));
+            return;
         }
-        // 被删除的节点位于父节点的最右边，需要与左边进行合并
-        else if (index == childrenSize - 1 && childrenSize > 0) {
-            TreeNode leftNode =  parent.getChildren().get(index - 1);
-            mergeExternalNode(parent, leftNode, curr, index);
+        List<TreeNode<K, V>> children = new ArrayList<>();
+        List<K> keys = new ArrayList<>();
+        TreeNode<K, V> node;
+        if (depth < 0) {
+            children.add(left);
+            children.addAll(rights);
+            keys.addAll(separators);
+            node = TreeNode.newInternal(degree);
+            height++;
+            ensurePathCapacity();
+        } else {
+            node = pathNodes[depth];
+            int index = pathIndexes[depth];
+            int k = rights.size();
+            if (node.size + k < degree) {
+                System.arraycopy(node.keys, index, node.keys, index + k, node.size - index);
+                System.arraycopy(node.children, index + 1, node.children, index + 1 + k, node.size - index);
+                for (int j = 0; j < k; j++) {
+                    node.keys[index + j] = separators.get(j);
+                    node.children[index + 1 + j] = rights.get(j);
+                }
+                node.size += k;
+                return;
+            }
+            for (int j = 0; j <= node.size; j++) {
+                children.add(node.children[j]);
+                if (j < node.size) {
+                    keys.add(node.key(j));
+                }
+            }
+            children.addAll(index + 1, rights);
+            keys.addAll(index, separators);
         }
-        // 被删除的节点需要分别与左边和右边分别进行对比
-        else if (index > 0 && index < childrenSize - 1) {
-            // 需要获得当前节点的左兄弟节点
-            TreeNode leftNode =  parent.getChildren().get(index - 1);
-            TreeNode rightNode =  parent.getChildren().get(index + 1);
-            // 优先从左边节点借
-            if (leftNode.getKeyValues().size() > (int) (Math.ceil(getDegree() / 2.0) - 1)) {
-                borrowFromLeft(parent, leftNode, curr, index);
-            } else {
-                // 然后考虑从右边节点借
-                if (rightNode.getKeyValues().size() > (int) (Math.ceil(getDegree() / 2.0) - 1)) {
-                    borrowFromRight(parent, curr, rightNode, index);
-                } else {
-                    // 如果都不满足，则考虑和左边节点合并w
-                    mergeLeftAndRight(parent, leftNode, curr, index);
+        int pieces = (children.size() + degree - 1) / degree;
+        List<K> upSeparators = new ArrayList<>(pieces - 1);
+        List<TreeNode<K, V>> upRights = new ArrayList<>(pieces - 1);
+        int start = 0;
+        for (int p = 0; p < pieces; p++) {
+            int n = children.size() / pieces + (p < children.size() % pieces ? 1 : 0);
+            TreeNode<K, V> piece = p == 0 ? node : TreeNode.newInternal(degree);
+            Arrays.fill(piece.keys, null);
+            Arrays.fill(piece.children, null);
+            for (int j = 0; j < n; j++) {
+                piece.children[j] = children.get(start + j);
+                if (j < n - 1) {
+                    piece.keys[j] = keys.get(start + j);
                 }
             }
+            piece.size = n - 1;
+            if (p > 0) {
+                upSeparators.add(keys.get(start - 1));
+                upRights.add(piece);
+            }
+            start += n;
         }
-
-        if (parent.getKeyValues().size() >= (int) (Math.ceil(getDegree() / 2.0) - 1)) {
-            return;
+        if (pieces == 1) {
+            root = node;
+        } else {
+            insertIntoParent(depth - 1, node, upSeparators, upRights);
         }
-        // 针对索引节点的合并
-        mergeInternalNode(parent);
     }
 
     /**
-     * 从左兄弟节点中借最后一个key，并删除右边key
-     * @param leftNode
-     * @param rightNode
+     * 叶节点下溢，先尝试从兄弟节点借，借不到则合并
+     * @param leaf
+     * @param depth 父节点在路径中的深度
+     * @return leaf 是否还在树中，和左兄弟合并之后返回 false
      */
-    public void borrowFromLeft(TreeNode parent, TreeNode leftNode, TreeNode rightNode, int index) {
-        KeyValue borrowKeyValue = leftNode.getKeyValues().remove(leftNode.getKeyValues().size() - 1);
-        rightNode.getKeyValues().add(0, borrowKeyValue);
-        parent.getKeyValues().set(index - 1, borrowKeyValue);
+    private boolean rebalanceLeaf(TreeNode<K, V> leaf, int depth) {
+        TreeNode<K, V> parent = pathNodes[depth];
+        int index = pathIndexes[depth];
+        TreeNode<K, V> left = index > 0 ? parent.children[index - 1] : null;
+        TreeNode<K, V> right = index < parent.size ? parent.children[index + 1] : null;
+        if (left != null && left.size > minKeys) {
+            int last = left.size - 1;
+            insertAt(leaf.keys, 0, left.keys[last], leaf.size);
+            insertAt(leaf.values, 0, left.values[last], leaf.size);
+            leaf.size++;
+            left.keys[last] = null;
+            left.values[last] = null;
+            left.size--;
+            parent.keys[index - 1] = leaf.keys[0];
+            return true;
+        } else if (right != null && right.size > minKeys) {
+            leaf.keys[leaf.size] = right.keys[0];
+            leaf.values[leaf.size] = right.values[0];
+            leaf.size++;
+            removeAt(right.keys, 0, right.size);
+            removeAt(right.values, 0, right.size);
+            right.size--;
+            parent.keys[index] = right.keys[0];
+            return true;
+        } else if (left != null) {
+            mergeLeaves(left, leaf);
+            removeFromInternal(parent, index - 1, depth);
+            return false;
+        } else {
+            mergeLeaves(leaf, right);
+            removeFromInternal(parent, index, depth);
+            return true;
+        }
+    }
+
+    private void mergeLeaves(TreeNode<K, V> left, TreeNode<K, V> right) {
+        System.arraycopy(right.keys, 0, left.keys, left.size, right.size);
+        System.arraycopy(right.values, 0, left.values, left.size, right.size);
+        left.size += right.size;
+        left.nextNode = right.nextNode;
+        if (right.nextNode != null) {
+            right.nextNode.prevNode = left;
+        }
     }
 
     /**
-     * 从右兄弟节点中借第一个key，并删除左边key
-     * @param parent
-     * @param leftNode
-     * @param rightNode
+     * 删除内部节点中下标为 keyIndex 的 key 和它右边的子节点
+     * @param node
+     * @param keyIndex
+     * @param depth node 在路径中的深度
      */
-    public void borrowFromRight(TreeNode parent, TreeNode leftNode, TreeNode rightNode, int index) {
-        KeyValue borrowKeyValue = rightNode.getKeyValues().remove(0);
-        leftNode.getKeyValues().add(borrowKeyValue);
-        parent.getKeyValues().set(index, rightNode.getKeyValues().get(0));
+    private void removeFromInternal(TreeNode<K, V> node, int keyIndex, int depth) {
+        removeAt(node.keys, keyIndex, node.size);
+        removeAt(node.children, keyIndex + 1, node.size + 1);
+        node.size--;
+        if (depth == 0) {
+            if (node.size == 0) {
+                root = node.children[0];
+                height--;
+            }
+        } else if (node.size < minKeys) {
+            rebalanceInternal(node, depth - 1);
+        }
     }
 
     /**
-     * 合并左右数据节点，并删除索引中的数据
-     * 需要从右边借一个节点
-     * @param parent
-     * @param leftNode
-     * @param rightNode
+     * 内部节点下溢，通过父节点从兄弟节点旋转一个 key，否则和兄弟节点以及分隔 key 合并
+     * @param node
+     * @param depth 父节点在路径中的深度
      */
-    public void mergeExternalNode(TreeNode parent, TreeNode leftNode, TreeNode rightNode, int index) {
-        // 如果兄弟节点过半阈值，则需要借一个key
-        if (leftNode.getKeyValues().size() > (int) (Math.ceil(getDegree() / 2.0) - 1)) {
-            borrowFromLeft(parent, leftNode, rightNode, index);
+    private void rebalanceInternal(TreeNode<K, V> node, int depth) {
+        TreeNode<K, V> parent = pathNodes[depth];
+        int index = pathIndexes[depth];
+        TreeNode<K, V> left = index > 0 ? parent.children[index - 1] : null;
+        TreeNode<K, V> right = index < parent.size ? parent.children[index + 1] : null;
+        if (left != null && left.size > minKeys) {
+            insertAt(node.keys, 0, parent.keys[index - 1], node.size);
+            insertAt(node.children, 0, left.children[left.size], node.size + 1);
+            node.size++;
+            parent.keys[index - 1] = left.keys[left.size - 1];
+            left.keys[left.size - 1] = null;
+            left.children[left.size] = null;
+            left.size--;
+        } else if (right != null && right.size > minKeys) {
+            node.keys[node.size] = parent.keys[index];
+            node.children[node.size + 1] = right.children[0];
+            node.size++;
+            parent.keys[index] = right.keys[0];
+            removeAt(right.keys, 0, right.size);
+            removeAt(right.children, 0, right.size + 1);
+            right.size--;
+        } else if (left != null) {
+            mergeInternal(left, parent.keys[index - 1], node);
+            removeFromInternal(parent, index - 1, depth);
         } else {
-            // 其他情形，无法从兄弟节点借到数据, 则需要将左右节点进行合并
-            mergeLeftAndRight(parent, leftNode, rightNode, index);
+            mergeInternal(node, parent.keys[index], right);
+            removeFromInternal(parent, index, depth);
         }
     }
 
-    public void mergeExternalNode2(TreeNode parent, TreeNode leftNode, TreeNode rightNode, int index) {
-        // 如果兄弟节点过半阈值，则需要借一个key
-        if (rightNode.getKeyValues().size() > (int) (Math.ceil(getDegree() / 2.0) - 1)) {
-            borrowFromRight(parent, leftNode, rightNode, index);
-        } else {
-            mergeLeftAndRight(parent, leftNode, rightNode, index);
+    private void mergeInternal(TreeNode<K, V> left, Object separator, TreeNode<K, V> right) {
+        left.keys[left.size] = separator;
+        System.arraycopy(right.keys, 0, left.keys, left.size + 1, right.size);
+        System.arraycopy(right.children, 0, left.children, left.size + 1, right.size + 1);
+        left.size += right.size + 1;
+    }
+
+    private void ensurePathCapacity() {
+        while (height - 1 > pathNodes.length) {
+            pathNodes = Arrays.copyOf(pathNodes, pathNodes.length << 1);
+            pathIndexes = Arrays.copyOf(pathIndexes, pathIndexes.length << 1);
         }
     }
 
-    public void mergeLeftAndRight(TreeNode parent, TreeNode leftNode, TreeNode rightNode, int index) {
-        // 其他情形，无法从兄弟节点借到数据, 则需要将左右节点进行合并
-        leftNode.getKeyValues().addAll(rightNode.getKeyValues());
-        leftNode.setNextNode(rightNode.getNextNode());
-        parent.getChildren().remove(index);
-        parent.getKeyValues().remove(index - 1);
+    private static void insertAt(Object[] array, int index, Object element, int length) {
+        System.arraycopy(array, index, array, index + 1, length - index);
+        array[index] = element;
     }
 
-    /**
-     * 针对索引节点的合并
-     * @param curr
-     */
-    private void mergeInternalNode(TreeNode curr) {
-        TreeNode parent = curr.getParentNode();
-        // 当该节点为根节点时，直接退出
-        if (parent == null) {
-            return;
+    private static void removeAt(Object[] array, int index, int length) {
+        System.arraycopy(array, index + 1, array, index, length - index - 1);
+        array[length - 1] = null;
+    }
+
+    private static void checkRange(int offset, int limit) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Illegal offset: " + offset);
         }
-        int childrenSize = parent.getChildren().size();
-        // 获得当前节点的位于父节点的位置
-        int index = binarySearchInternalNode(curr.getKeyValues().get(0), parent.getKeyValues());
-
-        //  被删除的节点位于父节点的最左边, 那么需要考虑与右边节点进行合并
-        if (index == 0 && childrenSize > 0) {
-            TreeNode rightNode =  parent.getChildren().get(1);
-            mergeInternalNode2(parent, curr, rightNode, index);
-        }
-        // 被删除的节点位于父节点的最右边，需要与左边进行合并
-        else if (index == childrenSize - 1 && childrenSize > 0) {
-            TreeNode leftNode =  parent.getChildren().get(index - 1);
-            mergeInternalNodeWith1(parent, leftNode, curr, index);
-        }
-        // 被删除的节点需要分别与左边和右边分别进行对比
-        else if (index > 0 && index < childrenSize - 1) {
-            // 需要获得当前节点的左兄弟节点
-            TreeNode leftNode =  parent.getChildren().get(index - 1);
-            TreeNode rightNode =  parent.getChildren().get(index + 1);
-            // 优先从左边节点借
-            if (leftNode.getKeyValues().size() > (int) (Math.ceil(getDegree() / 2.0) - 1)) {
-                borrowFromLeft(parent, leftNode, curr, index);
-            } else {
-                // 然后考虑从右边节点借
-                if (rightNode.getKeyValues().size() > (int) (Math.ceil(getDegree() / 2.0) - 1)) {
-                    borrowFromRight(parent, curr, rightNode, index);
-                } else {
-                    // 如果都不满足，则考虑和左边节点合并
-                    parent = merge(parent, leftNode, curr);
-                }
-            }
+        if (limit < 0) {
+            throw new IllegalArgumentException("Illegal limit: " + limit);
         }
+    }
 
-        if (parent.getKeyValues().size() >= (int) (Math.ceil(getDegree() / 2.0) - 1)) {
-            return;
+    private void checkKey(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key can not be null");
         }
-        // 针对索引节点的合并
-        mergeInternalNode(parent);
+    }
+
+    @Override
+    public String toString() {
+        return "BalancePlusTree{" +
+                "degree=" + degree +
+                ", size=" + size +
+                ", height=" + height +
+                ", entries=" + toList() +
+                '}';
     }
 
     /**
-     * 合并左右数据节点，并删除索引中的数据
-     * 需要从右边借一个节点
-     * @param parent
-     * @param leftNode
-     * @param rightNode
+     * 从 leaf 的第 index 个 key 开始沿着 nextNode 向后遍历，遇到大于 to 的 key 或者到达 end 时结束
      */
-    public void mergeInternalNodeWith1(TreeNode parent, TreeNode leftNode, TreeNode rightNode, int index) {
-        // 如果兄弟节点过半阈值，则需要借一个key
-        if (leftNode.getKeyValues().size() > (int) (Math.ceil(getDegree() / 2.0) - 1)) {
-            borrowFromLeft(parent, leftNode, rightNode, index);
-        } else {
-            // 其他情形，无法从兄弟节点借到数据, 则需要将左右节点和父节点进行合并
-            merge(parent, leftNode, rightNode);
+    private final class ScanIterator implements Iterator<KeyValue<K, V>> {
+        private TreeNode<K, V> leaf;
+        private int index;
+        /**
+         * 上界，null 表示不限制
+         */
+        private final K to;
+        /**
+         * 不再访问的叶节点，null 表示遍历到最后
+         */
+        private final TreeNode<K, V> end;
+        private int remaining;
+
+        ScanIterator(TreeNode<K, V> leaf, int index, K to, TreeNode<K, V> end, int limit) {
+            this.leaf = leaf;
+            this.index = index;
+            this.to = to;
+            this.end = end;
+            this.remaining = limit;
         }
-    }
 
-    public void mergeInternalNode2(TreeNode parent, TreeNode leftNode, TreeNode rightNode, int index) {
-        // 如果兄弟节点过半阈值，则需要借一个key
-        if (rightNode.getKeyValues().size() > (int) (Math.ceil(getDegree() / 2.0) - 1)) {
-            borrowFromRight(parent, leftNode, rightNode, index);
-        } else {
-            // 无法从兄弟节点借到数据, 则需要将左右节点和父节点进行合并
-            merge(parent, leftNode, rightNode);
+        /**
+         * 跳过 n 个键值对，整个叶节点都在范围内时直接跳过
+         */
+        void skip(int n) {
+            while (n > 0 && leaf != null) {
+                int available = leaf.size - index;
+                if (n < available) {
+                    index += n;
+                    return;
+                }
+                n -= available;
+                if (to != null && leaf.size > 0 && comparator.compare(leaf.key(leaf.size - 1), to) > 0) {
+                    leaf = null;
+                    return;
+                }
+                nextLeaf();
+            }
         }
-    }
 
-    /**
-     * 将左右节点和根节点合并, 并更新节点
-     * @param parent
-     * @param leftNode
-     * @param rightNode
-     */
-    public TreeNode merge(TreeNode parent, TreeNode leftNode, TreeNode rightNode) {
-        // parent 作为合并后的新节点
-        parent.getKeyValues().addAll(0, leftNode.getKeyValues());
-        parent.getKeyValues().addAll(rightNode.getKeyValues());
+        private void nextLeaf() {
+            leaf = leaf.nextNode == end ? null : leaf.nextNode;
+            index = 0;
+        }
 
-        parent.getChildren().clear();
-        parent.getChildren().addAll(leftNode.getChildren());
-        parent.getChildren().addAll(rightNode.getChildren());
-        return parent;
+        @Override
+        public boolean hasNext() {
+            if (remaining <= 0) {
+                return false;
+            }
+            while (leaf != null && index >= leaf.size) {
+                nextLeaf();
+            }
+            if (leaf == null) {
+                return false;
+            }
+            if (to != null && comparator.compare(leaf.key(index), to) > 0) {
+                leaf = null;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public KeyValue<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            KeyValue<K, V> keyValue = new KeyValue<>(leaf.key(index), leaf.value(index));
+            index++;
+            remaining--;
+            return keyValue;
+        }
     }
 
     /**
-     * 更新接口
-     * @param key
-     * @param value
-     * @return
+     * 从 leaf 的第 index 个 key 开始沿着 prevNode 向前遍历，遇到小于 from 的 key 时结束
      */
-    public boolean update(String key, Object value) {
-        return update(new KeyValue(key, value));
-    }
+    private final class DescendingIterator implements Iterator<KeyValue<K, V>> {
+        private TreeNode<K, V> leaf;
+        private int index;
+        private final K from;
+        private int remaining;
+
+        DescendingIterator(TreeNode<K, V> leaf, int index, K from, int limit) {
+            this.leaf = leaf;
+            this.index = index;
+            this.from = from;
+            this.remaining = limit;
+        }
 
-    public boolean update(String key, List<Object> values) {
-        return update(new KeyValue(key, values));
-    }
+        void skip(int n) {
+            while (n > 0 && leaf != null) {
+                int available = index + 1;
+                if (n < available) {
+                    index -= n;
+                    return;
+                }
+                n -= available;
+                if (leaf.size > 0 && comparator.compare(leaf.key(0), from) < 0) {
+                    leaf = null;
+                    return;
+                }
+                prevLeaf();
+            }
+        }
 
-    private boolean update(KeyValue entry) {
-        TreeNode curr = getRoot();
-        while (!curr.getChildren().isEmpty()) {
-            curr = curr.getChildren().get(binarySearchInternalNode(entry, curr.getKeyValues()));
+        private void prevLeaf() {
+            leaf = leaf.prevNode;
+            index = leaf == null ? -1 : leaf.size - 1;
         }
 
-        for (KeyValue kv: curr.getKeyValues()) {
-            if (kv.compareTo(entry) == 0) {
-                kv.setValues(entry.getValues());
-                return true;
-            } else if (kv.compareTo(entry) > 0) {
-                insert(entry);
+        @Override
+        public boolean hasNext() {
+            if (remaining <= 0) {
+                return false;
+            }
+            while (leaf != null && index < 0) {
+                prevLeaf();
+            }
+            if (leaf == null) {
+                return false;
+            }
+            if (comparator.compare(leaf.key(index), from) < 0) {
+                leaf = null;
                 return false;
             }
+            return true;
         }
 
-        return false;
+        @Override
+        public KeyValue<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            KeyValue<K, V> keyValue = new KeyValue<>(leaf.key(index), leaf.value(index));
+            index--;
+            remaining--;
+            return keyValue;
+        }
     }
 
     /**
-     * @return
+     * 覆盖某个内部节点下标为 [lo, hi) 的子树，划分时把子树范围一分为二，
+     * 只剩一棵子树时下降到这棵子树继续划分，开始遍历之后不再划分。
+     * 每一部分第一次遍历时才定位首尾叶节点，之后和 ScanIterator 一样沿着 nextNode 遍历
      */
-    @Override
-    public String toString() {
-        StringBuilder builder = new StringBuilder("BalancePlusTree{" +
-                "root=" + root +
-                ", degree=" + degree +
-                ", ");
+    private final class RangeSpliterator implements Spliterator<KeyValue<K, V>> {
+        private TreeNode<K, V> node;
+        private int lo;
+        private int hi;
+        /**
+         * 范围的上下界，null 表示不限制
+         */
+        private final K from;
+        private final K to;
+        private long estimate;
+        private ScanIterator cursor;
+
+        RangeSpliterator(K from, K to) {
+            this.from = from;
+            this.to = to;
+            this.estimate = size;
+            this.node = root;
+            if (!root.isLeaf()) {
+                this.lo = lowerChild(root);
+                this.hi = upperChild(root);
+            }
+        }
 
-        for (KeyValue keyValue : this.toList()) {
-            builder.append(keyValue);
+        private RangeSpliterator(TreeNode<K, V> node, int lo, int hi, K from, K to, long estimate) {
+            this.node = node;
+            this.lo = lo;
+            this.hi = hi;
+            this.from = from;
+            this.to = to;
+            this.estimate = estimate;
+        }
+
+        private int lowerChild(TreeNode<K, V> internal) {
+            return from == null ? 0 : childIndex(internal, from);
+        }
+
+        private int upperChild(TreeNode<K, V> internal) {
+            return to == null ? internal.size + 1 : childIndex(internal, to) + 1;
+        }
+
+        /**
+         * 子树中 key 所在的叶节点，key 为 null 时取最左边或最右边的叶节点
+         */
+        private TreeNode<K, V> edgeLeaf(TreeNode<K, V> subtree, K key, boolean leftmost) {
+            while (!subtree.isLeaf()) {
+                int i = key != null ? childIndex(subtree, key) : leftmost ? 0 : subtree.size;
+                subtree = subtree.children[i];
+            }
+            return subtree;
         }
-        builder.append( '}');
-        return builder.toString();
-    }
 
-    public List<KeyValue> toList() {
-        List<KeyValue> list = new ArrayList<>();
-        TreeNode curr = this.root;
-        while (curr != null) {
-            if (!curr.getChildren().isEmpty()) {
-                curr = curr.getChildren().get(0);
+        private void start() {
+            TreeNode<K, V> first;
+            TreeNode<K, V> end;
+            if (node.isLeaf()) {
+                first = node;
+                end = node.nextNode;
             } else {
-                break;
+                first = edgeLeaf(node.children[lo], from, true);
+                end = edgeLeaf(node.children[hi - 1], to, false).nextNode;
+            }
+            int i = from == null ? 0 : indexOf(first, from);
+            cursor = new ScanIterator(first, i >= 0 ? i : -i - 1, to, end, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super KeyValue<K, V>> action) {
+            if (cursor == null) {
+                start();
+            }
+            if (!cursor.hasNext()) {
+                return false;
+            }
+            action.accept(cursor.next());
+            return true;
+        }
+
+        @Override
+        public Spliterator<KeyValue<K, V>> trySplit() {
+            if (cursor != null) {
+                return null;
+            }
+            while (!node.isLeaf() && hi - lo == 1) {
+                TreeNode<K, V> child = node.children[lo];
+                if (child.isLeaf()) {
+                    return null;
+                }
+                node = child;
+                lo = lowerChild(child);
+                hi = upperChild(child);
+            }
+            if (node.isLeaf()) {
+                return null;
             }
+            int mid = (lo + hi) >>> 1;
+            long half = estimate >>> 1;
+            RangeSpliterator prefix = new RangeSpliterator(node, lo, mid, from, to, half);
+            lo = mid;
+            estimate -= half;
+            return prefix;
         }
-        while (curr != null) {
-            list.addAll(curr.getKeyValues());
-            curr = curr.getNextNode();
+
+        @Override
+        public long estimateSize() {
+            return estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SORTED | DISTINCT | NONNULL;
+        }
+
+        @Override
+        public Comparator<? super KeyValue<K, V>> getComparator() {
+            return (a, b) -> comparator.compare(a.getKey(), b.getKey());
         }
-        return list;
     }
 }
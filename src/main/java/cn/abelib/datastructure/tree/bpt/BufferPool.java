@@ -0,0 +1,244 @@
+package cn.abelib.datastructure.tree.bpt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author abel-huang
+ * @date 2017/11/2
+ * 页缓冲池，固定数量的页帧，使用 CLOCK 算法淘汰:
+ * 时钟指针扫过的页如果被访问过就清除访问位给它第二次机会，否则淘汰；被 pin 住的页不会被淘汰。
+ * 脏页在淘汰或 flush 时写回文件。
+ * 开启 noSteal 后脏页不会被淘汰，只在 checkpoint 时写回，保证数据文件只在 checkpoint 时变化
+ */
+class BufferPool {
+    private final FileChannel channel;
+    private final int pageSize;
+    private final Page[] frames;
+    private final Map<Integer, Page> pageTable;
+    private int clockHand;
+    private boolean noSteal;
+    /**
+     * 文件中的页数，包括 0 号元数据页
+     */
+    private int pageCount;
+    /**
+     * 空闲页链表头，空闲页的 next 指向下一个空闲页
+     */
+    private int freeHead;
+    private long reads;
+    private long writes;
+
+    BufferPool(FileChannel channel, int pageSize, int capacity, int pageCount, int freeHead) {
+        if (capacity < 8) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        this.channel = channel;
+        this.pageSize = pageSize;
+        this.frames = new Page[capacity];
+        this.pageTable = new HashMap<>(capacity * 2);
+        this.pageCount = pageCount;
+        this.freeHead = freeHead;
+        for (int i = 0; i < capacity; i++) {
+            frames[i] = new Page(pageSize);
+            frames[i].pageId = Page.NONE;
+        }
+    }
+
+    /**
+     * 取出页并 pin 住，用完后需要调用 unpin
+     * @param pageId
+     * @return
+     * @throws IOException
+     */
+    Page fetch(int pageId) throws IOException {
+        if (pageId <= Page.NONE || pageId >= pageCount) {
+            throw new IllegalArgumentException("Illegal page id: " + pageId);
+        }
+        Page page = pageTable.get(pageId);
+        if (page == null) {
+            page = victim();
+            page.pageId = pageId;
+            read(page);
+            pageTable.put(pageId, page);
+        }
+        page.pinCount++;
+        page.referenced = true;
+        return page;
+    }
+
+    /**
+     * 分配一个新页，优先复用空闲页，返回的页已经 pin 住
+     * @param type
+     * @return
+     * @throws IOException
+     */
+    Page allocate(byte type) throws IOException {
+        int pageId;
+        if (freeHead != Page.NONE) {
+            Page free = fetch(freeHead);
+            pageId = freeHead;
+            freeHead = free.next();
+            unpin(free);
+        } else {
+            pageId = pageCount++;
+        }
+        Page page = pageTable.get(pageId);
+        if (page == null) {
+            page = victim();
+            page.pageId = pageId;
+            pageTable.put(pageId, page);
+        }
+        page.init(type);
+        page.pinCount++;
+        page.referenced = true;
+        return page;
+    }
+
+    /**
+     * 把页放回空闲链表，调用者不能再持有这个页
+     * @param page 已经 pin 住的页
+     */
+    void free(Page page) {
+        page.init(Page.TYPE_FREE);
+        page.setNext(freeHead);
+        freeHead = page.pageId;
+        unpin(page);
+    }
+
+    void unpin(Page page) {
+        if (page.pinCount <= 0) {
+            throw new IllegalStateException("Page is not pinned: " + page.pageId);
+        }
+        page.pinCount--;
+    }
+
+    /**
+     * 写回所有脏页
+     * @throws IOException
+     */
+    void flush() throws IOException {
+        for (Page page : frames) {
+            if (page.pageId != Page.NONE && page.dirty) {
+                write(page);
+            }
+        }
+    }
+
+    void setNoSteal(boolean noSteal) {
+        this.noSteal = noSteal;
+    }
+
+    int capacity() {
+        return frames.length;
+    }
+
+    int dirtyCount() {
+        int dirty = 0;
+        for (Page page : frames) {
+            if (page.dirty && page.pageId != Page.NONE) {
+                dirty++;
+            }
+        }
+        return dirty;
+    }
+
+    List<Page> dirtyPages() {
+        List<Page> pages = new ArrayList<>();
+        for (Page page : frames) {
+            if (page.dirty && page.pageId != Page.NONE) {
+                pages.add(page);
+            }
+        }
+        return pages;
+    }
+
+    int getPageCount() {
+        return pageCount;
+    }
+
+    int getFreeHead() {
+        return freeHead;
+    }
+
+    int pinnedCount() {
+        int pinned = 0;
+        for (Page page : frames) {
+            if (page.pinCount > 0) {
+                pinned++;
+            }
+        }
+        return pinned;
+    }
+
+    long getReads() {
+        return reads;
+    }
+
+    long getWrites() {
+        return writes;
+    }
+
+    /**
+     * CLOCK 淘汰，最多扫两圈: 第一圈清除访问位，第二圈一定能找到未被 pin 的页
+     */
+    private Page victim() throws IOException {
+        for (int i = 0; i < frames.length * 2; i++) {
+            Page page = frames[clockHand];
+            clockHand = (clockHand + 1) % frames.length;
+            if (page.pinCount > 0) {
+                continue;
+            }
+            if (page.referenced) {
+                page.referenced = false;
+                continue;
+            }
+            if (noSteal && page.dirty && page.pageId != Page.NONE) {
+                continue;
+            }
+            if (page.pageId != Page.NONE) {
+                if (page.dirty) {
+                    write(page);
+                }
+                pageTable.remove(page.pageId);
+                page.pageId = Page.NONE;
+            }
+            return page;
+        }
+        throw new IllegalStateException("All " + frames.length + " pages are pinned"
+                + (noSteal ? " or dirty" : ""));
+    }
+
+    private void read(Page page) throws IOException {
+        ByteBuffer buffer = page.buffer;
+        buffer.clear();
+        long position = (long) page.pageId * pageSize;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                // 文件末尾之后的页还没有写过
+                page.clear();
+                break;
+            }
+        }
+        buffer.clear();
+        page.dirty = false;
+        reads++;
+    }
+
+    private void write(Page page) throws IOException {
+        ByteBuffer buffer = page.buffer;
+        buffer.clear();
+        long position = (long) page.pageId * pageSize;
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+        buffer.clear();
+        page.dirty = false;
+        writes++;
+    }
+}
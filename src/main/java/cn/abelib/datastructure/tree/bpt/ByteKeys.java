@@ -0,0 +1,125 @@
+package cn.abelib.datastructure.tree.bpt;
+
+import java.util.Arrays;
+
+/**
+ * @author abel-huang
+ * @date 2017/11/2
+ * 保序的字节数组 key 编码: 编码后按无符号字节序比较的结果和原始值的比较结果相同。
+ * String 按 UTF-16 代码单元逐个编码为 1~3 字节(和 CESU-8 相同)，代理对分别编码，
+ * 所以字节序和 String.compareTo 一致；long 使用大端序并翻转符号位
+ */
+public final class ByteKeys {
+    private static final byte[] EMPTY = new byte[0];
+
+    private ByteKeys() {
+    }
+
+    public static byte[] encode(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            length += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        byte[] bytes = new byte[length];
+        int j = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes[j++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[j++] = (byte) (0xc0 | c >> 6);
+                bytes[j++] = (byte) (0x80 | c & 0x3f);
+            } else {
+                bytes[j++] = (byte) (0xe0 | c >> 12);
+                bytes[j++] = (byte) (0x80 | c >> 6 & 0x3f);
+                bytes[j++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        return bytes;
+    }
+
+    public static String decodeString(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length);
+        for (int i = 0; i < bytes.length; ) {
+            int b = bytes[i] & 0xff;
+            if (b < 0x80) {
+                builder.append((char) b);
+                i++;
+            } else if (b < 0xe0) {
+                builder.append((char) ((b & 0x1f) << 6 | bytes[i + 1] & 0x3f));
+                i += 2;
+            } else {
+                builder.append((char) ((b & 0x0f) << 12 | (bytes[i + 1] & 0x3f) << 6 | bytes[i + 2] & 0x3f));
+                i += 3;
+            }
+        }
+        return builder.toString();
+    }
+
+    public static byte[] encode(long value) {
+        long v = value ^ Long.MIN_VALUE;
+        byte[] bytes = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            bytes[i] = (byte) v;
+            v >>>= 8;
+        }
+        return bytes;
+    }
+
+    public static long decodeLong(byte[] bytes) {
+        if (bytes.length != 8) {
+            throw new IllegalArgumentException("Illegal length: " + bytes.length);
+        }
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = v << 8 | bytes[i] & 0xff;
+        }
+        return v ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * 按无符号字节序比较
+     */
+    public static int compare(byte[] a, byte[] b) {
+        return compare(a, 0, a.length, b, 0, b.length);
+    }
+
+    static int compare(byte[] a, int aOffset, int aLength, byte[] b, int bOffset, int bLength) {
+        int length = Math.min(aLength, bLength);
+        for (int i = 0; i < length; i++) {
+            int cmp = (a[aOffset + i] & 0xff) - (b[bOffset + i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return aLength - bLength;
+    }
+
+    /**
+     * 公共前缀的长度
+     */
+    static int commonPrefix(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < length && a[i] == b[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * 满足 left &lt; s &lt;= right 的最短的 s，作为分裂时的分隔 key(后缀截断)
+     * @param left 左边节点最大的 key
+     * @param right 右边节点最小的 key，必须大于 left
+     * @return
+     */
+    static byte[] separator(byte[] left, byte[] right) {
+        // left 是 right 的前缀时 commonPrefix 等于 left.length，多取一个字节即可大于 left
+        return Arrays.copyOf(right, commonPrefix(left, right) + 1);
+    }
+
+    static byte[] empty() {
+        return EMPTY;
+    }
+}
@@ -0,0 +1,531 @@
+package cn.abelib.datastructure.tree.bpt;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * @author abel-huang
+ * @date 2017/11/2
+ * 并发的B+树，基于 Lehman-Yao 的 B-link 树:
+ * 每个节点保存 highKey(节点中所有 key 都小于它，最右边的节点为 null 表示正无穷)和指向右兄弟的 right 指针，
+ * 同一层的节点通过 right 连成链表。分裂时先把右半部分移到新节点并链接到 right，再向父节点插入分隔 key，
+ * 在这两步之间访问到左节点的线程发现 key &gt;= highKey 时沿着 right 向右移动即可找到。
+ * 读操作不加锁，使用 StampedLock 的乐观读，读完节点后校验版本，失败则重读这个节点。
+ * 写操作只锁叶节点，分裂时先锁住父节点再释放子节点，每次只持有一到两层的锁，加锁顺序总是自下而上、自左向右，不会死锁。
+ * 范围查找沿着叶节点的 right 前进并跳过已经返回的 key，分裂只会把 key 移到右边，所以不会遗漏。
+ * 删除不合并节点，节点可以为空但仍然保留在链表中
+ */
+public class ConcurrentBalancePlusTree<K, V> {
+    private final int degree;
+    private final Comparator<? super K> comparator;
+    private volatile Node root;
+    private final Object rootLock = new Object();
+    private final LongAdder size = new LongAdder();
+
+    public ConcurrentBalancePlusTree(int degree) {
+        this(degree, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentBalancePlusTree(int degree, Comparator<? super K> comparator) {
+        if (degree < 3) {
+            throw new IllegalArgumentException("Illegal degree: " + degree);
+        }
+        this.degree = degree;
+        this.comparator = comparator == null ? (Comparator<? super K>) Comparator.naturalOrder() : comparator;
+        this.root = new Node(0, degree);
+    }
+
+    public int getDegree() {
+        return degree;
+    }
+
+    public int size() {
+        return size.intValue();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int height() {
+        return root.level + 1;
+    }
+
+    /**
+     * 查找 key 对应的 value，不存在时返回 null，不加锁
+     * @param key
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public V search(K key) {
+        checkKey(key);
+        Node node = root;
+        while (true) {
+            long stamp = node.lock.tryOptimisticRead();
+            if (stamp == 0) {
+                Thread.yield();
+                continue;
+            }
+            Node next = null;
+            Object value = null;
+            boolean found = false;
+            if (shouldMoveRight(node, key)) {
+                next = node.right;
+            } else {
+                int i = indexOf(node, key);
+                if (node.level == 0) {
+                    if (i >= 0) {
+                        value = node.values[i];
+                        found = true;
+                    }
+                } else if (i != RETRY) {
+                    next = node.children[i >= 0 ? i + 1 : -i - 1];
+                }
+            }
+            if (!node.lock.validate(stamp)) {
+                continue;
+            }
+            if (node.level == 0 && next == null) {
+                return found ? (V) value : null;
+            }
+            if (next != null) {
+                node = next;
+            }
+        }
+    }
+
+    public boolean contains(K key) {
+        checkKey(key);
+        Node node = root;
+        while (true) {
+            long stamp = node.lock.tryOptimisticRead();
+            if (stamp == 0) {
+                Thread.yield();
+                continue;
+            }
+            Node next = null;
+            boolean found = false;
+            if (shouldMoveRight(node, key)) {
+                next = node.right;
+            } else {
+                int i = indexOf(node, key);
+                if (node.level == 0) {
+                    found = i >= 0;
+                } else if (i != RETRY) {
+                    next = node.children[i >= 0 ? i + 1 : -i - 1];
+                }
+            }
+            if (!node.lock.validate(stamp)) {
+                continue;
+            }
+            if (node.level == 0 && next == null) {
+                return found;
+            }
+            if (next != null) {
+                node = next;
+            }
+        }
+    }
+
+    public boolean insert(K key) {
+        return insert(key, null);
+    }
+
+    /**
+     * 插入 key，如果 key 已经存在则替换 value
+     * @param key
+     * @param value
+     * @return key 之前不存在时返回 true
+     */
+    public boolean insert(K key, V value) {
+        checkKey(key);
+        List<Node> path = new ArrayList<>();
+        Node leaf = lockLeaf(key, path);
+        int i = indexOf(leaf, key);
+        if (i >= 0) {
+            leaf.values[i] = value;
+            leaf.lock.tryUnlockWrite();
+            return false;
+        }
+        i = -i - 1;
+        insertAt(leaf.keys, i, key, leaf.size);
+        insertAt(leaf.values, i, value, leaf.size);
+        leaf.size++;
+        size.increment();
+        if (leaf.size < degree) {
+            leaf.lock.tryUnlockWrite();
+            return true;
+        }
+        split(leaf, path);
+        return true;
+    }
+
+    /**
+     * 只更新已经存在的 key
+     * @param key
+     * @param value
+     * @return key 存在时返回 true
+     */
+    public boolean update(K key, V value) {
+        checkKey(key);
+        Node leaf = lockLeaf(key, null);
+        try {
+            int i = indexOf(leaf, key);
+            if (i < 0) {
+                return false;
+            }
+            leaf.values[i] = value;
+            return true;
+        } finally {
+            leaf.lock.tryUnlockWrite();
+        }
+    }
+
+    /**
+     * 删除 key，不合并节点
+     * @param key
+     * @return key 存在时返回 true
+     */
+    public boolean delete(K key) {
+        checkKey(key);
+        Node leaf = lockLeaf(key, null);
+        try {
+            int i = indexOf(leaf, key);
+            if (i < 0) {
+                return false;
+            }
+            removeAt(leaf.keys, i, leaf.size);
+            removeAt(leaf.values, i, leaf.size);
+            leaf.size--;
+            size.decrement();
+            return true;
+        } finally {
+            leaf.lock.tryUnlockWrite();
+        }
+    }
+
+    /**
+     * 范围查找，返回 [from, to] 闭区间内的键值对，不加锁，可以和分裂并发进行。
+     * 每个叶节点内的数据是一致的，整个结果不是同一时刻的快照
+     * @param from
+     * @param to
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public List<KeyValue<K, V>> scan(K from, K to) {
+        checkKey(from);
+        checkKey(to);
+        List<KeyValue<K, V>> result = new ArrayList<>();
+        if (comparator.compare(from, to) > 0) {
+            return result;
+        }
+        Node node = findLeaf(from);
+        Object[] keys = new Object[degree];
+        Object[] values = new Object[degree];
+        // 已经返回的最大 key，跳过小于等于它的 key
+        K last = null;
+        while (node != null) {
+            long stamp = node.lock.tryOptimisticRead();
+            if (stamp == 0) {
+                Thread.yield();
+                continue;
+            }
+            int count = Math.min(node.size, degree);
+            System.arraycopy(node.keys, 0, keys, 0, count);
+            System.arraycopy(node.values, 0, values, 0, count);
+            Node next = node.right;
+            if (!node.lock.validate(stamp)) {
+                continue;
+            }
+            for (int i = 0; i < count; i++) {
+                K key = (K) keys[i];
+                if (last == null ? comparator.compare(key, from) < 0 : comparator.compare(key, last) <= 0) {
+                    continue;
+                }
+                if (comparator.compare(key, to) > 0) {
+                    return result;
+                }
+                result.add(new KeyValue<>(key, (V) values[i]));
+                last = key;
+            }
+            node = next;
+        }
+        return result;
+    }
+
+    public List<KeyValue<K, V>> toList() {
+        List<KeyValue<K, V>> result = new ArrayList<>();
+        Node node = root;
+        while (node.level > 0) {
+            node = firstChild(node);
+        }
+        Object[] keys = new Object[degree];
+        Object[] values = new Object[degree];
+        while (node != null) {
+            long stamp = node.lock.tryOptimisticRead();
+            if (stamp == 0) {
+                Thread.yield();
+                continue;
+            }
+            int count = Math.min(node.size, degree);
+            System.arraycopy(node.keys, 0, keys, 0, count);
+            System.arraycopy(node.values, 0, values, 0, count);
+            Node next = node.right;
+            if (!node.lock.validate(stamp)) {
+                continue;
+            }
+            for (int i = 0; i < count; i++) {
+                @SuppressWarnings("unchecked")
+                KeyValue<K, V> keyValue = new KeyValue<>((K) keys[i], (V) values[i]);
+                result.add(keyValue);
+            }
+            node = next;
+        }
+        return result;
+    }
+
+    private Node firstChild(Node node) {
+        while (true) {
+            long stamp = node.lock.tryOptimisticRead();
+            Node child = node.children[0];
+            if (stamp != 0 && node.lock.validate(stamp)) {
+                return child;
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * 乐观下降到 key 所在的叶节点，不加锁
+     */
+    private Node findLeaf(K key) {
+        return findNode(key, 0, null);
+    }
+
+    /**
+     * 乐观下降到 level 层 key 所在的节点，path 不为 null 时记录每层经过的最后一个节点
+     */
+    private Node findNode(K key, int level, List<Node> path) {
+        Node node = root;
+        while (true) {
+            long stamp = node.lock.tryOptimisticRead();
+            if (stamp == 0) {
+                Thread.yield();
+                continue;
+            }
+            Node next;
+            boolean right = shouldMoveRight(node, key);
+            if (right) {
+                next = node.right;
+            } else if (node.level == level) {
+                next = null;
+            } else {
+                int i = indexOf(node, key);
+                next = i == RETRY ? node : node.children[i >= 0 ? i + 1 : -i - 1];
+            }
+            if (!node.lock.validate(stamp)) {
+                continue;
+            }
+            if (next == null) {
+                return node;
+            }
+            if (!right && next != node && path != null) {
+                path.add(node);
+            }
+            node = next;
+        }
+    }
+
+    /**
+     * 找到 key 所在的叶节点并加写锁
+     */
+    private Node lockLeaf(K key, List<Node> path) {
+        Node leaf = findNode(key, 0, path);
+        leaf.lock.writeLock();
+        return moveRight(leaf, key);
+    }
+
+    /**
+     * 持有 node 的写锁，key 超出 node 的范围时锁住右兄弟后释放 node
+     */
+    private Node moveRight(Node node, Object key) {
+        while (shouldMoveRight(node, key)) {
+            Node right = node.right;
+            right.lock.writeLock();
+            node.lock.tryUnlockWrite();
+            node = right;
+        }
+        return node;
+    }
+
+    /**
+     * 分裂已满的节点并向上插入分隔 key，调用时持有 node 的写锁，返回时释放所有锁
+     * @param node
+     * @param path 下降时每层经过的节点
+     */
+    private void split(Node node, List<Node> path) {
+        while (true) {
+            Node right = new Node(node.level, degree);
+            Object separator;
+            int mid = degree / 2;
+            if (node.level == 0) {
+                int moved = node.size - mid;
+                System.arraycopy(node.keys, mid, right.keys, 0, moved);
+                System.arraycopy(node.values, mid, right.values, 0, moved);
+                right.size = moved;
+                separator = right.keys[0];
+            } else {
+                int moved = node.size - mid - 1;
+                separator = node.keys[mid];
+                System.arraycopy(node.keys, mid + 1, right.keys, 0, moved);
+                System.arraycopy(node.children, mid + 1, right.children, 0, moved + 1);
+                right.size = moved;
+            }
+            right.highKey = node.highKey;
+            right.right = node.right;
+            // 右节点准备好之后再修改左节点，读线程校验失败会重读
+            for (int i = mid; i < node.size; i++) {
+                node.keys[i] = null;
+                if (node.level == 0) {
+                    node.values[i] = null;
+                } else {
+                    node.children[i + 1] = null;
+                }
+            }
+            node.size = mid;
+            node.highKey = separator;
+            node.right = right;
+
+            Node parent = path.isEmpty() ? null : path.remove(path.size() - 1);
+            if (parent == null) {
+                synchronized (rootLock) {
+                    if (root == node) {
+                        Node newRoot = new Node(node.level + 1, degree);
+                        newRoot.keys[0] = separator;
+                        newRoot.children[0] = node;
+                        newRoot.children[1] = right;
+                        newRoot.size = 1;
+                        root = newRoot;
+                        node.lock.tryUnlockWrite();
+                        return;
+                    }
+                }
+                // 根节点已经被其他线程分裂，从新的根节点找到上一层
+                parent = findNode(separatorKey(separator), node.level + 1, null);
+            }
+            parent.lock.writeLock();
+            parent = moveRight(parent, separator);
+            node.lock.tryUnlockWrite();
+
+            int i = indexOf(parent, separatorKey(separator));
+            i = i >= 0 ? i + 1 : -i - 1;
+            insertAt(parent.keys, i, separator, parent.size);
+            insertAt(parent.children, i + 1, right, parent.size + 1);
+            parent.size++;
+            if (parent.size < degree) {
+                parent.lock.tryUnlockWrite();
+                return;
+            }
+            node = parent;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private K separatorKey(Object separator) {
+        return (K) separator;
+    }
+
+    private static final int RETRY = Integer.MIN_VALUE;
+
+    /**
+     * key &gt;= highKey 时需要向右移动。乐观读时 highKey 可能不一致，由调用者校验
+     */
+    @SuppressWarnings("unchecked")
+    private boolean shouldMoveRight(Node node, Object key) {
+        Object high = node.highKey;
+        return high != null && node.right != null && comparator.compare((K) key, (K) high) >= 0;
+    }
+
+    /**
+     * 节点内二分查找，找到时返回下标，否则返回 -(插入位置) - 1。
+     * 乐观读时可能读到移动中的数组，遇到 null 返回 RETRY
+     */
+    @SuppressWarnings("unchecked")
+    private int indexOf(Node node, Object key) {
+        Object[] keys = node.keys;
+        int lo = 0;
+        int hi = Math.min(node.size, keys.length) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            Object midKey = keys[mid];
+            if (midKey == null) {
+                return RETRY;
+            }
+            int cmp = comparator.compare((K) midKey, (K) key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    private static void insertAt(Object[] array, int index, Object element, int length) {
+        System.arraycopy(array, index, array, index + 1, length - index);
+        array[index] = element;
+    }
+
+    private static void removeAt(Object[] array, int index, int length) {
+        System.arraycopy(array, index + 1, array, index, length - index - 1);
+        array[length - 1] = null;
+    }
+
+    private void checkKey(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key can not be null");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentBalancePlusTree{" +
+                "degree=" + degree +
+                ", size=" + size() +
+                ", height=" + height() +
+                '}';
+    }
+
+    /**
+     * 节点的字段只在持有写锁时修改，读线程乐观读之后校验版本
+     */
+    private static final class Node {
+        final StampedLock lock = new StampedLock();
+        /**
+         * 叶节点为 0
+         */
+        final int level;
+        final Object[] keys;
+        final Object[] values;
+        final Node[] children;
+        int size;
+        /**
+         * 节点中所有 key 都小于 highKey，null 表示正无穷
+         */
+        Object highKey;
+        Node right;
+
+        Node(int level, int degree) {
+            this.level = level;
+            this.keys = new Object[degree];
+            this.values = level == 0 ? new Object[degree] : null;
+            this.children = level == 0 ? null : new Node[degree + 1];
+        }
+    }
+}
@@ -0,0 +1,790 @@
+package cn.abelib.datastructure.tree.bpt;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author abel-huang
+ * @date 2017/11/2
+ * 保存在文件中的B+树，key 和 value 都是 byte[]，key 按无符号字节序比较。
+ * 每个节点是一个固定大小的页(slotted page，见 {@link Page})，页通过 {@link BufferPool} 缓存，
+ * 修改过的页在淘汰、flush 或 close 时写回文件。0 号页保存元数据。
+ * 语义和 {@link BalancePlusTree} 相同: 重复插入替换旧值，update 只更新已存在的 key，scan 返回闭区间。
+ * 删除后页的使用量低于 1/4 时尝试和兄弟节点合并，放不下则保持不变。
+ * 指定 {@link SyncPolicy} 时开启预写日志(文件名加 .wal 后缀):
+ * 每次修改先在日志中记录 key 和 value，缓冲池不再淘汰脏页，数据文件只在 checkpoint 时更新。
+ * checkpoint 先把所有脏页和元数据写入日志并 fsync，再写回数据文件，最后截断日志，
+ * 所以写回过程中宕机也可以用日志中的页重做。打开时从最后一个完整的 checkpoint 开始重做之后的修改。
+ * 脏页超过缓冲池的一半或日志超过 checkpointBytes 时自动 checkpoint。
+ * 所有公开方法都用对象锁串行化，提交时的 fsync 在锁外进行，多个线程的提交可以合并
+ */
+public class DiskBalancePlusTree implements Closeable {
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+    public static final int DEFAULT_CACHE_PAGES = 1024;
+    private static final int MAGIC = 0x42505431;
+    private static final int MIN_PAGE_SIZE = 512;
+    private static final int MAX_PAGE_SIZE = 32768;
+    private static final int META_SIZE = 32;
+    private static final String WAL_SUFFIX = ".wal";
+
+    private final FileChannel channel;
+    private final int pageSize;
+    private final BufferPool pool;
+    /**
+     * 一个 cell 最大的字节数，保证分裂后新 cell 一定能放进其中一半
+     */
+    private final int maxCellSize;
+    private final WriteAheadLog wal;
+    private long checkpointBytes = 64L << 20;
+    private int root;
+    private int height;
+    private long size;
+    private int[] pathPages;
+    private int[] pathIndexes;
+
+    public DiskBalancePlusTree(String file) throws IOException {
+        this(file, DEFAULT_PAGE_SIZE, DEFAULT_CACHE_PAGES);
+    }
+
+    /**
+     * 打开或创建文件，已经存在的文件使用创建时的页大小
+     * @param file
+     * @param pageSize 新文件的页大小，512 到 32768 之间的 2 的幂
+     * @param cachePages 缓冲池的页数
+     * @throws IOException
+     */
+    public DiskBalancePlusTree(String file, int pageSize, int cachePages) throws IOException {
+        this(file, pageSize, cachePages, null);
+    }
+
+    /**
+     * 打开或创建文件，syncPolicy 不为 null 时开启预写日志，并根据日志恢复
+     * @param file
+     * @param pageSize 新文件的页大小，512 到 32768 之间的 2 的幂
+     * @param cachePages 缓冲池的页数，开启日志时脏页会占用缓冲池，建议不少于 64
+     * @param syncPolicy 日志刷盘策略，null 表示不使用日志
+     * @throws IOException
+     */
+    public DiskBalancePlusTree(String file, int pageSize, int cachePages, SyncPolicy syncPolicy) throws IOException {
+        if (pageSize < MIN_PAGE_SIZE || pageSize > MAX_PAGE_SIZE || Integer.bitCount(pageSize) != 1) {
+            throw new IllegalArgumentException("Illegal page size: " + pageSize);
+        }
+        this.channel = FileChannel.open(Paths.get(file),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // 构造失败时关闭已经打开的日志和文件, 日志的 syncer 线程也随之结束
+        WriteAheadLog log = null;
+        try {
+            List<WriteAheadLog.Record> records = null;
+            long covered = 0;
+            if (syncPolicy != null) {
+                log = new WriteAheadLog(file + WAL_SUFFIX, syncPolicy);
+                this.wal = log;
+                records = wal.readAll();
+                covered = applyCheckpoint(records);
+            } else {
+                this.wal = null;
+            }
+            int pageCount = 1;
+            int freeHead = Page.NONE;
+            if (channel.size() > 0) {
+                ByteBuffer meta = readMeta();
+                if (meta.getInt(0) != MAGIC) {
+                    throw new IllegalArgumentException("Not a B+ tree file: " + file);
+                }
+                pageSize = meta.getInt(4);
+                this.root = meta.getInt(8);
+                this.height = meta.getInt(12);
+                pageCount = meta.getInt(16);
+                freeHead = meta.getInt(20);
+                this.size = meta.getLong(24);
+            }
+            this.pageSize = pageSize;
+            this.maxCellSize = (pageSize - Page.HEADER_SIZE) / 4 - 2;
+            this.pool = new BufferPool(channel, pageSize, cachePages, pageCount, freeHead);
+            pool.setNoSteal(wal != null);
+            if (root == Page.NONE) {
+                Page leaf = pool.allocate(Page.TYPE_LEAF);
+                this.root = leaf.pageId;
+                this.height = 1;
+                pool.unpin(leaf);
+                writePages();
+            }
+            this.pathPages = new int[Math.max(4, height)];
+            this.pathIndexes = new int[pathPages.length];
+            if (records != null && !records.isEmpty()) {
+                recover(records, covered);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (log != null) {
+                try {
+                    log.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            try {
+                channel.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 日志超过这个大小时自动 checkpoint
+     * @param checkpointBytes
+     */
+    public synchronized void setCheckpointBytes(long checkpointBytes) {
+        if (checkpointBytes <= 0) {
+            throw new IllegalArgumentException("Illegal checkpoint bytes: " + checkpointBytes);
+        }
+        this.checkpointBytes = checkpointBytes;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public synchronized int height() {
+        return height;
+    }
+
+    /**
+     * 查找 key 对应的 value，不存在时返回 null
+     * @param key
+     * @return
+     * @throws IOException
+     */
+    public synchronized byte[] search(byte[] key) throws IOException {
+        checkKey(key);
+        Page leaf = findLeaf(key, false);
+        try {
+            int i = leaf.search(key);
+            return i >= 0 ? leaf.value(i) : null;
+        } finally {
+            pool.unpin(leaf);
+        }
+    }
+
+    public synchronized boolean contains(byte[] key) throws IOException {
+        checkKey(key);
+        return contains0(key);
+    }
+
+    private boolean contains0(byte[] key) throws IOException {
+        Page leaf = findLeaf(key, false);
+        try {
+            return leaf.search(key) >= 0;
+        } finally {
+            pool.unpin(leaf);
+        }
+    }
+
+    /**
+     * 插入 key，如果 key 已经存在则替换 value
+     * @param key
+     * @param value
+     * @return key 之前不存在时返回 true
+     * @throws IOException
+     */
+    public boolean insert(byte[] key, byte[] value) throws IOException {
+        checkEntry(key, value);
+        boolean inserted;
+        long lsn;
+        synchronized (this) {
+            inserted = insert0(key, value);
+            lsn = log(WriteAheadLog.PUT, key, value);
+        }
+        commit(lsn);
+        return inserted;
+    }
+
+    private boolean insert0(byte[] key, byte[] value) throws IOException {
+        Page leaf = findLeaf(key, true);
+        try {
+            int i = leaf.search(key);
+            boolean exists = i >= 0;
+            if (exists) {
+                if (leaf.replaceValue(i, value)) {
+                    return false;
+                }
+                leaf.remove(i);
+            } else {
+                i = -i - 1;
+                size++;
+            }
+            if (leaf.hasRoom(Page.leafCellSize(key, value))) {
+                leaf.insertLeaf(i, key, value);
+            } else {
+                splitLeaf(leaf, i, key, value);
+            }
+            return !exists;
+        } finally {
+            pool.unpin(leaf);
+        }
+    }
+
+    /**
+     * 只更新已经存在的 key
+     * @param key
+     * @param value
+     * @return key 存在时返回 true
+     * @throws IOException
+     */
+    public boolean update(byte[] key, byte[] value) throws IOException {
+        checkEntry(key, value);
+        long lsn;
+        synchronized (this) {
+            if (!contains0(key)) {
+                return false;
+            }
+            insert0(key, value);
+            lsn = log(WriteAheadLog.PUT, key, value);
+        }
+        commit(lsn);
+        return true;
+    }
+
+    /**
+     * 删除 key
+     * @param key
+     * @return key 存在时返回 true
+     * @throws IOException
+     */
+    public boolean delete(byte[] key) throws IOException {
+        checkKey(key);
+        long lsn;
+        synchronized (this) {
+            if (!delete0(key)) {
+                return false;
+            }
+            lsn = log(WriteAheadLog.DELETE, key, null);
+        }
+        commit(lsn);
+        return true;
+    }
+
+    private boolean delete0(byte[] key) throws IOException {
+        Page leaf = findLeaf(key, true);
+        boolean underflow;
+        try {
+            int i = leaf.search(key);
+            if (i < 0) {
+                return false;
+            }
+            leaf.remove(i);
+            size--;
+            underflow = leaf.usedBytes() < pageSize / 4;
+        } finally {
+            pool.unpin(leaf);
+        }
+        if (underflow && height > 1) {
+            merge(height - 2);
+        }
+        return true;
+    }
+
+    /**
+     * 范围查找，返回 [from, to] 闭区间内的键值对
+     * @param from
+     * @param to
+     * @return
+     * @throws IOException
+     */
+    public synchronized List<KeyValue<byte[], byte[]>> scan(byte[] from, byte[] to) throws IOException {
+        checkKey(from);
+        checkKey(to);
+        List<KeyValue<byte[], byte[]>> result = new ArrayList<>();
+        if (Page.compare(from, to) > 0) {
+            return result;
+        }
+        Page leaf = findLeaf(from, false);
+        int i = leaf.search(from);
+        i = i >= 0 ? i : -i - 1;
+        while (true) {
+            int next;
+            try {
+                for (int count = leaf.count(); i < count; i++) {
+                    if (leaf.compareKey(i, to) > 0) {
+                        return result;
+                    }
+                    result.add(new KeyValue<>(leaf.key(i), leaf.value(i)));
+                }
+                next = leaf.next();
+            } finally {
+                pool.unpin(leaf);
+            }
+            if (next == Page.NONE) {
+                return result;
+            }
+            leaf = pool.fetch(next);
+            i = 0;
+        }
+    }
+
+    /**
+     * 写回所有脏页和元数据，并同步到磁盘；开启日志时执行一次 checkpoint
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        if (wal != null) {
+            checkpoint(wal.position(), true);
+        } else {
+            writePages();
+        }
+    }
+
+    /**
+     * 和 flush 相同
+     * @throws IOException
+     */
+    public void checkpoint() throws IOException {
+        flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            try {
+                if (wal != null) {
+                    wal.close();
+                }
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * 记录日志，日志或脏页过多时 checkpoint
+     * @return 记录的 lsn，没有日志时返回 0
+     */
+    private long log(byte type, byte[] key, byte[] value) throws IOException {
+        if (wal == null) {
+            return 0;
+        }
+        long lsn = wal.append(type, key, value);
+        if (pool.dirtyCount() * 2 > pool.capacity() || wal.size() > checkpointBytes) {
+            checkpoint(wal.position(), true);
+        }
+        return lsn;
+    }
+
+    private void commit(long lsn) throws IOException {
+        if (wal != null) {
+            wal.commit(lsn);
+        }
+    }
+
+    /**
+     * 先把脏页和元数据写入日志并 fsync，再写回数据文件
+     * @param covered 日志中这个位置之前的修改都已经反映在这次 checkpoint 中
+     * @param reset 是否截断日志，恢复过程中日志里还有没重做的修改，不能截断
+     * @throws IOException
+     */
+    private void checkpoint(long covered, boolean reset) throws IOException {
+        wal.append(WriteAheadLog.CHECKPOINT_BEGIN, null, null);
+        for (Page page : pool.dirtyPages()) {
+            wal.append(WriteAheadLog.PAGE, ByteBuffer.allocate(4).putInt(page.pageId).array(), page.buffer.array());
+        }
+        wal.append(WriteAheadLog.META, metaBytes(), null);
+        long lsn = wal.append(WriteAheadLog.CHECKPOINT_END, ByteBuffer.allocate(8).putLong(covered).array(), null);
+        wal.sync(lsn, true);
+        writePages();
+        if (reset) {
+            wal.reset();
+        }
+    }
+
+    /**
+     * 把最后一个完整的 checkpoint 中的页和元数据写入数据文件
+     * @param records
+     * @return checkpoint 覆盖到的日志位置，没有 checkpoint 时返回 0
+     * @throws IOException
+     */
+    private long applyCheckpoint(List<WriteAheadLog.Record> records) throws IOException {
+        int begin = -1;
+        int checkpointBegin = -1;
+        int checkpointEnd = -1;
+        for (int i = 0; i < records.size(); i++) {
+            byte type = records.get(i).type;
+            if (type == WriteAheadLog.CHECKPOINT_BEGIN) {
+                begin = i;
+            } else if (type == WriteAheadLog.CHECKPOINT_END && begin >= 0) {
+                checkpointBegin = begin;
+                checkpointEnd = i;
+            }
+        }
+        if (checkpointEnd < 0) {
+            return 0;
+        }
+        for (int i = checkpointBegin + 1; i < checkpointEnd; i++) {
+            WriteAheadLog.Record record = records.get(i);
+            if (record.type == WriteAheadLog.PAGE) {
+                long position = (long) ByteBuffer.wrap(record.a).getInt() * record.b.length;
+                write(ByteBuffer.wrap(record.b), position);
+            } else if (record.type == WriteAheadLog.META) {
+                write(ByteBuffer.wrap(record.a), 0);
+            }
+        }
+        channel.force(false);
+        return ByteBuffer.wrap(records.get(checkpointEnd).a).getLong();
+    }
+
+    /**
+     * 重做 checkpoint 之后的修改，脏页过多时做一次不截断日志的 checkpoint
+     * @param records
+     * @param covered
+     * @throws IOException
+     */
+    private void recover(List<WriteAheadLog.Record> records, long covered) throws IOException {
+        for (WriteAheadLog.Record record : records) {
+            if (record.position < covered) {
+                continue;
+            }
+            if (record.type != WriteAheadLog.PUT && record.type != WriteAheadLog.DELETE) {
+                continue;
+            }
+            if (pool.dirtyCount() * 2 > pool.capacity()) {
+                checkpoint(record.position, false);
+            }
+            if (record.type == WriteAheadLog.PUT) {
+                insert0(record.a, record.b);
+            } else {
+                delete0(record.a);
+            }
+        }
+        checkpoint(wal.position(), true);
+    }
+
+    private void writePages() throws IOException {
+        pool.flush();
+        write(ByteBuffer.wrap(metaBytes()), 0);
+        channel.force(false);
+    }
+
+    private byte[] metaBytes() {
+        return ByteBuffer.allocate(META_SIZE).putInt(MAGIC).putInt(pageSize).putInt(root).putInt(height)
+                .putInt(pool.getPageCount()).putInt(pool.getFreeHead()).putLong(size).array();
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * 文件中的页数，包括元数据页和空闲页
+     */
+    synchronized int pageCount() {
+        return pool.getPageCount();
+    }
+
+    WriteAheadLog getWal() {
+        return wal;
+    }
+
+    BufferPool getPool() {
+        return pool;
+    }
+
+    private ByteBuffer readMeta() throws IOException {
+        ByteBuffer meta = ByteBuffer.allocate(META_SIZE);
+        while (meta.hasRemaining() && channel.read(meta, meta.position()) >= 0) {
+            // 读满元数据
+        }
+        return meta;
+    }
+
+    /**
+     * 从根节点下降到叶节点，返回的叶节点已经 pin 住
+     * @param key
+     * @param recordPath 是否记录经过的内部节点，插入和删除时需要
+     * @return
+     * @throws IOException
+     */
+    private Page findLeaf(byte[] key, boolean recordPath) throws IOException {
+        Page page = pool.fetch(root);
+        int depth = 0;
+        while (!page.isLeaf()) {
+            int i = page.childIndex(key);
+            int child = page.child(i);
+            if (recordPath) {
+                pathPages[depth] = page.pageId;
+                pathIndexes[depth] = i;
+            }
+            depth++;
+            pool.unpin(page);
+            page = pool.fetch(child);
+        }
+        return page;
+    }
+
+    /**
+     * 叶节点放不下新 cell 时分裂，按字节数把原有的 cell 和新 cell 平分到两个页中
+     * @param leaf
+     * @param index 新 cell 的位置
+     * @param key
+     * @param value
+     * @throws IOException
+     */
+    private void splitLeaf(Page leaf, int index, byte[] key, byte[] value) throws IOException {
+        int count = leaf.count() + 1;
+        byte[][] keys = new byte[count][];
+        byte[][] values = new byte[count][];
+        int[] sizes = new int[count];
+        for (int i = 0, j = 0; i < count; i++) {
+            if (i == index) {
+                keys[i] = key;
+                values[i] = value;
+            } else {
+                keys[i] = leaf.key(j);
+                values[i] = leaf.value(j);
+                j++;
+            }
+            sizes[i] = Page.leafCellSize(keys[i], values[i]);
+        }
+        int mid = Math.min(Math.max(splitPoint(sizes) + 1, 1), count - 1);
+
+        Page right = pool.allocate(Page.TYPE_LEAF);
+        try {
+            int next = leaf.next();
+            int prev = leaf.prev();
+            leaf.init(Page.TYPE_LEAF);
+            leaf.setPrev(prev);
+            leaf.setNext(right.pageId);
+            for (int i = 0; i < mid; i++) {
+                leaf.insertLeaf(i, keys[i], values[i]);
+            }
+            right.setPrev(leaf.pageId);
+            right.setNext(next);
+            for (int i = mid; i < count; i++) {
+                right.insertLeaf(i - mid, keys[i], values[i]);
+            }
+            if (next != Page.NONE) {
+                Page nextPage = pool.fetch(next);
+                nextPage.setPrev(right.pageId);
+                pool.unpin(nextPage);
+            }
+        } finally {
+            pool.unpin(right);
+        }
+        // 父节点中只保存能区分两边的最短前缀
+        insertIntoParent(height - 2, leaf.pageId, ByteKeys.separator(keys[mid - 1], keys[mid]), right.pageId);
+    }
+
+    /**
+     * 内部节点放不下新的分隔 key 时分裂，中间的 key 上移到父节点
+     * @param node
+     * @param index 新 key 的位置，新的子节点在它右边
+     * @param key
+     * @param child
+     * @param depth node 在路径中的深度
+     * @throws IOException
+     */
+    private void splitInternal(Page node, int index, byte[] key, int child, int depth) throws IOException {
+        int count = node.count() + 1;
+        byte[][] keys = new byte[count][];
+        int[] children = new int[count + 1];
+        int[] sizes = new int[count];
+        children[0] = node.child(0);
+        for (int i = 0, j = 0; i < count; i++) {
+            if (i == index) {
+                keys[i] = key;
+                children[i + 1] = child;
+            } else {
+                keys[i] = node.key(j);
+                children[i + 1] = node.child(j + 1);
+                j++;
+            }
+            sizes[i] = Page.internalCellSize(keys[i]);
+        }
+        int mid = Math.min(Math.max(splitPoint(sizes), 1), count - 2);
+
+        Page right = pool.allocate(Page.TYPE_INTERNAL);
+        try {
+            node.init(Page.TYPE_INTERNAL);
+            node.setChild(0, children[0]);
+            for (int i = 0; i < mid; i++) {
+                node.insertInternal(i, keys[i], children[i + 1]);
+            }
+            right.setChild(0, children[mid + 1]);
+            for (int i = mid + 1; i < count; i++) {
+                right.insertInternal(i - mid - 1, keys[i], children[i + 1]);
+            }
+        } finally {
+            pool.unpin(right);
+        }
+        insertIntoParent(depth - 1, node.pageId, keys[mid], right.pageId);
+    }
+
+    /**
+     * 累计字节数第一次达到一半时的下标
+     */
+    private static int splitPoint(int[] sizes) {
+        int total = 0;
+        for (int size : sizes) {
+            total += size;
+        }
+        int sum = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            sum += sizes[i];
+            if (sum * 2 >= total) {
+                return i;
+            }
+        }
+        return sizes.length - 1;
+    }
+
+    private void insertIntoParent(int depth, int left, byte[] separator, int right) throws IOException {
+        if (depth < 0) {
+            Page newRoot = pool.allocate(Page.TYPE_INTERNAL);
+            newRoot.setChild(0, left);
+            newRoot.insertInternal(0, separator, right);
+            root = newRoot.pageId;
+            height++;
+            pool.unpin(newRoot);
+            if (height > pathPages.length) {
+                pathPages = Arrays.copyOf(pathPages, pathPages.length << 1);
+                pathIndexes = Arrays.copyOf(pathIndexes, pathIndexes.length << 1);
+            }
+            return;
+        }
+        Page parent = pool.fetch(pathPages[depth]);
+        try {
+            int i = pathIndexes[depth];
+            if (parent.hasRoom(Page.internalCellSize(separator))) {
+                parent.insertInternal(i, separator, right);
+            } else {
+                splitInternal(parent, i, separator, right, depth);
+            }
+        } finally {
+            pool.unpin(parent);
+        }
+    }
+
+    /**
+     * 路径上 depth 处父节点的第 pathIndexes[depth] 个子节点使用量过低，尝试和相邻的兄弟节点合并
+     * @param depth 父节点在路径中的深度
+     * @throws IOException
+     */
+    private void merge(int depth) throws IOException {
+        Page parent = pool.fetch(pathPages[depth]);
+        boolean underflow = false;
+        try {
+            int index = pathIndexes[depth];
+            int separatorIndex = index < parent.count() ? index : index - 1;
+            if (separatorIndex < 0) {
+                return;
+            }
+            Page left = pool.fetch(parent.child(separatorIndex));
+            Page right = pool.fetch(parent.child(separatorIndex + 1));
+            boolean merged = false;
+            try {
+                merged = mergeSiblings(parent, separatorIndex, left, right);
+            } finally {
+                pool.unpin(left);
+                if (!merged) {
+                    pool.unpin(right);
+                }
+            }
+            if (!merged) {
+                return;
+            }
+            pool.free(right);
+            parent.remove(separatorIndex);
+            if (depth == 0) {
+                if (parent.count() == 0) {
+                    root = parent.child(0);
+                    height--;
+                    pool.free(parent);
+                    parent = null;
+                }
+            } else {
+                underflow = parent.usedBytes() < pageSize / 4;
+            }
+        } finally {
+            if (parent != null) {
+                pool.unpin(parent);
+            }
+        }
+        if (underflow) {
+            merge(depth - 1);
+        }
+    }
+
+    /**
+     * 把 right 合并到 left，放不下时返回 false
+     */
+    private boolean mergeSiblings(Page parent, int separatorIndex, Page left, Page right) throws IOException {
+        if (left.isLeaf()) {
+            if (left.usedBytes() + right.usedBytes() - Page.HEADER_SIZE > pageSize) {
+                return false;
+            }
+            right.moveTo(left, 0);
+            left.setNext(right.next());
+            if (right.next() != Page.NONE) {
+                Page next = pool.fetch(right.next());
+                next.setPrev(left.pageId);
+                pool.unpin(next);
+            }
+            return true;
+        }
+        byte[] separator = parent.key(separatorIndex);
+        if (left.usedBytes() + right.usedBytes() - Page.HEADER_SIZE
+                + Page.internalCellSize(separator) + 2 > pageSize) {
+            return false;
+        }
+        left.insertInternal(left.count(), separator, right.child(0));
+        right.moveTo(left, 0);
+        return true;
+    }
+
+    private void checkKey(byte[] key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key can not be null");
+        }
+    }
+
+    private void checkEntry(byte[] key, byte[] value) {
+        checkKey(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Value can not be null");
+        }
+        if (Page.leafCellSize(key, value) > maxCellSize || Page.internalCellSize(key) > maxCellSize) {
+            throw new IllegalArgumentException("Entry is too large for page size " + pageSize);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DiskBalancePlusTree{" +
+                "pageSize=" + pageSize +
+                ", size=" + size +
+                ", height=" + height +
+                ", pages=" + pool.getPageCount() +
+                '}';
+    }
+}
@@ -0,0 +1,437 @@
+package cn.abelib.datastructure.tree.bpt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author abel-huang
+ * @date 2017/11/2
+ * key 为 long 的 B+树，结构和 {@link BalancePlusTree} 相同，
+ * key 直接保存在 long[] 中，查找和插入时不需要装箱，比较也不需要经过 Comparator
+ */
+public class LongBalancePlusTree<V> {
+    private Node<V> root;
+    /**
+     * B+树阶数，内部节点最多 degree 个子节点，每个节点最多 degree - 1 个 key
+     */
+    private final int degree;
+    /**
+     * 非根节点最少的 key 个数: ceil(degree / 2) - 1
+     */
+    private final int minKeys;
+    private int size;
+    private int height;
+    private Node<V>[] pathNodes;
+    private int[] pathIndexes;
+
+    @SuppressWarnings("unchecked")
+    public LongBalancePlusTree(int degree) {
+        if (degree < 3) {
+            throw new IllegalArgumentException("Illegal degree: " + degree);
+        }
+        this.degree = degree;
+        this.minKeys = (degree + 1) / 2 - 1;
+        this.root = Node.newLeaf(degree);
+        this.height = 1;
+        this.pathNodes = (Node<V>[]) new Node[4];
+        this.pathIndexes = new int[4];
+    }
+
+    public int getDegree() {
+        return degree;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    /**
+     * 插入只有 key 没有 value 的记录
+     * @param key
+     * @return key 之前不存在时返回 true
+     */
+    public boolean insert(long key) {
+        return insert(key, null);
+    }
+
+    /**
+     * 插入 key，如果 key 已经存在则替换 value
+     * @param key
+     * @param value
+     * @return key 之前不存在时返回 true
+     */
+    public boolean insert(long key, V value) {
+        Node<V> leaf = descend(key);
+        int i = indexOf(leaf, key);
+        if (i >= 0) {
+            leaf.values[i] = value;
+            return false;
+        }
+        i = -i - 1;
+        System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.size - i);
+        leaf.keys[i] = key;
+        insertAt(leaf.values, i, value, leaf.size);
+        leaf.size++;
+        size++;
+        if (leaf.size == degree) {
+            splitLeaf(leaf);
+        }
+        return true;
+    }
+
+    public V search(long key) {
+        Node<V> leaf = findLeaf(key);
+        int i = indexOf(leaf, key);
+        return i >= 0 ? leaf.value(i) : null;
+    }
+
+    public boolean contains(long key) {
+        return indexOf(findLeaf(key), key) >= 0;
+    }
+
+    /**
+     * 只更新已经存在的 key
+     * @param key
+     * @param value
+     * @return key 存在时返回 true
+     */
+    public boolean update(long key, V value) {
+        Node<V> leaf = findLeaf(key);
+        int i = indexOf(leaf, key);
+        if (i < 0) {
+            return false;
+        }
+        leaf.values[i] = value;
+        return true;
+    }
+
+    /**
+     * 范围查找，返回 [from, to] 闭区间内的键值对
+     * @param from
+     * @param to
+     * @return
+     */
+    public List<KeyValue<Long, V>> scan(long from, long to) {
+        List<KeyValue<Long, V>> result = new ArrayList<>();
+        forEach(from, to, (key, value) -> result.add(new KeyValue<>(key, value)));
+        return result;
+    }
+
+    /**
+     * 遍历 [from, to] 闭区间内的键值对，不装箱 key
+     * @param from
+     * @param to
+     * @param consumer
+     */
+    public void forEach(long from, long to, LongEntryConsumer<? super V> consumer) {
+        if (from > to) {
+            return;
+        }
+        Node<V> leaf = findLeaf(from);
+        int i = indexOf(leaf, from);
+        i = i >= 0 ? i : -i - 1;
+        while (leaf != null) {
+            for (; i < leaf.size; i++) {
+                long key = leaf.keys[i];
+                if (key > to) {
+                    return;
+                }
+                consumer.accept(key, leaf.value(i));
+            }
+            leaf = leaf.nextNode;
+            i = 0;
+        }
+    }
+
+    /**
+     * 删除 key
+     * @param key
+     * @return key 存在时返回 true
+     */
+    public boolean delete(long key) {
+        Node<V> leaf = descend(key);
+        int i = indexOf(leaf, key);
+        if (i < 0) {
+            return false;
+        }
+        System.arraycopy(leaf.keys, i + 1, leaf.keys, i, leaf.size - i - 1);
+        removeAt(leaf.values, i, leaf.size);
+        leaf.size--;
+        size--;
+        if (leaf.size < minKeys && height > 1) {
+            rebalanceLeaf(leaf, height - 2);
+        }
+        return true;
+    }
+
+    public List<KeyValue<Long, V>> toList() {
+        return scan(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * 节点内二分查找，找到时返回下标，否则返回 -(插入位置) - 1
+     */
+    private static int indexOf(Node<?> node, long key) {
+        long[] keys = node.keys;
+        int lo = 0;
+        int hi = node.size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long midKey = keys[mid];
+            if (midKey < key) {
+                lo = mid + 1;
+            } else if (midKey > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    private static int childIndex(Node<?> node, long key) {
+        int i = indexOf(node, key);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    private Node<V> findLeaf(long key) {
+        Node<V> node = root;
+        while (!node.isLeaf()) {
+            node = node.children[childIndex(node, key)];
+        }
+        return node;
+    }
+
+    private Node<V> descend(long key) {
+        Node<V> node = root;
+        int depth = 0;
+        while (!node.isLeaf()) {
+            int i = childIndex(node, key);
+            pathNodes[depth] = node;
+            pathIndexes[depth] = i;
+            depth++;
+            node = node.children[i];
+        }
+        return node;
+    }
+
+    private void splitLeaf(Node<V> leaf) {
+        int mid = degree / 2;
+        int moved = leaf.size - mid;
+        Node<V> right = Node.newLeaf(degree);
+        System.arraycopy(leaf.keys, mid, right.keys, 0, moved);
+        System.arraycopy(leaf.values, mid, right.values, 0, moved);
+        Arrays.fill(leaf.values, mid, leaf.size, null);
+        right.size = moved;
+        leaf.size = mid;
+
+        right.nextNode = leaf.nextNode;
+        if (leaf.nextNode != null) {
+            leaf.nextNode.prevNode = right;
+        }
+        right.prevNode = leaf;
+        leaf.nextNode = right;
+        insertIntoParent(height - 2, leaf, right.keys[0], right);
+    }
+
+    private void splitInternal(Node<V> node, int depth) {
+        int mid = degree / 2;
+        long separator = node.keys[mid];
+        int moved = node.size - mid - 1;
+        Node<V> right = Node.newInternal(degree);
+        System.arraycopy(node.keys, mid + 1, right.keys, 0, moved);
+        System.arraycopy(node.children, mid + 1, right.children, 0, moved + 1);
+        Arrays.fill(node.children, mid + 1, node.size + 1, null);
+        right.size = moved;
+        node.size = mid;
+        insertIntoParent(depth - 1, node, separator, right);
+    }
+
+    private void insertIntoParent(int depth, Node<V> left, long separator, Node<V> right) {
+        if (depth < 0) {
+            Node<V> newRoot = Node.newInternal(degree);
+            newRoot.keys[0] = separator;
+            newRoot.children[0] = left;
+            newRoot.children[1] = right;
+            newRoot.size = 1;
+            root = newRoot;
+            height++;
+            if (height - 1 > pathNodes.length) {
+                pathNodes = Arrays.copyOf(pathNodes, pathNodes.length << 1);
+                pathIndexes = Arrays.copyOf(pathIndexes, pathIndexes.length << 1);
+            }
+            return;
+        }
+        Node<V> parent = pathNodes[depth];
+        int i = pathIndexes[depth];
+        System.arraycopy(parent.keys, i, parent.keys, i + 1, parent.size - i);
+        parent.keys[i] = separator;
+        insertAt(parent.children, i + 1, right, parent.size + 1);
+        parent.size++;
+        if (parent.size == degree) {
+            splitInternal(parent, depth);
+        }
+    }
+
+    private void rebalanceLeaf(Node<V> leaf, int depth) {
+        Node<V> parent = pathNodes[depth];
+        int index = pathIndexes[depth];
+        Node<V> left = index > 0 ? parent.children[index - 1] : null;
+        Node<V> right = index < parent.size ? parent.children[index + 1] : null;
+        if (left != null && left.size > minKeys) {
+            int last = left.size - 1;
+            System.arraycopy(leaf.keys, 0, leaf.keys, 1, leaf.size);
+            leaf.keys[0] = left.keys[last];
+            insertAt(leaf.values, 0, left.values[last], leaf.size);
+            leaf.size++;
+            left.values[last] = null;
+            left.size--;
+            parent.keys[index - 1] = leaf.keys[0];
+        } else if (right != null && right.size > minKeys) {
+            leaf.keys[leaf.size] = right.keys[0];
+            leaf.values[leaf.size] = right.values[0];
+            leaf.size++;
+            System.arraycopy(right.keys, 1, right.keys, 0, right.size - 1);
+            removeAt(right.values, 0, right.size);
+            right.size--;
+            parent.keys[index] = right.keys[0];
+        } else if (left != null) {
+            mergeLeaves(left, leaf);
+            removeFromInternal(parent, index - 1, depth);
+        } else {
+            mergeLeaves(leaf, right);
+            removeFromInternal(parent, index, depth);
+        }
+    }
+
+    private void mergeLeaves(Node<V> left, Node<V> right) {
+        System.arraycopy(right.keys, 0, left.keys, left.size, right.size);
+        System.arraycopy(right.values, 0, left.values, left.size, right.size);
+        left.size += right.size;
+        left.nextNode = right.nextNode;
+        if (right.nextNode != null) {
+            right.nextNode.prevNode = left;
+        }
+    }
+
+    private void removeFromInternal(Node<V> node, int keyIndex, int depth) {
+        System.arraycopy(node.keys, keyIndex + 1, node.keys, keyIndex, node.size - keyIndex - 1);
+        removeAt(node.children, keyIndex + 1, node.size + 1);
+        node.size--;
+        if (depth == 0) {
+            if (node.size == 0) {
+                root = node.children[0];
+                height--;
+            }
+        } else if (node.size < minKeys) {
+            rebalanceInternal(node, depth - 1);
+        }
+    }
+
+    private void rebalanceInternal(Node<V> node, int depth) {
+        Node<V> parent = pathNodes[depth];
+        int index = pathIndexes[depth];
+        Node<V> left = index > 0 ? parent.children[index - 1] : null;
+        Node<V> right = index < parent.size ? parent.children[index + 1] : null;
+        if (left != null && left.size > minKeys) {
+            System.arraycopy(node.keys, 0, node.keys, 1, node.size);
+            node.keys[0] = parent.keys[index - 1];
+            insertAt(node.children, 0, left.children[left.size], node.size + 1);
+            node.size++;
+            parent.keys[index - 1] = left.keys[left.size - 1];
+            left.children[left.size] = null;
+            left.size--;
+        } else if (right != null && right.size > minKeys) {
+            node.keys[node.size] = parent.keys[index];
+            node.children[node.size + 1] = right.children[0];
+            node.size++;
+            parent.keys[index] = right.keys[0];
+            System.arraycopy(right.keys, 1, right.keys, 0, right.size - 1);
+            removeAt(right.children, 0, right.size + 1);
+            right.size--;
+        } else if (left != null) {
+            mergeInternal(left, parent.keys[index - 1], node);
+            removeFromInternal(parent, index - 1, depth);
+        } else {
+            mergeInternal(node, parent.keys[index], right);
+            removeFromInternal(parent, index, depth);
+        }
+    }
+
+    private void mergeInternal(Node<V> left, long separator, Node<V> right) {
+        left.keys[left.size] = separator;
+        System.arraycopy(right.keys, 0, left.keys, left.size + 1, right.size);
+        System.arraycopy(right.children, 0, left.children, left.size + 1, right.size + 1);
+        left.size += right.size + 1;
+    }
+
+    private static void insertAt(Object[] array, int index, Object element, int length) {
+        System.arraycopy(array, index, array, index + 1, length - index);
+        array[index] = element;
+    }
+
+    private static void removeAt(Object[] array, int index, int length) {
+        System.arraycopy(array, index + 1, array, index, length - index - 1);
+        array[length - 1] = null;
+    }
+
+    @Override
+    public String toString() {
+        return "LongBalancePlusTree{" +
+                "degree=" + degree +
+                ", size=" + size +
+                ", height=" + height +
+                ", entries=" + toList() +
+                '}';
+    }
+
+    @FunctionalInterface
+    public interface LongEntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    /**
+     * 和 {@link TreeNode} 相同，只是 key 保存在 long[] 中
+     */
+    private static final class Node<V> {
+        final long[] keys;
+        final Object[] values;
+        final Node<V>[] children;
+        int size;
+        Node<V> nextNode;
+        Node<V> prevNode;
+
+        private Node(long[] keys, Object[] values, Node<V>[] children) {
+            this.keys = keys;
+            this.values = values;
+            this.children = children;
+        }
+
+        static <V> Node<V> newLeaf(int degree) {
+            return new Node<>(new long[degree], new Object[degree], null);
+        }
+
+        @SuppressWarnings("unchecked")
+        static <V> Node<V> newInternal(int degree) {
+            return new Node<>(new long[degree], null, (Node<V>[]) new Node[degree + 1]);
+        }
+
+        boolean isLeaf() {
+            return children == null;
+        }
+
+        @SuppressWarnings("unchecked")
+        V value(int i) {
+            return (V) values[i];
+        }
+    }
+}
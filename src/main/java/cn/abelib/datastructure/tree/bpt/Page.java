@@ -0,0 +1,359 @@
+package cn.abelib.datastructure.tree.bpt;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * @author abel-huang
+ * @date 2017/11/2
+ * 缓冲池中的一个页，同时负责 slotted page 的布局:
+ * <pre>
+ * | header(16) | slot[0] slot[1] ... -&gt;     free     &lt;- ... cell[1] cell[0] |
+ * </pre>
+ * header: type(1) 保留(1) count(2) cellStart(2) garbage(2) next(4) prev/firstChild(4)
+ * slot 保存 cell 在页内的偏移，按 key 有序；cell 从页尾向前分配，删除后留下的空洞记在 garbage 中，
+ * 空间不够时先整理(compact)再考虑分裂。
+ * 叶节点 cell: keyLength(2) valueLength(2) key value
+ * 内部节点 cell: keyLength(2) child(4) key，child 是 key 右边的子节点，最左边的子节点保存在 header 中
+ */
+final class Page {
+    static final byte TYPE_FREE = 0;
+    static final byte TYPE_LEAF = 1;
+    static final byte TYPE_INTERNAL = 2;
+    /**
+     * 0 号页是元数据页，所以 0 可以表示空指针
+     */
+    static final int NONE = 0;
+    static final int HEADER_SIZE = 16;
+
+    private static final int OFF_TYPE = 0;
+    private static final int OFF_COUNT = 2;
+    private static final int OFF_CELL_START = 4;
+    private static final int OFF_GARBAGE = 6;
+    private static final int OFF_NEXT = 8;
+    private static final int OFF_PREV = 12;
+    private static final int SLOT_SIZE = 2;
+
+    final ByteBuffer buffer;
+    final int pageSize;
+    int pageId;
+    /**
+     * 以下由 BufferPool 维护
+     */
+    int pinCount;
+    boolean dirty;
+    boolean referenced;
+
+    Page(int pageSize) {
+        this.pageSize = pageSize;
+        this.buffer = ByteBuffer.allocate(pageSize);
+    }
+
+    void init(byte type) {
+        clear();
+        buffer.put(OFF_TYPE, type);
+        setCount(0);
+        setCellStart(pageSize);
+        setGarbage(0);
+        dirty = true;
+    }
+
+    void clear() {
+        Arrays.fill(buffer.array(), (byte) 0);
+    }
+
+    byte type() {
+        return buffer.get(OFF_TYPE);
+    }
+
+    boolean isLeaf() {
+        return type() == TYPE_LEAF;
+    }
+
+    int count() {
+        return buffer.getChar(OFF_COUNT);
+    }
+
+    private void setCount(int count) {
+        buffer.putChar(OFF_COUNT, (char) count);
+    }
+
+    private int cellStart() {
+        return buffer.getChar(OFF_CELL_START);
+    }
+
+    private void setCellStart(int cellStart) {
+        buffer.putChar(OFF_CELL_START, (char) cellStart);
+    }
+
+    private int garbage() {
+        return buffer.getChar(OFF_GARBAGE);
+    }
+
+    private void setGarbage(int garbage) {
+        buffer.putChar(OFF_GARBAGE, (char) garbage);
+    }
+
+    int next() {
+        return buffer.getInt(OFF_NEXT);
+    }
+
+    void setNext(int pageId) {
+        buffer.putInt(OFF_NEXT, pageId);
+        dirty = true;
+    }
+
+    int prev() {
+        return buffer.getInt(OFF_PREV);
+    }
+
+    void setPrev(int pageId) {
+        buffer.putInt(OFF_PREV, pageId);
+        dirty = true;
+    }
+
+    /**
+     * 内部节点的第 i 个子节点，0 &lt;= i &lt;= count
+     */
+    int child(int i) {
+        return i == 0 ? buffer.getInt(OFF_PREV) : buffer.getInt(slot(i - 1) + 2);
+    }
+
+    void setChild(int i, int pageId) {
+        if (i == 0) {
+            buffer.putInt(OFF_PREV, pageId);
+        } else {
+            buffer.putInt(slot(i - 1) + 2, pageId);
+        }
+        dirty = true;
+    }
+
+    private int slot(int i) {
+        return buffer.getChar(HEADER_SIZE + i * SLOT_SIZE);
+    }
+
+    private int keyOffset(int offset) {
+        return offset + (isLeaf() ? 4 : 6);
+    }
+
+    int keyLength(int i) {
+        return buffer.getChar(slot(i));
+    }
+
+    byte[] key(int i) {
+        int offset = slot(i);
+        byte[] key = new byte[buffer.getChar(offset)];
+        System.arraycopy(buffer.array(), keyOffset(offset), key, 0, key.length);
+        return key;
+    }
+
+    byte[] value(int i) {
+        int offset = slot(i);
+        int keyLength = buffer.getChar(offset);
+        byte[] value = new byte[buffer.getChar(offset + 2)];
+        System.arraycopy(buffer.array(), offset + 4 + keyLength, value, 0, value.length);
+        return value;
+    }
+
+    /**
+     * 第 i 个 key 和 key 按无符号字节序比较，不复制 key
+     */
+    int compareKey(int i, byte[] key) {
+        int offset = slot(i);
+        int length = buffer.getChar(offset);
+        return compare(buffer.array(), keyOffset(offset), length, key, 0, key.length);
+    }
+
+    /**
+     * 二分查找，找到时返回下标，否则返回 -(插入位置) - 1
+     */
+    int search(byte[] key) {
+        int lo = 0;
+        int hi = count() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareKey(mid, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * 内部节点中 key 所在子节点的下标，分隔 key 本身属于右子树
+     */
+    int childIndex(byte[] key) {
+        int i = search(key);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    private int cellSize(int offset) {
+        int keyLength = buffer.getChar(offset);
+        return isLeaf() ? 4 + keyLength + buffer.getChar(offset + 2) : 6 + keyLength;
+    }
+
+    int cellSizeAt(int i) {
+        return cellSize(slot(i));
+    }
+
+    static int leafCellSize(byte[] key, byte[] value) {
+        return 4 + key.length + value.length;
+    }
+
+    static int internalCellSize(byte[] key) {
+        return 6 + key.length;
+    }
+
+    /**
+     * 已使用的字节数，不包括空洞
+     */
+    int usedBytes() {
+        return pageSize - freeSpace() - garbage();
+    }
+
+    private int freeSpace() {
+        return cellStart() - HEADER_SIZE - count() * SLOT_SIZE;
+    }
+
+    /**
+     * 整理后能否放下一个大小为 cellSize 的 cell
+     */
+    boolean hasRoom(int cellSize) {
+        return freeSpace() + garbage() >= cellSize + SLOT_SIZE;
+    }
+
+    private int allocate(int cellSize) {
+        if (freeSpace() < cellSize + SLOT_SIZE) {
+            compact();
+        }
+        int offset = cellStart() - cellSize;
+        setCellStart(offset);
+        return offset;
+    }
+
+    private void insertSlot(int i, int offset) {
+        int count = count();
+        int position = HEADER_SIZE + i * SLOT_SIZE;
+        byte[] array = buffer.array();
+        System.arraycopy(array, position, array, position + SLOT_SIZE, (count - i) * SLOT_SIZE);
+        buffer.putChar(position, (char) offset);
+        setCount(count + 1);
+        dirty = true;
+    }
+
+    void insertLeaf(int i, byte[] key, byte[] value) {
+        int offset = allocate(leafCellSize(key, value));
+        buffer.putChar(offset, (char) key.length);
+        buffer.putChar(offset + 2, (char) value.length);
+        System.arraycopy(key, 0, buffer.array(), offset + 4, key.length);
+        System.arraycopy(value, 0, buffer.array(), offset + 4 + key.length, value.length);
+        insertSlot(i, offset);
+    }
+
+    /**
+     * 在内部节点的位置 i 插入 key 和它右边的子节点
+     */
+    void insertInternal(int i, byte[] key, int rightChild) {
+        int offset = allocate(internalCellSize(key));
+        buffer.putChar(offset, (char) key.length);
+        buffer.putInt(offset + 2, rightChild);
+        System.arraycopy(key, 0, buffer.array(), offset + 6, key.length);
+        insertSlot(i, offset);
+    }
+
+    /**
+     * 删除第 i 个 cell，内部节点会同时删除它右边的子节点
+     */
+    void remove(int i) {
+        int count = count();
+        setGarbage(garbage() + cellSize(slot(i)));
+        int position = HEADER_SIZE + i * SLOT_SIZE;
+        byte[] array = buffer.array();
+        System.arraycopy(array, position + SLOT_SIZE, array, position, (count - i - 1) * SLOT_SIZE);
+        setCount(count - 1);
+        dirty = true;
+    }
+
+    /**
+     * 长度相同时原地覆盖 value
+     * @return 长度不同时返回 false，由调用者删除后重新插入
+     */
+    boolean replaceValue(int i, byte[] value) {
+        int offset = slot(i);
+        if (buffer.getChar(offset + 2) != value.length) {
+            return false;
+        }
+        System.arraycopy(value, 0, buffer.array(), offset + 4 + buffer.getChar(offset), value.length);
+        dirty = true;
+        return true;
+    }
+
+    /**
+     * 把 [from, count) 的 cell 追加到 target 的末尾，然后从当前页删除
+     */
+    void moveTo(Page target, int from) {
+        int count = count();
+        byte[] array = buffer.array();
+        for (int i = from; i < count; i++) {
+            int offset = slot(i);
+            int size = cellSize(offset);
+            int targetOffset = target.allocate(size);
+            System.arraycopy(array, offset, target.buffer.array(), targetOffset, size);
+            target.insertSlot(target.count(), targetOffset);
+        }
+        for (int i = count - 1; i >= from; i--) {
+            remove(i);
+        }
+    }
+
+    /**
+     * 把 cell 紧凑地重新排列到页尾，回收删除留下的空洞
+     */
+    void compact() {
+        int count = count();
+        byte[] array = buffer.array();
+        byte[] copy = array.clone();
+        ByteBuffer source = ByteBuffer.wrap(copy);
+        boolean leaf = isLeaf();
+        int cellStart = pageSize;
+        for (int i = 0; i < count; i++) {
+            // 移动过的 cell 可能覆盖还没移动的 cell，所以从副本中读取
+            int offset = slot(i);
+            int keyLength = source.getChar(offset);
+            int size = leaf ? 4 + keyLength + source.getChar(offset + 2) : 6 + keyLength;
+            cellStart -= size;
+            System.arraycopy(copy, offset, array, cellStart, size);
+            buffer.putChar(HEADER_SIZE + i * SLOT_SIZE, (char) cellStart);
+        }
+        setCellStart(cellStart);
+        setGarbage(0);
+        dirty = true;
+    }
+
+    /**
+     * 按无符号字节序比较
+     */
+    static int compare(byte[] a, int aOffset, int aLength, byte[] b, int bOffset, int bLength) {
+        return ByteKeys.compare(a, aOffset, aLength, b, bOffset, bLength);
+    }
+
+    static int compare(byte[] a, byte[] b) {
+        return ByteKeys.compare(a, b);
+    }
+
+    @Override
+    public String toString() {
+        return "Page{" +
+                "pageId=" + pageId +
+                ", type=" + type() +
+                ", count=" + count() +
+                ", pinCount=" + pinCount +
+                ", dirty=" + dirty +
+                '}';
+    }
+}
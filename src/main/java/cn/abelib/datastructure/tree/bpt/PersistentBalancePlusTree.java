@@ -0,0 +1,843 @@
+package cn.abelib.datastructure.tree.bpt;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * @author abel-huang
+ * @date 2017/11/2
+ * 持久化(path copying)的B+树，算法和 {@link BalancePlusTree} 相同，但已经发布的节点不再修改:
+ * 写操作先复制从根节点到叶节点的路径，借和合并时再复制用到的兄弟节点，在副本上修改后发布新的根节点，
+ * 其余子树在新旧版本之间共享。因为节点会被多个版本共享，叶节点之间没有链表，范围查找使用路径栈遍历。
+ * snapshot() 只取当前发布的版本，是 O(1) 的只读视图，之后的写入不会影响它，打开的迭代器也不会失效。
+ * 写操作之间互斥，读操作不加锁，可以和写操作并发进行。
+ * 被替换的旧节点按版本号(epoch)回收: 每个快照登记自己的版本号，
+ * 在版本 v 被替换的节点等到所有版本小于 v 的快照都关闭之后放回节点池，供之后的写操作复用，
+ * 所以快照和迭代器用完后需要关闭；没有关闭的快照只会阻止节点复用，不会影响正确性
+ */
+public class PersistentBalancePlusTree<K, V> {
+    /**
+     * 等待回收的节点上限，超过后最旧的节点直接交给 GC
+     */
+    private static final int MAX_RETIRED = 1 << 16;
+    /**
+     * 节点池中每种节点的上限
+     */
+    private static final int MAX_FREE = 1024;
+
+    private final int degree;
+    private final int minKeys;
+    private final Comparator<? super K> comparator;
+    /**
+     * 当前发布的版本
+     */
+    private volatile Version current;
+    /**
+     * 打开的快照的版本号和个数
+     */
+    private final ConcurrentSkipListMap<Long, Integer> readers = new ConcurrentSkipListMap<>();
+
+    // 以下字段只在写操作中使用，由 synchronized 保护
+    private Node root;
+    private int size;
+    private int height;
+    /**
+     * 正在构建的版本号，这个版本创建的节点还没有发布，可以原地修改
+     */
+    private long writeVersion;
+    private Node[] pathNodes;
+    private int[] pathIndexes;
+    private final ArrayDeque<Node> retired = new ArrayDeque<>();
+    private final ArrayDeque<Node> freeLeaves = new ArrayDeque<>();
+    private final ArrayDeque<Node> freeInternals = new ArrayDeque<>();
+    private long reused;
+
+    public PersistentBalancePlusTree(int degree) {
+        this(degree, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public PersistentBalancePlusTree(int degree, Comparator<? super K> comparator) {
+        if (degree < 3) {
+            throw new IllegalArgumentException("Illegal degree: " + degree);
+        }
+        this.degree = degree;
+        this.minKeys = (degree + 1) / 2 - 1;
+        this.comparator = comparator == null ? (Comparator<? super K>) Comparator.naturalOrder() : comparator;
+        this.root = newNode(true);
+        this.height = 1;
+        this.pathNodes = new Node[4];
+        this.pathIndexes = new int[4];
+        this.current = new Version(root, 0, 0, 1);
+    }
+
+    public int getDegree() {
+        return degree;
+    }
+
+    public int size() {
+        return current.size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int height() {
+        return current.height;
+    }
+
+    /**
+     * 当前版本的只读视图，用完后需要关闭
+     * @return
+     */
+    public Snapshot snapshot() {
+        while (true) {
+            Version version = current;
+            readers.merge(version.version, 1, Integer::sum);
+            // 登记之后版本没有变化，写操作回收时一定能看到这次登记
+            if (current == version) {
+                return new Snapshot(version);
+            }
+            release(version.version);
+        }
+    }
+
+    public V search(K key) {
+        try (Snapshot snapshot = snapshot()) {
+            return snapshot.search(key);
+        }
+    }
+
+    public boolean contains(K key) {
+        try (Snapshot snapshot = snapshot()) {
+            return snapshot.contains(key);
+        }
+    }
+
+    public List<KeyValue<K, V>> scan(K from, K to) {
+        try (Snapshot snapshot = snapshot()) {
+            return snapshot.scan(from, to);
+        }
+    }
+
+    /**
+     * [from, to] 闭区间的迭代器，基于迭代器创建时的快照，遍历结束时自动关闭快照
+     * @param from
+     * @param to
+     * @return
+     */
+    public Iterator<KeyValue<K, V>> iterator(K from, K to) {
+        Snapshot snapshot = snapshot();
+        try {
+            return snapshot.iterator(from, to, true);
+        } catch (RuntimeException e) {
+            snapshot.close();
+            throw e;
+        }
+    }
+
+    public List<KeyValue<K, V>> toList() {
+        try (Snapshot snapshot = snapshot()) {
+            return snapshot.toList();
+        }
+    }
+
+    public boolean insert(K key) {
+        return insert(key, null);
+    }
+
+    /**
+     * 插入 key，如果 key 已经存在则替换 value
+     * @param key
+     * @param value
+     * @return key 之前不存在时返回 true
+     */
+    public synchronized boolean insert(K key, V value) {
+        checkKey(key);
+        int depth = descend(key);
+        Node leaf = copyPath(depth);
+        int i = indexOf(leaf, key);
+        if (i >= 0) {
+            leaf.values[i] = value;
+            publish();
+            return false;
+        }
+        i = -i - 1;
+        insertAt(leaf.keys, i, key, leaf.size);
+        insertAt(leaf.values, i, value, leaf.size);
+        leaf.size++;
+        size++;
+        if (leaf.size == degree) {
+            splitLeaf(leaf);
+        }
+        publish();
+        return true;
+    }
+
+    /**
+     * 只更新已经存在的 key
+     * @param key
+     * @param value
+     * @return key 存在时返回 true
+     */
+    public synchronized boolean update(K key, V value) {
+        checkKey(key);
+        int depth = descend(key);
+        if (indexOf(pathNodes[depth], key) < 0) {
+            return false;
+        }
+        Node leaf = copyPath(depth);
+        leaf.values[indexOf(leaf, key)] = value;
+        publish();
+        return true;
+    }
+
+    /**
+     * 删除 key
+     * @param key
+     * @return key 存在时返回 true
+     */
+    public synchronized boolean delete(K key) {
+        checkKey(key);
+        int depth = descend(key);
+        int i = indexOf(pathNodes[depth], key);
+        if (i < 0) {
+            return false;
+        }
+        Node leaf = copyPath(depth);
+        removeAt(leaf.keys, i, leaf.size);
+        removeAt(leaf.values, i, leaf.size);
+        leaf.size--;
+        size--;
+        if (leaf.size < minKeys && height > 1) {
+            rebalanceLeaf(leaf, height - 2);
+        }
+        publish();
+        return true;
+    }
+
+    /**
+     * 从节点池复用的节点个数
+     * @return
+     */
+    synchronized long getReused() {
+        return reused;
+    }
+
+    /**
+     * 等待回收的节点个数
+     * @return
+     */
+    synchronized int retiredCount() {
+        return retired.size();
+    }
+
+    /**
+     * 从根节点下降到 key 所在的叶节点，路径记录在 pathNodes 和 pathIndexes 中，叶节点记录在 pathNodes[depth]
+     * @param key
+     * @return 叶节点的深度
+     */
+    private int descend(K key) {
+        Node node = root;
+        int depth = 0;
+        while (!node.isLeaf()) {
+            int i = childIndex(node, key);
+            pathNodes[depth] = node;
+            pathIndexes[depth] = i;
+            depth++;
+            node = node.children[i];
+        }
+        pathNodes[depth] = node;
+        return depth;
+    }
+
+    /**
+     * 复制 descend 记录的路径，pathNodes 替换为副本
+     * @param depth 叶节点的深度
+     * @return 叶节点的副本
+     */
+    private Node copyPath(int depth) {
+        writeVersion = current.version + 1;
+        Node child = own(pathNodes[depth]);
+        pathNodes[depth] = child;
+        for (int d = depth - 1; d >= 0; d--) {
+            Node parent = own(pathNodes[d]);
+            parent.children[pathIndexes[d]] = child;
+            pathNodes[d] = parent;
+            child = parent;
+        }
+        root = child;
+        return pathNodes[depth];
+    }
+
+    /**
+     * 返回可以修改的节点，已经发布的节点复制一份并回收原节点
+     */
+    private Node own(Node node) {
+        if (node.version == writeVersion) {
+            return node;
+        }
+        Node copy = newNode(node.isLeaf());
+        System.arraycopy(node.keys, 0, copy.keys, 0, node.size);
+        if (node.isLeaf()) {
+            System.arraycopy(node.values, 0, copy.values, 0, node.size);
+        } else {
+            System.arraycopy(node.children, 0, copy.children, 0, node.size + 1);
+        }
+        copy.size = node.size;
+        discard(node);
+        return copy;
+    }
+
+    /**
+     * 父节点中下标为 index 的子节点换成可以修改的副本
+     */
+    private Node ownChild(Node parent, int index) {
+        Node child = own(parent.children[index]);
+        parent.children[index] = child;
+        return child;
+    }
+
+    /**
+     * 不再使用的节点，没有发布过的直接放回节点池，否则等待没有快照能访问到之后再回收
+     */
+    private void discard(Node node) {
+        if (node.version == writeVersion) {
+            recycle(node);
+            return;
+        }
+        node.retiredAt = writeVersion;
+        retired.addLast(node);
+        if (retired.size() > MAX_RETIRED) {
+            retired.pollFirst();
+        }
+    }
+
+    private Node newNode(boolean leaf) {
+        Node node = leaf ? freeLeaves.pollFirst() : freeInternals.pollFirst();
+        if (node == null) {
+            node = leaf ? Node.newLeaf(degree) : Node.newInternal(degree);
+        } else {
+            reused++;
+        }
+        node.version = writeVersion;
+        return node;
+    }
+
+    private void recycle(Node node) {
+        ArrayDeque<Node> free = node.isLeaf() ? freeLeaves : freeInternals;
+        if (free.size() >= MAX_FREE) {
+            return;
+        }
+        Arrays.fill(node.keys, 0, node.size, null);
+        if (node.isLeaf()) {
+            Arrays.fill(node.values, 0, node.size, null);
+        } else {
+            Arrays.fill(node.children, 0, node.size + 1, null);
+        }
+        node.size = 0;
+        free.addLast(node);
+    }
+
+    /**
+     * 发布新版本，然后回收所有快照都已经看不到的节点
+     */
+    private void publish() {
+        current = new Version(root, writeVersion, size, height);
+        Map.Entry<Long, Integer> oldest = readers.firstEntry();
+        long min = oldest == null ? Long.MAX_VALUE : oldest.getKey();
+        // 版本号小于 retiredAt 的快照可能还在访问
+        while (!retired.isEmpty() && retired.peekFirst().retiredAt <= min) {
+            recycle(retired.pollFirst());
+        }
+    }
+
+    private void release(long version) {
+        readers.computeIfPresent(version, (k, count) -> count == 1 ? null : count - 1);
+    }
+
+    private void splitLeaf(Node leaf) {
+        int mid = degree / 2;
+        int moved = leaf.size - mid;
+        Node right = newNode(true);
+        System.arraycopy(leaf.keys, mid, right.keys, 0, moved);
+        System.arraycopy(leaf.values, mid, right.values, 0, moved);
+        Arrays.fill(leaf.keys, mid, leaf.size, null);
+        Arrays.fill(leaf.values, mid, leaf.size, null);
+        right.size = moved;
+        leaf.size = mid;
+        insertIntoParent(height - 2, leaf, right.keys[0], right);
+    }
+
+    private void splitInternal(Node node, int depth) {
+        int mid = degree / 2;
+        Object separator = node.keys[mid];
+        int moved = node.size - mid - 1;
+        Node right = newNode(false);
+        System.arraycopy(node.keys, mid + 1, right.keys, 0, moved);
+        System.arraycopy(node.children, mid + 1, right.children, 0, moved + 1);
+        Arrays.fill(node.keys, mid, node.size, null);
+        Arrays.fill(node.children, mid + 1, node.size + 1, null);
+        right.size = moved;
+        node.size = mid;
+        insertIntoParent(depth - 1, node, separator, right);
+    }
+
+    private void insertIntoParent(int depth, Node left, Object separator, Node right) {
+        if (depth < 0) {
+            Node newRoot = newNode(false);
+            newRoot.keys[0] = separator;
+            newRoot.children[0] = left;
+            newRoot.children[1] = right;
+            newRoot.size = 1;
+            root = newRoot;
+            height++;
+            ensurePathCapacity();
+            return;
+        }
+        Node parent = pathNodes[depth];
+        int i = pathIndexes[depth];
+        insertAt(parent.keys, i, separator, parent.size);
+        insertAt(parent.children, i + 1, right, parent.size + 1);
+        parent.size++;
+        if (parent.size == degree) {
+            splitInternal(parent, depth);
+        }
+    }
+
+    /**
+     * 叶节点下溢，先尝试从兄弟节点借，借不到则合并，修改的兄弟节点先复制
+     * @param leaf
+     * @param depth 父节点在路径中的深度
+     */
+    private void rebalanceLeaf(Node leaf, int depth) {
+        Node parent = pathNodes[depth];
+        int index = pathIndexes[depth];
+        Node left = index > 0 ? parent.children[index - 1] : null;
+        Node right = index < parent.size ? parent.children[index + 1] : null;
+        if (left != null && left.size > minKeys) {
+            left = ownChild(parent, index - 1);
+            int last = left.size - 1;
+            insertAt(leaf.keys, 0, left.keys[last], leaf.size);
+            insertAt(leaf.values, 0, left.values[last], leaf.size);
+            leaf.size++;
+            left.keys[last] = null;
+            left.values[last] = null;
+            left.size--;
+            parent.keys[index - 1] = leaf.keys[0];
+        } else if (right != null && right.size > minKeys) {
+            right = ownChild(parent, index + 1);
+            leaf.keys[leaf.size] = right.keys[0];
+            leaf.values[leaf.size] = right.values[0];
+            leaf.size++;
+            removeAt(right.keys, 0, right.size);
+            removeAt(right.values, 0, right.size);
+            right.size--;
+            parent.keys[index] = right.keys[0];
+        } else if (left != null) {
+            left = ownChild(parent, index - 1);
+            mergeLeaves(left, leaf);
+            removeFromInternal(parent, index - 1, depth);
+        } else {
+            mergeLeaves(leaf, right);
+            removeFromInternal(parent, index, depth);
+        }
+    }
+
+    /**
+     * right 合并到 left 之后丢弃
+     */
+    private void mergeLeaves(Node left, Node right) {
+        System.arraycopy(right.keys, 0, left.keys, left.size, right.size);
+        System.arraycopy(right.values, 0, left.values, left.size, right.size);
+        left.size += right.size;
+        discard(right);
+    }
+
+    private void removeFromInternal(Node node, int keyIndex, int depth) {
+        removeAt(node.keys, keyIndex, node.size);
+        removeAt(node.children, keyIndex + 1, node.size + 1);
+        node.size--;
+        if (depth == 0) {
+            if (node.size == 0) {
+                root = node.children[0];
+                height--;
+                discard(node);
+            }
+        } else if (node.size < minKeys) {
+            rebalanceInternal(node, depth - 1);
+        }
+    }
+
+    private void rebalanceInternal(Node node, int depth) {
+        Node parent = pathNodes[depth];
+        int index = pathIndexes[depth];
+        Node left = index > 0 ? parent.children[index - 1] : null;
+        Node right = index < parent.size ? parent.children[index + 1] : null;
+        if (left != null && left.size > minKeys) {
+            left = ownChild(parent, index - 1);
+            insertAt(node.keys, 0, parent.keys[index - 1], node.size);
+            insertAt(node.children, 0, left.children[left.size], node.size + 1);
+            node.size++;
+            parent.keys[index - 1] = left.keys[left.size - 1];
+            left.keys[left.size - 1] = null;
+            left.children[left.size] = null;
+            left.size--;
+        } else if (right != null && right.size > minKeys) {
+            right = ownChild(parent, index + 1);
+            node.keys[node.size] = parent.keys[index];
+            node.children[node.size + 1] = right.children[0];
+            node.size++;
+            parent.keys[index] = right.keys[0];
+            removeAt(right.keys, 0, right.size);
+            removeAt(right.children, 0, right.size + 1);
+            right.size--;
+        } else if (left != null) {
+            left = ownChild(parent, index - 1);
+            mergeInternal(left, parent.keys[index - 1], node);
+            removeFromInternal(parent, index - 1, depth);
+        } else {
+            mergeInternal(node, parent.keys[index], right);
+            removeFromInternal(parent, index, depth);
+        }
+    }
+
+    private void mergeInternal(Node left, Object separator, Node right) {
+        left.keys[left.size] = separator;
+        System.arraycopy(right.keys, 0, left.keys, left.size + 1, right.size);
+        System.arraycopy(right.children, 0, left.children, left.size + 1, right.size + 1);
+        left.size += right.size + 1;
+        discard(right);
+    }
+
+    private void ensurePathCapacity() {
+        while (height > pathNodes.length) {
+            pathNodes = Arrays.copyOf(pathNodes, pathNodes.length << 1);
+            pathIndexes = Arrays.copyOf(pathIndexes, pathIndexes.length << 1);
+        }
+    }
+
+    /**
+     * 节点内二分查找，找到时返回下标，否则返回 -(插入位置) - 1
+     */
+    @SuppressWarnings("unchecked")
+    private int indexOf(Node node, K key) {
+        Object[] keys = node.keys;
+        int lo = 0;
+        int hi = node.size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = comparator.compare((K) keys[mid], key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    private int childIndex(Node node, K key) {
+        int i = indexOf(node, key);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    private static void insertAt(Object[] array, int index, Object element, int length) {
+        System.arraycopy(array, index, array, index + 1, length - index);
+        array[index] = element;
+    }
+
+    private static void removeAt(Object[] array, int index, int length) {
+        System.arraycopy(array, index + 1, array, index, length - index - 1);
+        array[length - 1] = null;
+    }
+
+    private void checkKey(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key can not be null");
+        }
+    }
+
+    @Override
+    public String toString() {
+        Version version = current;
+        return "PersistentBalancePlusTree{" +
+                "degree=" + degree +
+                ", version=" + version.version +
+                ", size=" + version.size +
+                ", height=" + version.height +
+                '}';
+    }
+
+    /**
+     * 某个版本的只读视图，关闭之后不能再使用
+     */
+    public final class Snapshot implements AutoCloseable {
+        private final Version version;
+        private boolean closed;
+
+        private Snapshot(Version version) {
+            this.version = version;
+        }
+
+        public long getVersion() {
+            return version.version;
+        }
+
+        public int size() {
+            return version.size;
+        }
+
+        public boolean isEmpty() {
+            return version.size == 0;
+        }
+
+        public int height() {
+            return version.height;
+        }
+
+        public V search(K key) {
+            checkKey(key);
+            checkOpen();
+            Node leaf = findLeaf(key);
+            int i = indexOf(leaf, key);
+            @SuppressWarnings("unchecked")
+            V value = i >= 0 ? (V) leaf.values[i] : null;
+            return value;
+        }
+
+        public boolean contains(K key) {
+            checkKey(key);
+            checkOpen();
+            return indexOf(findLeaf(key), key) >= 0;
+        }
+
+        /**
+         * 范围查找，返回 [from, to] 闭区间内的键值对
+         */
+        public List<KeyValue<K, V>> scan(K from, K to) {
+            List<KeyValue<K, V>> result = new ArrayList<>();
+            Iterator<KeyValue<K, V>> iterator = iterator(from, to);
+            while (iterator.hasNext()) {
+                result.add(iterator.next());
+            }
+            return result;
+        }
+
+        /**
+         * [from, to] 闭区间的迭代器，需要在快照关闭之前使用
+         */
+        public Iterator<KeyValue<K, V>> iterator(K from, K to) {
+            return iterator(from, to, false);
+        }
+
+        public List<KeyValue<K, V>> toList() {
+            checkOpen();
+            List<KeyValue<K, V>> result = new ArrayList<>(version.size);
+            if (version.size == 0) {
+                return result;
+            }
+            Node node = version.root;
+            while (!node.isLeaf()) {
+                node = node.children[0];
+            }
+            K first = key(node, 0);
+            node = version.root;
+            while (!node.isLeaf()) {
+                node = node.children[node.size];
+            }
+            Iterator<KeyValue<K, V>> iterator = iterator(first, key(node, node.size - 1));
+            while (iterator.hasNext()) {
+                result.add(iterator.next());
+            }
+            return result;
+        }
+
+        private Iterator<KeyValue<K, V>> iterator(K from, K to, boolean closeAtEnd) {
+            checkKey(from);
+            checkKey(to);
+            checkOpen();
+            return new RangeIterator(from, to, closeAtEnd);
+        }
+
+        private Node findLeaf(K key) {
+            Node node = version.root;
+            while (!node.isLeaf()) {
+                node = node.children[childIndex(node, key)];
+            }
+            return node;
+        }
+
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("Snapshot is closed");
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                release(version.version);
+            }
+        }
+
+        /**
+         * 用路径栈遍历叶节点，每次只前进一个 key
+         */
+        private final class RangeIterator implements Iterator<KeyValue<K, V>> {
+            private final K to;
+            private final boolean closeAtEnd;
+            private final Node[] nodes;
+            private final int[] indexes;
+            private KeyValue<K, V> next;
+
+            private RangeIterator(K from, K to, boolean closeAtEnd) {
+                this.to = to;
+                this.closeAtEnd = closeAtEnd;
+                this.nodes = new Node[version.height];
+                this.indexes = new int[version.height];
+                if (comparator.compare(from, to) > 0) {
+                    finish();
+                    return;
+                }
+                Node node = version.root;
+                int depth = 0;
+                while (!node.isLeaf()) {
+                    int i = childIndex(node, from);
+                    nodes[depth] = node;
+                    indexes[depth] = i;
+                    depth++;
+                    node = node.children[i];
+                }
+                int i = indexOf(node, from);
+                nodes[depth] = node;
+                indexes[depth] = i >= 0 ? i : -i - 1;
+                advance();
+            }
+
+            private void advance() {
+                int leafDepth = nodes.length - 1;
+                Node leaf = nodes[leafDepth];
+                if (indexes[leafDepth] >= leaf.size) {
+                    // 回到还有右子树的祖先，再下降到最左边的叶节点
+                    int depth = leafDepth - 1;
+                    while (depth >= 0 && indexes[depth] >= nodes[depth].size) {
+                        depth--;
+                    }
+                    if (depth < 0) {
+                        finish();
+                        return;
+                    }
+                    indexes[depth]++;
+                    Node node = nodes[depth].children[indexes[depth]];
+                    for (depth++; depth <= leafDepth; depth++) {
+                        nodes[depth] = node;
+                        indexes[depth] = 0;
+                        if (!node.isLeaf()) {
+                            node = node.children[0];
+                        }
+                    }
+                    leaf = nodes[leafDepth];
+                }
+                int i = indexes[leafDepth];
+                K key = key(leaf, i);
+                if (comparator.compare(key, to) > 0) {
+                    finish();
+                    return;
+                }
+                @SuppressWarnings("unchecked")
+                V value = (V) leaf.values[i];
+                next = new KeyValue<>(key, value);
+                indexes[leafDepth] = i + 1;
+            }
+
+            private void finish() {
+                next = null;
+                if (closeAtEnd) {
+                    close();
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public KeyValue<K, V> next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                KeyValue<K, V> result = next;
+                advance();
+                return result;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private K key(Node node, int i) {
+        return (K) node.keys[i];
+    }
+
+    /**
+     * 发布的版本，包括根节点和这个版本的大小
+     */
+    private static final class Version {
+        final Node root;
+        final long version;
+        final int size;
+        final int height;
+
+        Version(Node root, long version, int size, int height) {
+            this.root = root;
+            this.version = version;
+            this.size = size;
+            this.height = height;
+        }
+    }
+
+    private static final class Node {
+        final Object[] keys;
+        final Object[] values;
+        final Node[] children;
+        int size;
+        /**
+         * 创建节点的版本号
+         */
+        long version;
+        /**
+         * 被替换时正在构建的版本号
+         */
+        long retiredAt;
+
+        private Node(Object[] keys, Object[] values, Node[] children) {
+            this.keys = keys;
+            this.values = values;
+            this.children = children;
+        }
+
+        static Node newLeaf(int degree) {
+            return new Node(new Object[degree], new Object[degree], null);
+        }
+
+        static Node newInternal(int degree) {
+            return new Node(new Object[degree], null, new Node[degree + 1]);
+        }
+
+        boolean isLeaf() {
+            return children == null;
+        }
+    }
+}
@@ -0,0 +1,578 @@
+package cn.abelib.datastructure.tree.bpt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author abel-huang
+ * @date 2017/11/2
+ * 字节数组 key 的B+树，适合路径这类有很长公共前缀的 key，key 按无符号字节序比较，
+ * String 等类型可以用 {@link ByteKeys} 保序编码。
+ * 叶节点做前缀压缩: 节点中所有 key 的公共前缀只保存一份，每个 key 只保存剩下的后缀，
+ * 插入不以前缀开头的 key 时缩短前缀，分裂和合并时重新计算最长公共前缀(有序时等于首尾两个 key 的公共前缀)。
+ * 内部节点的分隔 key 做后缀截断: 只保存能区分左边最大 key 和右边最小 key 的最短前缀，
+ * 同样大小的内部节点可以容纳更多的子节点
+ */
+public class PrefixBalancePlusTree<V> {
+    private Node<V> root;
+    /**
+     * B+树阶数，内部节点最多 degree 个子节点，每个节点最多 degree - 1 个 key
+     */
+    private final int degree;
+    private final int minKeys;
+    private int size;
+    private int height;
+    private Node<V>[] pathNodes;
+    private int[] pathIndexes;
+
+    @SuppressWarnings("unchecked")
+    public PrefixBalancePlusTree(int degree) {
+        if (degree < 3) {
+            throw new IllegalArgumentException("Illegal degree: " + degree);
+        }
+        this.degree = degree;
+        this.minKeys = (degree + 1) / 2 - 1;
+        this.root = Node.newLeaf(degree);
+        this.height = 1;
+        this.pathNodes = (Node<V>[]) new Node[4];
+        this.pathIndexes = new int[4];
+    }
+
+    public int getDegree() {
+        return degree;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    /**
+     * 插入 key，如果 key 已经存在则替换 value
+     * @param key
+     * @param value
+     * @return key 之前不存在时返回 true
+     */
+    public boolean insert(byte[] key, V value) {
+        checkKey(key);
+        Node<V> leaf = descend(key);
+        int i = leaf.indexOf(key);
+        if (i >= 0) {
+            leaf.values[i] = value;
+            return false;
+        }
+        leaf.insert(-i - 1, key, value);
+        size++;
+        if (leaf.size == degree) {
+            splitLeaf(leaf);
+        }
+        return true;
+    }
+
+    public V search(byte[] key) {
+        checkKey(key);
+        Node<V> leaf = findLeaf(key);
+        int i = leaf.indexOf(key);
+        return i >= 0 ? leaf.value(i) : null;
+    }
+
+    public boolean contains(byte[] key) {
+        checkKey(key);
+        return findLeaf(key).indexOf(key) >= 0;
+    }
+
+    /**
+     * 只更新已经存在的 key
+     * @param key
+     * @param value
+     * @return key 存在时返回 true
+     */
+    public boolean update(byte[] key, V value) {
+        checkKey(key);
+        Node<V> leaf = findLeaf(key);
+        int i = leaf.indexOf(key);
+        if (i < 0) {
+            return false;
+        }
+        leaf.values[i] = value;
+        return true;
+    }
+
+    /**
+     * 删除 key
+     * @param key
+     * @return key 存在时返回 true
+     */
+    public boolean delete(byte[] key) {
+        checkKey(key);
+        Node<V> leaf = descend(key);
+        int i = leaf.indexOf(key);
+        if (i < 0) {
+            return false;
+        }
+        leaf.remove(i);
+        size--;
+        if (leaf.size < minKeys && height > 1) {
+            rebalanceLeaf(leaf, height - 2);
+        }
+        return true;
+    }
+
+    /**
+     * 范围查找，返回 [from, to] 闭区间内的键值对，返回的 key 是还原后的完整 key
+     * @param from
+     * @param to
+     * @return
+     */
+    public List<KeyValue<byte[], V>> scan(byte[] from, byte[] to) {
+        checkKey(from);
+        checkKey(to);
+        List<KeyValue<byte[], V>> result = new ArrayList<>();
+        if (ByteKeys.compare(from, to) > 0) {
+            return result;
+        }
+        Node<V> leaf = findLeaf(from);
+        int i = leaf.indexOf(from);
+        i = i >= 0 ? i : -i - 1;
+        while (leaf != null) {
+            for (; i < leaf.size; i++) {
+                byte[] key = leaf.fullKey(i);
+                if (ByteKeys.compare(key, to) > 0) {
+                    return result;
+                }
+                result.add(new KeyValue<>(key, leaf.value(i)));
+            }
+            leaf = leaf.next;
+            i = 0;
+        }
+        return result;
+    }
+
+    public List<KeyValue<byte[], V>> toList() {
+        List<KeyValue<byte[], V>> result = new ArrayList<>(size);
+        for (Node<V> leaf = firstLeaf(); leaf != null; leaf = leaf.next) {
+            for (int i = 0; i < leaf.size; i++) {
+                result.add(new KeyValue<>(leaf.fullKey(i), leaf.value(i)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 节点中实际保存的 key 字节数，包括叶节点的前缀、后缀和内部节点的分隔 key
+     * @return
+     */
+    long keyBytes() {
+        long bytes = 0;
+        List<Node<V>> level = new ArrayList<>();
+        level.add(root);
+        while (!level.isEmpty()) {
+            List<Node<V>> next = new ArrayList<>();
+            for (Node<V> node : level) {
+                if (node.isLeaf()) {
+                    bytes += node.prefix.length;
+                }
+                for (int i = 0; i < node.size; i++) {
+                    bytes += node.keys[i].length;
+                }
+                if (!node.isLeaf()) {
+                    next.addAll(Arrays.asList(node.children).subList(0, node.size + 1));
+                }
+            }
+            level = next;
+        }
+        return bytes;
+    }
+
+    Node<V> getRoot() {
+        return root;
+    }
+
+    Node<V> firstLeaf() {
+        Node<V> node = root;
+        while (!node.isLeaf()) {
+            node = node.children[0];
+        }
+        return node;
+    }
+
+    private Node<V> findLeaf(byte[] key) {
+        Node<V> node = root;
+        while (!node.isLeaf()) {
+            node = node.children[node.childIndex(key)];
+        }
+        return node;
+    }
+
+    private Node<V> descend(byte[] key) {
+        Node<V> node = root;
+        int depth = 0;
+        while (!node.isLeaf()) {
+            int i = node.childIndex(key);
+            pathNodes[depth] = node;
+            pathIndexes[depth] = i;
+            depth++;
+            node = node.children[i];
+        }
+        return node;
+    }
+
+    /**
+     * 叶节点分裂，左边保留 degree / 2 个 key，两边各自重新计算前缀，分隔 key 截断为最短前缀
+     * @param leaf
+     */
+    private void splitLeaf(Node<V> leaf) {
+        int mid = degree / 2;
+        int moved = leaf.size - mid;
+        Node<V> right = Node.newLeaf(degree);
+        right.prefix = leaf.prefix;
+        System.arraycopy(leaf.keys, mid, right.keys, 0, moved);
+        System.arraycopy(leaf.values, mid, right.values, 0, moved);
+        Arrays.fill(leaf.keys, mid, leaf.size, null);
+        Arrays.fill(leaf.values, mid, leaf.size, null);
+        right.size = moved;
+        leaf.size = mid;
+        leaf.extendPrefix();
+        right.extendPrefix();
+
+        right.next = leaf.next;
+        if (leaf.next != null) {
+            leaf.next.prev = right;
+        }
+        right.prev = leaf;
+        leaf.next = right;
+        insertIntoParent(height - 2, leaf, separator(leaf, right), right);
+    }
+
+    private byte[] separator(Node<V> left, Node<V> right) {
+        return ByteKeys.separator(left.fullKey(left.size - 1), right.fullKey(0));
+    }
+
+    private void splitInternal(Node<V> node, int depth) {
+        int mid = degree / 2;
+        byte[] separator = node.keys[mid];
+        int moved = node.size - mid - 1;
+        Node<V> right = Node.newInternal(degree);
+        System.arraycopy(node.keys, mid + 1, right.keys, 0, moved);
+        System.arraycopy(node.children, mid + 1, right.children, 0, moved + 1);
+        Arrays.fill(node.keys, mid, node.size, null);
+        Arrays.fill(node.children, mid + 1, node.size + 1, null);
+        right.size = moved;
+        node.size = mid;
+        insertIntoParent(depth - 1, node, separator, right);
+    }
+
+    private void insertIntoParent(int depth, Node<V> left, byte[] separator, Node<V> right) {
+        if (depth < 0) {
+            Node<V> newRoot = Node.newInternal(degree);
+            newRoot.keys[0] = separator;
+            newRoot.children[0] = left;
+            newRoot.children[1] = right;
+            newRoot.size = 1;
+            root = newRoot;
+            height++;
+            ensurePathCapacity();
+            return;
+        }
+        Node<V> parent = pathNodes[depth];
+        int i = pathIndexes[depth];
+        insertAt(parent.keys, i, separator, parent.size);
+        insertAt(parent.children, i + 1, right, parent.size + 1);
+        parent.size++;
+        if (parent.size == degree) {
+            splitInternal(parent, depth);
+        }
+    }
+
+    /**
+     * 叶节点下溢，先尝试从兄弟节点借，借不到则合并，借之后重新截断父节点中的分隔 key
+     * @param leaf
+     * @param depth 父节点在路径中的深度
+     */
+    private void rebalanceLeaf(Node<V> leaf, int depth) {
+        Node<V> parent = pathNodes[depth];
+        int index = pathIndexes[depth];
+        Node<V> left = index > 0 ? parent.children[index - 1] : null;
+        Node<V> right = index < parent.size ? parent.children[index + 1] : null;
+        if (left != null && left.size > minKeys) {
+            int last = left.size - 1;
+            leaf.insert(0, left.fullKey(last), left.values[last]);
+            left.remove(last);
+            left.extendPrefix();
+            parent.keys[index - 1] = separator(left, leaf);
+        } else if (right != null && right.size > minKeys) {
+            leaf.insert(leaf.size, right.fullKey(0), right.values[0]);
+            right.remove(0);
+            right.extendPrefix();
+            parent.keys[index] = separator(leaf, right);
+        } else if (left != null) {
+            mergeLeaves(left, leaf);
+            removeFromInternal(parent, index - 1, depth);
+        } else {
+            mergeLeaves(leaf, right);
+            removeFromInternal(parent, index, depth);
+        }
+    }
+
+    private void mergeLeaves(Node<V> left, Node<V> right) {
+        for (int i = 0; i < right.size; i++) {
+            left.insert(left.size, right.fullKey(i), right.values[i]);
+        }
+        left.extendPrefix();
+        left.next = right.next;
+        if (right.next != null) {
+            right.next.prev = left;
+        }
+    }
+
+    private void removeFromInternal(Node<V> node, int keyIndex, int depth) {
+        removeAt(node.keys, keyIndex, node.size);
+        removeAt(node.children, keyIndex + 1, node.size + 1);
+        node.size--;
+        if (depth == 0) {
+            if (node.size == 0) {
+                root = node.children[0];
+                height--;
+            }
+        } else if (node.size < minKeys) {
+            rebalanceInternal(node, depth - 1);
+        }
+    }
+
+    private void rebalanceInternal(Node<V> node, int depth) {
+        Node<V> parent = pathNodes[depth];
+        int index = pathIndexes[depth];
+        Node<V> left = index > 0 ? parent.children[index - 1] : null;
+        Node<V> right = index < parent.size ? parent.children[index + 1] : null;
+        if (left != null && left.size > minKeys) {
+            insertAt(node.keys, 0, parent.keys[index - 1], node.size);
+            insertAt(node.children, 0, left.children[left.size], node.size + 1);
+            node.size++;
+            parent.keys[index - 1] = left.keys[left.size - 1];
+            left.keys[left.size - 1] = null;
+            left.children[left.size] = null;
+            left.size--;
+        } else if (right != null && right.size > minKeys) {
+            node.keys[node.size] = parent.keys[index];
+            node.children[node.size + 1] = right.children[0];
+            node.size++;
+            parent.keys[index] = right.keys[0];
+            removeAt(right.keys, 0, right.size);
+            removeAt(right.children, 0, right.size + 1);
+            right.size--;
+        } else if (left != null) {
+            mergeInternal(left, parent.keys[index - 1], node);
+            removeFromInternal(parent, index - 1, depth);
+        } else {
+            mergeInternal(node, parent.keys[index], right);
+            removeFromInternal(parent, index, depth);
+        }
+    }
+
+    private void mergeInternal(Node<V> left, byte[] separator, Node<V> right) {
+        left.keys[left.size] = separator;
+        System.arraycopy(right.keys, 0, left.keys, left.size + 1, right.size);
+        System.arraycopy(right.children, 0, left.children, left.size + 1, right.size + 1);
+        left.size += right.size + 1;
+    }
+
+    private void ensurePathCapacity() {
+        while (height - 1 > pathNodes.length) {
+            pathNodes = Arrays.copyOf(pathNodes, pathNodes.length << 1);
+            pathIndexes = Arrays.copyOf(pathIndexes, pathIndexes.length << 1);
+        }
+    }
+
+    private static void insertAt(Object[] array, int index, Object element, int length) {
+        System.arraycopy(array, index, array, index + 1, length - index);
+        array[index] = element;
+    }
+
+    private static void removeAt(Object[] array, int index, int length) {
+        System.arraycopy(array, index + 1, array, index, length - index - 1);
+        array[length - 1] = null;
+    }
+
+    private void checkKey(byte[] key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key can not be null");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PrefixBalancePlusTree{" +
+                "degree=" + degree +
+                ", size=" + size +
+                ", height=" + height +
+                '}';
+    }
+
+    /**
+     * 叶节点的 keys 保存去掉 prefix 之后的后缀，内部节点的 keys 保存截断后的分隔 key
+     */
+    static final class Node<V> {
+        final byte[][] keys;
+        final Object[] values;
+        final Node<V>[] children;
+        /**
+         * 叶节点所有 key 的公共前缀，不一定是最长的
+         */
+        byte[] prefix = ByteKeys.empty();
+        int size;
+        Node<V> next;
+        Node<V> prev;
+
+        private Node(byte[][] keys, Object[] values, Node<V>[] children) {
+            this.keys = keys;
+            this.values = values;
+            this.children = children;
+        }
+
+        static <V> Node<V> newLeaf(int degree) {
+            return new Node<>(new byte[degree][], new Object[degree], null);
+        }
+
+        @SuppressWarnings("unchecked")
+        static <V> Node<V> newInternal(int degree) {
+            return new Node<>(new byte[degree][], null, (Node<V>[]) new Node[degree + 1]);
+        }
+
+        boolean isLeaf() {
+            return children == null;
+        }
+
+        @SuppressWarnings("unchecked")
+        V value(int i) {
+            return (V) values[i];
+        }
+
+        byte[] fullKey(int i) {
+            byte[] suffix = keys[i];
+            byte[] key = Arrays.copyOf(prefix, prefix.length + suffix.length);
+            System.arraycopy(suffix, 0, key, prefix.length, suffix.length);
+            return key;
+        }
+
+        /**
+         * 叶节点内查找，先比较前缀，不以前缀开头的 key 小于或大于节点中所有 key，
+         * 否则只在后缀上二分查找。找到时返回下标，否则返回 -(插入位置) - 1
+         */
+        int indexOf(byte[] key) {
+            if (size == 0) {
+                return -1;
+            }
+            int p = prefix.length;
+            int cmp = ByteKeys.compare(prefix, 0, p, key, 0, Math.min(p, key.length));
+            if (cmp > 0 || cmp == 0 && key.length < p) {
+                return -1;
+            }
+            if (cmp < 0) {
+                return -(size + 1);
+            }
+            int lo = 0;
+            int hi = size - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                byte[] suffix = keys[mid];
+                cmp = ByteKeys.compare(suffix, 0, suffix.length, key, p, key.length - p);
+                if (cmp < 0) {
+                    lo = mid + 1;
+                } else if (cmp > 0) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(lo + 1);
+        }
+
+        /**
+         * 内部节点中 key 所在子节点的下标，分隔 key 本身属于右子树
+         */
+        int childIndex(byte[] key) {
+            int lo = 0;
+            int hi = size - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int cmp = ByteKeys.compare(keys[mid], key);
+                if (cmp < 0) {
+                    lo = mid + 1;
+                } else if (cmp > 0) {
+                    hi = mid - 1;
+                } else {
+                    return mid + 1;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * 在叶节点的位置 i 插入完整的 key，key 不以当前前缀开头时先缩短前缀
+         */
+        void insert(int i, byte[] key, Object value) {
+            if (size == 0) {
+                prefix = key.clone();
+            } else {
+                int common = ByteKeys.commonPrefix(prefix, key);
+                if (common < prefix.length) {
+                    shrinkPrefix(common);
+                }
+            }
+            insertAt(keys, i, Arrays.copyOfRange(key, prefix.length, key.length), size);
+            insertAt(values, i, value, size);
+            size++;
+        }
+
+        void remove(int i) {
+            removeAt(keys, i, size);
+            removeAt(values, i, size);
+            size--;
+            if (size == 0) {
+                prefix = ByteKeys.empty();
+            }
+        }
+
+        /**
+         * 前缀缩短到 length，去掉的部分补回每个后缀的开头
+         */
+        private void shrinkPrefix(int length) {
+            int extra = prefix.length - length;
+            for (int i = 0; i < size; i++) {
+                byte[] suffix = new byte[extra + keys[i].length];
+                System.arraycopy(prefix, length, suffix, 0, extra);
+                System.arraycopy(keys[i], 0, suffix, extra, keys[i].length);
+                keys[i] = suffix;
+            }
+            prefix = Arrays.copyOf(prefix, length);
+        }
+
+        /**
+         * key 有序，所有 key 的最长公共前缀就是首尾两个后缀的公共前缀加上当前前缀
+         */
+        void extendPrefix() {
+            if (size == 0) {
+                prefix = ByteKeys.empty();
+                return;
+            }
+            int extra = ByteKeys.commonPrefix(keys[0], keys[size - 1]);
+            if (extra == 0) {
+                return;
+            }
+            byte[] longer = Arrays.copyOf(prefix, prefix.length + extra);
+            System.arraycopy(keys[0], 0, longer, prefix.length, extra);
+            for (int i = 0; i < size; i++) {
+                keys[i] = Arrays.copyOfRange(keys[i], extra, keys[i].length);
+            }
+            prefix = longer;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package cn.abelib.datastructure.tree.bpt;
+
+/**
+ * @author abel-huang
+ * @date 2017/11/2
+ * WAL 的刷盘策略:
+ * ALWAYS 每次提交都等待 fsync，并发的提交合并为一次 fsync(group commit)；
+ * everyMillis(n) 后台线程每 n 毫秒 fsync 一次，宕机最多丢失 n 毫秒的写入；
+ * OS 只写入操作系统缓存，由操作系统决定何时落盘
+ */
+public final class SyncPolicy {
+    public static final SyncPolicy ALWAYS = new SyncPolicy(0);
+    public static final SyncPolicy OS = new SyncPolicy(-1);
+
+    private final long intervalMillis;
+
+    private SyncPolicy(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    public static SyncPolicy everyMillis(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Illegal interval: " + intervalMillis);
+        }
+        return new SyncPolicy(intervalMillis);
+    }
+
+    boolean isAlways() {
+        return intervalMillis == 0;
+    }
+
+    boolean isOs() {
+        return intervalMillis < 0;
+    }
+
+    long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    @Override
+    public String toString() {
+        if (isAlways()) {
+            return "SyncPolicy{ALWAYS}";
+        }
+        return isOs() ? "SyncPolicy{OS}" : "SyncPolicy{every " + intervalMillis + "ms}";
+    }
+}
@@ -1,97 +1,79 @@
 package cn.abelib.datastructure.tree.bpt;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * @Author: abel.huang
  * @Date: 2019-02-01 00:32
+ * B+树节点，key、value 和子节点都保存在容量固定的数组中:
+ * 叶节点使用 keys 和 values，内部节点使用 keys 和 children，children 比 keys 多一个。
+ * 数组比节点允许的最大 key 数多一个位置，插入后再分裂，分裂前不需要额外分配
  */
-public class TreeNode {
+final class TreeNode<K, V> {
+    final Object[] keys;
     /**
-     * 子节点
+     * 只用于叶节点
      */
-    private List<TreeNode> children;
+    final Object[] values;
     /**
-     * 当前节点键值对集合
+     * 只用于内部节点
      */
-    private List<KeyValue> keyValues;
+    final TreeNode<K, V>[] children;
     /**
-     * 后继指针(只用于叶节点，即数据节点的链表)
+     * 当前 key 的个数
      */
-    private TreeNode nextNode;
+    int size;
     /**
-     * 前驱指针(同上)
+     * 后继指针(只用于叶节点，即数据节点的链表)
      */
-    private TreeNode prevNode;
+    TreeNode<K, V> nextNode;
     /**
-     * 父节点
+     * 前驱指针(同上)
      */
-    private TreeNode parentNode;
-
-    public TreeNode(List<TreeNode> children, List<KeyValue> keyValues, TreeNode nextNode, TreeNode prevNode, TreeNode parentNode) {
-        this.children = children;
-        this.keyValues = keyValues;
-        this.nextNode = nextNode;
-        this.prevNode = prevNode;
-        this.parentNode = parentNode;
-    }
-
-    public TreeNode() {
-        this.children = new ArrayList<>();
-        this.keyValues = new ArrayList<>();
-        this.nextNode = null;
-        this.prevNode = null;
-        this.parentNode = null;
-    }
+    TreeNode<K, V> prevNode;
 
-    public  List<KeyValue> getKeyValues() {
-        return this.keyValues;
-    }
-
-    public List<TreeNode> getChildren() {
-        return children;
-    }
-
-    public void setChildren(List<TreeNode> children) {
+    private TreeNode(Object[] keys, Object[] values, TreeNode<K, V>[] children) {
+        this.keys = keys;
+        this.values = values;
         this.children = children;
     }
 
-    public void setKeyValues(List<KeyValue> keyValues) {
-        this.keyValues = keyValues;
-    }
-
-    public TreeNode getNextNode() {
-        return nextNode;
-    }
-
-    public void setNextNode(TreeNode nextNode) {
-        this.nextNode = nextNode;
+    /**
+     * @param degree 阶数，最多保存 degree - 1 个 key
+     * @param <K>
+     * @param <V>
+     * @return
+     */
+    static <K, V> TreeNode<K, V> newLeaf(int degree) {
+        return new TreeNode<>(new Object[degree], new Object[degree], null);
     }
 
-    public TreeNode getPrevNode() {
-        return prevNode;
+    @SuppressWarnings("unchecked")
+    static <K, V> TreeNode<K, V> newInternal(int degree) {
+        return new TreeNode<>(new Object[degree], null, (TreeNode<K, V>[]) new TreeNode[degree + 1]);
     }
 
-    public void setPrevNode(TreeNode prevNode) {
-        this.prevNode = prevNode;
+    boolean isLeaf() {
+        return children == null;
     }
 
-    public TreeNode getParentNode() {
-        return parentNode;
+    @SuppressWarnings("unchecked")
+    K key(int i) {
+        return (K) keys[i];
     }
 
-    public void setParentNode(TreeNode parentNode) {
-        this.parentNode = parentNode;
+    @SuppressWarnings("unchecked")
+    V value(int i) {
+        return (V) values[i];
     }
 
     @Override
     public String toString() {
-        return "TreeNode{" +
-                ", keyValues=" + keyValues +
-                ", nextNode=" + nextNode +
-                ", prevNode=" + prevNode +
-                ", parentNode=" + parentNode +
-                '}';
+        StringBuilder builder = new StringBuilder("TreeNode{keys=[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(keys[i]);
+        }
+        return builder.append("], leaf=").append(isLeaf()).append('}').toString();
     }
 }
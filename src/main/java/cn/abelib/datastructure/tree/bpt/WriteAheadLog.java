@@ -0,0 +1,338 @@
+package cn.abelib.datastructure.tree.bpt;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * @author abel-huang
+ * @date 2017/11/2
+ * 只追加的预写日志，每条记录: length(4) crc(4) type(1) aLength(4) a bLength(4) b，
+ * 长度为 -1 表示 null。记录先追加到内存缓冲区，提交时按 {@link SyncPolicy} 写入文件:
+ * 第一个需要刷盘的线程成为 leader，把缓冲区中所有线程的记录一次写入并 fsync，
+ * 其他线程等待 leader 完成，这样并发提交共享一次 fsync(group commit)。
+ * 读取时遇到长度或 crc 不对的记录认为是写到一半的尾部，截断丢弃
+ */
+class WriteAheadLog implements Closeable {
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    static final byte CHECKPOINT_BEGIN = 3;
+    static final byte PAGE = 4;
+    static final byte META = 5;
+    static final byte CHECKPOINT_END = 6;
+    private static final int HEADER_SIZE = 8;
+
+    private final FileChannel channel;
+    private final SyncPolicy policy;
+    private final CRC32 crc = new CRC32();
+    /**
+     * 待写入的记录，leader 写入时和 spare 交换，写入期间其他线程可以继续追加
+     */
+    private byte[] pending = new byte[8192];
+    private int pendingSize;
+    private byte[] spare = new byte[8192];
+    /**
+     * 文件中已写入的字节数
+     */
+    private long filePosition;
+    /**
+     * lsn 是追加过的总字节数，不随截断重置
+     */
+    private long appendedLsn;
+    private long writtenLsn;
+    private long syncedLsn;
+    private boolean flushing;
+    private IOException failure;
+    private long syncCount;
+    private volatile boolean closed;
+    private Thread syncer;
+
+    WriteAheadLog(String file, SyncPolicy policy) throws IOException {
+        this.policy = policy;
+        this.channel = FileChannel.open(Paths.get(file),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (!policy.isAlways() && !policy.isOs()) {
+            syncer = new Thread(this::syncLoop, "wal-syncer");
+            syncer.setDaemon(true);
+            syncer.start();
+        }
+    }
+
+    /**
+     * 追加一条记录
+     * @return 记录结束位置的 lsn，用于 commit
+     */
+    synchronized long append(byte type, byte[] a, byte[] b) {
+        int bodySize = 1 + 4 + (a == null ? 0 : a.length) + 4 + (b == null ? 0 : b.length);
+        ensureCapacity(HEADER_SIZE + bodySize);
+        ByteBuffer buffer = ByteBuffer.wrap(pending, pendingSize, HEADER_SIZE + bodySize);
+        buffer.putInt(bodySize).putInt(0).put(type);
+        putBytes(buffer, a);
+        putBytes(buffer, b);
+        crc.reset();
+        crc.update(pending, pendingSize + HEADER_SIZE, bodySize);
+        ByteBuffer.wrap(pending).putInt(pendingSize + 4, (int) crc.getValue());
+        pendingSize += HEADER_SIZE + bodySize;
+        appendedLsn += HEADER_SIZE + bodySize;
+        return appendedLsn;
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (pendingSize + size > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pending.length << 1, pendingSize + size));
+        }
+    }
+
+    /**
+     * 下一条记录在文件中的偏移
+     */
+    synchronized long position() {
+        return filePosition + pendingSize;
+    }
+
+    /**
+     * 按刷盘策略提交到 lsn 为止的记录
+     * @param lsn
+     * @throws IOException
+     */
+    void commit(long lsn) throws IOException {
+        if (policy.isAlways()) {
+            sync(lsn, true);
+        } else if (policy.isOs()) {
+            sync(lsn, false);
+        }
+    }
+
+    /**
+     * 保证到 lsn 为止的记录已经写入文件，force 为 true 时同时 fsync
+     * @param lsn 超过已追加的 lsn 时按已追加的处理
+     * @param force
+     * @throws IOException
+     */
+    void sync(long lsn, boolean force) throws IOException {
+        while (true) {
+            byte[] batch;
+            int size;
+            long target;
+            long position;
+            synchronized (this) {
+                lsn = Math.min(lsn, appendedLsn);
+                while (flushing && (force ? syncedLsn : writtenLsn) < lsn) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for log sync");
+                    }
+                }
+                if (failure != null) {
+                    throw new IOException("Log write failed", failure);
+                }
+                if ((force ? syncedLsn : writtenLsn) >= lsn) {
+                    return;
+                }
+                flushing = true;
+                batch = pending;
+                size = pendingSize;
+                pending = spare;
+                pendingSize = 0;
+                spare = null;
+                target = appendedLsn;
+                position = filePosition;
+                filePosition += size;
+            }
+            IOException error = null;
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch, 0, size);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, position + buffer.position());
+                }
+                if (force) {
+                    this.force();
+                }
+            } catch (IOException e) {
+                error = e;
+                throw e;
+            } finally {
+                synchronized (this) {
+                    flushing = false;
+                    spare = batch;
+                    if (error == null) {
+                        writtenLsn = target;
+                        if (force) {
+                            syncedLsn = target;
+                            syncCount++;
+                        }
+                    } else {
+                        failure = error;
+                    }
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * leader 在锁外执行的 fsync，测试中覆盖以观察 group commit
+     * @throws IOException
+     */
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * 截断日志，调用前所有记录都必须已经反映到数据文件中，并且没有新的追加
+     * @throws IOException
+     */
+    synchronized void reset() throws IOException {
+        while (flushing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for log sync");
+            }
+        }
+        if (pendingSize != 0) {
+            throw new IllegalStateException("Log has unsynced records");
+        }
+        channel.truncate(0);
+        channel.force(true);
+        filePosition = 0;
+    }
+
+    /**
+     * 读取所有完整的记录，截断不完整的尾部，之后的追加从有效记录的末尾开始
+     * @return
+     * @throws IOException
+     */
+    synchronized List<Record> readAll() throws IOException {
+        long fileSize = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate((int) fileSize);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+            // 读取整个文件
+        }
+        buffer.flip();
+        List<Record> records = new ArrayList<>();
+        byte[] array = buffer.array();
+        int position = 0;
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int bodySize = buffer.getInt(position);
+            int checksum = buffer.getInt(position + 4);
+            if (bodySize < 9 || bodySize > buffer.limit() - position - HEADER_SIZE) {
+                break;
+            }
+            crc.reset();
+            crc.update(array, position + HEADER_SIZE, bodySize);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            buffer.position(position + HEADER_SIZE);
+            byte type = buffer.get();
+            byte[] a = getBytes(buffer);
+            byte[] b = getBytes(buffer);
+            records.add(new Record(position, type, a, b));
+            position += HEADER_SIZE + bodySize;
+            buffer.position(position);
+        }
+        if (position < fileSize) {
+            channel.truncate(position);
+        }
+        filePosition = position;
+        return records;
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    synchronized long size() {
+        return filePosition + pendingSize;
+    }
+
+    synchronized long getSyncCount() {
+        return syncCount;
+    }
+
+    private void syncLoop() {
+        while (!closed) {
+            try {
+                Thread.sleep(policy.getIntervalMillis());
+                long lsn;
+                synchronized (this) {
+                    lsn = appendedLsn;
+                }
+                sync(lsn, true);
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                // failure 已经记录，之后的提交会抛出异常
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (syncer != null) {
+            syncer.interrupt();
+            try {
+                syncer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            long lsn;
+            synchronized (this) {
+                lsn = appendedLsn;
+            }
+            sync(lsn, true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    static final class Record {
+        /**
+         * 记录在文件中的偏移
+         */
+        final long position;
+        final byte type;
+        final byte[] a;
+        final byte[] b;
+
+        Record(long position, byte type, byte[] a, byte[] b) {
+            this.position = position;
+            this.type = type;
+            this.a = a;
+            this.b = b;
+        }
+    }
+}
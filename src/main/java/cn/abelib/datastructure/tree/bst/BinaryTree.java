@@ -1,14 +1,15 @@
 package cn.abelib.datastructure.tree.bst;
 
 import cn.abelib.datastructure.linear.Collection;
-import cn.abelib.datastructure.linear.queue.Queue;
-import cn.abelib.datastructure.linear.stack.Stack;
 import cn.abelib.datastructure.linear.list.LinkedList;
-import cn.abelib.datastructure.linear.queue.LinkedQueue;
-import cn.abelib.datastructure.linear.stack.LinkedStack;
 import cn.abelib.util.annotation.UnFinish;
 
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 
 /**
  * 基础的二叉树
@@ -278,30 +279,8 @@ public class BinaryTree<T extends Comparable<T>> implements Collection<T> {
      *
      * @return
      */
-
     public LinkedList<T> levelOrderVisit() {
-        return levelOrderVisit(root);
-    }
-
-    private LinkedList<T> levelOrderVisit(TreeNode originalNode) {
-        LinkedList<T> nodes = new LinkedList<>();
-        if (size < 1) {
-            return nodes;
-        }
-        TreeNode traveses = originalNode;
-        Queue<TreeNode> queue = new LinkedQueue<>();
-        queue.enqueue(traveses);
-        while (!queue.isEmpty()) {
-            traveses = queue.dequeue();
-            nodes.add(traveses.value);
-            if (traveses.left != null) {
-                queue.enqueue(traveses.left);
-            }
-            if (traveses.right != null) {
-                queue.enqueue(traveses.right);
-            }
-        }
-        return nodes;
+        return toList(levelOrderIterator());
     }
 
     public LinkedList<T> inOrderVisitRecursion() {
@@ -324,39 +303,13 @@ public class BinaryTree<T extends Comparable<T>> implements Collection<T> {
         inOrderVisitRecursion(originalNode.right, nodes);
     }
 
-    public LinkedList<T> inOrderVisit() {
-        return inOrderVisit(root);
-    }
-
     /**
      * 非递归中序遍历
      *
-     * @param originalNode
+     * @return
      */
-    @UnFinish
-    private LinkedList<T> inOrderVisit(TreeNode originalNode) {
-        // todo
-        LinkedList<T> nodes = new LinkedList<>();
-        if (size < 1) {
-            return nodes;
-        }
-        TreeNode traveses = originalNode;
-        Stack<TreeNode> stack = new LinkedStack<>();
-        stack.push(traveses);
-        while (!stack.isEmpty()) {
-            if (traveses.left != null) {
-                stack.push(traveses.left);
-                traveses = traveses.left;
-            } else {
-                traveses = stack.pop();
-                nodes.add(traveses.value);
-                if (traveses.right != null) {
-                    stack.push(traveses.right);
-                }
-
-            }
-        }
-        return nodes;
+    public LinkedList<T> inOrderVisit() {
+        return toList(inOrderIterator());
     }
 
     public LinkedList<T> preOrderVisitRecursion() {
@@ -380,34 +333,13 @@ public class BinaryTree<T extends Comparable<T>> implements Collection<T> {
         preOrderVisitRecursion(originalNode.right, nodes);
     }
 
-    public LinkedList<T> preOrderVisit() {
-        return preOrderVisit(root);
-    }
-
     /**
      * 非递归前序遍历
      *
-     * @param originalNode
+     * @return
      */
-    private LinkedList<T> preOrderVisit(TreeNode originalNode) {
-        LinkedList<T> nodes = new LinkedList<>();
-        if (size < 1) {
-            return nodes;
-        }
-        TreeNode traveses = originalNode;
-        Stack<TreeNode> stack = new LinkedStack<>();
-        stack.push(traveses);
-        while (!stack.isEmpty()) {
-            traveses = stack.pop();
-            nodes.add(traveses.value);
-            if (traveses.right != null) {
-                stack.push(traveses.right);
-            }
-            if (traveses.left != null) {
-                stack.push(traveses.left);
-            }
-        }
-        return nodes;
+    public LinkedList<T> preOrderVisit() {
+        return toList(preOrderIterator());
     }
 
     public LinkedList<T> postOrderVisitRecursion() {
@@ -430,43 +362,298 @@ public class BinaryTree<T extends Comparable<T>> implements Collection<T> {
         nodes.add(originalNode.value);
     }
 
+    /**
+     * 非递归后序遍历
+     *
+     * @return
+     */
     public LinkedList<T> postOrderVisit() {
+        return toList(postOrderIterator());
+    }
+
+    private LinkedList<T> toList(Iterator<T> iterator) {
         LinkedList<T> nodes = new LinkedList<>();
-        postOrderVisit(root, nodes);
+        while (iterator.hasNext()) {
+            nodes.add(iterator.next());
+        }
         return nodes;
     }
 
     /**
-     * 非递归后序遍历
+     * 中序遍历, 同 {@link #inOrderIterator()}
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return inOrderIterator();
+    }
+
+    /**
+     * 惰性中序遍历, 显式栈的空间为 O(h), 不修改树, 可以嵌套或并发地只读遍历
      *
-     * @param originalNode
+     * @return
      */
-    private void postOrderVisit(TreeNode originalNode, LinkedList<T> nodes) {
-        // todo
+    public Iterator<T> inOrderIterator() {
+        return new InOrderIterator();
     }
 
+    /**
+     * Morris 中序遍历, 只需 O(1) 额外空间: 进入左子树前把左子树最右结点的右指针指向当前结点,
+     * 回到当前结点时再删除。遍历期间树的结构被临时修改, 不能在 action 中访问这棵树,
+     * 也不能与其他遍历并发; 方法返回前所有线索都已恢复, action 抛出异常时先走完剩余部分再抛出
+     *
+     * @param action
+     */
+    public void morrisInOrder(Consumer<? super T> action) {
+        TreeNode current = root;
+        Throwable failure = null;
+        while (current != null) {
+            TreeNode visit = null;
+            if (current.left == null) {
+                visit = current;
+                current = current.right;
+            } else {
+                TreeNode predecessor = current.left;
+                while (predecessor.right != null && predecessor.right != current) {
+                    predecessor = predecessor.right;
+                }
+                if (predecessor.right == null) {
+                    predecessor.right = current;
+                    current = current.left;
+                } else {
+                    predecessor.right = null;
+                    visit = current;
+                    current = current.right;
+                }
+            }
+            if (visit != null && failure == null) {
+                try {
+                    action.accept(visit.value);
+                } catch (RuntimeException | Error e) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+    }
+
+    /**
+     * 惰性前序遍历, 显式栈的空间为 O(h)
+     *
+     * @return
+     */
+    public Iterator<T> preOrderIterator() {
+        return new PreOrderIterator();
+    }
+
+    /**
+     * 惰性后序遍历, 显式栈的空间为 O(h)
+     *
+     * @return
+     */
+    public Iterator<T> postOrderIterator() {
+        return new PostOrderIterator();
+    }
+
+    /**
+     * 惰性层序遍历, 结点放在可扩容的环形数组中
+     *
+     * @return
+     */
+    public Iterator<T> levelOrderIterator() {
+        return new LevelOrderIterator();
+    }
 
     @Override
-    public Iterator<T> iterator() {
-        return new Itr();
+    public Spliterator<T> spliterator() {
+        return inOrderSpliterator();
+    }
+
+    public Spliterator<T> inOrderSpliterator() {
+        return Spliterators.spliterator(inOrderIterator(), size,
+                Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL);
+    }
+
+    public Spliterator<T> preOrderSpliterator() {
+        return Spliterators.spliterator(preOrderIterator(), size, Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    public Spliterator<T> postOrderSpliterator() {
+        return Spliterators.spliterator(postOrderIterator(), size, Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    public Spliterator<T> levelOrderSpliterator() {
+        return Spliterators.spliterator(levelOrderIterator(), size, Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    @SuppressWarnings("unchecked")
+    private TreeNode[] newNodes(int length) {
+        return (TreeNode[]) new BinaryTree.TreeNode[length];
+    }
+
+    /**
+     * 栈中保存尚未访问的祖先
+     */
+    private class InOrderIterator implements Iterator<T> {
+        private TreeNode[] stack = newNodes(16);
+        private int top;
+
+        private InOrderIterator() {
+            pushLeft(root);
+        }
+
+        private void pushLeft(TreeNode node) {
+            while (node != null) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                }
+                stack[top++] = node;
+                node = node.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return top > 0;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            TreeNode node = stack[--top];
+            stack[top] = null;
+            pushLeft(node.right);
+            return node.value;
+        }
+    }
+
+    private class PreOrderIterator implements Iterator<T> {
+        private TreeNode[] stack = newNodes(16);
+        private int top;
+
+        private PreOrderIterator() {
+            if (root != null) {
+                stack[top++] = root;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return top > 0;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            TreeNode node = stack[--top];
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            if (node.right != null) {
+                stack[top++] = node.right;
+            }
+            if (node.left != null) {
+                stack[top++] = node.left;
+            }
+            return node.value;
+        }
     }
 
-    private class Itr implements Iterator<T> {
-        private int i = 0;
-        private LinkedList<T> nodes = inOrderVisitRecursion();
+    /**
+     * 栈中保存从根到下一个待访问结点的路径
+     */
+    private class PostOrderIterator implements Iterator<T> {
+        private TreeNode[] stack = newNodes(16);
+        private int top;
+
+        private PostOrderIterator() {
+            descend(root);
+        }
+
+        /**
+         * 优先向左、其次向右, 下降到后序遍历的第一个结点
+         */
+        private void descend(TreeNode node) {
+            while (node != null) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                }
+                stack[top++] = node;
+                node = node.left != null ? node.left : node.right;
+            }
+        }
 
         @Override
         public boolean hasNext() {
-            return i < size;
+            return top > 0;
         }
 
         @Override
         public T next() {
-            return nodes.get(i++);
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            TreeNode node = stack[--top];
+            stack[top] = null;
+            if (top > 0 && stack[top - 1].left == node) {
+                descend(stack[top - 1].right);
+            }
+            return node.value;
+        }
+    }
+
+    private class LevelOrderIterator implements Iterator<T> {
+        private TreeNode[] queue = newNodes(16);
+        private int head;
+        private int count;
+
+        private LevelOrderIterator() {
+            if (root != null) {
+                enqueue(root);
+            }
+        }
+
+        private void enqueue(TreeNode node) {
+            if (count == queue.length) {
+                TreeNode[] larger = newNodes(count * 2);
+                for (int i = 0; i < count; i++) {
+                    larger[i] = queue[(head + i) & (queue.length - 1)];
+                }
+                queue = larger;
+                head = 0;
+            }
+            queue[(head + count++) & (queue.length - 1)] = node;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return count > 0;
         }
 
         @Override
-        public void remove() {
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            TreeNode node = queue[head];
+            queue[head] = null;
+            head = (head + 1) & (queue.length - 1);
+            count--;
+            if (node.left != null) {
+                enqueue(node.left);
+            }
+            if (node.right != null) {
+                enqueue(node.right);
+            }
+            return node.value;
         }
     }
 
@@ -1,8 +1,640 @@
 package cn.abelib.datastructure.tree.btree;
 
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
 /**
  * @Author: abel.huang
  * @Date: 2019-02-01 00:34
+ * key 为 long 的 B 树(CLRS 的实现)，key 和 value 保存在所有节点中。
+ * 每个节点的 key 连续保存在 long[] 中，默认最小度数为 8，即每个节点最多 15 个 key，只占两个 cache line，
+ * 节点内使用没有分支的线性查找: 统计小于目标的 key 的个数，访问一次节点只需要顺序读取一小段内存，
+ * 比红黑树每层一次指针跳转的 cache miss 少得多。int 类型的 key 直接扩展为 long 使用。
+ * 插入时自顶向下提前分裂已满的节点，删除时自顶向下保证下降到的子节点至少有 t 个 key，都只需要一次下降。
+ * 每个节点记录子树中 key 的个数，支持 rank 和 select
  */
-public class BalanceTree {
+public class BalanceTree<V> {
+    private static final int DEFAULT_MIN_DEGREE = 8;
+
+    private Node<V> root;
+    /**
+     * 最小度数 t，非根节点最少 t - 1 个 key，最多 2t - 1 个 key
+     */
+    private final int t;
+    private final int maxKeys;
+    private int height;
+    /**
+     * 插入时经过的节点，插入成功后更新子树大小
+     */
+    private Node<V>[] path;
+
+    public BalanceTree() {
+        this(DEFAULT_MIN_DEGREE);
+    }
+
+    @SuppressWarnings("unchecked")
+    public BalanceTree(int minDegree) {
+        if (minDegree < 2) {
+            throw new IllegalArgumentException("Illegal min degree: " + minDegree);
+        }
+        this.t = minDegree;
+        this.maxKeys = 2 * minDegree - 1;
+        this.root = new Node<>(maxKeys, true);
+        this.height = 1;
+        this.path = (Node<V>[]) new Node[4];
+    }
+
+    public int size() {
+        return root.total;
+    }
+
+    public boolean isEmpty() {
+        return root.total == 0;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    public void clear() {
+        root = new Node<>(maxKeys, true);
+        height = 1;
+    }
+
+    public V get(long key) {
+        Node<V> node = root;
+        while (true) {
+            int i = node.lowerBound(key);
+            if (i < node.size && node.keys[i] == key) {
+                return node.value(i);
+            }
+            if (node.isLeaf()) {
+                return null;
+            }
+            node = node.children[i];
+        }
+    }
+
+    public boolean containsKey(long key) {
+        Node<V> node = root;
+        while (true) {
+            int i = node.lowerBound(key);
+            if (i < node.size && node.keys[i] == key) {
+                return true;
+            }
+            if (node.isLeaf()) {
+                return false;
+            }
+            node = node.children[i];
+        }
+    }
+
+    /**
+     * 插入或者替换
+     * @param key
+     * @param value
+     * @return 旧的 value，key 之前不存在时返回 null
+     */
+    public V put(long key, V value) {
+        if (root.size == maxKeys) {
+            Node<V> newRoot = new Node<>(maxKeys, false);
+            newRoot.children[0] = root;
+            newRoot.total = root.total;
+            root = newRoot;
+            height++;
+            if (height > path.length) {
+                path = Arrays.copyOf(path, path.length << 1);
+            }
+            split(newRoot, 0);
+        }
+        Node<V> node = root;
+        int depth = 0;
+        while (true) {
+            int i = node.lowerBound(key);
+            if (i < node.size && node.keys[i] == key) {
+                V old = node.value(i);
+                node.values[i] = value;
+                return old;
+            }
+            path[depth++] = node;
+            if (node.isLeaf()) {
+                insertAt(node.keys, i, key, node.size);
+                insertAt(node.values, i, value, node.size);
+                node.size++;
+                for (int d = 0; d < depth; d++) {
+                    path[d].total++;
+                }
+                return null;
+            }
+            if (node.children[i].size == maxKeys) {
+                split(node, i);
+                if (key == node.keys[i]) {
+                    V old = node.value(i);
+                    node.values[i] = value;
+                    return old;
+                }
+                if (key > node.keys[i]) {
+                    i++;
+                }
+            }
+            node = node.children[i];
+        }
+    }
+
+    /**
+     * 批量插入，先按 key 排序再依次插入，相邻的插入访问同一条路径，cache 命中率高。
+     * 空树时直接自底向上构建，重复的 key 保留最后一个 value
+     * @param keys
+     * @param values 可以为 null，表示全部 value 为 null
+     */
+    public void putAll(long[] keys, V[] values) {
+        if (values != null && values.length != keys.length) {
+            throw new IllegalArgumentException("Keys and values have different length");
+        }
+        int n = keys.length;
+        long[] sorted = new long[n];
+        Object[] sortedValues = new Object[n];
+        int[] order = sortedOrder(keys);
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            long key = keys[order[i]];
+            Object value = values == null ? null : values[order[i]];
+            if (count > 0 && sorted[count - 1] == key) {
+                sortedValues[count - 1] = value;
+            } else {
+                sorted[count] = key;
+                sortedValues[count] = value;
+                count++;
+            }
+        }
+        if (isEmpty()) {
+            int h = 1;
+            while (capacity(h) < count) {
+                h++;
+            }
+            root = build(sorted, sortedValues, 0, count, h);
+            height = h;
+            if (height > path.length) {
+                path = Arrays.copyOf(path, Integer.highestOneBit(height) << 1);
+            }
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            @SuppressWarnings("unchecked")
+            V value = (V) sortedValues[i];
+            put(sorted[i], value);
+        }
+    }
+
+    /**
+     * 稳定的排序，相同的 key 保持原来的顺序，之后的 value 覆盖之前的
+     */
+    private static int[] sortedOrder(long[] keys) {
+        Integer[] boxed = new Integer[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            boxed[i] = i;
+        }
+        Arrays.sort(boxed, (a, b) -> Long.compare(keys[a], keys[b]));
+        int[] order = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = boxed[i];
+        }
+        return order;
+    }
+
+    /**
+     * 高度为 h 的满 B 树最多容纳的 key 个数 (2t)^h - 1
+     */
+    private long capacity(int h) {
+        long capacity = 1;
+        for (int i = 0; i < h; i++) {
+            capacity *= 2 * t;
+            if (capacity > Integer.MAX_VALUE) {
+                return Long.MAX_VALUE;
+            }
+        }
+        return capacity - 1;
+    }
+
+    /**
+     * 用有序的 [lo, hi) 构建高度为 h 的子树: 选择最少的子节点个数，使每个子树都放得下，
+     * 再把剩余的 key 平均分给子节点。这样每个子树至少有半满，满足 B 树的下限
+     */
+    private Node<V> build(long[] keys, Object[] values, int lo, int hi, int h) {
+        int n = hi - lo;
+        if (h == 1) {
+            Node<V> leaf = new Node<>(maxKeys, true);
+            System.arraycopy(keys, lo, leaf.keys, 0, n);
+            System.arraycopy(values, lo, leaf.values, 0, n);
+            leaf.size = n;
+            leaf.total = n;
+            return leaf;
+        }
+        long childCapacity = capacity(h - 1);
+        int children = (int) Math.min(2 * t, ((long) n + 1 + childCapacity) / (childCapacity + 1));
+        Node<V> node = new Node<>(maxKeys, false);
+        int remaining = n - (children - 1);
+        int start = lo;
+        for (int c = 0; c < children; c++) {
+            int childSize = remaining / children + (c < remaining % children ? 1 : 0);
+            node.children[c] = build(keys, values, start, start + childSize, h - 1);
+            start += childSize;
+            if (c < children - 1) {
+                node.keys[c] = keys[start];
+                node.values[c] = values[start];
+                start++;
+            }
+        }
+        node.size = children - 1;
+        node.total = n;
+        return node;
+    }
+
+    /**
+     * 删除 key
+     * @param key
+     * @return 被删除的 value，key 不存在时返回 null
+     */
+    public V remove(long key) {
+        if (!containsKey(key)) {
+            return null;
+        }
+        V old = get(key);
+        Node<V> node = root;
+        while (true) {
+            node.total--;
+            int i = node.lowerBound(key);
+            boolean found = i < node.size && node.keys[i] == key;
+            if (node.isLeaf()) {
+                removeAt(node.keys, i, node.size);
+                removeAt(node.values, i, node.size);
+                node.size--;
+                break;
+            }
+            if (found) {
+                Node<V> left = node.children[i];
+                Node<V> right = node.children[i + 1];
+                if (left.size >= t) {
+                    // 用前驱替换，再从左子树中删除前驱
+                    Node<V> max = left;
+                    while (!max.isLeaf()) {
+                        max = max.children[max.size];
+                    }
+                    key = max.keys[max.size - 1];
+                    node.keys[i] = key;
+                    node.values[i] = max.values[max.size - 1];
+                    node = left;
+                } else if (right.size >= t) {
+                    Node<V> min = right;
+                    while (!min.isLeaf()) {
+                        min = min.children[0];
+                    }
+                    key = min.keys[0];
+                    node.keys[i] = key;
+                    node.values[i] = min.values[0];
+                    node = right;
+                } else {
+                    merge(node, i);
+                    node = left;
+                }
+            } else {
+                if (node.children[i].size < t) {
+                    i = fill(node, i);
+                }
+                node = node.children[i];
+            }
+        }
+        while (root.size == 0 && !root.isLeaf()) {
+            root = root.children[0];
+            height--;
+        }
+        return old;
+    }
+
+    /**
+     * 最小的 key
+     * @return
+     */
+    public long min() {
+        checkNotEmpty();
+        Node<V> node = root;
+        while (!node.isLeaf()) {
+            node = node.children[0];
+        }
+        return node.keys[0];
+    }
+
+    public long max() {
+        checkNotEmpty();
+        Node<V> node = root;
+        while (!node.isLeaf()) {
+            node = node.children[node.size];
+        }
+        return node.keys[node.size - 1];
+    }
+
+    /**
+     * 小于等于 key 的最大 key
+     * @param key
+     * @return 不存在时返回 null
+     */
+    public Long floor(long key) {
+        Node<V> node = root;
+        boolean found = false;
+        long floor = 0;
+        while (true) {
+            int i = node.lowerBound(key);
+            if (i < node.size && node.keys[i] == key) {
+                return key;
+            }
+            if (i > 0) {
+                found = true;
+                floor = node.keys[i - 1];
+            }
+            if (node.isLeaf()) {
+                return found ? floor : null;
+            }
+            node = node.children[i];
+        }
+    }
+
+    /**
+     * 大于等于 key 的最小 key
+     * @param key
+     * @return 不存在时返回 null
+     */
+    public Long ceiling(long key) {
+        Node<V> node = root;
+        boolean found = false;
+        long ceiling = 0;
+        while (true) {
+            int i = node.lowerBound(key);
+            if (i < node.size) {
+                if (node.keys[i] == key) {
+                    return key;
+                }
+                found = true;
+                ceiling = node.keys[i];
+            }
+            if (node.isLeaf()) {
+                return found ? ceiling : null;
+            }
+            node = node.children[i];
+        }
+    }
+
+    /**
+     * 小于 key 的 key 的个数
+     * @param key
+     * @return
+     */
+    public int rank(long key) {
+        Node<V> node = root;
+        int rank = 0;
+        while (true) {
+            int i = node.lowerBound(key);
+            rank += i;
+            if (!node.isLeaf()) {
+                for (int c = 0; c < i; c++) {
+                    rank += node.children[c].total;
+                }
+            }
+            boolean found = i < node.size && node.keys[i] == key;
+            if (node.isLeaf()) {
+                return rank;
+            }
+            if (found) {
+                return rank + node.children[i].total;
+            }
+            node = node.children[i];
+        }
+    }
+
+    /**
+     * 第 k 小的 key，k 从 0 开始
+     * @param k
+     * @return
+     */
+    public long select(int k) {
+        if (k < 0 || k >= size()) {
+            throw new IllegalArgumentException("Illegal rank: " + k);
+        }
+        Node<V> node = root;
+        while (!node.isLeaf()) {
+            int c = 0;
+            while (true) {
+                int childTotal = node.children[c].total;
+                if (k < childTotal) {
+                    break;
+                }
+                k -= childTotal;
+                if (k == 0) {
+                    return node.keys[c];
+                }
+                k--;
+                c++;
+            }
+            node = node.children[c];
+        }
+        return node.keys[k];
+    }
+
+    /**
+     * 按顺序返回所有 key
+     * @return
+     */
+    public long[] keys() {
+        long[] keys = new long[size()];
+        collect(root, keys, 0);
+        return keys;
+    }
+
+    private int collect(Node<V> node, long[] keys, int offset) {
+        if (node.isLeaf()) {
+            System.arraycopy(node.keys, 0, keys, offset, node.size);
+            return offset + node.size;
+        }
+        for (int i = 0; i < node.size; i++) {
+            offset = collect(node.children[i], keys, offset);
+            keys[offset++] = node.keys[i];
+        }
+        return collect(node.children[node.size], keys, offset);
+    }
+
+    /**
+     * 分裂已满的子节点 children[i]，中间的 key 上移到 parent
+     */
+    private void split(Node<V> parent, int i) {
+        Node<V> child = parent.children[i];
+        Node<V> right = new Node<>(maxKeys, child.isLeaf());
+        System.arraycopy(child.keys, t, right.keys, 0, t - 1);
+        System.arraycopy(child.values, t, right.values, 0, t - 1);
+        Arrays.fill(child.values, t, maxKeys, null);
+        if (!child.isLeaf()) {
+            System.arraycopy(child.children, t, right.children, 0, t);
+            Arrays.fill(child.children, t, maxKeys + 1, null);
+        }
+        right.size = t - 1;
+        insertAt(parent.keys, i, child.keys[t - 1], parent.size);
+        insertAt(parent.values, i, child.values[t - 1], parent.size);
+        insertAt(parent.children, i + 1, right, parent.size + 1);
+        parent.size++;
+        child.values[t - 1] = null;
+        child.size = t - 1;
+        child.recount();
+        right.recount();
+    }
+
+    /**
+     * 子节点 children[i] 只有 t - 1 个 key，从兄弟节点借一个，兄弟节点也不够时合并
+     * @return 合并之后 key 所在子节点的下标
+     */
+    private int fill(Node<V> parent, int i) {
+        if (i > 0 && parent.children[i - 1].size >= t) {
+            Node<V> child = parent.children[i];
+            Node<V> left = parent.children[i - 1];
+            insertAt(child.keys, 0, parent.keys[i - 1], child.size);
+            insertAt(child.values, 0, parent.values[i - 1], child.size);
+            if (!child.isLeaf()) {
+                insertAt(child.children, 0, left.children[left.size], child.size + 1);
+                left.children[left.size] = null;
+            }
+            child.size++;
+            parent.keys[i - 1] = left.keys[left.size - 1];
+            parent.values[i - 1] = left.values[left.size - 1];
+            left.values[left.size - 1] = null;
+            left.size--;
+            child.recount();
+            left.recount();
+            return i;
+        }
+        if (i < parent.size && parent.children[i + 1].size >= t) {
+            Node<V> child = parent.children[i];
+            Node<V> right = parent.children[i + 1];
+            child.keys[child.size] = parent.keys[i];
+            child.values[child.size] = parent.values[i];
+            if (!child.isLeaf()) {
+                child.children[child.size + 1] = right.children[0];
+                removeAt(right.children, 0, right.size + 1);
+            }
+            child.size++;
+            parent.keys[i] = right.keys[0];
+            parent.values[i] = right.values[0];
+            removeAt(right.keys, 0, right.size);
+            removeAt(right.values, 0, right.size);
+            right.size--;
+            child.recount();
+            right.recount();
+            return i;
+        }
+        if (i < parent.size) {
+            merge(parent, i);
+            return i;
+        }
+        merge(parent, i - 1);
+        return i - 1;
+    }
+
+    /**
+     * children[i]、keys[i] 和 children[i + 1] 合并为一个节点
+     */
+    private void merge(Node<V> parent, int i) {
+        Node<V> left = parent.children[i];
+        Node<V> right = parent.children[i + 1];
+        left.keys[left.size] = parent.keys[i];
+        left.values[left.size] = parent.values[i];
+        System.arraycopy(right.keys, 0, left.keys, left.size + 1, right.size);
+        System.arraycopy(right.values, 0, left.values, left.size + 1, right.size);
+        if (!left.isLeaf()) {
+            System.arraycopy(right.children, 0, left.children, left.size + 1, right.size + 1);
+        }
+        left.size += right.size + 1;
+        left.total += right.total + 1;
+        removeAt(parent.keys, i, parent.size);
+        removeAt(parent.values, i, parent.size);
+        removeAt(parent.children, i + 1, parent.size + 1);
+        parent.size--;
+    }
+
+    private static void insertAt(long[] array, int index, long element, int length) {
+        System.arraycopy(array, index, array, index + 1, length - index);
+        array[index] = element;
+    }
+
+    private static void insertAt(Object[] array, int index, Object element, int length) {
+        System.arraycopy(array, index, array, index + 1, length - index);
+        array[index] = element;
+    }
+
+    private static void removeAt(long[] array, int index, int length) {
+        System.arraycopy(array, index + 1, array, index, length - index - 1);
+    }
+
+    private static void removeAt(Object[] array, int index, int length) {
+        System.arraycopy(array, index + 1, array, index, length - index - 1);
+        array[length - 1] = null;
+    }
+
+    private void checkNotEmpty() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("Tree is empty");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BalanceTree{" +
+                "minDegree=" + t +
+                ", size=" + size() +
+                ", height=" + height +
+                '}';
+    }
+
+    static final class Node<V> {
+        final long[] keys;
+        final Object[] values;
+        final Node<V>[] children;
+        int size;
+        /**
+         * 子树中 key 的个数
+         */
+        int total;
+
+        @SuppressWarnings("unchecked")
+        Node(int maxKeys, boolean leaf) {
+            this.keys = new long[maxKeys];
+            this.values = new Object[maxKeys];
+            this.children = leaf ? null : (Node<V>[]) new Node[maxKeys + 1];
+        }
+
+        boolean isLeaf() {
+            return children == null;
+        }
+
+        @SuppressWarnings("unchecked")
+        V value(int i) {
+            return (V) values[i];
+        }
+
+        /**
+         * 小于 key 的 key 的个数，没有分支，循环可以被 JIT 展开和向量化
+         */
+        int lowerBound(long key) {
+            int i = 0;
+            for (int j = 0; j < size; j++) {
+                i += keys[j] < key ? 1 : 0;
+            }
+            return i;
+        }
+
+        void recount() {
+            int count = size;
+            if (children != null) {
+                for (int i = 0; i <= size; i++) {
+                    count += children[i].total;
+                }
+            }
+            total = count;
+        }
+    }
 }
@@ -134,6 +134,26 @@ public class SimpleRedBlackTree {
         return originalNode;
     }
 
+    /**
+     * 非递归查找
+     *
+     * @param value
+     * @return
+     */
+    public boolean contains(int value) {
+        TreeNode node = root;
+        while (node != null) {
+            if (node.value > value) {
+                node = node.left;
+            } else if (node.value < value) {
+                node = node.right;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * 遍历红黑树
      */
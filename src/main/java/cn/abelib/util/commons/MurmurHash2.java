@@ -5,66 +5,135 @@ package cn.abelib.util.commons;
  */
 
 import java.math.BigDecimal;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 
 /**
  * 一致性Hash的一种算法 高效低碰撞率
+ * 除 hash(String) 外，所有 hash 方法都直接按小端序读取输入，不产生额外的对象分配
  *
  * @author abel
  */
 public class MurmurHash2 {
+    private static final int SEED = 0x1234ABCD;
+    private static final long M = 0xc6a4a7935bd1e995L;
+    private static final int R = 47;
 
     /**
      * murmur2 hash算法实现
      */
-    public static Long hash(byte[] key) {
-
-        ByteBuffer buf = ByteBuffer.wrap(key);
-        int seed = 0x1234ABCD;
-
-        ByteOrder byteOrder = buf.order();
-        buf.order(ByteOrder.LITTLE_ENDIAN);
-
-        long m = 0xc6a4a7935bd1e995L;
-        int r = 47;
-
-        long h = seed ^ (buf.remaining() * m);
-
-        long k;
-        while (buf.remaining() >= 8) {
-            k = buf.getLong();
-
-            k *= m;
-            k ^= k >>> r;
-            k *= m;
+    public static long hash(byte[] key) {
+        return hash(key, 0, key.length);
+    }
 
+    /**
+     * 对 key[offset, offset + len) 计算 murmur2 hash
+     *
+     * @param key
+     * @param offset
+     * @param len
+     * @return
+     */
+    public static long hash(byte[] key, int offset, int len) {
+        long h = SEED ^ (len * M);
+        int end = offset + (len & ~7);
+        for (int i = offset; i < end; i += 8) {
+            long k = (key[i] & 0xFFL)
+                    | (key[i + 1] & 0xFFL) << 8
+                    | (key[i + 2] & 0xFFL) << 16
+                    | (key[i + 3] & 0xFFL) << 24
+                    | (key[i + 4] & 0xFFL) << 32
+                    | (key[i + 5] & 0xFFL) << 40
+                    | (key[i + 6] & 0xFFL) << 48
+                    | (key[i + 7] & 0xFFL) << 56;
+            h = mixBlock(h, k);
+        }
+        int remaining = len & 7;
+        if (remaining > 0) {
+            long k = 0;
+            for (int i = remaining - 1; i >= 0; i--) {
+                k = (k << 8) | (key[end + i] & 0xFFL);
+            }
             h ^= k;
-            h *= m;
+            h *= M;
         }
+        return finish(h);
+    }
 
-        if (buf.remaining() > 0) {
-            ByteBuffer finish = ByteBuffer.allocate(8).order(
-                    ByteOrder.LITTLE_ENDIAN);
-            // for big-endian version, do this first:
-            // finish.position(8-buf.remaining());
-            finish.put(buf).rewind();
-            h ^= finish.getLong();
-            h *= m;
+    /**
+     * 直接读取 char 计算 hash，对合法的 UTF-16 字符串结果与 hash(key.getBytes(UTF_16LE)) 一致
+     *
+     * @param key
+     * @return
+     */
+    public static long hash(CharSequence key) {
+        int length = key.length();
+        long h = SEED ^ ((length << 1) * M);
+        int end = length & ~3;
+        for (int i = 0; i < end; i += 4) {
+            long k = key.charAt(i)
+                    | (long) key.charAt(i + 1) << 16
+                    | (long) key.charAt(i + 2) << 32
+                    | (long) key.charAt(i + 3) << 48;
+            h = mixBlock(h, k);
+        }
+        int remaining = length & 3;
+        if (remaining > 0) {
+            long k = 0;
+            for (int i = remaining - 1; i >= 0; i--) {
+                k = (k << 16) | key.charAt(end + i);
+            }
+            h ^= k;
+            h *= M;
         }
+        return finish(h);
+    }
 
-        h ^= h >>> r;
-        h *= m;
-        h ^= h >>> r;
+    /**
+     * 结果与对 key 的 8 字节小端序表示计算 hash 一致
+     *
+     * @param key
+     * @return
+     */
+    public static long hash(long key) {
+        return finish(mixBlock(SEED ^ (8 * M), key));
+    }
 
-        buf.order(byteOrder);
-        return h;
+    /**
+     * 结果与对 key 的 4 字节小端序表示计算 hash 一致
+     *
+     * @param key
+     * @return
+     */
+    public static long hash(int key) {
+        long h = SEED ^ (4 * M);
+        h ^= key & 0xFFFFFFFFL;
+        h *= M;
+        return finish(h);
     }
 
-    public static Long hash(String key) {
+    /**
+     * 保持原有语义: 对字符串按平台默认编码后的字节计算 hash,
+     * 热点路径上应使用不分配内存的 hash(CharSequence)
+     */
+    public static long hash(String key) {
         return hash(key.getBytes());
     }
 
+    private static long mixBlock(long h, long k) {
+        k *= M;
+        k ^= k >>> R;
+        k *= M;
+
+        h ^= k;
+        h *= M;
+        return h;
+    }
+
+    private static long finish(long h) {
+        h ^= h >>> R;
+        h *= M;
+        h ^= h >>> R;
+        return h;
+    }
 
     /**
      * Long转换成无符号长整型（C中数据类型）
@@ -86,4 +155,4 @@ public class MurmurHash2 {
     public static BigDecimal hashUnsigned(byte[] key) {
         return readUnsignedLong(hash(key));
     }
-}
\ No newline at end of file
+}
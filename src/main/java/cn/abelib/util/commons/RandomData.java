@@ -167,6 +167,52 @@ public class RandomData {
         return randCharArray(seed, size);
     }
 
+    /**
+     * 生成服从 Zipf 分布的 int 数组，i 出现的概率正比于 1 / (i + 1)^skew，0 最热
+     *
+     * @param seed
+     * @param range
+     * @param skew
+     * @param size
+     * @return random int array in [0, range)
+     */
+    public static int[] randZipfArray(long seed, int range, double skew, int size) {
+        double[] cdf = new double[range];
+        double sum = 0;
+        for (int i = 0; i < range; i++) {
+            sum += 1.0 / Math.pow(i + 1, skew);
+            cdf[i] = sum;
+        }
+        Random random = new Random(seed);
+        int[] intArray = new int[size];
+        for (int i = 0; i < size; i++) {
+            double u = random.nextDouble() * sum;
+            int lo = 0;
+            int hi = range - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cdf[mid] < u) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            intArray[i] = lo;
+        }
+        return intArray;
+    }
+
+    /**
+     * @param range
+     * @param skew
+     * @param size
+     * @return
+     */
+    public static int[] randZipfArray(int range, double skew, int size) {
+        long seed = System.currentTimeMillis();
+        return randZipfArray(seed, range, skew, size);
+    }
+
     /**
      * @return
      */
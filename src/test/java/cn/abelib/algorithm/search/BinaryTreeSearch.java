@@ -1,7 +0,0 @@
-package cn.abelib.algorithm.search;
-
-/**
- * Created by abel on 2017/8/8.
- */
-public class BinaryTreeSearch {
-}
@@ -0,0 +1,109 @@
+package cn.abelib.algorithm.search;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Created by abel on 2017/8/8.
+ */
+public class BinaryTreeSearchTest {
+
+    private static <T> List<T> toList(Iterable<T> iterable) {
+        List<T> list = new ArrayList<>();
+        iterable.forEach(list::add);
+        return list;
+    }
+
+    @Test
+    public void symbolTableTest() {
+        BinaryTreeSearch<Integer, String> st = new BinaryTreeSearch<>();
+        Assert.assertTrue(st.isEmpty());
+        for (int i = 0; i < 100; i++) {
+            st.put(i * 2, "v" + i);
+        }
+        st.put(20, "x");
+        Assert.assertEquals(100, st.size());
+        Assert.assertEquals("x", st.get(20));
+        Assert.assertNull(st.get(21));
+        Assert.assertTrue(st.contains(20));
+        Assert.assertEquals(Integer.valueOf(0), st.min());
+        Assert.assertEquals(Integer.valueOf(198), st.max());
+        Assert.assertEquals(Integer.valueOf(20), st.floor(21));
+        Assert.assertEquals(Integer.valueOf(22), st.ceiling(21));
+        Assert.assertNull(st.floor(-1));
+        Assert.assertNull(st.ceiling(199));
+        Assert.assertEquals(10, st.rank(20));
+        Assert.assertEquals(11, st.rank(21));
+        Assert.assertEquals(Integer.valueOf(20), st.select(10));
+        Assert.assertEquals(6, st.size(10, 21));
+        Assert.assertEquals("[10, 12, 14, 16, 18, 20]", toList(st.keys(9, 21)).toString());
+        st.delMin();
+        st.delMax();
+        st.delete(20);
+        st.delete(21);
+        Assert.assertEquals(97, st.size());
+        Assert.assertEquals(Integer.valueOf(2), st.min());
+        Assert.assertEquals(Integer.valueOf(196), st.max());
+        Assert.assertFalse(st.contains(20));
+    }
+
+    @Test
+    public void randomTest() {
+        BinaryTreeSearch<Integer, Integer> st = new BinaryTreeSearch<>();
+        TreeMap<Integer, Integer> map = new TreeMap<>();
+        Random random = new Random(25);
+        for (int i = 0; i < 50000; i++) {
+            int key = random.nextInt(3000);
+            if (random.nextInt(3) == 0) {
+                map.remove(key);
+                st.delete(key);
+            } else {
+                map.put(key, i);
+                st.put(key, i);
+            }
+            Assert.assertEquals(map.size(), st.size());
+        }
+        Assert.assertEquals(new ArrayList<>(map.keySet()), toList(st));
+        Assert.assertEquals(new ArrayList<>(map.keySet()), toList(st.keys()));
+        int i = 0;
+        for (Integer key : map.keySet()) {
+            Assert.assertEquals(map.get(key), st.get(key));
+            Assert.assertEquals(i, st.rank(key));
+            Assert.assertEquals(key, st.select(i));
+            i++;
+        }
+        for (int key = -5; key < 3005; key += 7) {
+            Assert.assertEquals(map.floorKey(key), st.floor(key));
+            Assert.assertEquals(map.ceilingKey(key), st.ceiling(key));
+            Assert.assertEquals(map.headMap(key).size(), st.rank(key));
+            Assert.assertEquals(map.subMap(key, true, key + 100, true).size(), st.size(key, key + 100));
+            Assert.assertEquals(new ArrayList<>(map.subMap(key, true, key + 100, true).keySet()),
+                    toList(st.keys(key, key + 100)));
+        }
+    }
+
+    /**
+     * 有序插入时替罪羊重建使树高保持对数级
+     */
+    @Test
+    public void sortedTest() {
+        BinaryTreeSearch<Integer, Integer> st = new BinaryTreeSearch<>();
+        int n = 100000;
+        int bound = (int) (Math.log(n) / Math.log(1 / 0.7)) + 2;
+        for (int i = 0; i < n; i++) {
+            st.put(i, i);
+        }
+        Assert.assertTrue("height=" + st.height(), st.height() <= bound);
+        for (int i = 0; i < n - 100; i++) {
+            st.delMin();
+        }
+        Assert.assertEquals(100, st.size());
+        Assert.assertTrue("height=" + st.height(), st.height() <= 10);
+        Assert.assertEquals(Integer.valueOf(n - 50), st.select(50));
+    }
+}
@@ -0,0 +1,98 @@
+package cn.abelib.datastructure.linear.list;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * @author abel-huang
+ * @date 2017/12/25
+ */
+public class ZSetTest {
+
+    private static String join(ArrayList<String> list) {
+        StringBuilder sb = new StringBuilder();
+        for (String s : list) {
+            if (sb.length() > 0) {
+                sb.append(",");
+            }
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void basicTest() {
+        ZSet<String> zset = new ZSet<>();
+        Assert.assertTrue(zset.zadd("a", 1));
+        Assert.assertTrue(zset.zadd("b", 2));
+        Assert.assertTrue(zset.zadd("c", 2));
+        Assert.assertTrue(zset.zadd("d", 3.5));
+        Assert.assertFalse(zset.zadd("a", 1));
+        Assert.assertEquals(4, zset.size());
+        Assert.assertEquals("a,b,c,d", join(zset.zrange(0, -1)));
+        Assert.assertEquals("d,c,b,a", join(zset.zrevrange(0, -1)));
+        Assert.assertEquals("b,c", join(zset.zrange(1, 2)));
+        Assert.assertEquals("c,d", join(zset.zrange(-2, 100)));
+        Assert.assertEquals("", join(zset.zrange(3, 1)));
+        Assert.assertEquals(2, zset.zrank("c"));
+        Assert.assertEquals(1, zset.zrevrank("c"));
+        Assert.assertEquals(-1, zset.zrank("x"));
+
+        Assert.assertEquals(4.0, zset.zincrby("a", 3), 0);
+        Assert.assertEquals("b,c,d,a", join(zset.zrange(0, -1)));
+        Assert.assertEquals(Double.valueOf(4.0), zset.zscore("a"));
+        Assert.assertEquals(1.5, zset.zincrby("e", 1.5), 0);
+        Assert.assertEquals(0, zset.zrank("e"));
+
+        Assert.assertEquals("b,c,d", join(zset.zrangeByScore(2, 3.5)));
+        Assert.assertEquals("c,d", join(zset.zrangeByScore(2, 4, 1, 2)));
+        Assert.assertEquals("", join(zset.zrangeByScore(5, 10)));
+        Assert.assertEquals(5, zset.zcount(1.5, 4));
+        Assert.assertEquals(3, zset.zcount(1.6, 3.5));
+
+        Assert.assertEquals(2, zset.zremRangeByRank(1, 2));
+        Assert.assertEquals("e,d,a", join(zset.zrange(0, -1)));
+        Assert.assertNull(zset.zscore("b"));
+        Assert.assertTrue(zset.zrem("d"));
+        Assert.assertFalse(zset.zrem("d"));
+        Assert.assertEquals("e,a", join(zset.zrange(0, -1)));
+    }
+
+    @Test
+    public void randomTest() {
+        Random random = new Random(1);
+        ZSet<Integer> zset = new ZSet<>();
+        java.util.TreeMap<Integer, Double> expected = new java.util.TreeMap<>();
+        for (int i = 0; i < 20000; i++) {
+            int member = random.nextInt(2000);
+            double score = random.nextInt(100);
+            int op = random.nextInt(4);
+            if (op == 0) {
+                zset.zrem(member);
+                expected.remove(member);
+            } else if (op == 1) {
+                expected.put(member, zset.zincrby(member, score));
+            } else {
+                zset.zadd(member, score);
+                expected.put(member, score);
+            }
+        }
+        java.util.List<Integer> order = new java.util.ArrayList<>(expected.keySet());
+        order.sort((a, b) -> {
+            int c = Double.compare(expected.get(a), expected.get(b));
+            return c != 0 ? c : Integer.compare(a, b);
+        });
+        Assert.assertEquals(order.size(), zset.size());
+        ArrayList<Integer> range = zset.zrange(0, -1);
+        for (int i = 0; i < order.size(); i++) {
+            Assert.assertEquals(order.get(i), range.get(i));
+            Assert.assertEquals(i, zset.zrank(order.get(i)));
+        }
+        int removed = zset.zremRangeByRank(10, 99);
+        Assert.assertEquals(90, removed);
+        Assert.assertEquals(order.get(100), zset.zrange(10, 10).get(0));
+        Assert.assertEquals(order.size() - 90, zset.size());
+    }
+}
@@ -0,0 +1,66 @@
+package cn.abelib.datastructure.map;
+
+import java.util.Random;
+
+/**
+ * @Author: abel.huang
+ * @Date: 2019-02-01 01:38
+ * 不属于单元测试, 手动运行 main 查看耗时
+ */
+public class AvlTreeMapBenchmark {
+
+    /**
+     * 95% 读 5% 写, 和红黑树 TreeMap 比较
+     */
+    public static void main(String[] args) {
+        int n = 200000;
+        int ops = 1000000;
+        Random random = new Random(1);
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = random.nextInt();
+        }
+        int[] opKeys = new int[ops];
+        boolean[] writes = new boolean[ops];
+        for (int i = 0; i < ops; i++) {
+            opKeys[i] = keys[random.nextInt(n)];
+            writes[i] = random.nextInt(100) < 5;
+        }
+        for (int round = 0; round < 3; round++) {
+            AvlTreeMap<Integer, Integer> avl = new AvlTreeMap<>();
+            TreeMap<Integer, Integer> redBlack = new TreeMap<>();
+            for (int key : keys) {
+                avl.put(key, key);
+                redBlack.put(key, key);
+            }
+            int found = 0;
+            long begin = System.nanoTime();
+            for (int i = 0; i < ops; i++) {
+                if (writes[i]) {
+                    if (avl.remove(opKeys[i]) == null) {
+                        avl.put(opKeys[i], i);
+                    }
+                } else {
+                    found += avl.contains(opKeys[i]) ? 1 : 0;
+                }
+            }
+            long avlTime = System.nanoTime() - begin;
+            begin = System.nanoTime();
+            for (int i = 0; i < ops; i++) {
+                if (writes[i]) {
+                    if (redBlack.remove(opKeys[i]) == null) {
+                        redBlack.put(opKeys[i], i);
+                    }
+                } else {
+                    found -= redBlack.contains(opKeys[i]) ? 1 : 0;
+                }
+            }
+            long redBlackTime = System.nanoTime() - begin;
+            if (found != 0 || redBlack.size() != avl.size()) {
+                throw new IllegalStateException("AvlTreeMap and TreeMap diverged");
+            }
+            System.out.println("95/5 ns/op: AvlTreeMap " + avlTime / ops + " (height " + avl.height()
+                    + "), TreeMap " + redBlackTime / ops + " (height " + redBlack.height() + ")");
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package cn.abelib.datastructure.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @Author: abel.huang
+ * @Date: 2019-02-01 01:38
+ */
+public class AvlTreeMapTest {
+
+    @Test
+    public void basicTest() {
+        AvlTreeMap<String, Integer> map = new AvlTreeMap<>();
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertTrue(map.put("b", 2));
+        Assert.assertTrue(map.put("a", 1));
+        Assert.assertFalse(map.put("b", 3));
+        Assert.assertEquals(Integer.valueOf(3), map.get("b"));
+        map.set("c", 4);
+        Assert.assertFalse(map.contains("c"));
+        map.set("a", 5);
+        Assert.assertEquals(Integer.valueOf(5), map.get("a"));
+        Assert.assertEquals("a", map.min());
+        Assert.assertEquals("b", map.max());
+        Assert.assertEquals(Integer.valueOf(5), map.remove("a"));
+        Assert.assertNull(map.remove("a"));
+        Assert.assertEquals(1, map.size());
+    }
+}
@@ -0,0 +1,96 @@
+package cn.abelib.datastructure.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ */
+public class BoundedCacheTest {
+
+    @Test
+    public void lruTest() {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(3, EvictionPolicy.LRU);
+        List<Integer> evicted = new ArrayList<>();
+        cache.setEvictionListener((key, value) -> evicted.add(key));
+        cache.put(1, 1);
+        cache.put(2, 2);
+        cache.put(3, 3);
+        cache.get(1);
+        cache.put(4, 4);
+        cache.put(5, 5);
+        Assert.assertEquals(Arrays.asList(2, 3), evicted);
+        Assert.assertEquals(3, cache.size());
+        Assert.assertEquals(Arrays.asList(1, 4, 5), cache.listKeys());
+    }
+
+    @Test
+    public void weightTest() {
+        BoundedCache<String, String> cache = new BoundedCache<>(10, (key, value) -> value.length(), EvictionPolicy.LRU);
+        cache.put("a", "1234");
+        cache.put("b", "1234");
+        Assert.assertEquals(8, cache.weightedSize());
+        cache.put("a", "1234567");
+        Assert.assertFalse(cache.contains("b"));
+        Assert.assertEquals(7, cache.weightedSize());
+        cache.remove("a");
+        Assert.assertEquals(0, cache.weightedSize());
+    }
+
+    @Test
+    public void lfuTest() {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(100, EvictionPolicy.LFU);
+        cache.setLfuLogFactor(0);
+        for (int i = 0; i < 50; i++) {
+            cache.put(i, i);
+            for (int j = 0; j < 20; j++) {
+                cache.get(i);
+            }
+        }
+        for (int i = 1000; i < 20000; i++) {
+            cache.put(i, i);
+        }
+        Assert.assertEquals(100, cache.size());
+        int hot = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.contains(i)) {
+                hot++;
+            }
+        }
+        Assert.assertTrue("hot keys kept " + hot, hot > 40);
+    }
+
+    @Test
+    public void lfuDecayTest() {
+        final long[] now = {0};
+        BoundedCache<Integer, Integer> cache = new BoundedCache<Integer, Integer>(10, EvictionPolicy.LFU) {
+            @Override
+            protected long currentTimeMillis() {
+                return now[0];
+            }
+        };
+        cache.setLfuLogFactor(0);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, i);
+            for (int j = 0; j < 10; j++) {
+                cache.get(i);
+            }
+        }
+        // 一个小时后旧条目的计数衰减到0，新条目更不容易被淘汰
+        now[0] = 60 * 60 * 1000L;
+        cache.put(100, 100);
+        for (int j = 0; j < 5; j++) {
+            cache.get(100);
+        }
+        for (int i = 200; i < 300; i++) {
+            cache.put(i, i);
+            cache.get(i);
+        }
+        Assert.assertTrue(cache.contains(100));
+    }
+}
@@ -0,0 +1,79 @@
+package cn.abelib.datastructure.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ */
+public class ConcurrentHashMapTest {
+
+    @Test
+    public void basicTest() {
+        ConcurrentHashMap<String, Integer> map = new ConcurrentHashMap<>();
+        map.put("a", 1);
+        map.put("b", 2);
+        map.put("a", 3);
+        Assert.assertEquals(2, map.size());
+        Assert.assertEquals(Integer.valueOf(3), map.get("a"));
+        map.set("c", 4);
+        Assert.assertFalse(map.contains("c"));
+        Assert.assertEquals(Integer.valueOf(2), map.remove("b"));
+        Assert.assertNull(map.get("b"));
+        Assert.assertEquals(1, map.size());
+    }
+
+    @Test
+    public void concurrentPutRemoveTest() throws InterruptedException {
+        final int threads = 8;
+        final int perThread = 20000;
+        final ConcurrentHashMap<Integer, Integer> map = new ConcurrentHashMap<>();
+        final AtomicInteger errors = new AtomicInteger();
+        Runnable[] tasks = new Runnable[threads];
+        for (int t = 0; t < threads; t++) {
+            final int base = t * perThread;
+            tasks[t] = () -> {
+                for (int i = base; i < base + perThread; i++) {
+                    map.put(i, i);
+                    if (!Integer.valueOf(i).equals(map.get(i))) {
+                        errors.incrementAndGet();
+                    }
+                }
+                for (int i = base; i < base + perThread; i += 2) {
+                    if (!Integer.valueOf(i).equals(map.remove(i))) {
+                        errors.incrementAndGet();
+                    }
+                }
+            };
+        }
+        Threads.runAll(tasks);
+        Assert.assertEquals(0, errors.get());
+        Assert.assertEquals(threads * perThread / 2, map.size());
+        for (int i = 0; i < threads * perThread; i++) {
+            Assert.assertEquals(i % 2 == 0 ? null : Integer.valueOf(i), map.get(i));
+        }
+        // 扩容期间的插入不等待扩容结束, 新的阈值由之后的插入检查, 这里只断言表没有过满
+        Assert.assertTrue("capacity " + map.capacity(), map.size() < map.capacity());
+    }
+
+    /**
+     * 插入空桶同样触发扩容检查
+     */
+    @Test
+    public void resizeOnEmptyBinTest() {
+        ConcurrentHashMap<Integer, Integer> map = new ConcurrentHashMap<>(16);
+        for (int i = 0; i < 11; i++) {
+            map.put(i, i);
+        }
+        Assert.assertEquals(16, map.capacity());
+        // 0 到 11 落在不同的空桶中, 第 12 个 key 达到阈值 12
+        map.put(11, 11);
+        Assert.assertEquals(32, map.capacity());
+        for (int i = 0; i < 12; i++) {
+            Assert.assertEquals(Integer.valueOf(i), map.get(i));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package cn.abelib.datastructure.map;
+
+import java.util.function.Supplier;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ * 不属于单元测试, 手动运行 main 查看吞吐量
+ * 参数为 ConcurrentHashMap 或 SkipListMap, 没有参数时两个都运行
+ */
+public class ConcurrentMapBenchmark {
+
+    /**
+     * 1/8 插入, 1/8 删除, 其余查找, 线程数从 1 增加到 32
+     */
+    public static void main(String[] args) throws InterruptedException {
+        String[] names = args.length == 0 ? new String[]{"ConcurrentHashMap", "SkipListMap"} : args;
+        for (String name : names) {
+            System.out.println(name);
+            run(factory(name));
+        }
+    }
+
+    private static Supplier<Map<Integer, Integer>> factory(String name) {
+        switch (name) {
+            case "ConcurrentHashMap":
+                return ConcurrentHashMap::new;
+            case "SkipListMap":
+                return SkipListMap::new;
+            default:
+                throw new IllegalArgumentException("Unknown map: " + name);
+        }
+    }
+
+    private static void run(Supplier<Map<Integer, Integer>> factory) throws InterruptedException {
+        final int ops = 200000;
+        for (int threads = 1; threads <= 32; threads <<= 1) {
+            final Map<Integer, Integer> map = factory.get();
+            Runnable[] tasks = new Runnable[threads];
+            for (int t = 0; t < threads; t++) {
+                final int seed = t;
+                tasks[t] = () -> {
+                    int key = seed;
+                    for (int i = 0; i < ops; i++) {
+                        key = key * 1103515245 + 12345;
+                        int k = (key >>> 8) & 0xFFFF;
+                        int op = i & 7;
+                        if (op == 0) {
+                            map.put(k, i);
+                        } else if (op == 1) {
+                            map.remove(k);
+                        } else {
+                            map.get(k);
+                        }
+                    }
+                };
+            }
+            long begin = System.nanoTime();
+            Threads.runAll(tasks);
+            long cost = System.nanoTime() - begin;
+            System.out.println(threads + " threads: " + (threads * (long) ops * 1000 / Math.max(cost, 1)) + " ops/us");
+        }
+    }
+}
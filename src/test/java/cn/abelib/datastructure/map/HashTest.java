@@ -1,8 +1,10 @@
 package cn.abelib.datastructure.map;
 
 import cn.abelib.util.commons.MurmurHash2;
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -164,4 +166,308 @@ public class HashTest {
             System.err.print(integer2 + " ");
         }
     }
+
+    @Test
+    public void testIncrementalRehash() {
+        HashMap<Integer, Integer> hash = new HashMap<>(1024);
+        hash.setRehashSteps(1);
+        Assert.assertEquals(-1, hash.rehashIndex());
+        Assert.assertEquals(1024, hash.tableCapacity());
+        Assert.assertEquals(0, hash.expandCapacity());
+        // size 超过容量的 2 倍后, 下一次 put 在插入前开始扩容
+        int n = 0;
+        while (!hash.isRehashing()) {
+            hash.put(n, n);
+            n++;
+        }
+        Assert.assertEquals(2050, n);
+        Assert.assertEquals(0, hash.rehashIndex());
+        Assert.assertEquals(1024, hash.tableCapacity());
+        Assert.assertEquals(2048, hash.expandCapacity());
+
+        int index = 0;
+        while (index < 512) {
+            Assert.assertTrue(hash.rehash(1));
+            Assert.assertTrue(hash.rehashIndex() > index);
+            index = hash.rehashIndex();
+            Assert.assertEquals(1024, hash.tableCapacity());
+            Assert.assertEquals(2048, hash.expandCapacity());
+            Assert.assertEquals(n, hash.size());
+        }
+        // 迁移到一半时两张表中的 key 都能找到, 每次查找最多再迁移一个桶
+        for (int i = 0; i < n; i += 8) {
+            Assert.assertEquals(Integer.valueOf(i), hash.get(i));
+        }
+        Assert.assertTrue(hash.isRehashing());
+        Assert.assertTrue(hash.rehashIndex() > index);
+        Assert.assertEquals(2048, hash.expandCapacity());
+
+        while (hash.rehash(1)) {
+            Assert.assertTrue(hash.rehashIndex() > index);
+            index = hash.rehashIndex();
+        }
+        Assert.assertEquals(-1, hash.rehashIndex());
+        Assert.assertEquals(2048, hash.tableCapacity());
+        Assert.assertEquals(0, hash.expandCapacity());
+        Assert.assertEquals(n, hash.size());
+        for (int i = 0; i < n; i++) {
+            Assert.assertEquals(Integer.valueOf(i), hash.get(i));
+        }
+
+        // size 低于容量的 1/10 时开始缩容, 目标容量为不小于 size 的最小2的幂
+        int removed = 0;
+        while (!hash.isRehashing()) {
+            Assert.assertEquals(Integer.valueOf(removed), hash.remove(removed));
+            removed++;
+        }
+        int size = n - removed;
+        Assert.assertEquals(203, size);
+        Assert.assertEquals(2048, hash.tableCapacity());
+        Assert.assertEquals(256, hash.expandCapacity());
+        while (hash.rehash(1)) {
+            Assert.assertEquals(2048, hash.tableCapacity());
+            Assert.assertEquals(256, hash.expandCapacity());
+            Assert.assertEquals(size, hash.size());
+        }
+        Assert.assertEquals(-1, hash.rehashIndex());
+        Assert.assertEquals(256, hash.tableCapacity());
+        Assert.assertEquals(0, hash.expandCapacity());
+        for (int i = 0; i < n; i++) {
+            Assert.assertEquals(i < removed ? null : Integer.valueOf(i), hash.get(i));
+        }
+    }
+
+    @Test
+    public void testHashStrategy() {
+        String str = "bre2brt2gwegw";
+        Assert.assertEquals(MurmurHash2.hash(str.getBytes(java.nio.charset.StandardCharsets.UTF_16LE)),
+                MurmurHash2.hash((CharSequence) str));
+        byte[] bytes = str.getBytes();
+        byte[] padded = ("xx" + str).getBytes();
+        Assert.assertEquals(MurmurHash2.hash(bytes), MurmurHash2.hash(padded, 2, bytes.length));
+
+        HashMap<byte[], Integer> bytesMap = new HashMap<>(HashStrategy.BYTE_ARRAY);
+        bytesMap.put("key".getBytes(), 1);
+        Assert.assertEquals(Integer.valueOf(1), bytesMap.get("key".getBytes()));
+
+        HashMap<Long, Long> longMap = new HashMap<>(HashStrategy.LONG);
+        for (long i = 0; i < 1000; i++) {
+            longMap.put(i << 32, i);
+        }
+        for (long i = 0; i < 1000; i++) {
+            Assert.assertEquals(Long.valueOf(i), longMap.get(i << 32));
+        }
+    }
+
+    @Test
+    public void testScan() {
+        HashMap<Integer, Integer> hash = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            hash.put(i, i);
+        }
+        java.util.Set<Integer> seen = new java.util.HashSet<>();
+        int cursor = 0;
+        int next = 1000;
+        do {
+            cursor = hash.scan(cursor, 2, (key, value) -> seen.add(key));
+            // 遍历期间不断扩容
+            for (int i = 0; i < 20; i++) {
+                hash.put(next, next);
+                next++;
+            }
+        } while (cursor != 0);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(seen.contains(i));
+        }
+
+        seen.clear();
+        cursor = 0;
+        int removed = next;
+        do {
+            cursor = hash.scan(cursor, (key, value) -> seen.add(key));
+            // 遍历期间不断缩容
+            for (int i = 0; i < 40 && removed > 1000; i++) {
+                hash.remove(--removed);
+            }
+        } while (cursor != 0);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(seen.contains(i));
+        }
+    }
+
+    @Test
+    public void testIterator() {
+        HashMap<Integer, Integer> hash = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            hash.put(i, i);
+        }
+        int count = 0;
+        Iterator<Integer> iterator = hash.iterator();
+        while (iterator.hasNext()) {
+            Integer key = iterator.next();
+            Assert.assertEquals(key, hash.get(key));
+            if (key % 2 == 0) {
+                iterator.remove();
+            }
+            count++;
+        }
+        Assert.assertEquals(5000, count);
+        Assert.assertEquals(2500, hash.size());
+        long[] sum = new long[1];
+        hash.forEach((key, value) -> sum[0] += value);
+        Assert.assertEquals(2500L * 2500, sum[0]);
+        Assert.assertEquals(2500, hash.listValues().size());
+    }
+
+    @Test
+    public void testExpire() {
+        long[] now = {1000};
+        HashMap<Integer, Integer> map = new HashMap<Integer, Integer>() {
+            @Override
+            protected long currentTimeMillis() {
+                return now[0];
+            }
+        };
+        for (int i = 0; i <= 1000; i++) {
+            if (i < 500) {
+                map.put(i, i, 100 + i);
+            } else {
+                map.put(i, i);
+            }
+        }
+        Assert.assertEquals(500, map.expiresSize());
+        Assert.assertEquals(-1, map.ttl(1000));
+        Assert.assertEquals(-2, map.ttl(2000));
+        Assert.assertEquals(150, map.ttl(50));
+        Assert.assertTrue(map.persist(51));
+        Assert.assertEquals(-1, map.ttl(51));
+        // put 清除过期时间，set 保留
+        map.put(52, 52);
+        map.set(53, 530);
+        Assert.assertEquals(-1, map.ttl(52));
+        Assert.assertEquals(153, map.ttl(53));
+
+        now[0] = 1200;
+        Assert.assertNull(map.get(10));
+        Assert.assertEquals(Integer.valueOf(51), map.get(51));
+        Assert.assertEquals(Integer.valueOf(150), map.get(150));
+        Assert.assertNull(map.remove(20));
+        Assert.assertFalse(map.contains(30));
+        int[] visited = {0};
+        map.forEach((key, value) -> visited[0]++);
+        // 0 到 100 已经过期，51 和 52 没有过期时间
+        Assert.assertEquals(902, visited[0]);
+
+        int expired = map.activeExpireCycle(1000);
+        // 10、20、30 被惰性删除，remove 时又顺带删除了2个
+        Assert.assertEquals(94, expired);
+        Assert.assertEquals(902, map.size());
+        Assert.assertEquals(399, map.expiresSize());
+        Assert.assertTrue(map.expire(600, 0));
+        Assert.assertFalse(map.contains(600));
+
+        now[0] = 10000;
+        for (int i = 0; i < 10; i++) {
+            map.put(-i, i);
+        }
+        map.activeExpireCycle(1000);
+        Assert.assertEquals(0, map.expiresSize());
+        Assert.assertEquals(901 - 399 + 10, map.size());
+    }
+
+    @Test
+    public void testExpireReclaim() {
+        long[] now = {0};
+        HashMap<Integer, Integer> map = new HashMap<Integer, Integer>() {
+            @Override
+            protected long currentTimeMillis() {
+                return now[0];
+            }
+        };
+        // 只有写操作也能回收过期的 key，内存不会无限增长
+        for (int i = 0; i < 100000; i++) {
+            now[0] = i;
+            map.put(i, i, 100);
+        }
+        Assert.assertTrue(map.size() <= 200);
+    }
+
+    /**
+     * 迭代器遍历结束后释放暂停，只有读操作也能完成rehash
+     */
+    @Test
+    public void testRehashAfterIterator() {
+        HashMap<Integer, Integer> hash = new HashMap<>();
+        hash.setRehashSteps(1);
+        int n = 0;
+        while (!hash.isRehashing() || n < 1000) {
+            hash.put(n, n);
+            n++;
+        }
+        Assert.assertTrue(hash.isRehashing());
+        int count = 0;
+        for (Integer key : hash) {
+            Assert.assertEquals(key, hash.get(key));
+            count++;
+        }
+        Assert.assertEquals(n, count);
+        for (int round = 0; round < 100000 && hash.isRehashing(); round++) {
+            Assert.assertEquals(Integer.valueOf(round % n), hash.get(round % n));
+        }
+        Assert.assertFalse(hash.isRehashing());
+
+        // 未遍历完就丢弃的迭代器在下一次写操作后不再暂停rehash
+        while (!hash.isRehashing()) {
+            hash.put(n, n);
+            n++;
+        }
+        Iterator<Integer> iterator = hash.iterator();
+        iterator.next();
+        hash.put(-1, -1);
+        for (int round = 0; round < 100000 && hash.isRehashing(); round++) {
+            Assert.assertTrue(hash.contains(round % n));
+        }
+        Assert.assertFalse(hash.isRehashing());
+    }
+
+    /**
+     * 过期删除不受迭代器影响
+     */
+    @Test
+    public void testExpireWithIterator() {
+        long[] now = {0};
+        HashMap<Integer, Integer> map = new HashMap<Integer, Integer>() {
+            @Override
+            protected long currentTimeMillis() {
+                return now[0];
+            }
+        };
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, i, 100);
+        }
+        int count = 0;
+        for (Integer key : map) {
+            count++;
+        }
+        Assert.assertEquals(1000, count);
+        now[0] = 200;
+        Assert.assertNull(map.get(0));
+        Assert.assertEquals(999, map.activeExpireCycle(1000));
+        Assert.assertEquals(0, map.size());
+
+        // 迭代过程中读操作删除过期的 key，迭代器不失效
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, i, i % 2 == 0 ? 100 : 1000);
+        }
+        Iterator<Integer> iterator = map.iterator();
+        now[0] = 400;
+        count = 0;
+        while (iterator.hasNext()) {
+            Integer key = iterator.next();
+            Assert.assertEquals(key % 2 == 0 ? null : key, map.get(key));
+            count++;
+        }
+        Assert.assertEquals(1000, count);
+        Assert.assertEquals(500, map.size());
+    }
 }
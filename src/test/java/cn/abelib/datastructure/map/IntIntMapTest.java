@@ -0,0 +1,50 @@
+package cn.abelib.datastructure.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ */
+public class IntIntMapTest {
+
+    @Test
+    public void putGetTest() {
+        IntIntMap map = new IntIntMap();
+        Assert.assertTrue(map.put(0, 10));
+        Assert.assertTrue(map.put(1, 11));
+        Assert.assertFalse(map.put(1, 12));
+        Assert.assertEquals(2, map.size());
+        Assert.assertEquals(10, map.get(0));
+        Assert.assertEquals(12, map.get(1));
+        Assert.assertEquals(-1, map.getOrDefault(2, -1));
+        Assert.assertEquals(3, map.addTo(2, 3));
+        Assert.assertEquals(5, map.addTo(2, 2));
+    }
+
+    @Test
+    public void randomTest() {
+        IntIntMap map = new IntIntMap(4, 0.5F);
+        java.util.HashMap<Integer, Integer> expected = new java.util.HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 200000; i++) {
+            int key = random.nextInt(5000) - 100;
+            if (random.nextInt(3) == 0) {
+                Integer old = expected.remove(key);
+                Assert.assertEquals(old == null ? 0 : old, map.remove(key));
+            } else {
+                int value = random.nextInt();
+                Assert.assertEquals(!expected.containsKey(key), map.put(key, value));
+                expected.put(key, value);
+            }
+            Assert.assertEquals(expected.size(), map.size());
+        }
+        for (int key = -100; key < 4900; key++) {
+            Assert.assertEquals(expected.containsKey(key), map.contains(key));
+            Assert.assertEquals(expected.getOrDefault(key, 0).intValue(), map.get(key));
+        }
+    }
+}
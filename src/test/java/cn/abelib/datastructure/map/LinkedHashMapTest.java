@@ -0,0 +1,99 @@
+package cn.abelib.datastructure.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+
+/**
+ * @author abel
+ * @date 2018/5/1
+ */
+public class LinkedHashMapTest {
+
+    @Test
+    public void insertionOrderTest() {
+        LinkedHashMap<Integer, String> map = new LinkedHashMap<>();
+        for (int i = 100; i > 0; i--) {
+            map.put(i, "v" + i);
+        }
+        map.put(50, "new");
+        map.remove(100);
+        Iterator<Integer> iterator = map.iterator();
+        for (int i = 99; i > 0; i--) {
+            Assert.assertEquals(Integer.valueOf(i), iterator.next());
+        }
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertEquals("new", map.get(50));
+        Assert.assertEquals(Integer.valueOf(99), map.eldestKey());
+    }
+
+    @Test
+    public void accessOrderTest() {
+        LinkedHashMap<Integer, Integer> map = new LinkedHashMap<>(16, true);
+        map.put(1, 1);
+        map.put(2, 2);
+        map.put(3, 3);
+        map.get(1);
+        map.set(2, 20);
+        Assert.assertEquals(Arrays.asList(3, 1, 2), map.listKeys());
+        Assert.assertEquals(Arrays.asList(3, 1, 20), map.listValues());
+        Assert.assertEquals(Integer.valueOf(3), map.eldestKey());
+    }
+
+    /**
+     * 访问顺序模式下 get 移动节点属于结构修改, 插入顺序模式下不是
+     */
+    @Test
+    public void accessModCountTest() {
+        LinkedHashMap<Integer, Integer> map = new LinkedHashMap<>(16, true);
+        map.put(1, 1);
+        map.put(2, 2);
+        Iterator<Integer> iterator = map.iterator();
+        Assert.assertEquals(Integer.valueOf(1), iterator.next());
+        map.get(2);
+        Assert.assertEquals(Integer.valueOf(2), iterator.next());
+        map.get(1);
+        try {
+            iterator.next();
+            Assert.fail();
+        } catch (ConcurrentModificationException e) {
+            Assert.assertEquals(Arrays.asList(2, 1), map.listKeys());
+        }
+
+        LinkedHashMap<Integer, Integer> insertion = new LinkedHashMap<>();
+        insertion.put(1, 1);
+        insertion.put(2, 2);
+        iterator = insertion.iterator();
+        Assert.assertEquals(Integer.valueOf(1), iterator.next());
+        insertion.get(1);
+        Assert.assertEquals(Integer.valueOf(2), iterator.next());
+        Assert.assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void expireTest() {
+        long[] now = {0};
+        LinkedHashMap<Integer, Integer> map = new LinkedHashMap<Integer, Integer>() {
+            @Override
+            protected long currentTimeMillis() {
+                return now[0];
+            }
+        };
+        for (int i = 0; i < 10; i++) {
+            map.put(i, i, i % 2 == 0 ? 10 : 100);
+        }
+        now[0] = 50;
+        Assert.assertEquals(Arrays.asList(1, 3, 5, 7, 9), map.listKeys());
+        Iterator<Integer> iterator = map.iterator();
+        for (int i = 1; i < 10; i += 2) {
+            Assert.assertEquals(Integer.valueOf(i), iterator.next());
+        }
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertEquals(5, map.activeExpireCycle(10));
+        Assert.assertEquals(5, map.size());
+        Assert.assertEquals(Integer.valueOf(1), map.eldestKey());
+    }
+}
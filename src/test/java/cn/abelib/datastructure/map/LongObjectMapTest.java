@@ -0,0 +1,48 @@
+package cn.abelib.datastructure.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ */
+public class LongObjectMapTest {
+
+    @Test
+    public void mapContractTest() {
+        Map<Long, String> map = new LongObjectMap<>();
+        map.put(0L, "zero");
+        map.put(1L << 40, "big");
+        Assert.assertEquals(2, map.size());
+        Assert.assertEquals("zero", map.get(0L));
+        Assert.assertEquals("big", map.get(1L << 40));
+        map.set(0L, "none");
+        Assert.assertEquals("none", map.remove(0L));
+        Assert.assertFalse(map.contains(0L));
+        Assert.assertEquals(1, map.size());
+    }
+
+    @Test
+    public void randomTest() {
+        LongObjectMap<Long> map = new LongObjectMap<>(0, 0.9F);
+        java.util.HashMap<Long, Long> expected = new java.util.HashMap<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 200000; i++) {
+            long key = random.nextInt(3000) * 0x100000000L;
+            if (random.nextBoolean()) {
+                Assert.assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                Long value = key;
+                map.put(key, value);
+                expected.put(key, value);
+            }
+            Assert.assertEquals(expected.size(), map.size());
+        }
+        for (long key : expected.keySet()) {
+            Assert.assertEquals(expected.get(key), map.get(key));
+        }
+    }
+}
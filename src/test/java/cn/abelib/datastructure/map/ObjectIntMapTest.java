@@ -0,0 +1,49 @@
+package cn.abelib.datastructure.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ */
+public class ObjectIntMapTest {
+
+    @Test
+    public void countTest() {
+        ObjectIntMap<String> counter = new ObjectIntMap<>();
+        String[] words = "a b c a b a".split(" ");
+        for (String word : words) {
+            counter.addTo(word, 1);
+        }
+        Assert.assertEquals(3, counter.size());
+        Assert.assertEquals(3, counter.get("a"));
+        Assert.assertEquals(2, counter.get("b"));
+        Assert.assertEquals(1, counter.remove("c"));
+        Assert.assertFalse(counter.contains("c"));
+    }
+
+    @Test
+    public void randomTest() {
+        ObjectIntMap<String> map = new ObjectIntMap<>();
+        java.util.HashMap<String, Integer> expected = new java.util.HashMap<>();
+        Random random = new Random(13);
+        for (int i = 0; i < 100000; i++) {
+            String key = "key" + random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                Integer old = expected.remove(key);
+                Assert.assertEquals(old == null ? 0 : old, map.remove(key));
+            } else {
+                int value = random.nextInt();
+                map.put(key, value);
+                expected.put(key, value);
+            }
+            Assert.assertEquals(expected.size(), map.size());
+        }
+        for (String key : expected.keySet()) {
+            Assert.assertEquals(expected.get(key).intValue(), map.get(key));
+        }
+    }
+}
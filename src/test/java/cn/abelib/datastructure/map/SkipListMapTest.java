@@ -0,0 +1,134 @@
+package cn.abelib.datastructure.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author abel
+ * @date 2018/1/24
+ */
+public class SkipListMapTest {
+
+    @Test
+    public void basicTest() {
+        SkipListMap<Integer, String> map = new SkipListMap<>();
+        for (int i = 100; i > 0; i -= 2) {
+            Assert.assertTrue(map.put(i, "v" + i));
+        }
+        Assert.assertFalse(map.put(10, "x"));
+        Assert.assertEquals("x", map.get(10));
+        Assert.assertEquals(50, map.size());
+        map.set(11, "y");
+        Assert.assertFalse(map.contains(11));
+        Assert.assertEquals(Integer.valueOf(2), map.firstKey());
+        Assert.assertEquals(Integer.valueOf(100), map.lastKey());
+        Assert.assertEquals(Integer.valueOf(10), map.floorKey(11));
+        Assert.assertEquals(Integer.valueOf(12), map.ceilingKey(11));
+        Assert.assertEquals(Integer.valueOf(8), map.lowerKey(10));
+        Assert.assertEquals(Integer.valueOf(12), map.higherKey(10));
+        Assert.assertNull(map.lowerKey(2));
+        Assert.assertNull(map.higherKey(100));
+        Assert.assertEquals("x", map.remove(10));
+        Assert.assertNull(map.remove(10));
+        Assert.assertEquals(Integer.valueOf(8), map.floorKey(11));
+
+        Iterator<Integer> iterator = map.iterator();
+        int prev = 0;
+        while (iterator.hasNext()) {
+            int key = iterator.next();
+            Assert.assertTrue(key > prev);
+            prev = key;
+            if (key % 4 == 0) {
+                iterator.remove();
+            }
+        }
+        Assert.assertEquals(24, map.size());
+    }
+
+    @Test
+    public void comparatorTest() {
+        SkipListMap<String, Integer> map = new SkipListMap<>(Comparator.reverseOrder());
+        for (String s : Arrays.asList("b", "d", "a", "c")) {
+            map.put(s, 1);
+        }
+        List<String> keys = new ArrayList<>();
+        map.forEach((key, value) -> keys.add(key));
+        Assert.assertEquals(Arrays.asList("d", "c", "b", "a"), keys);
+    }
+
+    @Test
+    public void subMapTest() {
+        SkipListMap<Integer, Integer> map = new SkipListMap<>();
+        for (int i = 0; i < 100; i++) {
+            map.put(i, i);
+        }
+        SkipListMap.SubMap<Integer, Integer> sub = map.subMap(10, 20);
+        Assert.assertEquals(10, sub.size());
+        Assert.assertEquals(Integer.valueOf(10), sub.firstKey());
+        Assert.assertEquals(Integer.valueOf(19), sub.lastKey());
+        Assert.assertNull(sub.get(20));
+        sub.remove(15);
+        Assert.assertFalse(map.contains(15));
+        Assert.assertEquals(9, sub.size());
+        SkipListMap.SubMap<Integer, Integer> open = map.subMap(10, false, 20, true);
+        List<Integer> keys = new ArrayList<>();
+        open.forEach((key, value) -> keys.add(key));
+        Assert.assertEquals(Arrays.asList(11, 12, 13, 14, 16, 17, 18, 19, 20), keys);
+        Assert.assertEquals(89, map.tailMap(10, true).size());
+        Assert.assertEquals(Integer.valueOf(99), map.tailMap(10, true).lastKey());
+        Assert.assertEquals(10, map.headMap(10, false).size());
+        try {
+            sub.put(30, 30);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void concurrentTest() throws InterruptedException {
+        final int threads = 8;
+        final int perThread = 20000;
+        final SkipListMap<Integer, Integer> map = new SkipListMap<>();
+        final AtomicInteger errors = new AtomicInteger();
+        Runnable[] tasks = new Runnable[threads];
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            tasks[t] = () -> {
+                // 各线程的 key 交错分布，插入和删除都发生在相邻的位置
+                for (int i = 0; i < perThread; i++) {
+                    int key = i * threads + offset;
+                    map.put(key, key);
+                    if (!Integer.valueOf(key).equals(map.get(key))) {
+                        errors.incrementAndGet();
+                    }
+                }
+                for (int i = 0; i < perThread; i += 2) {
+                    int key = i * threads + offset;
+                    if (!Integer.valueOf(key).equals(map.remove(key))) {
+                        errors.incrementAndGet();
+                    }
+                }
+            };
+        }
+        Threads.runAll(tasks);
+        Assert.assertEquals(0, errors.get());
+        Assert.assertEquals(threads * perThread / 2, map.size());
+        int prev = -1;
+        int count = 0;
+        for (int key : map) {
+            Assert.assertTrue(key > prev);
+            Assert.assertEquals(1, (key / threads) % 2);
+            prev = key;
+            count++;
+        }
+        Assert.assertEquals(threads * perThread / 2, count);
+    }
+}
@@ -0,0 +1,28 @@
+package cn.abelib.datastructure.map;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ * 并发测试和基准测试共用: 每个任务一个线程, 同时启动并等待全部结束
+ */
+final class Threads {
+
+    private Threads() {
+    }
+
+    static void runAll(Runnable[] tasks) throws InterruptedException {
+        List<Thread> list = new ArrayList<>();
+        for (Runnable task : tasks) {
+            list.add(new Thread(task));
+        }
+        for (Thread thread : list) {
+            thread.start();
+        }
+        for (Thread thread : list) {
+            thread.join();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package cn.abelib.datastructure.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ */
+public class TimingWheelTest {
+
+    @Test
+    public void orderTest() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(0);
+        long[] deadlines = {5, 63, 64, 65, 4095, 4096, 4097, 1L << 30, (1L << 40) + 7, 1};
+        for (int i = 0; i < deadlines.length; i++) {
+            wheel.schedule(new TimingWheel.Timer<>(i), deadlines[i]);
+        }
+        Assert.assertNull(wheel.poll(0));
+        TimingWheel.Timer<Integer> timer = wheel.poll(1);
+        Assert.assertEquals(Integer.valueOf(9), timer.item());
+        Assert.assertFalse(timer.isScheduled());
+        Assert.assertNull(wheel.poll(4));
+        List<Long> fired = new ArrayList<>();
+        while ((timer = wheel.poll(Long.MAX_VALUE - 1)) != null) {
+            Assert.assertTrue(timer.deadline() <= wheel.currentTime());
+            fired.add(timer.deadline());
+        }
+        Assert.assertEquals(9, fired.size());
+        for (int i = 1; i < fired.size(); i++) {
+            Assert.assertTrue(fired.get(i - 1) < fired.get(i));
+        }
+        Assert.assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    public void randomTest() {
+        Random random = new Random(7);
+        long start = 1500000000000L;
+        TimingWheel<Integer> wheel = new TimingWheel<>(start);
+        List<TimingWheel.Timer<Integer>> timers = new ArrayList<>();
+        int n = 20000;
+        for (int i = 0; i < n; i++) {
+            TimingWheel.Timer<Integer> timer = new TimingWheel.Timer<>(i);
+            wheel.schedule(timer, start + random.nextInt(1 << 24));
+            timers.add(timer);
+        }
+        int cancelled = 0;
+        for (int i = 0; i < n; i += 3) {
+            Assert.assertTrue(wheel.cancel(timers.get(i)));
+            cancelled++;
+        }
+        Assert.assertEquals(n - cancelled, wheel.size());
+
+        long now = start;
+        int fired = 0;
+        while (!wheel.isEmpty()) {
+            now += random.nextInt(100000);
+            TimingWheel.Timer<Integer> timer;
+            while ((timer = wheel.poll(now)) != null) {
+                Assert.assertTrue(timer.deadline() <= now);
+                Assert.assertTrue(timer.item() % 3 != 0);
+                fired++;
+            }
+            // poll 结束后剩下的定时器都没有到期
+            for (TimingWheel.Timer<Integer> t : timers) {
+                if (t.isScheduled()) {
+                    Assert.assertTrue(t.deadline() > now);
+                }
+            }
+            if (fired > n / 2) {
+                break;
+            }
+        }
+        for (TimingWheel.Timer<Integer> t : timers) {
+            if (t.isScheduled()) {
+                wheel.schedule(t, now - 1);
+            }
+        }
+        while (wheel.poll(now) != null) {
+            fired++;
+        }
+        Assert.assertEquals(n - cancelled, fired);
+    }
+}
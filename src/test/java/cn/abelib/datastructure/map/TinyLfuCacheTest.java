@@ -0,0 +1,161 @@
+package cn.abelib.datastructure.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author abel-huang
+ * @date 18/3/8
+ */
+public class TinyLfuCacheTest {
+
+    @Test
+    public void sketchTest() {
+        FrequencySketch<Integer> sketch = new FrequencySketch<>(512);
+        for (int i = 0; i < 20; i++) {
+            sketch.increment(1);
+        }
+        sketch.increment(2);
+        Assert.assertEquals(15, sketch.frequency(1));
+        Assert.assertTrue(sketch.frequency(2) >= 1);
+        Assert.assertTrue(sketch.frequency(3) <= 1);
+        sketch.reset();
+        Assert.assertEquals(7, sketch.frequency(1));
+        for (int i = 0; i < sketch.getSampleSize(); i++) {
+            sketch.increment(1000 + i);
+        }
+        Assert.assertTrue(sketch.size() < sketch.getSampleSize());
+        Assert.assertTrue(sketch.frequency(1) < 7);
+    }
+
+    @Test
+    public void evictionTest() {
+        TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(100);
+        List<Integer> evicted = new ArrayList<>();
+        cache.setEvictionListener((key, value) -> evicted.add(key));
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+        Assert.assertEquals(100, cache.size());
+        Assert.assertEquals(100, cache.weightedSize());
+        Assert.assertEquals(900, evicted.size());
+        cache.remove(999);
+        Assert.assertEquals(99, cache.weightedSize());
+    }
+
+    @Test
+    public void scanResistanceTest() {
+        TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(100);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                if (cache.get(i) == null) {
+                    cache.put(i, i);
+                }
+            }
+        }
+        // 扫描期间热点 key 仍然被访问，但间隔长于 LRU 能保留的时间
+        for (int i = 1000; i < 20000; i++) {
+            if (cache.get(i) == null) {
+                cache.put(i, i);
+            }
+            if (i % 4 == 0) {
+                int hot = (i / 4) % 50;
+                if (cache.get(hot) == null) {
+                    cache.put(hot, hot);
+                }
+            }
+        }
+        int hot = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.contains(i)) {
+                hot++;
+            }
+        }
+        Assert.assertEquals(50, hot);
+        Assert.assertEquals(100, cache.size());
+    }
+
+    @Test
+    public void weightTest() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, (key, value) -> value.length(), null);
+        cache.put("a", "1234");
+        cache.put("b", "1234");
+        Assert.assertEquals(8, cache.weightedSize());
+        cache.put("a", "1234567");
+        Assert.assertTrue(cache.weightedSize() <= 10);
+        cache.put("c", "12345678901");
+        Assert.assertFalse(cache.contains("c"));
+        Assert.assertTrue(cache.weightedSize() <= 10);
+    }
+
+    /**
+     * 按字节限制容量时 sketch 按条目数而不是字节数分配, 并且仍然会减半
+     */
+    @Test
+    public void weightedSketchTest() {
+        TinyLfuCache<Integer, byte[]> cache = new TinyLfuCache<>(64L << 20, (key, value) -> value.length, null);
+        for (int i = 0; i < 2000; i++) {
+            cache.put(i, new byte[1024]);
+        }
+        Assert.assertEquals(2000, cache.size());
+        FrequencySketch<Integer> sketch = cache.sketch();
+        Assert.assertEquals(2048, sketch.tableLength());
+        for (int i = 0; i < 15; i++) {
+            cache.get(0);
+        }
+        Assert.assertEquals(15, sketch.frequency(0));
+        int sampleSize = sketch.getSampleSize();
+        for (int i = 0; i < sampleSize; i++) {
+            cache.get(10000 + i);
+        }
+        Assert.assertTrue(sketch.size() < sampleSize);
+        Assert.assertTrue(sketch.frequency(0) < 15);
+        Assert.assertEquals(2048, sketch.tableLength());
+    }
+
+    @Test
+    public void expiryTest() {
+        long[] now = {0};
+        TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<Integer, Integer>(100, null, Expiry.afterWrite(1000)) {
+            @Override
+            protected long currentTimeMillis() {
+                return now[0];
+            }
+        };
+        cache.put(1, 1);
+        cache.put(2, 2);
+        now[0] = 500;
+        cache.put(2, 2);
+        Assert.assertEquals(Integer.valueOf(1), cache.get(1));
+        now[0] = 1000;
+        Assert.assertNull(cache.get(1));
+        Assert.assertFalse(cache.contains(1));
+        Assert.assertTrue(cache.contains(2));
+        Assert.assertEquals(1, cache.size());
+        now[0] = 1500;
+        cache.cleanUp();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.weightedSize());
+        Assert.assertEquals(1, cache.hitCount());
+        Assert.assertEquals(1, cache.missCount());
+    }
+
+    /**
+     * Zipf 分布下 W-TinyLFU 的命中率高于 LRU, 插入扫描后同样如此
+     */
+    @Test
+    public void hitRatioTest() {
+        int[] trace = CacheSimulator.zipfTrace(42, 10000, 0.9, 20000, 0, 0);
+        double tinyLfu = CacheSimulator.simulate(new TinyLfuCache<>(100), trace);
+        double lru = CacheSimulator.simulate(new BoundedCache<>(100, EvictionPolicy.LRU), trace);
+        Assert.assertTrue(tinyLfu > lru);
+
+        int[] scanTrace = CacheSimulator.zipfTrace(42, 10000, 0.9, 20000, 500, 200);
+        tinyLfu = CacheSimulator.simulate(new TinyLfuCache<>(100), scanTrace);
+        lru = CacheSimulator.simulate(new BoundedCache<>(100, EvictionPolicy.LRU), scanTrace);
+        Assert.assertTrue(tinyLfu > lru);
+    }
+}
@@ -0,0 +1,118 @@
+package cn.abelib.datastructure.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @Author: abel.huang
+ * @Date: 2019-02-01 01:38
+ */
+public class TreeMapTest {
+
+    @Test
+    public void basicTest() {
+        TreeMap<Integer, String> map = new TreeMap<>();
+        Assert.assertTrue(map.isEmpty());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(map.put(i * 2, "v" + i));
+        }
+        Assert.assertFalse(map.put(20, "x"));
+        Assert.assertEquals("x", map.get(20));
+        map.set(20, "y");
+        map.set(21, "z");
+        Assert.assertEquals("y", map.get(20));
+        Assert.assertFalse(map.contains(21));
+        Assert.assertEquals(100, map.size());
+        Assert.assertEquals(Integer.valueOf(0), map.min());
+        Assert.assertEquals(Integer.valueOf(198), map.max());
+        Assert.assertEquals(Integer.valueOf(20), map.floor(21));
+        Assert.assertEquals(Integer.valueOf(22), map.ceiling(21));
+        Assert.assertNull(map.floor(-1));
+        Assert.assertNull(map.ceiling(199));
+        Assert.assertEquals(10, map.rank(20));
+        Assert.assertEquals(11, map.rank(21));
+        Assert.assertEquals(Integer.valueOf(20), map.select(10));
+        Assert.assertEquals(6, map.size(10, 21));
+        Assert.assertEquals(0, map.size(21, 10));
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 10; i <= 20; i += 2) {
+            keys.add(i);
+        }
+        Assert.assertEquals(keys, map.keys(9, 21));
+        map.delMin();
+        map.delMax();
+        Assert.assertEquals(Integer.valueOf(2), map.min());
+        Assert.assertEquals(Integer.valueOf(196), map.max());
+        Assert.assertEquals("y", map.remove(20));
+        Assert.assertNull(map.remove(20));
+        Assert.assertEquals(97, map.size());
+    }
+
+    @Test
+    public void randomTest() {
+        TreeMap<Integer, Integer> map = new TreeMap<>();
+        java.util.TreeMap<Integer, Integer> expected = new java.util.TreeMap<>();
+        Random random = new Random(21);
+        for (int i = 0; i < 50000; i++) {
+            int key = random.nextInt(3000);
+            if (random.nextInt(3) == 0) {
+                Assert.assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                Assert.assertEquals(expected.put(key, i) == null, map.put(key, i));
+            }
+            Assert.assertEquals(expected.size(), map.size());
+        }
+        Assert.assertEquals(new ArrayList<>(expected.keySet()), map.keys());
+        int i = 0;
+        for (Integer key : expected.keySet()) {
+            Assert.assertEquals(expected.get(key), map.get(key));
+            Assert.assertEquals(i, map.rank(key));
+            Assert.assertEquals(key, map.select(i));
+            i++;
+        }
+        for (int key = -5; key < 3005; key += 7) {
+            Assert.assertEquals(expected.floorKey(key), map.floor(key));
+            Assert.assertEquals(expected.ceilingKey(key), map.ceiling(key));
+            Assert.assertEquals(expected.headMap(key).size(), map.rank(key));
+            Assert.assertEquals(expected.subMap(key, true, key + 100, true).size(), map.size(key, key + 100));
+        }
+        while (!expected.isEmpty()) {
+            Assert.assertEquals(expected.firstKey(), map.min());
+            Assert.assertEquals(expected.lastKey(), map.max());
+            if (random.nextBoolean()) {
+                expected.pollFirstEntry();
+                map.delMin();
+            } else {
+                expected.pollLastEntry();
+                map.delMax();
+            }
+        }
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertEquals(0, map.height());
+    }
+
+    /**
+     * 有序插入和删除后高度仍不超过 2lg(n + 1)
+     */
+    @Test
+    public void sortedTest() {
+        TreeMap<Integer, Integer> map = new TreeMap<>();
+        int n = 100000;
+        for (int i = 0; i < n; i++) {
+            map.put(i, i);
+        }
+        int height = map.height();
+        Assert.assertTrue("height " + height, height <= 2 * (32 - Integer.numberOfLeadingZeros(n)));
+        for (int i = 0; i < n; i += 2) {
+            Assert.assertEquals(Integer.valueOf(i), map.remove(i));
+        }
+        Assert.assertEquals(n / 2, map.size());
+        height = map.height();
+        Assert.assertTrue("height " + height, height <= 2 * (32 - Integer.numberOfLeadingZeros(n / 2)));
+        Assert.assertEquals(Integer.valueOf(n / 2 + 1), map.select(n / 4));
+    }
+}
@@ -0,0 +1,47 @@
+package cn.abelib.datastructure.tree.avl;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @Author: abel.huang
+ * @Date: 2019-02-01 01:36
+ * 不属于单元测试, 手动运行 main 查看耗时
+ */
+public class AvlSearchTreeBenchmark {
+
+    private static AvlSearchTree<Integer, Integer> randomTree(Random random, int n) {
+        AvlSearchTree<Integer, Integer> tree = new AvlSearchTree<>();
+        for (int i = 0; i < n; i++) {
+            tree.put(random.nextInt(Integer.MAX_VALUE), i);
+        }
+        return tree;
+    }
+
+    /**
+     * 合并两棵大树, 和逐个插入比较
+     */
+    public static void main(String[] args) {
+        int n = 300000;
+        for (int round = 0; round < 3; round++) {
+            Random random = new Random(round);
+            AvlSearchTree<Integer, Integer> a = randomTree(random, n);
+            AvlSearchTree<Integer, Integer> b = randomTree(random, n);
+            AvlSearchTree<Integer, Integer> c = randomTree(new Random(round), n);
+            List<Integer> keys = b.keys();
+
+            long begin = System.nanoTime();
+            for (Integer key : keys) {
+                c.put(key, key);
+            }
+            long insertTime = System.nanoTime() - begin;
+            begin = System.nanoTime();
+            a.union(b);
+            long unionTime = System.nanoTime() - begin;
+            if (c.size() != a.size()) {
+                throw new IllegalStateException("union size " + a.size() + ", expected " + c.size());
+            }
+            System.out.println("merge " + n + " keys ms: put " + insertTime / 1000000 + ", union " + unionTime / 1000000);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package cn.abelib.datastructure.tree.avl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * @Author: abel.huang
+ * @Date: 2019-02-01 01:36
+ */
+public class AvlSearchTreeTest {
+
+    /**
+     * AVL 树高度上界 1.44lg(n + 2)
+     */
+    private static int maxHeight(int n) {
+        return (int) (1.4405 * Math.log(n + 2) / Math.log(2));
+    }
+
+    @Test
+    public void putTest() {
+        AvlSearchTree<Integer, String> tree = new AvlSearchTree<>();
+        Assert.assertTrue(tree.isEmpty());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertNull(tree.put(i * 2, "v" + i));
+        }
+        Assert.assertEquals("v10", tree.put(20, "x"));
+        Assert.assertEquals(100, tree.size());
+        Assert.assertEquals("x", tree.get(20));
+        Assert.assertNull(tree.get(21));
+        Assert.assertEquals(Integer.valueOf(0), tree.min());
+        Assert.assertEquals(Integer.valueOf(198), tree.max());
+        Assert.assertEquals(Integer.valueOf(20), tree.floor(21));
+        Assert.assertEquals(Integer.valueOf(22), tree.ceiling(21));
+        Assert.assertNull(tree.floor(-1));
+        Assert.assertNull(tree.ceiling(199));
+        Assert.assertEquals("x", tree.remove(20));
+        Assert.assertNull(tree.remove(20));
+        Assert.assertEquals(99, tree.size());
+    }
+
+    @Test
+    public void randomTest() {
+        AvlSearchTree<Integer, Integer> tree = new AvlSearchTree<>();
+        TreeMap<Integer, Integer> map = new TreeMap<>();
+        Random random = new Random(22);
+        for (int i = 0; i < 50000; i++) {
+            int key = random.nextInt(3000);
+            if (random.nextInt(3) == 0) {
+                Assert.assertEquals(map.remove(key), tree.remove(key));
+            } else {
+                Assert.assertEquals(map.put(key, i), tree.put(key, i));
+            }
+            Assert.assertEquals(map.size(), tree.size());
+        }
+        Assert.assertTrue(tree.toString(), tree.height() <= maxHeight(tree.size()));
+        Assert.assertEquals(new ArrayList<>(map.keySet()), tree.keys());
+        for (int key = -5; key < 3005; key += 7) {
+            Assert.assertEquals(map.get(key), tree.get(key));
+            Assert.assertEquals(map.floorKey(key), tree.floor(key));
+            Assert.assertEquals(map.ceilingKey(key), tree.ceiling(key));
+        }
+        while (!map.isEmpty()) {
+            Integer key = random.nextBoolean() ? map.firstKey() : map.lastKey();
+            Assert.assertEquals(map.remove(key), tree.remove(key));
+        }
+        Assert.assertTrue(tree.isEmpty());
+        Assert.assertEquals(0, tree.height());
+    }
+
+    @Test
+    public void sortedTest() {
+        AvlSearchTree<Integer, Integer> tree = new AvlSearchTree<>();
+        int n = 100000;
+        for (int i = 0; i < n; i++) {
+            tree.put(i, i);
+        }
+        Assert.assertTrue(tree.toString(), tree.height() <= maxHeight(n));
+        for (int i = 0; i < n; i += 2) {
+            Assert.assertEquals(Integer.valueOf(i), tree.remove(i));
+        }
+        Assert.assertEquals(n / 2, tree.size());
+        Assert.assertTrue(tree.toString(), tree.height() <= maxHeight(n / 2));
+    }
+
+    private static AvlSearchTree<Integer, Integer> randomTree(Random random, int n, int bound, Map<Integer, Integer> expected) {
+        AvlSearchTree<Integer, Integer> tree = new AvlSearchTree<>();
+        for (int i = 0; i < n; i++) {
+            int key = random.nextInt(bound);
+            int value = random.nextInt();
+            tree.put(key, value);
+            expected.put(key, value);
+        }
+        return tree;
+    }
+
+    private static void check(AvlSearchTree<Integer, Integer> tree, TreeMap<Integer, Integer> expected) {
+        Assert.assertEquals(expected.size(), tree.size());
+        Assert.assertTrue(tree.toString(), tree.height() <= maxHeight(tree.size()));
+        Assert.assertEquals(new ArrayList<>(expected.keySet()), tree.keys());
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            Assert.assertEquals(entry.getValue(), tree.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void setOperationTest() {
+        Random random = new Random(23);
+        int[][] sizes = {{0, 0}, {0, 50}, {50, 0}, {1, 1000}, {1000, 1}, {300, 5000}, {100000, 100000}, {200000, 3000}};
+        for (int[] size : sizes) {
+            for (int op = 0; op < 3; op++) {
+                Map<Integer, Integer> first = new HashMap<>();
+                Map<Integer, Integer> second = new HashMap<>();
+                int bound = Math.max(size[0], size[1]) * 2 + 1;
+                AvlSearchTree<Integer, Integer> a = randomTree(random, size[0], bound, first);
+                AvlSearchTree<Integer, Integer> b = randomTree(random, size[1], bound, second);
+                TreeMap<Integer, Integer> expected = new TreeMap<>(first);
+                if (op == 0) {
+                    expected.putAll(second);
+                    a.union(b);
+                } else if (op == 1) {
+                    expected.keySet().retainAll(second.keySet());
+                    a.intersect(b);
+                } else {
+                    expected.keySet().removeAll(second.keySet());
+                    a.difference(b);
+                }
+                check(a, expected);
+                Assert.assertTrue(b.isEmpty());
+                // 结果仍是合法的 AVL 树, 可以继续修改
+                a.put(-1, 0);
+                expected.put(-1, 0);
+                Assert.assertEquals(expected.remove(expected.lastKey()), a.remove(a.max()));
+                check(a, expected);
+            }
+        }
+        AvlSearchTree<Integer, Integer> tree = randomTree(random, 100, 1000, new HashMap<>());
+        tree.union(tree);
+        Assert.assertEquals(new TreeSet<>(tree.keys()).size(), tree.size());
+        tree.difference(tree);
+        Assert.assertTrue(tree.isEmpty());
+    }
+}
@@ -1,21 +1,19 @@
 package cn.abelib.datastructure.tree.bpt;
 
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * @author abel.huang
  * @date 2020/10/9 14:42
  */
 public class BalancePlusTree2Test {
-    private BalancePlusTree balancePlusTree;
+    private BalancePlusTree<String, Object> balancePlusTree;
 
     @Before
     public void init() {
-        balancePlusTree = new BalancePlusTree(5);
+        balancePlusTree = new BalancePlusTree<>(5);
     }
 
     @Test
@@ -41,5 +39,7 @@ public class BalancePlusTree2Test {
         System.out.println(balancePlusTree.toList());
         balancePlusTree.delete("c");
         System.out.println(balancePlusTree.toList());
+        Assert.assertEquals(11, balancePlusTree.size());
+        Assert.assertFalse(balancePlusTree.contains("g"));
     }
 }
\ No newline at end of file
@@ -1,21 +1,31 @@
 package cn.abelib.datastructure.tree.bpt;
 
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 /**
  * @author abel.huang
  * @date 2020/10/9 14:42
  */
 public class BalancePlusTreeTest {
-    private BalancePlusTree balancePlusTree;
+    private BalancePlusTree<String, String> balancePlusTree;
 
     @Before
     public void init() {
-        balancePlusTree = new BalancePlusTree(5);
+        balancePlusTree = new BalancePlusTree<>(5);
 
         balancePlusTree.insert("a", "word");
         balancePlusTree.insert("c", "tree");
@@ -28,109 +38,235 @@ public class BalancePlusTreeTest {
     }
 
     @Test
-    public void binarySearchInternalNodeTest() {
-        List<KeyValue> keyValues = new ArrayList<>();
-        keyValues.add(new KeyValue("a", "word"));
-        keyValues.add(new KeyValue("c", "tree"));
-        keyValues.add(new KeyValue("d", "balance"));
-        keyValues.add(new KeyValue("e", "ping"));
-        keyValues.add(new KeyValue("f", "pong"));
-        keyValues.add(new KeyValue("h", "hard"));
-        System.out.println(balancePlusTree.binarySearchInternalNode(new KeyValue("f", "hello"), keyValues));
-        System.out.println(balancePlusTree.binarySearchInternalNode(new KeyValue("b", "hello"), keyValues));
-        System.out.println(balancePlusTree.binarySearchInternalNode(new KeyValue("Z", "hello"), keyValues));
-        System.out.println(balancePlusTree.binarySearchInternalNode(new KeyValue("a", "hello"), keyValues));
-    }
-
-    @Test
-    public void binarySearchInternalNode2Test() {
-        List<KeyValue> keyValues = new ArrayList<>();
-        keyValues.add(new KeyValue("a", "word"));
-        keyValues.add(new KeyValue("c", "tree"));
-        keyValues.add(new KeyValue("d", "balance"));
-        keyValues.add(new KeyValue("e", "ping"));
-        keyValues.add(new KeyValue("f", "pong"));
-        keyValues.add(new KeyValue("h", "hard"));
-        System.out.println(balancePlusTree.binarySearchInternalNode2(new KeyValue("f", "hello"), keyValues));
-        System.out.println(balancePlusTree.binarySearchInternalNode2(new KeyValue("b", "hello"), keyValues));
-        System.out.println(balancePlusTree.binarySearchInternalNode2(new KeyValue("a", "hello"), keyValues));
-        System.out.println(balancePlusTree.binarySearchInternalNode2(new KeyValue("i", "hello"), keyValues));
-    }
-
-    @Test
-    public void subListTest() {
-        List<KeyValue> keyValues = new ArrayList<>();
-        keyValues.add(new KeyValue("a", "word"));
-        keyValues.add(new KeyValue("c", "tree"));
-        keyValues.add(new KeyValue("d", "balance"));
-        keyValues.add(new KeyValue("b", "hello"));
-        keyValues.add(new KeyValue("e", "plus"));
-
-        System.out.println(keyValues.subList(0, 2));
+    public void indexOfTest() {
+        TreeNode<String, String> node = balancePlusTree.getRoot();
+        Assert.assertFalse(node.isLeaf());
+        // 根节点的分隔 key 是 c、e
+        Assert.assertEquals(1, balancePlusTree.indexOf(node, "e"));
+        Assert.assertEquals(-2, balancePlusTree.indexOf(node, "d"));
+        Assert.assertEquals(-1, balancePlusTree.indexOf(node, "a"));
+        Assert.assertEquals(-3, balancePlusTree.indexOf(node, "z"));
     }
 
     @Test
     public void insertTest() {
         System.out.println(balancePlusTree.toList());
+        Assert.assertEquals(8, balancePlusTree.size());
+        Assert.assertEquals(2, balancePlusTree.height());
+        Assert.assertFalse(balancePlusTree.insert("a", "index"));
+        Assert.assertEquals(8, balancePlusTree.size());
     }
 
     @Test
     public void searchTest() {
-        System.out.println(balancePlusTree.search("b"));
+        Assert.assertEquals("hello", balancePlusTree.search("b"));
+        Assert.assertNull(balancePlusTree.search("z"));
+        Assert.assertTrue(balancePlusTree.contains("h"));
     }
 
     @Test
     public void scanTest() {
-        System.out.println(balancePlusTree.scan("b", "d"));
+        List<KeyValue<String, String>> list = balancePlusTree.scan("b", "d");
+        System.out.println(list);
+        Assert.assertEquals(3, list.size());
+        Assert.assertEquals("b", list.get(0).getKey());
+        Assert.assertEquals("d", list.get(2).getKey());
+        Assert.assertEquals(8, balancePlusTree.scan("0", "z").size());
+        Assert.assertTrue(balancePlusTree.scan("d", "b").isEmpty());
     }
 
     @Test
     public void updateTest() {
-        System.out.println(balancePlusTree.toList());
-        balancePlusTree.update("a", "database");
-        System.out.println(balancePlusTree.toList());
-        balancePlusTree.insert("a", "index");
-        System.out.println(balancePlusTree.toList());
+        Assert.assertTrue(balancePlusTree.update("a", "database"));
+        Assert.assertEquals("database", balancePlusTree.search("a"));
+        Assert.assertFalse(balancePlusTree.update("z", "database"));
+        Assert.assertFalse(balancePlusTree.contains("z"));
         balancePlusTree.insert("a", "binary");
-        System.out.println(balancePlusTree.toList());
+        Assert.assertEquals("binary", balancePlusTree.search("a"));
     }
 
     @Test
     public void borrowTest() {
-        TreeNode parent = new TreeNode();
-        parent.getKeyValues().add(new KeyValue("7"));
-        parent.getKeyValues().add(new KeyValue("10"));
+        // c、d 所在的叶节点只剩一个 key 时向右边的 e、f、g、h 借
+        Assert.assertTrue(balancePlusTree.delete("c"));
+        Assert.assertTrue(balancePlusTree.delete("d"));
+        Assert.assertEquals(2, balancePlusTree.height());
+        Assert.assertEquals("[a, b, e, f, g, h]", keys(balancePlusTree));
+        Assert.assertEquals("plus", balancePlusTree.search("e"));
+    }
 
-        TreeNode rightNode = new TreeNode();
-        rightNode.getKeyValues().add(new KeyValue("10"));
+    @Test
+    public void mergeTest() {
+        Assert.assertTrue(balancePlusTree.delete("h"));
+        Assert.assertTrue(balancePlusTree.delete("g"));
+        Assert.assertTrue(balancePlusTree.delete("f"));
+        Assert.assertTrue(balancePlusTree.delete("a"));
+        Assert.assertTrue(balancePlusTree.delete("b"));
+        Assert.assertEquals("[c, d, e]", keys(balancePlusTree));
+        Assert.assertEquals(1, balancePlusTree.height());
+        Assert.assertFalse(balancePlusTree.delete("b"));
+    }
 
-        TreeNode leftNode = new TreeNode();
-        leftNode.getKeyValues().add(new KeyValue("7"));
-        leftNode.getKeyValues().add(new KeyValue("8"));
-        leftNode.getKeyValues().add(new KeyValue("9"));
+    @Test
+    public void deleteTest() {
+        balancePlusTree.delete("d");
+        System.err.println(balancePlusTree.toList());
+        Assert.assertFalse(balancePlusTree.contains("d"));
+        Assert.assertEquals(7, balancePlusTree.size());
+    }
 
-        balancePlusTree.borrowFromLeft(parent, leftNode, rightNode, 0);
+    @Test
+    public void comparatorTest() {
+        BalancePlusTree<String, Integer> tree = new BalancePlusTree<>(4, Comparator.reverseOrder());
+        for (int i = 0; i < 10; i++) {
+            tree.insert(String.valueOf(i), i);
+        }
+        Assert.assertEquals("[9, 8, 7, 6, 5, 4, 3, 2, 1, 0]", keys(tree));
+        Assert.assertEquals(3, tree.scan("5", "3").size());
     }
 
     @Test
-    public void mergeTest() {
-        TreeNode parent = new TreeNode();
-        parent.getKeyValues().add(new KeyValue("7"));
-        parent.getKeyValues().add(new KeyValue("9"));
+    public void randomTest() {
+        for (int degree = 3; degree <= 8; degree++) {
+            BalancePlusTree<Integer, Integer> tree = new BalancePlusTree<>(degree);
+            TreeMap<Integer, Integer> expected = new TreeMap<>();
+            Random random = new Random(degree);
+            for (int i = 0; i < 5000; i++) {
+                int key = random.nextInt(500);
+                if (random.nextInt(3) == 0) {
+                    Assert.assertEquals(expected.remove(key) != null, tree.delete(key));
+                } else {
+                    Assert.assertEquals(expected.put(key, i) == null, tree.insert(key, i));
+                }
+            }
+            Assert.assertEquals(expected.size(), tree.size());
+            for (int key = 0; key < 500; key++) {
+                Assert.assertEquals(expected.get(key), tree.search(key));
+            }
+            List<KeyValue<Integer, Integer>> scan = tree.scan(100, 300);
+            Map<Integer, Integer> subMap = expected.subMap(100, true, 300, true);
+            Assert.assertEquals(subMap.size(), scan.size());
+            int i = 0;
+            for (Map.Entry<Integer, Integer> entry : subMap.entrySet()) {
+                Assert.assertEquals(entry.getKey(), scan.get(i).getKey());
+                Assert.assertEquals(entry.getValue(), scan.get(i++).getValue());
+            }
+            checkLinks(tree);
+            checkNodes(tree, tree.getRoot(), true);
+        }
+    }
 
+    @Test
+    public void bulkLoadTest() {
+        for (int degree = 3; degree <= 9; degree += 2) {
+            for (int n : new int[]{0, 1, 2, 7, 100, 5001}) {
+                for (double fillFactor : new double[]{0.5, 0.7, 1.0}) {
+                    List<KeyValue<Integer, Integer>> entries = new ArrayList<>();
+                    for (int i = 0; i < n; i++) {
+                        entries.add(new KeyValue<>(i * 2, i));
+                    }
+                    BalancePlusTree<Integer, Integer> tree = new BalancePlusTree<>(degree);
+                    tree.bulkLoad(entries.iterator(), fillFactor);
+                    Assert.assertEquals(n, tree.size());
+                    checkLinks(tree);
+                    checkNodes(tree, tree.getRoot(), true);
+                    for (int i = 0; i < n; i++) {
+                        Assert.assertEquals(Integer.valueOf(i), tree.search(i * 2));
+                        Assert.assertFalse(tree.contains(i * 2 + 1));
+                    }
+                    // 之后仍然可以正常插入删除
+                    for (int i = 0; i < n; i += 3) {
+                        Assert.assertTrue(tree.insert(i * 2 + 1, i));
+                        Assert.assertTrue(tree.delete(i * 2));
+                    }
+                    checkLinks(tree);
+                    checkNodes(tree, tree.getRoot(), true);
+                    Assert.assertEquals(n, tree.toList().size());
+                }
+            }
+        }
+    }
 
-        TreeNode rightNode = new TreeNode();
-        rightNode.getKeyValues().add(new KeyValue("8"));
+    @Test
+    public void bulkLoadFillTest() {
+        List<KeyValue<Integer, Integer>> entries = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            entries.add(new KeyValue<>(i, i));
+        }
+        BalancePlusTree<Integer, Integer> full = new BalancePlusTree<>(11);
+        full.bulkLoad(entries.iterator(), 1.0);
+        BalancePlusTree<Integer, Integer> sparse = new BalancePlusTree<>(11);
+        sparse.bulkLoad(entries.iterator(), 0.5);
+        Assert.assertEquals(10, full.firstLeaf().size);
+        Assert.assertEquals(5, sparse.firstLeaf().size);
+        Assert.assertEquals(3, full.height());
+        Assert.assertEquals(4, sparse.height());
+    }
 
-        TreeNode leftNode = new TreeNode();
-        leftNode.getKeyValues().add(new KeyValue("5"));
-        leftNode.getKeyValues().add(new KeyValue("6"));
+    @Test(expected = IllegalArgumentException.class)
+    public void bulkLoadUnsortedTest() {
+        List<KeyValue<String, String>> entries = new ArrayList<>();
+        entries.add(new KeyValue<>("b", "b"));
+        entries.add(new KeyValue<>("a", "a"));
+        new BalancePlusTree<String, String>(5).bulkLoad(entries.iterator(), 1.0);
+    }
 
-        parent.getChildren().add(leftNode);
-        parent.getChildren().add(rightNode);
-        balancePlusTree.mergeExternalNode(parent, leftNode, rightNode, 0);
+    @Test(expected = IllegalStateException.class)
+    public void bulkLoadNonEmptyTest() {
+        balancePlusTree.bulkLoad(new ArrayList<KeyValue<String, String>>().iterator(), 1.0);
     }
 
+    /**
+     * 检查节点 key 的个数和分隔 key 的范围
+     */
+    private static <K extends Comparable<K>, V> void checkNodes(BalancePlusTree<K, V> tree, TreeNode<K, V> node, boolean isRoot) {
+        int minKeys = (tree.getDegree() + 1) / 2 - 1;
+        Assert.assertTrue(node.size <= tree.getDegree() - 1);
+        if (!isRoot) {
+            Assert.assertTrue(node.size >= minKeys);
+        }
+        for (int i = 1; i < node.size; i++) {
+            Assert.assertTrue(node.key(i - 1).compareTo(node.key(i)) < 0);
+        }
+        if (node.isLeaf()) {
+            return;
+        }
+        for (int i = 0; i <= node.size; i++) {
+            TreeNode<K, V> child = node.children[i];
+            if (i > 0) {
+                Assert.assertTrue(node.key(i - 1).compareTo(child.key(0)) <= 0);
+            }
+            if (i < node.size) {
+                Assert.assertTrue(child.key(child.size - 1).compareTo(node.key(i)) < 0);
+            }
+            checkNodes(tree, child, false);
+        }
+    }
+
+    /**
+     * 叶节点的前驱后继指针需要一致
+     */
+    private static <K, V> void checkLinks(BalancePlusTree<K, V> tree) {
+        TreeNode<K, V> prev = null;
+        int count = 0;
+        for (TreeNode<K, V> leaf = tree.firstLeaf(); leaf != null; leaf = leaf.nextNode) {
+            Assert.assertSame(prev, leaf.prevNode);
+            count += leaf.size;
+            prev = leaf;
+        }
+        Assert.assertEquals(tree.size(), count);
+    }
+
+    private static <K, V> String keys(BalancePlusTree<K, V> tree) {
+        StringBuilder builder = new StringBuilder("[");
+        for (KeyValue<K, V> keyValue : tree.toList()) {
+            if (builder.length() > 1) {
+                builder.append(", ");
+            }
+            builder.append(keyValue.getKey());
+        }
+        return builder.append(']').toString();
+    }
 
     @Test
     public void ceilTest() {
@@ -138,9 +274,138 @@ public class BalancePlusTreeTest {
     }
 
     @Test
-    public void deleteTest() {
-        balancePlusTree.delete("d");
-        System.err.println(balancePlusTree.toList());
+    public void iteratorTest() {
+        BalancePlusTree<Integer, Integer> tree = new BalancePlusTree<>(4);
+        for (int i = 0; i < 1000; i += 2) {
+            tree.insert(i, i);
+        }
+        int expected = 0;
+        for (KeyValue<Integer, Integer> keyValue : tree) {
+            Assert.assertEquals(Integer.valueOf(expected), keyValue.getKey());
+            expected += 2;
+        }
+        Assert.assertEquals(1000, expected);
+
+        Iterator<KeyValue<Integer, Integer>> iterator = tree.iterator(101, 199);
+        for (int key = 102; key <= 198; key += 2) {
+            Assert.assertEquals(Integer.valueOf(key), iterator.next().getKey());
+        }
+        Assert.assertFalse(iterator.hasNext());
+
+        // offset 和 limit
+        List<KeyValue<Integer, Integer>> page = tree.scan(100, 900, 75, 10);
+        Assert.assertEquals(10, page.size());
+        Assert.assertEquals(Integer.valueOf(250), page.get(0).getKey());
+        Assert.assertEquals(Integer.valueOf(268), page.get(9).getKey());
+        Assert.assertEquals(2, tree.scan(100, 900, 399, 10).size());
+        Assert.assertTrue(tree.scan(100, 900, 401, 10).isEmpty());
+        Assert.assertTrue(tree.scan(100, 900, 0, 0).isEmpty());
+
+        iterator = tree.descendingIterator(101, 199);
+        for (int key = 198; key >= 102; key -= 2) {
+            Assert.assertEquals(Integer.valueOf(key), iterator.next().getKey());
+        }
+        Assert.assertFalse(iterator.hasNext());
+        iterator = tree.descendingIterator(0, 2000, 10, 3);
+        Assert.assertEquals(Integer.valueOf(978), iterator.next().getKey());
+        Assert.assertEquals(Integer.valueOf(976), iterator.next().getKey());
+        Assert.assertEquals(Integer.valueOf(974), iterator.next().getKey());
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertFalse(tree.descendingIterator(-10, -1).hasNext());
+        Assert.assertFalse(tree.iterator(5, 1).hasNext());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void spliteratorTest() {
+        BalancePlusTree<Integer, Integer> tree = new BalancePlusTree<>(4);
+        for (int i = 0; i < 5000; i++) {
+            tree.insert(i, i);
+        }
+        Assert.assertEquals(5000, StreamSupport.stream(tree.spliterator(), true).count());
+        Assert.assertEquals((long) 4999 * 5000 / 2,
+                StreamSupport.stream(tree.spliterator(), true).mapToLong(KeyValue::getKey).sum());
+        List<Integer> keys = StreamSupport.stream(tree.spliterator(1000, 3999), true)
+                .map(KeyValue::getKey).collect(Collectors.toList());
+        Assert.assertEquals(3000, keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            Assert.assertEquals(Integer.valueOf(1000 + i), keys.get(i));
+        }
+        // 手动划分，各部分连起来必须正好覆盖整个范围
+        List<Spliterator<KeyValue<Integer, Integer>>> parts = new ArrayList<>();
+        parts.add(tree.spliterator(10, 4000));
+        for (int round = 0; round < 4; round++) {
+            List<Spliterator<KeyValue<Integer, Integer>>> next = new ArrayList<>();
+            for (Spliterator<KeyValue<Integer, Integer>> part : parts) {
+                Spliterator<KeyValue<Integer, Integer>> prefix = part.trySplit();
+                if (prefix != null) {
+                    next.add(prefix);
+                }
+                next.add(part);
+            }
+            parts = next;
+        }
+        Assert.assertTrue(parts.size() > 8);
+        int[] expected = {10};
+        for (Spliterator<KeyValue<Integer, Integer>> part : parts) {
+            part.forEachRemaining(keyValue -> Assert.assertEquals(Integer.valueOf(expected[0]++), keyValue.getKey()));
+        }
+        Assert.assertEquals(4001, expected[0]);
+    }
+
+    @Test
+    public void multiTest() {
+        Random random = new Random(23);
+        for (int degree = 3; degree <= 9; degree += 3) {
+            BalancePlusTree<Integer, Integer> tree = new BalancePlusTree<>(degree);
+            TreeMap<Integer, Integer> map = new TreeMap<>();
+            for (int round = 0; round < 200; round++) {
+                int n = random.nextInt(300);
+                // 一部分批次是连续的一段 key，一部分是随机的
+                int base = random.nextInt(5000);
+                boolean clustered = random.nextBoolean();
+                List<Integer> keys = new ArrayList<>();
+                for (int i = 0; i < n; i++) {
+                    keys.add(clustered ? base + random.nextInt(n + 1) : random.nextInt(5000));
+                }
+                int op = random.nextInt(3);
+                if (op == 0) {
+                    List<KeyValue<Integer, Integer>> entries = new ArrayList<>();
+                    int inserted = 0;
+                    TreeMap<Integer, Integer> batch = new TreeMap<>();
+                    for (int i = 0; i < n; i++) {
+                        entries.add(new KeyValue<>(keys.get(i), round * 1000 + i));
+                        batch.put(keys.get(i), round * 1000 + i);
+                    }
+                    for (Map.Entry<Integer, Integer> entry : batch.entrySet()) {
+                        if (map.put(entry.getKey(), entry.getValue()) == null) {
+                            inserted++;
+                        }
+                    }
+                    Assert.assertEquals(inserted, tree.multiInsert(entries));
+                } else if (op == 1) {
+                    int deleted = 0;
+                    for (Integer key : new TreeSet<>(keys)) {
+                        if (map.remove(key) != null) {
+                            deleted++;
+                        }
+                    }
+                    Assert.assertEquals(deleted, tree.multiDelete(keys));
+                } else {
+                    List<Integer> values = tree.multiGet(keys);
+                    for (int i = 0; i < n; i++) {
+                        Assert.assertEquals(map.get(keys.get(i)), values.get(i));
+                    }
+                }
+                Assert.assertEquals(map.size(), tree.size());
+                checkLinks(tree);
+                checkNodes(tree, tree.getRoot(), true);
+            }
+            int i = 0;
+            List<KeyValue<Integer, Integer>> list = tree.toList();
+            for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+                Assert.assertEquals(entry.getKey(), list.get(i).getKey());
+                Assert.assertEquals(entry.getValue(), list.get(i++).getValue());
+            }
+        }
+    }
+}
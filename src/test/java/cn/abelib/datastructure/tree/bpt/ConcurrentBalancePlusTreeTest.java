@@ -0,0 +1,136 @@
+package cn.abelib.datastructure.tree.bpt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author abel.huang
+ * @date 2020/10/9 14:42
+ */
+public class ConcurrentBalancePlusTreeTest {
+
+    @Test
+    public void insertTest() {
+        ConcurrentBalancePlusTree<Integer, String> tree = new ConcurrentBalancePlusTree<>(4);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(tree.insert(i, "v" + i));
+        }
+        Assert.assertFalse(tree.insert(10, "x"));
+        Assert.assertEquals(100, tree.size());
+        Assert.assertEquals("x", tree.search(10));
+        Assert.assertEquals("v99", tree.search(99));
+        Assert.assertNull(tree.search(100));
+        Assert.assertTrue(tree.height() > 2);
+        List<KeyValue<Integer, String>> list = tree.scan(20, 29);
+        Assert.assertEquals(10, list.size());
+        Assert.assertEquals(Integer.valueOf(20), list.get(0).getKey());
+        Assert.assertTrue(tree.update(29, "y"));
+        Assert.assertFalse(tree.update(200, "y"));
+        Assert.assertEquals("y", tree.search(29));
+    }
+
+    @Test
+    public void randomTest() {
+        ConcurrentBalancePlusTree<Integer, Integer> tree = new ConcurrentBalancePlusTree<>(5);
+        TreeMap<Integer, Integer> map = new TreeMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                Assert.assertEquals(map.remove(key) != null, tree.delete(key));
+            } else {
+                Assert.assertEquals(map.put(key, i) == null, tree.insert(key, i));
+            }
+        }
+        Assert.assertEquals(map.size(), tree.size());
+        for (int key = 0; key < 2000; key++) {
+            Assert.assertEquals(map.get(key), tree.search(key));
+        }
+        List<KeyValue<Integer, Integer>> list = tree.scan(100, 1500);
+        List<Map.Entry<Integer, Integer>> expected = new ArrayList<>(map.subMap(100, true, 1500, true).entrySet());
+        Assert.assertEquals(expected.size(), list.size());
+        for (int i = 0; i < list.size(); i++) {
+            Assert.assertEquals(expected.get(i).getKey(), list.get(i).getKey());
+            Assert.assertEquals(expected.get(i).getValue(), list.get(i).getValue());
+        }
+        Assert.assertEquals(map.size(), tree.toList().size());
+    }
+
+    /**
+     * 多个线程并发插入，同时扫描的线程看到的 key 必须有序，并且包含扫描开始前已经插入的 key
+     */
+    @Test
+    public void concurrentTest() throws InterruptedException {
+        ConcurrentBalancePlusTree<Integer, Integer> tree = new ConcurrentBalancePlusTree<>(4);
+        int threads = 4;
+        int perThread = 5000;
+        // 预先插入的偶数 key，扫描时必须全部看到
+        for (int i = 0; i < threads * perThread; i += 2) {
+            tree.insert(i, i);
+        }
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            writers.add(new Thread(() -> {
+                try {
+                    for (int i = offset * 2 + 1; i < threads * perThread; i += threads * 2) {
+                        tree.insert(i, i);
+                    }
+                    for (int i = offset * 2 + 1; i < threads * perThread; i += threads * 2) {
+                        if (tree.search(i) == null) {
+                            throw new AssertionError("Missing key " + i);
+                        }
+                    }
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                }
+            }));
+        }
+        Thread scanner = new Thread(() -> {
+            try {
+                for (int round = 0; round < 20; round++) {
+                    List<KeyValue<Integer, Integer>> list = tree.scan(0, threads * perThread);
+                    int even = 0;
+                    int last = -1;
+                    for (KeyValue<Integer, Integer> kv : list) {
+                        if (kv.getKey() <= last) {
+                            throw new AssertionError("Out of order " + kv.getKey());
+                        }
+                        last = kv.getKey();
+                        if (last % 2 == 0) {
+                            even++;
+                        }
+                    }
+                    if (even != threads * perThread / 2) {
+                        throw new AssertionError("Missing even keys " + even);
+                    }
+                }
+            } catch (Throwable e) {
+                error.compareAndSet(null, e);
+            }
+        });
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        scanner.start();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        scanner.join();
+        Assert.assertNull(error.get());
+        Assert.assertEquals(threads * perThread, tree.size());
+        List<KeyValue<Integer, Integer>> list = tree.toList();
+        Assert.assertEquals(threads * perThread, list.size());
+        for (int i = 0; i < list.size(); i++) {
+            Assert.assertEquals(Integer.valueOf(i), list.get(i).getKey());
+        }
+    }
+}
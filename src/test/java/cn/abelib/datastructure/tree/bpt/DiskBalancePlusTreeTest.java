@@ -0,0 +1,126 @@
+package cn.abelib.datastructure.tree.bpt;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * @author abel.huang
+ * @date 2020/10/9 14:42
+ */
+public class DiskBalancePlusTreeTest {
+    private File file;
+
+    @Before
+    public void init() throws IOException {
+        file = File.createTempFile("bpt", ".db");
+        file.delete();
+    }
+
+    @After
+    public void destroy() {
+        file.delete();
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] bytes) {
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void insertTest() throws IOException {
+        try (DiskBalancePlusTree tree = new DiskBalancePlusTree(file.getPath())) {
+            Assert.assertTrue(tree.insert(bytes("b"), bytes("hello")));
+            Assert.assertTrue(tree.insert(bytes("a"), bytes("word")));
+            Assert.assertFalse(tree.insert(bytes("a"), bytes("index")));
+            Assert.assertEquals("index", string(tree.search(bytes("a"))));
+            Assert.assertNull(tree.search(bytes("c")));
+            Assert.assertTrue(tree.update(bytes("b"), bytes("tree")));
+            Assert.assertFalse(tree.update(bytes("c"), bytes("tree")));
+            Assert.assertEquals(2, tree.size());
+            Assert.assertTrue(tree.delete(bytes("a")));
+            Assert.assertFalse(tree.delete(bytes("a")));
+            Assert.assertEquals(1, tree.scan(bytes("a"), bytes("z")).size());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void largeEntryTest() throws IOException {
+        try (DiskBalancePlusTree tree = new DiskBalancePlusTree(file.getPath(), 512, 8)) {
+            tree.insert(bytes("a"), new byte[200]);
+        }
+    }
+
+    @Test
+    public void randomTest() throws IOException {
+        TreeMap<String, String> expected = new TreeMap<>();
+        Random random = new Random(7);
+        try (DiskBalancePlusTree tree = new DiskBalancePlusTree(file.getPath(), 512, 16)) {
+            for (int i = 0; i < 20000; i++) {
+                String key = "key/" + random.nextInt(3000);
+                if (random.nextInt(3) == 0) {
+                    Assert.assertEquals(expected.remove(key) != null, tree.delete(bytes(key)));
+                } else {
+                    String value = "value-" + i + "-" + (i % 7 == 0 ? "padding" : "");
+                    Assert.assertEquals(expected.put(key, value) == null, tree.insert(bytes(key), bytes(value)));
+                }
+            }
+            Assert.assertTrue(tree.height() > 2);
+            Assert.assertEquals(0, tree.getPool().pinnedCount());
+            check(expected, tree);
+        }
+        // 重新打开后内容不变
+        try (DiskBalancePlusTree tree = new DiskBalancePlusTree(file.getPath(), 4096, 16)) {
+            Assert.assertEquals(512, tree.getPageSize());
+            check(expected, tree);
+        }
+    }
+
+    @Test
+    public void reuseTest() throws IOException {
+        try (DiskBalancePlusTree tree = new DiskBalancePlusTree(file.getPath(), 512, 8)) {
+            for (int i = 0; i < 2000; i++) {
+                tree.insert(bytes(String.format("%06d", i)), bytes("v" + i));
+            }
+            int pages = tree.pageCount();
+            for (int i = 0; i < 2000; i++) {
+                Assert.assertTrue(tree.delete(bytes(String.format("%06d", i))));
+            }
+            Assert.assertEquals(1, tree.height());
+            Assert.assertTrue(tree.isEmpty());
+            for (int i = 0; i < 2000; i++) {
+                tree.insert(bytes(String.format("%06d", i)), bytes("v" + i));
+            }
+            // 删除时释放的页被重新使用
+            Assert.assertTrue(tree.pageCount() <= pages + 1);
+        }
+    }
+
+    private static void check(TreeMap<String, String> expected, DiskBalancePlusTree tree) throws IOException {
+        Assert.assertEquals(expected.size(), tree.size());
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            Assert.assertEquals(entry.getValue(), string(tree.search(bytes(entry.getKey()))));
+        }
+        List<KeyValue<byte[], byte[]>> scan = tree.scan(bytes("key/1"), bytes("key/2"));
+        Map<String, String> subMap = expected.subMap("key/1", true, "key/2", true);
+        Assert.assertEquals(subMap.size(), scan.size());
+        int i = 0;
+        for (Map.Entry<String, String> entry : subMap.entrySet()) {
+            Assert.assertEquals(entry.getKey(), string(scan.get(i).getKey()));
+            Assert.assertEquals(entry.getValue(), string(scan.get(i++).getValue()));
+        }
+        Assert.assertEquals(expected.size(), tree.scan(new byte[0], bytes("key/a")).size());
+    }
+}
@@ -0,0 +1,71 @@
+package cn.abelib.datastructure.tree.bpt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * @author abel.huang
+ * @date 2020/10/9 14:42
+ */
+public class LongBalancePlusTreeTest {
+
+    @Test
+    public void insertTest() {
+        LongBalancePlusTree<String> tree = new LongBalancePlusTree<>(4);
+        for (long i = 10; i > 0; i--) {
+            Assert.assertTrue(tree.insert(i * 10, "v" + i));
+        }
+        Assert.assertFalse(tree.insert(50, "five"));
+        Assert.assertEquals(10, tree.size());
+        Assert.assertEquals("five", tree.search(50));
+        Assert.assertNull(tree.search(55));
+        Assert.assertTrue(tree.update(10, "one"));
+        Assert.assertFalse(tree.update(11, "one"));
+        List<KeyValue<Long, String>> scan = tree.scan(15, 40);
+        Assert.assertEquals(3, scan.size());
+        Assert.assertEquals(Long.valueOf(20), scan.get(0).getKey());
+        Assert.assertEquals(10, tree.toList().size());
+    }
+
+    @Test
+    public void extremeKeyTest() {
+        LongBalancePlusTree<Long> tree = new LongBalancePlusTree<>(3);
+        tree.insert(Long.MIN_VALUE, Long.MIN_VALUE);
+        tree.insert(Long.MAX_VALUE, Long.MAX_VALUE);
+        tree.insert(0, 0L);
+        Assert.assertEquals(Long.valueOf(Long.MIN_VALUE), tree.toList().get(0).getKey());
+        Assert.assertEquals(Long.valueOf(Long.MAX_VALUE), tree.search(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void randomTest() {
+        for (int degree = 3; degree <= 16; degree += 3) {
+            LongBalancePlusTree<Long> tree = new LongBalancePlusTree<>(degree);
+            TreeMap<Long, Long> expected = new TreeMap<>();
+            Random random = new Random(degree);
+            for (int i = 0; i < 20000; i++) {
+                long key = random.nextInt(2000) - 1000;
+                if (random.nextBoolean()) {
+                    Assert.assertEquals(expected.remove(key) != null, tree.delete(key));
+                } else {
+                    Assert.assertEquals(expected.put(key, (long) i) == null, tree.insert(key, (long) i));
+                }
+            }
+            Assert.assertEquals(expected.size(), tree.size());
+            long[] sum = new long[1];
+            tree.forEach(-500, 500, (key, value) -> sum[0] += key);
+            long expectedSum = 0;
+            for (long key : expected.subMap(-500L, true, 500L, true).keySet()) {
+                expectedSum += key;
+            }
+            Assert.assertEquals(expectedSum, sum[0]);
+            for (long key = -1000; key < 1000; key++) {
+                Assert.assertEquals(expected.get(key), tree.search(key));
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package cn.abelib.datastructure.tree.bpt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author abel.huang
+ * @date 2020/10/9 14:42
+ */
+public class PersistentBalancePlusTreeTest {
+
+    private static void assertContent(TreeMap<Integer, Integer> expected, List<KeyValue<Integer, Integer>> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        int i = 0;
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            Assert.assertEquals(entry.getKey(), actual.get(i).getKey());
+            Assert.assertEquals(entry.getValue(), actual.get(i).getValue());
+            i++;
+        }
+    }
+
+    @Test
+    public void randomTest() {
+        PersistentBalancePlusTree<Integer, Integer> tree = new PersistentBalancePlusTree<>(4);
+        TreeMap<Integer, Integer> map = new TreeMap<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(1000);
+            int op = random.nextInt(4);
+            if (op == 0) {
+                Assert.assertEquals(map.remove(key) != null, tree.delete(key));
+            } else if (op == 1) {
+                Assert.assertEquals(map.containsKey(key), tree.update(key, -key));
+                map.computeIfPresent(key, (k, v) -> -k);
+            } else {
+                Assert.assertEquals(map.put(key, i) == null, tree.insert(key, i));
+            }
+            Assert.assertEquals(map.size(), tree.size());
+        }
+        for (int key = 0; key < 1000; key++) {
+            Assert.assertEquals(map.get(key), tree.search(key));
+        }
+        assertContent(map, tree.toList());
+        TreeMap<Integer, Integer> range = new TreeMap<>(map.subMap(200, true, 700, true));
+        assertContent(range, tree.scan(200, 700));
+        Assert.assertTrue(tree.scan(700, 200).isEmpty());
+        // 没有快照时替换的节点都可以复用
+        Assert.assertTrue(tree.getReused() > 0);
+        Assert.assertEquals(0, tree.retiredCount());
+    }
+
+    @Test
+    public void snapshotTest() {
+        PersistentBalancePlusTree<Integer, Integer> tree = new PersistentBalancePlusTree<>(5);
+        TreeMap<Integer, Integer> map = new TreeMap<>();
+        for (int i = 0; i < 500; i++) {
+            tree.insert(i, i);
+            map.put(i, i);
+        }
+        PersistentBalancePlusTree<Integer, Integer>.Snapshot snapshot = tree.snapshot();
+        TreeMap<Integer, Integer> old = new TreeMap<>(map);
+        Iterator<KeyValue<Integer, Integer>> iterator = snapshot.iterator(100, 400);
+        Random random = new Random(3);
+        for (int i = 0; i < 5000; i++) {
+            int key = random.nextInt(1000);
+            if (random.nextBoolean()) {
+                tree.delete(key);
+                map.remove(key);
+            } else {
+                tree.insert(key, -i);
+                map.put(key, -i);
+            }
+        }
+        // 快照打开期间替换的节点不能复用
+        Assert.assertTrue(tree.retiredCount() > 0);
+        Assert.assertEquals(500, snapshot.size());
+        Assert.assertEquals(Integer.valueOf(42), snapshot.search(42));
+        assertContent(old, snapshot.toList());
+        for (int key = 100; key <= 400; key++) {
+            Assert.assertTrue(iterator.hasNext());
+            KeyValue<Integer, Integer> kv = iterator.next();
+            Assert.assertEquals(Integer.valueOf(key), kv.getKey());
+            Assert.assertEquals(Integer.valueOf(key), kv.getValue());
+        }
+        Assert.assertFalse(iterator.hasNext());
+        assertContent(map, tree.toList());
+        snapshot.close();
+        tree.insert(-1, -1);
+        Assert.assertEquals(0, tree.retiredCount());
+        try {
+            snapshot.search(1);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // 已经关闭
+        }
+    }
+
+    @Test
+    public void concurrentTest() throws InterruptedException {
+        PersistentBalancePlusTree<Integer, Integer> tree = new PersistentBalancePlusTree<>(4);
+        int count = 20000;
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        // 写线程依次插入 0..count-1，读线程看到的快照必须正好是 0..size-1
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                tree.insert(i, i);
+            }
+        });
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            readers.add(new Thread(() -> {
+                try {
+                    for (int round = 0; round < 50; round++) {
+                        try (PersistentBalancePlusTree<Integer, Integer>.Snapshot snapshot = tree.snapshot()) {
+                            int expected = 0;
+                            Iterator<KeyValue<Integer, Integer>> iterator = snapshot.iterator(0, count);
+                            while (iterator.hasNext()) {
+                                KeyValue<Integer, Integer> kv = iterator.next();
+                                if (kv.getKey() != expected || kv.getValue() != expected) {
+                                    throw new AssertionError("Expect " + expected + " but " + kv);
+                                }
+                                expected++;
+                            }
+                            if (expected != snapshot.size()) {
+                                throw new AssertionError("Expect size " + snapshot.size() + " but " + expected);
+                            }
+                        }
+                    }
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                }
+            }));
+        }
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        Assert.assertNull(error.get());
+        Assert.assertEquals(count, tree.size());
+    }
+}
@@ -0,0 +1,108 @@
+package cn.abelib.datastructure.tree.bpt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * @author abel.huang
+ * @date 2020/10/9 14:42
+ */
+public class PrefixBalancePlusTreeTest {
+
+    private static String path(int i) {
+        return "/data/warehouse/analytics/events/year=2020/month=" + (i % 12) + "/part-" + i + ".parquet";
+    }
+
+    @Test
+    public void encodeTest() {
+        Random random = new Random(5);
+        String[] strings = new String[200];
+        for (int i = 0; i < strings.length; i++) {
+            StringBuilder builder = new StringBuilder();
+            int length = random.nextInt(6);
+            for (int j = 0; j < length; j++) {
+                // 覆盖 1、2、3 字节和代理对
+                int kind = random.nextInt(4);
+                builder.append(kind == 0 ? (char) random.nextInt(0x80)
+                        : kind == 1 ? (char) (0x80 + random.nextInt(0x780))
+                        : kind == 2 ? (char) (0xe000 + random.nextInt(0x2000))
+                        : (char) (0xd800 + random.nextInt(0x800)));
+            }
+            strings[i] = builder.toString();
+            Assert.assertEquals(strings[i], ByteKeys.decodeString(ByteKeys.encode(strings[i])));
+        }
+        for (String a : strings) {
+            for (String b : strings) {
+                Assert.assertEquals(Integer.signum(a.compareTo(b)),
+                        Integer.signum(ByteKeys.compare(ByteKeys.encode(a), ByteKeys.encode(b))));
+            }
+        }
+        long[] longs = {Long.MIN_VALUE, -100, -1, 0, 1, 255, 256, Long.MAX_VALUE};
+        for (int i = 0; i < longs.length; i++) {
+            Assert.assertEquals(longs[i], ByteKeys.decodeLong(ByteKeys.encode(longs[i])));
+            if (i > 0) {
+                Assert.assertTrue(ByteKeys.compare(ByteKeys.encode(longs[i - 1]), ByteKeys.encode(longs[i])) < 0);
+            }
+        }
+    }
+
+    @Test
+    public void separatorTest() {
+        Assert.assertEquals("abd", new String(ByteKeys.separator(
+                "abc".getBytes(StandardCharsets.UTF_8), "abdxyz".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8));
+        Assert.assertEquals("abcd", new String(ByteKeys.separator(
+                "abc".getBytes(StandardCharsets.UTF_8), "abcdef".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void randomTest() {
+        PrefixBalancePlusTree<Integer> tree = new PrefixBalancePlusTree<>(6);
+        TreeMap<String, Integer> map = new TreeMap<>();
+        Random random = new Random(9);
+        for (int i = 0; i < 20000; i++) {
+            int n = random.nextInt(3000);
+            String key = random.nextInt(10) == 0 ? "k" + n : path(n);
+            byte[] bytes = ByteKeys.encode(key);
+            if (random.nextInt(3) == 0) {
+                Assert.assertEquals(map.remove(key) != null, tree.delete(bytes));
+            } else {
+                Assert.assertEquals(map.put(key, i) == null, tree.insert(bytes, i));
+            }
+        }
+        Assert.assertEquals(map.size(), tree.size());
+        for (Map.Entry<String, Integer> entry : map.entrySet()) {
+            Assert.assertEquals(entry.getValue(), tree.search(ByteKeys.encode(entry.getKey())));
+        }
+        Assert.assertNull(tree.search(ByteKeys.encode("/data")));
+        List<KeyValue<byte[], Integer>> list = tree.toList();
+        Assert.assertEquals(map.size(), list.size());
+        int i = 0;
+        for (String key : map.keySet()) {
+            Assert.assertEquals(key, ByteKeys.decodeString(list.get(i++).getKey()));
+        }
+        String from = path(100);
+        String to = path(200);
+        List<KeyValue<byte[], Integer>> scan = tree.scan(ByteKeys.encode(from), ByteKeys.encode(to));
+        Assert.assertEquals(map.subMap(from, true, to, true).size(), scan.size());
+    }
+
+    @Test
+    public void compressionTest() {
+        PrefixBalancePlusTree<Integer> tree = new PrefixBalancePlusTree<>(64);
+        long rawBytes = 0;
+        for (int i = 0; i < 10000; i++) {
+            byte[] key = ByteKeys.encode(path(i));
+            rawBytes += key.length;
+            tree.insert(key, i);
+        }
+        long keyBytes = tree.keyBytes();
+        Assert.assertTrue("raw=" + rawBytes + " stored=" + keyBytes, keyBytes * 4 < rawBytes);
+        Assert.assertEquals(Integer.valueOf(1234), tree.search(ByteKeys.encode(path(1234))));
+    }
+}
@@ -0,0 +1,257 @@
+package cn.abelib.datastructure.tree.bpt;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author abel.huang
+ * @date 2020/10/9 14:42
+ */
+public class WriteAheadLogTest {
+    private File file;
+    private File walFile;
+
+    @Before
+    public void init() throws IOException {
+        file = File.createTempFile("bpt", ".db");
+        file.delete();
+        walFile = new File(file.getPath() + ".wal");
+    }
+
+    @After
+    public void destroy() {
+        file.delete();
+        walFile.delete();
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void appendAndReadTest() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(walFile.getPath(), SyncPolicy.ALWAYS)) {
+            wal.commit(wal.append(WriteAheadLog.PUT, bytes("a"), bytes("1")));
+            wal.commit(wal.append(WriteAheadLog.DELETE, bytes("b"), null));
+        }
+        // 模拟写到一半的记录
+        try (FileOutputStream out = new FileOutputStream(walFile, true)) {
+            out.write(new byte[]{0, 0, 0, 30, 1, 2, 3});
+        }
+        try (WriteAheadLog wal = new WriteAheadLog(walFile.getPath(), SyncPolicy.OS)) {
+            List<WriteAheadLog.Record> records = wal.readAll();
+            Assert.assertEquals(2, records.size());
+            Assert.assertEquals(WriteAheadLog.PUT, records.get(0).type);
+            Assert.assertEquals("1", new String(records.get(0).b, StandardCharsets.UTF_8));
+            Assert.assertNull(records.get(1).b);
+            Assert.assertEquals(records.get(1).position + 18, wal.size());
+        }
+    }
+
+    @Test
+    public void recoverTest() throws IOException {
+        TreeMap<String, String> expected = new TreeMap<>();
+        Random random = new Random(3);
+        // 不关闭，模拟宕机: 缓冲池中的脏页全部丢失
+        DiskBalancePlusTree crashed = new DiskBalancePlusTree(file.getPath(), 512, 64, SyncPolicy.ALWAYS);
+        for (int i = 0; i < 5000; i++) {
+            String key = "key/" + random.nextInt(1000);
+            if (random.nextInt(4) == 0) {
+                expected.remove(key);
+                crashed.delete(bytes(key));
+            } else {
+                expected.put(key, "value" + i);
+                crashed.insert(bytes(key), bytes("value" + i));
+            }
+        }
+        Assert.assertTrue(walFile.length() > 0);
+        try (FileOutputStream out = new FileOutputStream(walFile, true)) {
+            out.write(new byte[]{0, 0, 1});
+        }
+        try (DiskBalancePlusTree tree = new DiskBalancePlusTree(file.getPath(), 512, 64, SyncPolicy.ALWAYS)) {
+            check(expected, tree);
+            // 恢复后日志被截断
+            Assert.assertEquals(0, walFile.length());
+            tree.insert(bytes("key/new"), bytes("new"));
+            expected.put("key/new", "new");
+        }
+        try (DiskBalancePlusTree tree = new DiskBalancePlusTree(file.getPath(), 512, 64)) {
+            check(expected, tree);
+        }
+    }
+
+    @Test
+    public void recoverWithSmallCacheTest() throws IOException {
+        TreeMap<String, String> expected = new TreeMap<>();
+        DiskBalancePlusTree crashed = new DiskBalancePlusTree(file.getPath(), 512, 64, SyncPolicy.OS);
+        // 日志很大，恢复时需要多次不截断日志的 checkpoint
+        crashed.setCheckpointBytes(Long.MAX_VALUE);
+        for (int i = 0; i < 3000; i++) {
+            String key = String.format("key/%05d", (i * 7919) % 3000);
+            expected.put(key, "v" + i);
+            crashed.insert(bytes(key), bytes("v" + i));
+        }
+        crashed.getWal().sync(Long.MAX_VALUE, false);
+        DiskBalancePlusTree recovered = new DiskBalancePlusTree(file.getPath(), 512, 64, SyncPolicy.OS);
+        check(expected, recovered);
+        // 恢复完成前再次宕机也可以恢复
+        try (DiskBalancePlusTree tree = new DiskBalancePlusTree(file.getPath(), 512, 64, SyncPolicy.OS)) {
+            check(expected, tree);
+        }
+    }
+
+    private static long syncerThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> "wal-syncer".equals(thread.getName()) && thread.isAlive())
+                .count();
+    }
+
+    /**
+     * 数据文件不是 B+ 树时已经打开的日志被关闭, syncer 线程结束
+     */
+    @Test
+    public void badMagicTest() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[4096]);
+        }
+        long before = syncerThreads();
+        try {
+            new DiskBalancePlusTree(file.getPath(), 512, 64, SyncPolicy.everyMillis(10));
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(before, syncerThreads());
+        }
+    }
+
+    /**
+     * 第一次 fsync 阻塞期间排队的提交由下一个 leader 一次 fsync 完成
+     */
+    @Test
+    public void groupCommitTest() throws Exception {
+        CountDownLatch forcing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        WriteAheadLog wal = new WriteAheadLog(walFile.getPath(), SyncPolicy.ALWAYS) {
+            @Override
+            void force() throws IOException {
+                if (forcing.getCount() > 0) {
+                    forcing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                }
+                super.force();
+            }
+        };
+        try {
+            Thread[] threads = new Thread[6];
+            AtomicInteger committed = new AtomicInteger();
+            for (int t = 0; t < threads.length; t++) {
+                int id = t;
+                threads[t] = new Thread(() -> {
+                    try {
+                        wal.commit(wal.append(WriteAheadLog.PUT, bytes("key" + id), bytes("v" + id)));
+                        committed.incrementAndGet();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            }
+            threads[0].start();
+            forcing.await();
+            for (int t = 1; t < threads.length; t++) {
+                threads[t].start();
+            }
+            // 其余线程都已追加记录并等待 leader
+            for (int t = 1; t < threads.length; t++) {
+                while (threads[t].getState() != Thread.State.WAITING) {
+                    Thread.sleep(1);
+                }
+            }
+            Assert.assertEquals(0, committed.get());
+            release.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            Assert.assertEquals(threads.length, committed.get());
+            Assert.assertEquals(2, wal.getSyncCount());
+            Assert.assertEquals(threads.length, wal.readAll().size());
+        } finally {
+            release.countDown();
+            wal.close();
+        }
+    }
+
+    /**
+     * 并发提交后全部可以恢复
+     */
+    @Test
+    public void concurrentCommitTest() throws Exception {
+        Map<String, String> expected = new ConcurrentSkipListMap<>();
+        DiskBalancePlusTree crashed = new DiskBalancePlusTree(file.getPath(), 4096, 256, SyncPolicy.ALWAYS);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            int id = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 200; i++) {
+                        String key = "thread" + id + "/" + i;
+                        crashed.insert(bytes(key), bytes(key));
+                        expected.put(key, key);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        try (DiskBalancePlusTree tree = new DiskBalancePlusTree(file.getPath(), 4096, 256, SyncPolicy.ALWAYS)) {
+            Assert.assertEquals(1600, tree.size());
+            for (String key : expected.keySet()) {
+                Assert.assertArrayEquals(bytes(key), tree.search(bytes(key)));
+            }
+        }
+    }
+
+    @Test
+    public void intervalTest() throws Exception {
+        try (DiskBalancePlusTree tree = new DiskBalancePlusTree(file.getPath(), 4096, 64, SyncPolicy.everyMillis(5))) {
+            tree.insert(bytes("a"), bytes("1"));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (tree.getWal().getSyncCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            Assert.assertTrue(tree.getWal().getSyncCount() > 0);
+        }
+        try (DiskBalancePlusTree tree = new DiskBalancePlusTree(file.getPath())) {
+            Assert.assertArrayEquals(bytes("1"), tree.search(bytes("a")));
+        }
+    }
+
+    private static void check(TreeMap<String, String> expected, DiskBalancePlusTree tree) throws IOException {
+        Assert.assertEquals(expected.size(), tree.size());
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            Assert.assertArrayEquals(bytes(entry.getValue()), tree.search(bytes(entry.getKey())));
+        }
+        Assert.assertEquals(expected.size(), tree.scan(new byte[0], bytes("z")).size());
+    }
+}
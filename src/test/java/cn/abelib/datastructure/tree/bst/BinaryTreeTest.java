@@ -1,10 +1,17 @@
 package cn.abelib.datastructure.tree.bst;
 
 import cn.abelib.util.annotation.Tested;
-import cn.abelib.util.annotation.UnFinish;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
 /**
  * @Author: abel-huang
  * @Date: 2018-12-27 22:46
@@ -106,7 +113,7 @@ public class BinaryTreeTest {
     }
 
     @Test
-    @UnFinish
+    @Tested
     public void inOrderVisitTest() {
         System.out.println(binaryTree.inOrderVisit());
     }
@@ -136,4 +143,106 @@ public class BinaryTreeTest {
     public void traverseTest() {
         binaryTree.forEach(System.out::println);
     }
+
+    private static <T> List<T> toList(Iterator<T> iterator) {
+        List<T> list = new ArrayList<>();
+        iterator.forEachRemaining(list::add);
+        return list;
+    }
+
+    private static <T> List<T> toList(Iterable<T> iterable) {
+        List<T> list = new ArrayList<>();
+        iterable.forEach(list::add);
+        return list;
+    }
+
+    @Test
+    public void iteratorTest() {
+        Assert.assertEquals("[1, 2, 3, 4, 5]", toList(binaryTree.inOrderIterator()).toString());
+        Assert.assertEquals("[4, 2, 1, 3, 5]", toList(binaryTree.preOrderIterator()).toString());
+        Assert.assertEquals("[1, 3, 2, 5, 4]", toList(binaryTree.postOrderIterator()).toString());
+        Assert.assertEquals("[4, 2, 5, 1, 3]", toList(binaryTree.levelOrderIterator()).toString());
+        Assert.assertEquals("[1, 3, 2, 5, 4]", toList(binaryTree.postOrderVisit()).toString());
+
+        Random random = new Random(24);
+        BinaryTree<Integer> tree = new BinaryTree<>();
+        for (int i = 0; i < 2000; i++) {
+            tree.add(random.nextInt(5000));
+        }
+        Assert.assertEquals(toList(tree.inOrderVisitRecursion()), toList(tree.inOrderIterator()));
+        Assert.assertEquals(toList(tree.preOrderVisitRecursion()), toList(tree.preOrderIterator()));
+        Assert.assertEquals(toList(tree.postOrderVisitRecursion()), toList(tree.postOrderIterator()));
+        Assert.assertEquals(tree.size(), toList(tree.levelOrderIterator()).size());
+        Assert.assertEquals(toList(tree.inOrderVisitRecursion()),
+                StreamSupport.stream(tree.spliterator(), true).collect(Collectors.toList()));
+        Assert.assertEquals(toList(tree.preOrderVisitRecursion()),
+                StreamSupport.stream(tree.preOrderSpliterator(), false).collect(Collectors.toList()));
+    }
+
+    /**
+     * 迭代器只读, 可以嵌套遍历, 遍历中可以查询, 提前结束不影响树
+     */
+    @Test
+    public void nestedIteratorTest() {
+        int pairs = 0;
+        for (Integer x : binaryTree) {
+            for (Integer y : binaryTree) {
+                pairs++;
+            }
+            Assert.assertTrue(binaryTree.contains(x));
+        }
+        Assert.assertEquals(25, pairs);
+        Iterator<Integer> iterator = binaryTree.iterator();
+        Assert.assertEquals(Integer.valueOf(1), iterator.next());
+        Assert.assertEquals("[4, 2, 1, 3, 5]", toList(binaryTree.preOrderIterator()).toString());
+        Assert.assertEquals(Integer.valueOf(2), iterator.next());
+    }
+
+    @Test
+    public void morrisTest() {
+        Random random = new Random(7);
+        BinaryTree<Integer> tree = new BinaryTree<>();
+        for (int i = 0; i < 500; i++) {
+            tree.add(random.nextInt(1000));
+        }
+        List<Integer> expected = toList(tree.preOrderVisitRecursion());
+        List<Integer> sorted = new ArrayList<>();
+        tree.morrisInOrder(sorted::add);
+        Assert.assertEquals(toList(tree.inOrderIterator()), sorted);
+        Assert.assertEquals(expected, toList(tree.preOrderIterator()));
+        // action 抛出异常时线索同样被恢复
+        int[] visited = {0};
+        try {
+            tree.morrisInOrder(value -> {
+                if (++visited[0] == 100) {
+                    throw new IllegalStateException();
+                }
+            });
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(100, visited[0]);
+        }
+        Assert.assertEquals(expected, toList(tree.preOrderIterator()));
+        Assert.assertEquals(sorted.get(sorted.size() / 2), StreamSupport.stream(tree.spliterator(), false)
+                .filter(i -> i >= sorted.get(sorted.size() / 2)).findFirst().orElse(null));
+    }
+
+    /**
+     * 完全倾斜的树, 迭代器的开销与树的形状无关
+     */
+    @Test
+    public void skewedTest() {
+        BinaryTree<Integer> tree = new BinaryTree<>();
+        int n = 5000;
+        for (int i = n - 1; i >= 0; i--) {
+            tree.add(i);
+        }
+        Assert.assertEquals(n, toList(tree.inOrderIterator()).size());
+        int[] count = {0};
+        tree.morrisInOrder(value -> count[0]++);
+        Assert.assertEquals(n, count[0]);
+        Assert.assertEquals(n, toList(tree.preOrderIterator()).size());
+        Assert.assertEquals(Integer.valueOf(0), tree.postOrderIterator().next());
+        Assert.assertEquals(n, toList(tree.levelOrderIterator()).size());
+    }
 }
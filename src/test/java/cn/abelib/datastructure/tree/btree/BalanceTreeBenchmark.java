@@ -0,0 +1,71 @@
+package cn.abelib.datastructure.tree.btree;
+
+import cn.abelib.datastructure.tree.bst.BinaryTree;
+import cn.abelib.datastructure.tree.rbt.SimpleRedBlackTree;
+
+import java.util.Random;
+
+/**
+ * @Author: abel.huang
+ * @Date: 2019-02-01 00:34
+ * 不属于单元测试, 手动运行 main 查看耗时
+ */
+public class BalanceTreeBenchmark {
+
+    /**
+     * 随机 int key 的插入和查找，和红黑树、二叉查找树比较
+     */
+    public static void main(String[] args) {
+        int n = 200000;
+        Random random = new Random(1);
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = random.nextInt();
+        }
+        for (int round = 0; round < 3; round++) {
+            BalanceTree<Object> balanceTree = new BalanceTree<>();
+            SimpleRedBlackTree redBlackTree = new SimpleRedBlackTree();
+            BinaryTree<Integer> binaryTree = new BinaryTree<>();
+
+            long begin = System.nanoTime();
+            for (int key : keys) {
+                balanceTree.put(key, null);
+            }
+            long bTreeInsert = System.nanoTime() - begin;
+            begin = System.nanoTime();
+            for (int key : keys) {
+                redBlackTree.insert(key);
+            }
+            long redBlackInsert = System.nanoTime() - begin;
+            begin = System.nanoTime();
+            for (int key : keys) {
+                binaryTree.add(key);
+            }
+            long binaryInsert = System.nanoTime() - begin;
+
+            int found = 0;
+            begin = System.nanoTime();
+            for (int key : keys) {
+                found += balanceTree.containsKey(key) ? 1 : 0;
+            }
+            long bTreeGet = System.nanoTime() - begin;
+            begin = System.nanoTime();
+            for (int key : keys) {
+                found += redBlackTree.contains(key) ? 1 : 0;
+            }
+            long redBlackGet = System.nanoTime() - begin;
+            begin = System.nanoTime();
+            for (int key : keys) {
+                found += binaryTree.contains(key) ? 1 : 0;
+            }
+            long binaryGet = System.nanoTime() - begin;
+            if (found != 3 * n) {
+                throw new IllegalStateException("found " + found);
+            }
+            System.out.println("insert ns/op: BalanceTree " + bTreeInsert / n + ", SimpleRedBlackTree "
+                    + redBlackInsert / n + ", BinaryTree " + binaryInsert / n);
+            System.out.println("lookup ns/op: BalanceTree " + bTreeGet / n + ", SimpleRedBlackTree "
+                    + redBlackGet / n + ", BinaryTree " + binaryGet / n);
+        }
+    }
+}
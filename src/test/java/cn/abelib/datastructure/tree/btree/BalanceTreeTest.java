@@ -0,0 +1,105 @@
+package cn.abelib.datastructure.tree.btree;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * @Author: abel.huang
+ * @Date: 2019-02-01 00:34
+ */
+public class BalanceTreeTest {
+
+    @Test
+    public void putTest() {
+        BalanceTree<String> tree = new BalanceTree<>(2);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertNull(tree.put(i * 2, "v" + i));
+        }
+        Assert.assertEquals("v10", tree.put(20, "x"));
+        Assert.assertEquals(100, tree.size());
+        Assert.assertEquals("x", tree.get(20));
+        Assert.assertNull(tree.get(21));
+        Assert.assertEquals(0, tree.min());
+        Assert.assertEquals(198, tree.max());
+        Assert.assertEquals(Long.valueOf(20), tree.floor(21));
+        Assert.assertEquals(Long.valueOf(22), tree.ceiling(21));
+        Assert.assertNull(tree.floor(-1));
+        Assert.assertNull(tree.ceiling(199));
+        Assert.assertEquals(11, tree.rank(21));
+        Assert.assertEquals(10, tree.rank(20));
+        Assert.assertEquals(20, tree.select(10));
+        Assert.assertEquals("x", tree.remove(20));
+        Assert.assertNull(tree.remove(20));
+        Assert.assertEquals(99, tree.size());
+    }
+
+    @Test
+    public void randomTest() {
+        for (int t = 2; t <= 8; t += 3) {
+            BalanceTree<Integer> tree = new BalanceTree<>(t);
+            TreeMap<Long, Integer> map = new TreeMap<>();
+            Random random = new Random(t);
+            for (int i = 0; i < 20000; i++) {
+                long key = random.nextInt(2000) - 1000;
+                if (random.nextInt(3) == 0) {
+                    Assert.assertEquals(map.remove(key), tree.remove(key));
+                } else {
+                    Assert.assertEquals(map.put(key, i), tree.put(key, i));
+                }
+                Assert.assertEquals(map.size(), tree.size());
+            }
+            check(tree, map);
+            while (!map.isEmpty()) {
+                long key = map.firstKey();
+                Assert.assertEquals(map.remove(key), tree.remove(key));
+            }
+            Assert.assertTrue(tree.isEmpty());
+            Assert.assertEquals(1, tree.height());
+        }
+    }
+
+    @Test
+    public void putAllTest() {
+        Random random = new Random(17);
+        for (int n : new int[]{0, 1, 14, 15, 16, 255, 256, 10000}) {
+            long[] keys = new long[n];
+            Integer[] values = new Integer[n];
+            TreeMap<Long, Integer> map = new TreeMap<>();
+            for (int i = 0; i < n; i++) {
+                keys[i] = random.nextInt(n * 2 + 1);
+                values[i] = i;
+                map.put(keys[i], i);
+            }
+            BalanceTree<Integer> tree = new BalanceTree<>();
+            tree.putAll(keys, values);
+            check(tree, map);
+            // 非空树上的批量插入
+            tree.putAll(new long[]{-1, n * 3L}, null);
+            map.put(-1L, null);
+            map.put(n * 3L, null);
+            check(tree, map);
+        }
+    }
+
+    private static void check(BalanceTree<Integer> tree, TreeMap<Long, Integer> map) {
+        Assert.assertEquals(map.size(), tree.size());
+        long[] keys = tree.keys();
+        int i = 0;
+        for (Map.Entry<Long, Integer> entry : map.entrySet()) {
+            Assert.assertEquals(entry.getKey().longValue(), keys[i]);
+            Assert.assertEquals(entry.getValue(), tree.get(entry.getKey()));
+            Assert.assertEquals(i, tree.rank(entry.getKey()));
+            Assert.assertEquals(entry.getKey().longValue(), tree.select(i));
+            i++;
+        }
+        for (long key = -1005; key < 1005; key += 7) {
+            Assert.assertEquals(map.floorKey(key), tree.floor(key));
+            Assert.assertEquals(map.ceilingKey(key), tree.ceiling(key));
+            Assert.assertEquals(map.headMap(key).size(), tree.rank(key));
+        }
+    }
+}